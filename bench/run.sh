@@ -0,0 +1,16 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+
+# Runs the JMH suite against a local Postgres and writes JMH JSON to
+# results/<timestamp>.json for comparing releases. The benchmarks drop and
+# recreate the schema in the target database, so give them their own:
+#   createdb -p $PGPORT hotel_bench
+# Extra arguments go to JMH, e.g. a benchmark regex or -p hotels=100,1000
+JAR=$DIR/target/benchmarks.jar
+if [ ! -f $JAR ]; then
+  (cd $DIR/.. && mvn -B -q package -DskipTests) || exit 1
+fi
+mkdir -p $DIR/results
+URL=${BENCH_URL:-jdbc:postgresql://localhost:${PGPORT:-5432}/hotel_bench}
+java -jar $JAR -jvmArgs "-Dbench.url=$URL -Dbench.user=${BENCH_USER:-$USER}" \
+     -rf json -rff $DIR/results/$(date +%Y%m%d-%H%M%S).json "$@"
@@ -0,0 +1,176 @@
+package hoteldb.bench;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+
+import hoteldb.ConnectionPool;
+import hoteldb.Database;
+
+/**
+ * Creates the project schema in the benchmark database and fills it with a
+ * deterministic dataset of the requested size.
+ *
+ * The sizes of the current dataset are kept in a bench_dataset table, so a
+ * trial with the same sizes as the previous one reuses the data instead of
+ * seeding again. The write benchmarks call {@link #resetWrites} so their rows
+ * never leak into the next trial.
+ *
+ * Every table of the schema is dropped and recreated: point the benchmarks at
+ * a database of their own.
+ */
+public final class BenchDataset {
+
+   // bookings made by the write benchmarks are dated from here on
+   public static final LocalDate WRITE_WINDOW = LocalDate.of(2200, 1, 1);
+   // seeded bookings are dated from here on, three days apart per room
+   public static final LocalDate BOOKINGS_FROM = LocalDate.of(2015, 1, 1);
+   public static final int COMPANIES = 20;
+
+   public final int hotels;
+   public final int roomsPerHotel;
+   public final int customers;
+   public final int bookingsPerRoom;
+   public final int managers;
+
+   public BenchDataset(int hotels, int roomsPerHotel, int customers, int bookingsPerRoom) {
+      this.hotels = hotels;
+      this.roomsPerHotel = roomsPerHotel;
+      this.customers = customers;
+      this.bookingsPerRoom = bookingsPerRoom;
+      this.managers = Math.max(1, hotels / 10);
+   }
+
+   /** userID of the i-th customer, 0-based */
+   public int customer(int i) {
+      return managers + 1 + i;
+   }
+
+   /** userID of the manager of a hotel */
+   public int managerOf(int hotelID) {
+      return (hotelID - 1) % managers + 1;
+   }
+
+   /** password every seeded user logs in with */
+   public static String password(int userID) {
+      return "pw" + userID;
+   }
+
+   /** price a seeded room starts with */
+   public static int price(int hotelID, int roomNumber) {
+      return 50 + (hotelID * 31 + roomNumber * 17) % 250;
+   }
+
+   /** number of days covered by seeded bookings */
+   public int bookedDays() {
+      return bookingsPerRoom * 3;
+   }
+
+   /**
+    * Makes sure the database holds this dataset, seeding it when the sizes
+    * differ from the last run.
+    *
+    * @throws java.sql.SQLException when the schema or data could not be created
+    */
+   public void ensure(ConnectionPool pool) throws SQLException, IOException {
+      Connection conn = pool.borrow();
+      try {
+         Statement stmt = conn.createStatement();
+         try {
+            stmt.execute("CREATE TABLE IF NOT EXISTS bench_dataset (hotels integer, rooms_per_hotel integer, "
+                  + "customers integer, bookings_per_room integer, max_repair integer, max_request integer, "
+                  + "max_update integer)");
+            if (matches(new Database(pool)))
+               return;
+            long start = System.nanoTime();
+            // PartitionBenchmarks copies the new bookings again
+            stmt.execute("DROP TABLE IF EXISTS RoomBookingsFlat");
+            stmt.execute(script("create_tables.sql"));
+            stmt.execute(script("create_indexes.sql"));
+            seed(stmt);
+            stmt.execute("ANALYZE");
+            System.out.printf("%n# seeded %s in %.1f s%n", this, (System.nanoTime() - start) / 1e9);
+         } finally {
+            stmt.close();
+         }
+      } finally {
+         pool.release(conn);
+      }
+   }
+
+   private boolean matches(Database db) throws SQLException {
+      return db.executeQuery("SELECT 1 FROM bench_dataset WHERE hotels = ? AND rooms_per_hotel = ? "
+            + "AND customers = ? AND bookings_per_room = ?", hotels, roomsPerHotel, customers, bookingsPerRoom) > 0;
+   }
+
+   private void seed(Statement stmt) throws SQLException {
+      int users = managers + customers;
+      stmt.execute("INSERT INTO Users (userID, name, password, userType) "
+            + "SELECT g, 'user' || g, 'pw' || g, CASE WHEN g <= " + managers + " THEN 'manager' ELSE 'customer' END "
+            + "FROM generate_series(1, " + users + ") g");
+      stmt.execute("SELECT setval(pg_get_serial_sequence('users', 'userid'), " + users + ")");
+      stmt.execute("INSERT INTO Hotel (hotelID, hotelName, latitude, longitude, dateEstablished, managerUserID) "
+            + "SELECT g, 'hotel' || g, ((g * 7919) % 18000) / 100.0 - 90, ((g * 104729) % 36000) / 100.0 - 180, "
+            + "DATE '1990-01-01' + g % 9000, (g - 1) % " + managers + " + 1 "
+            + "FROM generate_series(1, " + hotels + ") g");
+      stmt.execute("INSERT INTO Rooms (hotelID, roomNumber, price, imageURL) "
+            + "SELECT h, r, 50 + (h * 31 + r * 17) % 250, 'img/' || h || '/' || r "
+            + "FROM generate_series(1, " + hotels + ") h, generate_series(1, " + roomsPerHotel + ") r");
+      stmt.execute("INSERT INTO MaintenanceCompany (companyID, name, addrress) "
+            + "SELECT g, 'company' || g, g || ' Main St' FROM generate_series(1, " + COMPANIES + ") g");
+      stmt.execute("INSERT INTO RoomBookings (customerID, hotelID, roomNumber, bookingDate) "
+            + "SELECT " + (managers + 1) + " + (h * 7919 + r * 104729 + k * 31) % " + customers + ", h, r, "
+            + "DATE '" + BOOKINGS_FROM + "' + k * 3 + r % 3 "
+            + "FROM generate_series(1, " + hotels + ") h, generate_series(1, " + roomsPerHotel + ") r, "
+            + "generate_series(0, " + (bookingsPerRoom - 1) + ") k");
+      stmt.execute("INSERT INTO RoomRepairs (companyID, hotelID, roomNumber, repairDate) "
+            + "SELECT 1 + (h + r) % " + COMPANIES + ", h, r, DATE '2016-01-01' + (h * r) % 365 "
+            + "FROM generate_series(1, " + hotels + ") h, generate_series(1, " + roomsPerHotel + ", 10) r");
+      stmt.execute("INSERT INTO RoomRepairRequests (managerID, repairID) "
+            + "SELECT h.managerUserID, rr.repairID FROM RoomRepairs rr JOIN Hotel h ON h.hotelID = rr.hotelID "
+            + "ORDER BY rr.repairID");
+      stmt.execute("INSERT INTO RoomUpdatesLog (managerID, hotelID, roomNumber, updatedOn) "
+            + "SELECT h.managerUserID, h.hotelID, r, TIMESTAMP '2020-01-01' + (h.hotelID * r) * INTERVAL '1 hour' "
+            + "FROM Hotel h, generate_series(1, " + roomsPerHotel + ", 5) r");
+      stmt.execute("TRUNCATE bench_dataset");
+      stmt.execute("INSERT INTO bench_dataset SELECT " + hotels + ", " + roomsPerHotel + ", " + customers + ", "
+            + bookingsPerRoom + ", (SELECT max(repairID) FROM RoomRepairs), "
+            + "(SELECT max(requestNumber) FROM RoomRepairRequests), (SELECT max(updateNumber) FROM RoomUpdatesLog)");
+   }
+
+   /**
+    * Deletes every row the write benchmarks added and restores the seeded
+    * prices.
+    *
+    * @throws java.sql.SQLException when a statement failed
+    */
+   public static void resetWrites(Database db) throws SQLException {
+      db.executeUpdate("DELETE FROM RoomBookings WHERE bookingDate >= ?", java.sql.Date.valueOf(WRITE_WINDOW));
+      db.executeUpdate("DELETE FROM RoomRepairRequests WHERE requestNumber > (SELECT max_request FROM bench_dataset)");
+      db.executeUpdate("DELETE FROM RoomRepairs WHERE repairID > (SELECT max_repair FROM bench_dataset)");
+      db.executeUpdate("DELETE FROM RoomUpdatesLog WHERE updateNumber > (SELECT max_update FROM bench_dataset)");
+      db.executeUpdate("UPDATE Rooms SET price = 50 + (hotelID * 31 + roomNumber * 17) % 250 "
+            + "WHERE price <> 50 + (hotelID * 31 + roomNumber * 17) % 250");
+   }
+
+   private static String script(String name) throws IOException {
+      InputStream in = BenchDataset.class.getResourceAsStream("/sql/" + name);
+      if (in == null)
+         throw new IOException("missing /sql/" + name + " on the class path");
+      try {
+         return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+      } finally {
+         in.close();
+      }
+   }
+
+   @Override
+   public String toString() {
+      return hotels + " hotels x " + roomsPerHotel + " rooms, " + customers + " customers, "
+            + bookingsPerRoom + " bookings per room";
+   }
+}
@@ -0,0 +1,147 @@
+package hoteldb.bench;
+
+import java.time.LocalDate;
+import java.util.SplittableRandom;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import hoteldb.AvailabilityIndex;
+import hoteldb.ConnectionPool;
+import hoteldb.Database;
+import hoteldb.HotelOperations;
+import hoteldb.SpatialIndex;
+
+/**
+ * The database, dataset and operations shared by every benchmark thread.
+ *
+ * Connection settings come from system properties, which JMH passes on to
+ * its forks when given with -jvmArgs:
+ * bench.url (default jdbc:postgresql://localhost:5432/hotel_bench),
+ * bench.user (default the OS user) and bench.password (default empty).
+ * The dataset size is a set of JMH parameters, e.g. -p hotels=100,1000.
+ */
+@State(Scope.Benchmark)
+public class BenchState {
+
+   // matches Hotel.NEARBY_RADIUS
+   static final double RADIUS = 30;
+
+   @Param({"200"})
+   public int hotels;
+
+   @Param({"20"})
+   public int roomsPerHotel;
+
+   @Param({"2000"})
+   public int customers;
+
+   @Param({"30"})
+   public int bookingsPerRoom;
+
+   public BenchDataset dataset;
+   public ConnectionPool pool;
+   public Database db;
+   // every lookup goes to SQL
+   public HotelOperations sql;
+   // location and availability served from the in-memory indexes
+   public HotelOperations indexed;
+
+   @Setup(Level.Trial)
+   public void setUp() throws Exception {
+      String url = System.getProperty("bench.url", "jdbc:postgresql://localhost:5432/hotel_bench");
+      pool = new ConnectionPool(url, System.getProperty("bench.user", System.getProperty("user.name")),
+            System.getProperty("bench.password", ""), 1, Integer.getInteger("bench.pool.max", 16));
+      db = new Database(pool);
+      dataset = new BenchDataset(hotels, roomsPerHotel, customers, bookingsPerRoom);
+      dataset.ensure(pool);
+      BenchDataset.resetWrites(db);
+
+      sql = new HotelOperations(db);
+      indexed = new HotelOperations(db);
+      SpatialIndex spatial = new SpatialIndex(BenchState::distance, RADIUS);
+      spatial.load(db);
+      indexed.setHotelIndex(spatial);
+      AvailabilityIndex availability = new AvailabilityIndex();
+      availability.load(db);
+      indexed.setAvailability(availability);
+   }
+
+   @TearDown(Level.Trial)
+   public void tearDown() throws Exception {
+      try {
+         BenchDataset.resetWrites(db);
+      } finally {
+         pool.close();
+      }
+   }
+
+   // same formula as Hotel.calculateDistance and calculate_distance()
+   static double distance(double lat1, double long1, double lat2, double long2) {
+      double t1 = (lat1 - lat2) * (lat1 - lat2);
+      double t2 = (long1 - long2) * (long1 - long2);
+      return Math.sqrt(t1 + t2);
+   }
+
+   /**
+    * Per-thread source of random keys within the seeded dataset.
+    */
+   @State(Scope.Thread)
+   public static class Keys {
+      private SplittableRandom random;
+      private BenchDataset dataset;
+
+      @Setup(Level.Trial)
+      public void setUp(BenchState state) {
+         dataset = state.dataset;
+         // same keys every run, different keys per thread
+         random = new SplittableRandom(Long.getLong("bench.seed", 42L) * 31 + Thread.currentThread().getId());
+      }
+
+      public int hotel() {
+         return 1 + random.nextInt(dataset.hotels);
+      }
+
+      public int room() {
+         return 1 + random.nextInt(dataset.roomsPerHotel);
+      }
+
+      public int customer() {
+         return dataset.customer(random.nextInt(dataset.customers));
+      }
+
+      public int manager() {
+         return 1 + random.nextInt(dataset.managers);
+      }
+
+      public int company() {
+         return 1 + random.nextInt(BenchDataset.COMPANIES);
+      }
+
+      public double latitude() {
+         return random.nextDouble(-90, 90);
+      }
+
+      public double longitude() {
+         return random.nextDouble(-180, 180);
+      }
+
+      /** a day within the seeded bookings */
+      public LocalDate bookedRange() {
+         return BenchDataset.BOOKINGS_FROM.plusDays(random.nextInt(dataset.bookedDays()));
+      }
+
+      /** a day in the write window, ten years wide */
+      public LocalDate writeWindow() {
+         return BenchDataset.WRITE_WINDOW.plusDays(random.nextInt(3650));
+      }
+
+      public int nextInt(int bound) {
+         return random.nextInt(bound);
+      }
+   }
+}
@@ -0,0 +1,104 @@
+package hoteldb.bench;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import hoteldb.Database;
+
+/**
+ * Booking reads on the monthly-partitioned RoomBookings against
+ * RoomBookingsFlat, an unpartitioned copy of the same rows with the same
+ * indexes: a point lookup of one room-night (the free-rooms probe) and a
+ * month of one hotel's bookings (a booking history page).
+ *
+ * The copy is made on the first trial after the dataset was seeded. For the
+ * 100M-row comparison run e.g.
+ * {@code run.sh PartitionBenchmarks -p hotels=10000 -p roomsPerHotel=100 -p bookingsPerRoom=100}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PartitionBenchmarks {
+
+   static final String POINT =
+         "SELECT bookingID, customerID FROM %s WHERE hotelID = ? AND roomNumber = ? AND bookingDate = ?";
+
+   static final String RANGE =
+         "SELECT bookingID, customerID, roomNumber, bookingDate FROM %s "
+       + "WHERE hotelID = ? AND bookingDate BETWEEN ? AND ? ORDER BY bookingDate, bookingID LIMIT 100";
+
+   /**
+    * The unpartitioned copy, made once per seeded dataset.
+    */
+   @State(Scope.Benchmark)
+   public static class Tables {
+      final String pointPartitioned = String.format(POINT, "RoomBookings");
+      final String pointFlat = String.format(POINT, "RoomBookingsFlat");
+      final String rangePartitioned = String.format(RANGE, "RoomBookings");
+      final String rangeFlat = String.format(RANGE, "RoomBookingsFlat");
+
+      @Setup(Level.Trial)
+      public void setUp(BenchState state) throws Exception {
+         Database db = state.db;
+         if (db.queryForInt("SELECT count(*) FROM pg_class WHERE relname = 'roombookingsflat'") > 0)
+            return;
+         long start = System.nanoTime();
+         db.executeUpdate("CREATE TABLE RoomBookingsFlat AS SELECT * FROM RoomBookings WHERE bookingDate < ?",
+               java.sql.Date.valueOf(BenchDataset.WRITE_WINDOW));
+         db.executeUpdate("ALTER TABLE RoomBookingsFlat ADD PRIMARY KEY (bookingID), "
+               + "ADD UNIQUE (hotelID, roomNumber, bookingDate)");
+         db.executeUpdate("CREATE INDEX roombookingsflat_hotel_date_id_idx "
+               + "ON RoomBookingsFlat (hotelID, bookingDate, bookingID)");
+         db.executeUpdate("ANALYZE RoomBookingsFlat");
+         System.out.printf("%n# copied RoomBookings unpartitioned in %.1f s%n", (System.nanoTime() - start) / 1e9);
+      }
+   }
+
+   @Benchmark
+   public List<List<String>> pointPartitioned(BenchState state, BenchState.Keys keys, Tables tables)
+         throws Exception {
+      return point(state, keys, tables.pointPartitioned);
+   }
+
+   @Benchmark
+   public List<List<String>> pointFlat(BenchState state, BenchState.Keys keys, Tables tables) throws Exception {
+      return point(state, keys, tables.pointFlat);
+   }
+
+   @Benchmark
+   public List<List<String>> rangePartitioned(BenchState state, BenchState.Keys keys, Tables tables)
+         throws Exception {
+      return range(state, keys, tables.rangePartitioned);
+   }
+
+   @Benchmark
+   public List<List<String>> rangeFlat(BenchState state, BenchState.Keys keys, Tables tables) throws Exception {
+      return range(state, keys, tables.rangeFlat);
+   }
+
+   private static List<List<String>> point(BenchState state, BenchState.Keys keys, String sql) throws Exception {
+      return state.db.executeQueryAndReturnResult(sql, keys.hotel(), keys.room(),
+            java.sql.Date.valueOf(keys.bookedRange()));
+   }
+
+   private static List<List<String>> range(BenchState state, BenchState.Keys keys, String sql) throws Exception {
+      LocalDate from = keys.bookedRange();
+      return state.db.executeQueryAndReturnResult(sql, keys.hotel(), java.sql.Date.valueOf(from),
+            java.sql.Date.valueOf(from.plusMonths(1)));
+   }
+}
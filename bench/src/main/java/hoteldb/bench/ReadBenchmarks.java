@@ -0,0 +1,82 @@
+package hoteldb.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import hoteldb.SpatialIndex;
+
+/**
+ * The read-only operations of the Hotel menu. Lookups that can be served
+ * from an in-memory index are measured both ways: {@code Sql} runs the
+ * fallback query, {@code Index} the index.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReadBenchmarks {
+
+   @Benchmark
+   public String logIn(BenchState state, BenchState.Keys keys) throws Exception {
+      int user = keys.customer();
+      return state.sql.logIn(user, BenchDataset.password(user));
+   }
+
+   @Benchmark
+   public List<List<String>> hotelsWithinSql(BenchState state, BenchState.Keys keys) throws Exception {
+      return state.sql.hotelsWithin(keys.latitude(), keys.longitude(), BenchState.RADIUS);
+   }
+
+   @Benchmark
+   public List<List<String>> hotelsWithinIndex(BenchState state, BenchState.Keys keys) throws Exception {
+      return state.indexed.hotelsWithin(keys.latitude(), keys.longitude(), BenchState.RADIUS);
+   }
+
+   @Benchmark
+   public List<SpatialIndex.Hit> nearestHotelsIndex(BenchState state, BenchState.Keys keys) {
+      return state.indexed.nearestHotels(keys.latitude(), keys.longitude(), 10);
+   }
+
+   @Benchmark
+   public List<List<String>> freeRoomsSql(BenchState state, BenchState.Keys keys) throws Exception {
+      return state.sql.freeRooms(keys.hotel(), keys.bookedRange());
+   }
+
+   @Benchmark
+   public List<List<String>> freeRoomsIndex(BenchState state, BenchState.Keys keys) throws Exception {
+      return state.indexed.freeRooms(keys.hotel(), keys.bookedRange());
+   }
+
+   @Benchmark
+   public List<List<String>> managedHotels(BenchState state, BenchState.Keys keys) throws Exception {
+      return state.sql.managedHotels(keys.manager());
+   }
+
+   @Benchmark
+   public int customerBookings(BenchState state, BenchState.Keys keys, final Blackhole bh) throws Exception {
+      return state.sql.customerBookings(keys.customer(), rs -> {
+         bh.consume(rs.getInt(1));
+         bh.consume(rs.getDate(3));
+         return true;
+      });
+   }
+
+   @Benchmark
+   public int repairHistory(BenchState state, BenchState.Keys keys, final Blackhole bh) throws Exception {
+      return state.sql.repairHistory(keys.manager(), rs -> {
+         bh.consume(rs.getInt(1));
+         bh.consume(rs.getDate(4));
+         return true;
+      });
+   }
+}
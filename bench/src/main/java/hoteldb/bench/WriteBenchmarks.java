@@ -0,0 +1,56 @@
+package hoteldb.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import hoteldb.BookingRequest;
+import hoteldb.BookingResult;
+import hoteldb.BookingService;
+
+/**
+ * The operations of the Hotel menu that write. Bookings go to a far-future
+ * window and every added row is deleted when the trial ends, so the seeded
+ * dataset stays the same from one run to the next.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WriteBenchmarks {
+
+   @Benchmark
+   public BookingResult bookRoomNight(BenchState state, BenchState.Keys keys) throws Exception {
+      return state.indexed.getBookings().book(keys.customer(),
+            new BookingRequest(keys.hotel(), keys.room(), keys.writeWindow()));
+   }
+
+   @Benchmark
+   public List<BookingResult> bookStay(BenchState state, BenchState.Keys keys) throws Exception {
+      return state.indexed.book(keys.customer(),
+            BookingService.stay(keys.hotel(), keys.room(), keys.writeWindow(), 7));
+   }
+
+   @Benchmark
+   public void updateRoomPrice(BenchState state, BenchState.Keys keys) throws Exception {
+      int hotel = keys.hotel();
+      int room = keys.room();
+      // writes the seeded price back, so prices do not drift between runs
+      state.sql.updateRoomPrice(state.dataset.managerOf(hotel), hotel, room, BenchDataset.price(hotel, room));
+   }
+
+   @Benchmark
+   public int placeRepairRequest(BenchState state, BenchState.Keys keys) throws Exception {
+      int hotel = keys.hotel();
+      return state.sql.placeRepairRequest(state.dataset.managerOf(hotel), keys.company(), hotel, keys.room(),
+            keys.writeWindow());
+   }
+}
@@ -0,0 +1,9 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+PGJDBC=$DIR/../lib/postgresql-42.7.3.jar
+
+# creates the booking partitions of the months ahead and, with --archive-before,
+# moves every older month to a gzipped CSV file and drops its partition, e.g.
+#   archive_bookings.sh --archive-before 2016-01-01 --dir /big/disk/archive
+# see hoteldb.BookingPartitions for every option
+java -cp $DIR/../classes:$PGJDBC hoteldb.BookingPartitions $USER"_DB" $PGPORT $USER "$@"
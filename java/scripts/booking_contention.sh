@@ -0,0 +1,7 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+PGJDBC=$DIR/../lib/postgresql-42.7.3.jar
+
+# many threads booking the same few rooms, with and without lock stripes
+# extra options: --threads N --rooms K --nights D --seconds S --mode locks|nolocks|both
+java -cp $DIR/../classes:$PGJDBC hoteldb.BookingContention $USER"_DB" $PGPORT $USER "$@"
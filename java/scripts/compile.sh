@@ -1,13 +1,22 @@
 #!/bin/bash
 DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
 
-export JAVA_HOME=/usr/csshare/pkgs/jdk1.7.0_17
-export PATH=$JAVA_HOME/bin:$PATH
+# needs JDK 17 or later, like the Maven build: $JAVA_HOME when set,
+# otherwise the javac on the PATH
+if [ -n "$JAVA_HOME" ]; then
+  export PATH=$JAVA_HOME/bin:$PATH
+fi
+
+# current PostgreSQL JDBC driver (client-side COPY needs it), fetched once
+PGJDBC=$DIR/../lib/postgresql-42.7.3.jar
+if [ ! -f $PGJDBC ]; then
+  curl -sSfL -o $PGJDBC https://repo1.maven.org/maven2/org/postgresql/postgresql/42.7.3/postgresql-42.7.3.jar
+fi
 
 # compile the java program
-javac -d $DIR/../classes $DIR/../src/Hotel.java
+javac --release 17 -encoding UTF-8 -d $DIR/../classes -cp $PGJDBC $(find $DIR/../src -name "*.java")
 
 #run the java program
 #Use your database name, port number and login
-java -cp $DIR/../classes:$DIR/../lib/pg73jdbc3.jar Hotel $USER"_DB" $PGPORT $USER
+java -cp $DIR/../classes:$PGJDBC Hotel $USER"_DB" $PGPORT $USER
 
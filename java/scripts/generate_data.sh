@@ -0,0 +1,9 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+PGJDBC=$DIR/../lib/postgresql-42.7.3.jar
+
+# synthetic data in the create_tables.sql layout, e.g.
+#   generate_data.sh --hotels 10000 --rooms 1000000 --bookings 100000000 --out /big/disk/data
+#   generate_data.sh --bookings 10000000 --copy $USER"_DB" $PGPORT $USER --defer-indexes
+# see hoteldb.DataGenerator for every option
+java -cp $DIR/../classes:$PGJDBC hoteldb.DataGenerator "$@"
@@ -0,0 +1,7 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+PGJDBC=$DIR/../lib/postgresql-42.7.3.jar
+
+# streams ../../data/*.csv into the database with client-side COPY
+# extra options: --threads N --defer-indexes --truncate
+java -cp $DIR/../classes:$PGJDBC hoteldb.BulkLoader $USER"_DB" $PGPORT $USER $DIR/../../data "$@"
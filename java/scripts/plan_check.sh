@@ -0,0 +1,18 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+PGJDBC=$DIR/../lib/postgresql-42.7.3.jar
+DB=${PLAN_DB:-$USER"_plan"}
+
+# EXPLAIN of every hot query on a generated dataset; exits 1 when a plan
+# falls back to a seq scan or goes over its cost budget. The schema is
+# dropped and recreated, so give it a database of its own:
+#   createdb -h localhost -p $PGPORT $USER"_plan"
+# set PLAN_SKIP_LOAD=1 to check the dataset already there; extra options go
+# to hoteldb.PlanCheck, e.g. --max-cost 5000 --verbose
+if [ -z "$PLAN_SKIP_LOAD" ]; then
+  psql -q -h localhost -p $PGPORT $DB < $DIR/../../sql/src/create_tables.sql || exit 1
+  psql -q -h localhost -p $PGPORT $DB < $DIR/../../sql/src/create_indexes.sql || exit 1
+  java -cp $DIR/../classes:$PGJDBC hoteldb.DataGenerator ${PLAN_DATA:---bookings 5000000} \
+       --copy $DB $PGPORT $USER --defer-indexes || exit 1
+fi
+java -cp $DIR/../classes:$PGJDBC hoteldb.PlanCheck $DB $PGPORT $USER "$@"
@@ -0,0 +1,9 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+PGJDBC=$DIR/../lib/postgresql-42.7.3.jar
+
+# the menu operations as an HTTP/JSON API
+# extra options: --http-port N --max-concurrent N --queue-ms MS --backlog N --pool N
+#                --session-ttl S --max-sessions N --no-indexes
+#                --metrics-every S --metrics-file FILE
+java -cp $DIR/../classes:$PGJDBC hoteldb.HotelServer $USER"_DB" $PGPORT $USER "$@"
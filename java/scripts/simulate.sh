@@ -0,0 +1,9 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+PGJDBC=$DIR/../lib/postgresql-42.7.3.jar
+
+# simulated customers and managers against the database, e.g.
+#   simulate.sh --users 5000 --think-ms 200 --duration 120
+#   simulate.sh --rate 2000 --mix search=40,rooms=30,book=30 --json results.json
+# see hoteldb.WorkloadSimulator for every option
+java -cp $DIR/../classes:$PGJDBC hoteldb.WorkloadSimulator $USER"_DB" $PGPORT $USER "$@"
@@ -11,16 +11,12 @@
  */
 
 
-import java.sql.DriverManager;
-import java.sql.Connection;
-import java.sql.Statement;
-import java.sql.ResultSet;
-import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.io.File;
 import java.io.FileReader;
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
+import java.io.IOException;
 import java.util.List;
 import java.util.ArrayList;
 import java.lang.Math;
@@ -29,6 +25,28 @@ import java.sql.Timestamp;
 import java.util.Date;
 import java.text.SimpleDateFormat;
 import java.time.LocalDate;
+import java.util.concurrent.ScheduledExecutorService;
+
+import hoteldb.AuditLog;
+import hoteldb.ConnectionPool;
+import hoteldb.AvailabilityIndex;
+import hoteldb.BookingRequest;
+import hoteldb.BookingHistory;
+import hoteldb.BookingResult;
+import hoteldb.BookingRow;
+import hoteldb.BookingService;
+import hoteldb.Database;
+import hoteldb.HotelOperations;
+import hoteldb.QueryMetrics;
+import hoteldb.RecentUpdates;
+import hoteldb.ReferenceCache;
+import hoteldb.RegularCustomers;
+import hoteldb.ReplicaRouter;
+import hoteldb.ResultRenderer;
+import hoteldb.ResultTable;
+import hoteldb.RowHandler;
+import hoteldb.Session;
+import hoteldb.SpatialIndex;
 
 
 
@@ -43,9 +61,55 @@ public class Hotel {
    //global variables
    static String managerID = "";
    static String customerID = "";
+   // the logged-in user, with the hotels they manage
+   static Session session = null;
 
-   // reference to physical database connection.
-   private Connection _connection = null;
+   // pool of physical database connections shared by all query helpers.
+   private ConnectionPool _pool = null;
+
+   // JDBC helpers that borrow from and return to _pool.
+   private Database _db = null;
+
+   // the data-access operations behind the menu, and the in-memory indexes
+   // they are served from
+   private HotelOperations _ops = null;
+
+   // radius used by "View Hotels within 30 units"
+   static final double NEARBY_RADIUS = 30;
+
+   // rows fetched per round trip by streamed history views
+   static final int FETCH_SIZE = Integer.getInteger("hotel.fetchSize", Database.DEFAULT_FETCH_SIZE);
+
+   // rows shown before history views ask whether to continue
+   static final int PAGE_SIZE = 20;
+
+   // rows per round trip when a history view goes to a file
+   static final int EXPORT_PAGE_SIZE = 1000;
+
+   // read the next page of a hotel's booking history while one is shown
+   static final boolean PREFETCH_PAGES = !"false".equals(System.getProperty("hotel.history.prefetch"));
+
+   // query metrics are dumped this often (0 = never) to METRICS_FILE as JSON,
+   // or to stderr as text when no file is given
+   static final long METRICS_DUMP_SECONDS = Long.getLong("hotel.metrics.dumpSeconds", 0L);
+   static final String METRICS_FILE = System.getProperty("hotel.metrics.file");
+
+   // periodic query metrics dump, null when disabled
+   private ScheduledExecutorService _metricsDump = null;
+
+   // how room update log rows are written: sync, group-commit, async (the
+   // default, batched off the caller's path) or none (in the update statement)
+   static final String AUDIT_DURABILITY = System.getProperty("hotel.audit.durability", "async");
+
+   // batched RoomUpdatesLog writer, null when the updates log their own rows
+   private AuditLog _audit = null;
+
+   // streaming standbys that serve the browse queries, as host:port,host:port
+   static final String REPLICAS = System.getProperty("hotel.replicas");
+
+   // routes reads to REPLICAS, null when everything goes to the primary
+   private ReplicaRouter _router = null;
+   private List<ConnectionPool> _replicaPools = new ArrayList<ConnectionPool>();
 
    // handling the keyboard inputs through a BufferedReader
    // This variable can be global for convenience.
@@ -55,6 +119,16 @@ public class Hotel {
    /**
     * Creates a new instance of Hotel 
     *
+    * The pool bounds can be tuned with -Dhotel.pool.min, -Dhotel.pool.max,
+    * -Dhotel.pool.acquireTimeoutMs, -Dhotel.pool.idleTimeoutMs and
+    * -Dhotel.pool.leakThresholdMs. The reference data cache is bounded with
+    * -Dhotel.cache.maxRooms and -Dhotel.cache.ttlSeconds. Query metrics are dumped periodically
+    * with -Dhotel.metrics.dumpSeconds, as JSON to -Dhotel.metrics.file if set.
+    * Read-only queries go to the standbys listed in -Dhotel.replicas, unless
+    * they lag more than -Dhotel.replicas.maxLagMs.
+    * Free rooms re-read other processes' bookings of a hotel's month every
+    * -Dhotel.availability.ttlMs.
+    *
     * @param hostname the MySQL or PostgreSQL server hostname
     * @param database the name of the database
     * @param username the user name used to login to the database
@@ -69,14 +143,90 @@ public class Hotel {
          String url = "jdbc:postgresql://localhost:" + dbport + "/" + dbname;
          System.out.println ("Connection URL: " + url + "\n");
 
-         // obtain a physical connection
-         this._connection = DriverManager.getConnection(url, user, passwd);
+         // open the pool of physical connections
+         this._pool = new ConnectionPool(url, user, passwd,
+               Integer.getInteger("hotel.pool.min", 1),
+               Integer.getInteger("hotel.pool.max", 10));
+         this._pool.setAcquireTimeoutMillis(Long.getLong("hotel.pool.acquireTimeoutMs", 30000L));
+         this._pool.setIdleTimeoutMillis(Long.getLong("hotel.pool.idleTimeoutMs", 600000L));
+         this._pool.setLeakThresholdMillis(Long.getLong("hotel.pool.leakThresholdMs", 60000L));
+         this._db = new Database(this._pool);
+         this._ops = new HotelOperations(this._db);
+         this._ops.setFetchSize(FETCH_SIZE);
+         this._ops.setReferenceCache(new ReferenceCache(this._db,
+               Integer.getInteger("hotel.cache.maxRooms", ReferenceCache.DEFAULT_MAX_ROOMS),
+               Long.getLong("hotel.cache.ttlSeconds", ReferenceCache.DEFAULT_TTL_MILLIS / 1000) * 1000));
          System.out.println("Done");
       }catch (Exception e){
          System.err.println("Error - Unable to Connect to Database: " + e.getMessage() );
          System.out.println("Make sure you started postgres on this machine");
          System.exit(-1);
       }//end catch
+
+      try{
+         SpatialIndex index = new SpatialIndex(this::calculateDistance,
+               Double.parseDouble(System.getProperty("hotel.spatial.cellSize", String.valueOf(NEARBY_RADIUS))));
+         index.load(this._db);
+         this._ops.setHotelIndex(index);
+      }catch (Exception e){
+         System.err.println("Hotel location index unavailable, using SQL: " + e.getMessage());
+      }//end catch
+
+      try{
+         // other consoles' bookings are read again after this long
+         AvailabilityIndex availability = new AvailabilityIndex();
+         availability.setTtlMillis(Long.getLong("hotel.availability.ttlMs", AvailabilityIndex.DEFAULT_TTL_MILLIS));
+         availability.load(this._db);
+         this._ops.setAvailability(availability);
+      }catch (Exception e){
+         System.err.println("Room availability index unavailable, using SQL: " + e.getMessage());
+      }//end catch
+
+      try{
+         RegularCustomers regulars = new RegularCustomers();
+         regulars.load(this._db);
+         this._ops.setRegularCustomers(regulars);
+      }catch (Exception e){
+         System.err.println("Regular customer counts unavailable, using SQL: " + e.getMessage());
+      }//end catch
+
+      try{
+         RecentUpdates updates = new RecentUpdates();
+         updates.load(this._db);
+         this._ops.setRecentUpdates(updates);
+      }catch (Exception e){
+         System.err.println("Recent updates feed unavailable, using SQL: " + e.getMessage());
+      }//end catch
+
+      if (!AUDIT_DURABILITY.equalsIgnoreCase("none")){
+         this._audit = new AuditLog(this._db, AuditLog.Durability.parse(AUDIT_DURABILITY),
+               Integer.getInteger("hotel.audit.capacity", AuditLog.DEFAULT_CAPACITY),
+               Integer.getInteger("hotel.audit.batchSize", AuditLog.DEFAULT_BATCH_SIZE),
+               Long.getLong("hotel.audit.flushMs", AuditLog.DEFAULT_FLUSH_MILLIS));
+         this._ops.setAuditLog(this._audit);
+      }//end if
+
+      if (REPLICAS != null && !REPLICAS.trim().isEmpty()){
+         try{
+            List<Database> replicas = new ArrayList<Database>();
+            for (String host : REPLICAS.split(",")){
+               ConnectionPool replicaPool = new ConnectionPool("jdbc:postgresql://" + host.trim() + "/" + dbname,
+                     user, passwd, 0, Integer.getInteger("hotel.pool.max", 10));
+               this._replicaPools.add(replicaPool);
+               replicas.add(new Database(replicaPool));
+            }
+            this._router = new ReplicaRouter(this._db, replicas,
+                  Long.getLong("hotel.replicas.maxLagMs", ReplicaRouter.DEFAULT_MAX_LAG_MILLIS),
+                  ReplicaRouter.DEFAULT_POLL_MILLIS);
+            this._ops.setReplicaRouter(this._router);
+         }catch (Exception e){
+            System.err.println("Replicas unavailable, reading from the primary: " + e.getMessage());
+         }//end catch
+      }//end if
+
+      if (METRICS_DUMP_SECONDS > 0)
+         this._metricsDump = this._db.getMetrics().dumpEvery(METRICS_DUMP_SECONDS,
+               METRICS_FILE == null ? null : new File(METRICS_FILE), System.err);
    }//end Hotel
 
    // Method to calculate euclidean distance between two latitude, longitude pairs. 
@@ -93,14 +243,7 @@ public class Hotel {
     * @throws java.sql.SQLException when update failed
     */
    public void executeUpdate (String sql) throws SQLException {
-      // creates a statement object
-      Statement stmt = this._connection.createStatement ();
-
-      // issues the update instruction
-      stmt.executeUpdate (sql);
-
-      // close the instruction
-      stmt.close ();
+      this._db.executeUpdate (sql);
    }//end executeUpdate
 
    /**
@@ -113,37 +256,7 @@ public class Hotel {
     * @throws java.sql.SQLException when failed to execute the query
     */
    public int executeQueryAndPrintResult (String query) throws SQLException {
-      // creates a statement object
-      Statement stmt = this._connection.createStatement ();
-
-      // issues the query instruction
-      ResultSet rs = stmt.executeQuery (query);
-
-      /*
-       ** obtains the metadata object for the returned result set.  The metadata
-       ** contains row and column info.
-       */
-      ResultSetMetaData rsmd = rs.getMetaData ();
-      int numCol = rsmd.getColumnCount ();
-      int rowCount = 0;
-
-      // iterates through the result set and output them to standard out.
-      boolean outputHeader = true;
-      while (rs.next()){
-		 if(outputHeader){
-			for(int i = 1; i <= numCol; i++){
-			System.out.print(rsmd.getColumnName(i) + "\t");
-			}
-			System.out.println();
-			outputHeader = false;
-		 }
-         for (int i=1; i<=numCol; ++i)
-            System.out.print (rs.getString (i) + "\t");
-         System.out.println ();
-         ++rowCount;
-      }//end while
-      stmt.close ();
-      return rowCount;
+      return this._db.executeQueryAndPrintResult (query);
    }//end executeQuery
 
    /**
@@ -156,31 +269,7 @@ public class Hotel {
     * @throws java.sql.SQLException when failed to execute the query
     */
    public List<List<String>> executeQueryAndReturnResult (String query) throws SQLException {
-      // creates a statement object
-      Statement stmt = this._connection.createStatement ();
-
-      // issues the query instruction
-      ResultSet rs = stmt.executeQuery (query);
-
-      /*
-       ** obtains the metadata object for the returned result set.  The metadata
-       ** contains row and column info.
-       */
-      ResultSetMetaData rsmd = rs.getMetaData ();
-      int numCol = rsmd.getColumnCount ();
-      int rowCount = 0;
-
-      // iterates through the result set and saves the data returned by the query.
-      boolean outputHeader = false;
-      List<List<String>> result  = new ArrayList<List<String>>();
-      while (rs.next()){
-        List<String> record = new ArrayList<String>();
-		for (int i=1; i<=numCol; ++i)
-			record.add(rs.getString (i));
-        result.add(record);
-      }//end while
-      stmt.close ();
-      return result;
+      return this._db.executeQueryAndReturnResult (query);
    }//end executeQueryAndReturnResult
 
    /**
@@ -192,20 +281,7 @@ public class Hotel {
     * @throws java.sql.SQLException when failed to execute the query
     */
    public int executeQuery (String query) throws SQLException {
-       // creates a statement object
-       Statement stmt = this._connection.createStatement ();
-
-       // issues the query instruction
-       ResultSet rs = stmt.executeQuery (query);
-
-       int rowCount = 0;
-
-       // iterates through the result set and count nuber of results.
-       while (rs.next()){
-          rowCount++;
-       }//end while
-       stmt.close ();
-       return rowCount;
+      return this._db.executeQuery (query);
    }
 
    /**
@@ -218,32 +294,171 @@ public class Hotel {
     * @throws java.sql.SQLException when failed to execute the query
     */
    public int getCurrSeqVal(String sequence) throws SQLException {
-      Statement stmt = this._connection.createStatement ();
-
-      ResultSet rs = stmt.executeQuery (String.format("Select currval('%s')", sequence));
-      if (rs.next())
-         return rs.getInt(1);
-      return -1;
+      return this._db.getCurrSeqVal (sequence);
    }
 
    public int getNewUserID(String sql) throws SQLException {
-      Statement stmt = this._connection.createStatement ();
-      ResultSet rs = stmt.executeQuery (sql);
-      if (rs.next())
-         return rs.getInt(1);
-      return -1;
+      return this._db.getNewUserID (sql);
+   }
+
+   /**
+    * Method to execute an input query SQL instruction (i.e. SELECT) and hand
+    * each row to a handler as it arrives, reading through a server-side
+    * cursor FETCH_SIZE rows at a time. The handler returns false to stop.
+    *
+    * @param query the SQL template
+    * @param handler receives each row
+    * @param params values bound to the placeholders
+    * @return the number of rows handled
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public int executeQueryStreaming (String query, RowHandler handler, Object... params) throws SQLException {
+      return this._db.executeQueryStreaming (query, FETCH_SIZE, handler, params);
    }
+
    /**
-    * Method to close the physical connection if it is open.
+    * Books a batch of room-nights for a customer in a constant number of
+    * round trips. Taken or unknown room-nights are reported, not booked.
+    *
+    * @return one result (status, bookingID, price) per request
+    * @throws java.sql.SQLException when the batch could not be stored
+    */
+   public List<BookingResult> book (int customerID, List<BookingRequest> requests) throws SQLException {
+      return this._ops.book (customerID, requests);
+   }
+
+   /**
+    * @return the data-access operations behind the menu
+    */
+   public HotelOperations getOperations () {
+      return this._ops;
+   }
+
+   /**
+    * Method to find the hotels within radius of a location, nearest first.
+    * Served from the in-memory location index when it is loaded, otherwise by
+    * a query whose bounding box lets Postgres use the (latitude, longitude)
+    * index before calling calculate_distance.
+    *
+    * @return hotelID, hotelName records ordered by distance
+    * @throws java.sql.SQLException when the fallback query failed
+    */
+   public List<List<String>> findHotelsWithin (double lat, double longi, double radius) throws SQLException {
+      return this._ops.hotelsWithin (lat, longi, radius);
+   }
+
+   /**
+    * @return the k hotels nearest to a location, or null when the location
+    *         index is not loaded
+    */
+   public List<SpatialIndex.Hit> findNearestHotels (double lat, double longi, int k) {
+      return this._ops.nearestHotels (lat, longi, k);
+   }
+
+   /**
+    * Rooms of a hotel that are not booked on a date.
+    *
+    * Served from the in-memory availability index when it is loaded,
+    * otherwise by an anti-join against RoomBookings.
+    *
+    * @return roomNumber, price records ordered by room number
+    * @throws java.sql.SQLException when the query failed
+    */
+   public List<List<String>> findFreeRooms (int hotelID, LocalDate date) throws SQLException {
+      return this._ops.freeRooms (hotelID, date);
+   }
+
+   /**
+    * Keeps the location index in sync after a Hotel row was inserted,
+    * updated or deleted.
+    */
+   public void hotelChanged (int hotelID) throws SQLException {
+      this._ops.hotelChanged (hotelID);
+   }
+
+   /**
+    * Parameterized variants of the helpers above. The SQL is a template with
+    * '?' placeholders and the values are bound in order, so each template is
+    * parsed once per connection and its prepared statement is reused from the
+    * statement cache.
+    *
+    * @param sql the SQL template
+    * @param params values bound to the placeholders
+    * @throws java.sql.SQLException when the statement failed
+    */
+   public void executeUpdate (String sql, Object... params) throws SQLException {
+      this._db.executeUpdate (sql, params);
+   }
+
+   public int executeQueryAndPrintResult (String query, Object... params) throws SQLException {
+      return this._db.executeQueryAndPrintResult (query, params);
+   }
+
+   public List<List<String>> executeQueryAndReturnResult (String query, Object... params) throws SQLException {
+      return this._db.executeQueryAndReturnResult (query, params);
+   }
+
+   public int executeQuery (String query, Object... params) throws SQLException {
+      return this._db.executeQuery (query, params);
+   }
+
+   /**
+    * Method to execute an input query SQL instruction (i.e. SELECT) and
+    * return a typed result: int/long/double columns stay primitive and
+    * dates are stored as epoch days.
+    *
+    * @param query the SQL template
+    * @param params values bound to the placeholders
+    * @return the query result
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public ResultTable executeQueryAndReturnTable (String query, Object... params) throws SQLException {
+      return this._db.executeQueryAndReturnTable (query, params);
+   }
+
+   /**
+    * @return current pool counters (active, idle, wait time, timeouts, ...)
+    */
+   public ConnectionPool.PoolStats getPoolStats() {
+      return this._pool.stats ();
+   }
+
+   /**
+    * @return latency, rows and bytes of every statement run so far
+    */
+   public QueryMetrics getMetrics() {
+      return this._db.getMetrics ();
+   }
+
+   /**
+    * Method to close the pooled physical connections.
     */
    public void cleanup(){
-      try{
-         if (this._connection != null){
-            this._connection.close ();
-         }//end if
-      }catch (SQLException e){
-         // ignored.
-      }//end try
+      if (this._metricsDump != null){
+         this._metricsDump.shutdownNow ();
+      }//end if
+      if (this._audit != null){
+         // writes the queued log rows while the pool is still open
+         this._audit.close ();
+         if (this._audit.dropped () > 0)
+            System.err.println("Audit log " + this._audit);
+      }//end if
+      if (this._db != null && METRICS_FILE != null){
+         try{
+            this._db.getMetrics ().dumpJson (new File(METRICS_FILE));
+         }catch (Exception e){
+            System.err.println("Could not write " + METRICS_FILE + ": " + e.getMessage());
+         }//end catch
+      }//end if
+      if (this._router != null){
+         this._router.close ();
+      }//end if
+      for (ConnectionPool replicaPool : this._replicaPools){
+         replicaPool.close ();
+      }//end for
+      if (this._pool != null){
+         this._pool.close ();
+      }//end if
    }//end cleanup
 
    /**
@@ -368,6 +583,135 @@ public class Hotel {
       return input;
    }//end readChoice
 
+   /*
+    * Parses an ID typed by the user
+    * @return the ID, or -1 when the input is not a number
+    **/
+   public static int parseID(String input) {
+      try {
+         return Integer.parseInt(input.trim());
+      } catch (Exception e) {
+         return -1;
+      }
+   }//end parseID
+
+   /*
+    * Parses a date typed by the user
+    * @return the date, or null when the input is not a yyyy-mm-dd date
+    **/
+   public static LocalDate parseDate(String input) {
+      try {
+         return LocalDate.parse(input.trim());
+      } catch (Exception e) {
+         return null;
+      }
+   }//end parseDate
+
+   /*
+    * Asks for a date until one is typed, or the user enters nothing
+    * @return the date, or fallback for an empty answer
+    **/
+   public static LocalDate readDateOr(String prompt, LocalDate fallback) throws IOException {
+      System.out.print(prompt);
+      String input = in.readLine();
+      while (input != null && !input.trim().isEmpty() && parseDate(input) == null){
+         System.out.print("Date was formatted invalidly. Enter date in correct format: ");
+         input = in.readLine();
+      }
+      return input == null || input.trim().isEmpty() ? fallback : parseDate(input);
+   }//end readDateOr
+
+   /*
+    * Prints the hotel list the way executeQueryAndPrintResult printed it
+    **/
+   public static void printHotels(ReferenceCache.Hotels hotels) throws IOException {
+      ResultRenderer out = ResultRenderer.toStdout(ResultRenderer.Format.TABLE);
+      out.header("hotelname", "hotelid");
+      for (int i = 0; i < hotels.size(); i++)
+         out.row(hotels.name(i), hotels.id(i));
+      out.close();
+   }//end printHotels
+
+   /*
+    * Prints the hotels the logged-in manager manages, from the session
+    * @return their hotelIDs
+    **/
+   public static int[] printManagedHotels(Hotel esql) throws SQLException {
+      ReferenceCache.Hotels hotels = esql.getOperations().hotels();
+      int[] managed = esql.getOperations().managedHotelIDs(session);
+      for (int hotelID : managed) {
+         int i = hotels.indexOf(hotelID);
+         System.out.print(" hotel name: ");
+         System.out.print(i < 0 ? "" : hotels.name(i));
+         System.out.print("\n hotel ID: ");
+         System.out.print(hotelID);
+         System.out.println();
+      }
+      return managed;
+   }//end printManagedHotels
+
+   /*
+    * Called after every printed row of a paged view. Every PAGE_SIZE rows
+    * asks whether to keep going.
+    * @return false when the user wants to stop
+    **/
+   public static boolean nextPage(int rowCount) {
+      if (rowCount % PAGE_SIZE != 0)
+         return true;
+      System.out.print("-- Enter for more, q to stop -- ");
+      try {
+         String answer = in.readLine();
+         return answer == null || !answer.trim().equalsIgnoreCase("q");
+      } catch (Exception e) {
+         return false;
+      }
+   }//end nextPage
+
+   /*
+    * nextPage for a view rendered to out: the page is on the screen before
+    * the question, and a view saved to a file is never paged
+    * @return false when the user wants to stop
+    **/
+   public static boolean nextPage(ResultRenderer out, int rowCount) {
+      if (!out.isStdout() || rowCount % PAGE_SIZE != 0)
+         return true;
+      try {
+         out.flush();
+      } catch (IOException e) {
+         return false;
+      }
+      return nextPage(rowCount);
+   }//end nextPage
+
+   /*
+    * Asks where a history or report view goes: the screen as a table, or a
+    * file whose name ends in .csv or .jsonl
+    * @return the renderer; closeOutput closes it
+    **/
+   public static ResultRenderer openOutput() throws IOException {
+      System.out.print("\tSave to file (name.csv or name.jsonl, empty for screen): ");
+      String answer = in.readLine();
+      while (answer != null && !answer.trim().isEmpty()){
+         try {
+            File file = new File(answer.trim());
+            return ResultRenderer.toFile(ResultRenderer.Format.ofFile(file.getName()), file);
+         } catch (IllegalArgumentException | IOException e) {
+            System.out.print(e.getMessage() + ". Enter file name (empty for screen): ");
+            answer = in.readLine();
+         }
+      }
+      return ResultRenderer.toStdout(ResultRenderer.Format.TABLE);
+   }//end openOutput
+
+   /*
+    * Finishes a view opened with openOutput
+    **/
+   public static void closeOutput(ResultRenderer out) throws IOException {
+      out.close();
+      if (!out.isStdout())
+         System.out.println(out.rows() + " rows saved");
+   }//end closeOutput
+
    /*
     * Creates a new user
     **/
@@ -377,10 +721,9 @@ public class Hotel {
          String name = in.readLine();
          System.out.print("\tEnter password: ");
          String password = in.readLine(); 
-         String type="Customer";
-			String query = String.format("INSERT INTO USERS (name, password, userType) VALUES ('%s','%s', '%s')", name, password, type);
-         esql.executeUpdate(query);
-         System.out.println ("User successfully created with userID = " + esql.getNewUserID("SELECT last_value FROM users_userID_seq"));
+         // the ID comes back from the insert itself
+         int userID = esql.getOperations().createUser(name, password);
+         System.out.println ("User successfully created with userID = " + userID);
          
       }catch(Exception e){
          System.err.println (e.getMessage ());
@@ -398,12 +741,13 @@ public class Hotel {
          String userID = in.readLine();
          System.out.print("\tEnter password: ");
          String password = in.readLine();
+         Session s = esql.getOperations().openSession(Integer.parseInt(userID), password);
+         if (s == null)
+            return null;
+         session = s;
          managerID = userID;
-         String query = String.format("SELECT * FROM USERS WHERE userID = '%s' AND password = '%s'", userID, password);
-         int userNum = esql.executeQuery(query);
-         if (userNum > 0)
-            return userID;
-         return null;
+         customerID = userID;
+         return userID;
       }catch(Exception e){
          System.err.println (e.getMessage ());
          return null;
@@ -424,13 +768,14 @@ public static void viewHotels(Hotel esql) {
 
          
 
-       String query = "SELECT hotelID, hotelName FROM Hotel WHERE calculate_distance(latitude, longitude, ";
-       query += lat2;
-       query += ", ";
-       query += long2;
-       query += ") <= 30";
-       List<List<String>> viewHotels = esql.executeQueryAndReturnResult(query);
-       System.out.println ("Hotels within 30 units of distance: " + viewHotels);
+       List<List<String>> viewHotels = esql.findHotelsWithin(lat2, long2, NEARBY_RADIUS);
+       try (ResultRenderer out = openOutput()) {
+          System.out.println ("Hotels within 30 units of distance: ");
+          out.header("hotelid", "hotelname");
+          for (List<String> hotel : viewHotels)
+             out.row(hotel);
+          closeOutput(out);
+       }
    } catch(Exception e) {
        System.err.println (e.getMessage ());
    }
@@ -441,60 +786,37 @@ public static void viewHotels(Hotel esql) {
 
       try{
          System.out.println("These are the list of available hotels");
-         String validHotels = "SELECT hotelName, hotelID FROM Hotel";
          System.out.println();
-         esql.executeQueryAndPrintResult(validHotels);   
-         List<List<String>> getHotels = esql.executeQueryAndReturnResult(validHotels);   
+         ReferenceCache.Hotels getHotels = esql.getOperations().hotels();
+         printHotels(getHotels);
 
          System.out.print("\tEnter HotelID: ");
-         String hotelID = in.readLine();
-         boolean hotelChecker = true;
+         int hotelID = parseID(in.readLine());
          
-         while (hotelChecker){
-               for (int i = 0; i < 20; i++ ){
-                  if(hotelID.equals(getHotels.get(i).get(1))){
-                     hotelChecker = false;
-                  }
-               } if(hotelChecker) {
+         while (!getHotels.contains(hotelID)){
                   System.out.println();
                   System.out.print("DNE! Enter a Valid HotelID: ");
-                  hotelID = in.readLine();
-               }
-
+                  hotelID = parseID(in.readLine());
          }
          
-         boolean validDate = true;
          System.out.print("to view rooms, enter your desired date in format (yyyy-mm-dd): ");
-         String date = in.readLine();
-
-         while (validDate){
-            
-            String formatDate = "\\d{4}-\\d{2}-\\d{2}";
-
-            if(date.matches(formatDate)){
-               validDate = false;
-               
-            }else{
-               System.out.println();
-               System.out.print("Date was formatted invalidly. Enter date in correct format.");
-               System.out.println("\n");
-            }
-
-             
+         LocalDate date = parseDate(in.readLine());
+         while (date == null){
+            System.out.println();
+            System.out.print("Date was formatted invalidly. Enter date in correct format (yyyy-mm-dd): ");
+            date = parseDate(in.readLine());
          }
 
-         String query = "SELECT r.roomNumber, r.price, rs.bookingDate ";
-               query+= "FROM Rooms r "; 
-               query += "INNER JOIN RoomBookings rs ";
-               query += "ON r.roomNumber = rs.roomNumber ";
-               query+= "WHERE r.hotelID = ";
-                     query+= hotelID;
-                     query += " AND rs.bookingDate = ";
-                     query+= date; 
-
-         esql.executeQueryAndPrintResult(query);
-
-         
+         List<List<String>> free = esql.findFreeRooms(hotelID, date);
+         if (free.isEmpty()){
+            System.out.println("No rooms available on " + date);
+         }else{
+            ResultRenderer out = ResultRenderer.toStdout(ResultRenderer.Format.TABLE);
+            out.header("roomnumber", "price");
+            for (List<String> record : free)
+               out.row(record);
+            out.close();
+         }
 
       }  catch(Exception e){
          System.err.println (e.getMessage ());
@@ -523,34 +845,24 @@ public static void viewHotels(Hotel esql) {
          if (hotelID == null || roomNum == null || hotelID.isEmpty() || roomNum.isEmpty()) {
             throw new RuntimeException("Hotel ID and Room Number cannot be null or empty.");
         }
-         String query = "SELECT rb.hotelID, rb.roomNumber, rb.bookingDate ";
-                query += "FROM RoomBookings rb ";
-                query += "WHERE rb.hotelID = ";
-                query +=  hotelID;
-                query += " AND rb.roomNumber = ";
-                query += roomNum;
-                query += " AND rb.bookingDate = '";
-                query += date;
-                query += "'";
-         System.out.println(query);
-         String query2 = String.format("INSERT INTO RoomBookings (customerID, hotelID, roomNumber, bookingDate) VALUES ('%s','%s','%s','%s')", managerID, hotelID, roomNum, date);  
-         System.out.println(query2);
-                int bookRoomsCheck = esql.executeQuery(query);
-                System.out.println(query2);
-                esql.executeUpdate(query2);
-                System.out.println(query2);
-                if (bookRoomsCheck > 0) {
-                  System.out.println("Room is booked.");
-                }else {
-                  System.out.println("Room is not booked.");
-                }
-         String query3 = String.format("SELECT r.price FROM Rooms r, RoomBookings rb WHERE r.hotelID = ");
-               query3 += hotelID;
-               query3 += " AND r.roomNumber = ";
-               query3+= roomNum;
-               List<List<String>> bookRoomsPrices = esql.executeQueryAndReturnResult(query3);
-                System.out.println ("The room has been booked successfully and is priced at : " + bookRoomsPrices);   
-                System.out.println(query3);             
+         System.out.println("Enter number of nights (default 1): ");
+         String nightsInput = in.readLine();
+         int nights = (nightsInput == null || nightsInput.trim().isEmpty()) ? 1 : Integer.parseInt(nightsInput.trim());
+         if (nights < 1) {
+            throw new RuntimeException("Number of nights must be at least 1.");
+         }
+         int hotel = Integer.parseInt(hotelID);
+         int room = Integer.parseInt(roomNum);
+         // every night of the stay is checked and booked in one batch
+         List<BookingRequest> stay = BookingService.stay(hotel, room, LocalDate.parse(date), nights);
+         List<BookingResult> results = esql.book(Integer.parseInt(managerID), stay);
+         int total = 0;
+         for (BookingResult result : results) {
+            System.out.println(result);
+            if (result.isBooked())
+               total += result.price;
+         }
+         System.out.println ("Total price of the nights booked: $" + total);
    } catch(Exception e) {
           System.err.println (e.getMessage ());
       }
@@ -559,11 +871,24 @@ public static void viewHotels(Hotel esql) {
 
    public static void viewRecentBookingsfromCustomer(Hotel esql) {
       try {
-         System.out.println("Here are the 5 Most Recent Bookings");
-         String recentBookings = "SELECT b.hotelID, b.roomNumber, b.bookingDate, r.price FROM Rooms r, RoomBookings b WHERE b.hotelID = r.hotelID AND b.roomNumber = r.roomNumber AND b.customerID = ";
-         recentBookings += customerID;
-         recentBookings += " ORDER BY b.bookingDate";
-         List<List<String>> getBookings = esql.executeQueryAndReturnResult(recentBookings);
+         try (ResultRenderer out = openOutput()) {
+            System.out.println("Here are your bookings, most recent first");
+            // a query per page, so no cursor stays open while the user reads
+            int pageSize = out.isStdout() ? PAGE_SIZE : EXPORT_PAGE_SIZE;
+            RowHandler render = out.handler();
+            final LocalDate[] beforeDate = {LocalDate.of(9999, 12, 31)};
+            final int[] beforeID = {Integer.MAX_VALUE};
+            int rows;
+            do {
+               rows = esql.getOperations().customerBookings(Integer.parseInt(customerID), beforeDate[0], beforeID[0],
+                     pageSize, rs -> {
+                  beforeID[0] = rs.getInt(1);
+                  beforeDate[0] = rs.getDate(4).toLocalDate();
+                  return render.onRow(rs);
+               });
+            } while (rows == pageSize && nextPage(out, out.rows()));
+            closeOutput(out);
+         }
    } catch(Exception e) {
           System.err.println (e.getMessage ());
       }
@@ -580,32 +905,24 @@ public static void viewHotels(Hotel esql) {
          while (update){
             System.out.println("you have edit access to these hotels");
 
-            String rightID = "SELECT DISTINCT h.hotelName, h.hotelID ";
-                  rightID += "FROM Hotel h ";
-                  rightID += "INNER JOIN Rooms r ON h.hotelID = r.hotelID ";
-                  rightID += "WHERE h.hotelID = r.hotelID AND managerUserID = ";
-                  rightID += managerID;
-                  rightID += " ORDER BY h.hotelID";
+               ReferenceCache.Hotels hotels = esql.getOperations().hotels();
+               int[] managedHotels = esql.getOperations().managedHotelIDs(session);
 
-               List<List<String>> managedHotels = esql.executeQueryAndReturnResult(rightID);
 
-
-            for (int s = 0; s < managedHotels.size(); s++){
+            for (int s = 0; s < managedHotels.length; s++){
+               int i = hotels.indexOf(managedHotels[s]);
                System.out.println("hotel name");
-               System.out.println(managedHotels.get(s).get(0));
+               System.out.println(i < 0 ? "" : hotels.name(i));
                System.out.println("hotel ID");
-               System.out.println(managedHotels.get(s).get(1));
+               System.out.println(managedHotels[s]);
             }
                   
             System.out.println("type in hotel ID to view room information");
             String hotel = in.readLine();
 
             while (valid){
-               for (int k = 0; k < managedHotels.size(); k++){
-                  if (hotel.equals(managedHotels.get(k).get(1))){
-                        valid = false;
-                  }
-                 
+               if (esql.getOperations().manages(session, parseID(hotel))){
+                     valid = false;
                }
                if (valid){
                   System.out.println("\n hotelID DNE! enter valid ID: ");
@@ -616,82 +933,38 @@ public static void viewHotels(Hotel esql) {
             System.out.println(" ");
             System.out.println(" ");
 
-            String validRooms = "SELECT roomNumber, price, imageUrl FROM Rooms r WHERE hotelID = ";
-                   validRooms += hotel;
-
-               List<List<String>> possibleRooms = esql.executeQueryAndReturnResult(validRooms);
+               ReferenceCache.Rooms possibleRooms = esql.getOperations().rooms(parseID(hotel));
  
                System.out.println(" \n rooms of hotel you chose \n ");
                for (int k = 0; k < possibleRooms.size(); k++){
 
                   System.out.println("Room # ");
-                  System.out.println(possibleRooms.get(k).get(0));
+                  System.out.println(possibleRooms.number(k));
 
                }
 
-               boolean check = false;
-
                System.out.println("enter number of room you want to update: ");
                String number = in.readLine();
 
-                     while (!check){
-                        for (int s = 0; s < possibleRooms.size(); s++){
-                           if(number.equals(possibleRooms.get(s).get(0))){
-                        
-                              check = true;
-                           }
-                        }
-                           if (!check){
-                              System.out.println("room number DNE! type a valid room number: ");
-                              number = in.readLine();
-                           
-                        }
+                     while (!possibleRooms.contains(parseID(number))){
+                        System.out.println("room number DNE! type a valid room number: ");
+                        number = in.readLine();
                      }
 
                      System.out.println("\n enter updated room price in $: ");
                      String updatedPrice = in.readLine();
                      System.out.println("\n");
                      
-                     String newPrice = "UPDATE Rooms SET Price = ";
-                            newPrice += updatedPrice;
-                            newPrice += " WHERE hotelID = ";
-                            newPrice += hotel;
-                            newPrice += " AND roomNumber = ";
-                            newPrice += number;
-
-                   
-                     esql.executeUpdate(newPrice);
-
-                     Timestamp currentTimestamp = new Timestamp(System.currentTimeMillis());
-                     String priceTime = currentTimestamp.toString();
-                     java.util.Date pricedate = new java.util.Date();
-
-                     String updateNew = String.format("INSERT INTO RoomUpdatesLog(managerID, hotelID, roomNumber, updatedOn) VALUES ('%s', '%s', '%s', '%s' );", managerID, hotel, number, pricedate);
-
-                     esql.executeUpdate(updateNew);
+                     int hotelNum = parseID(hotel);
+                     int roomNum = parseID(number);
+                     int manager = Integer.parseInt(managerID);
 
                      System.out.println("update image URl");
                      String image = in.readLine();
                      System.out.println("\n");
 
-                     String imageUpdate = "UPDATE Rooms SET imageURL = '";
-                            imageUpdate += image;
-                            imageUpdate += "' WHERE hotelID = ";
-                            imageUpdate += hotel;
-                            imageUpdate += " AND roomNumber = ";
-                            imageUpdate += number;
-
-                            System.out.println("step 1");
-                     esql.executeUpdate(imageUpdate);
-                     System.out.println("step 2");
-                     Timestamp curTimestamp = new Timestamp(System.currentTimeMillis());
-                     String newTime = curTimestamp.toString();
-                     java.util.Date date = new java.util.Date();
-                     
-
-                     String secondUpdate = String.format("INSERT INTO RoomUpdatesLog (managerID, hotelID, roomNumber, updatedOn) VALUES ('%s', '%s', '%s' , '%s' );" , managerID, hotel, number, date );
-                     esql.executeUpdate(secondUpdate);
-                     System.out.println("step 3");
+                     // price and image commit together, or not at all
+                     esql.getOperations().updateRoom(manager, hotelNum, roomNum, Integer.parseInt(updatedPrice), image);
 
 
                      System.out.println("\n updates successful");
@@ -713,12 +986,20 @@ public static void viewHotels(Hotel esql) {
 
    public static void viewRecentUpdates(Hotel esql) {
       try {
-         String userID = managerID;
-         String isManager = String.format("SELECT h.managerUserID FROM Hotel h WHERE h.managerUserID = %s", userID);
+         int manager = session.userID;
          
-         if(esql.executeQueryAndPrintResult(isManager) > 0) {
-            String recentLogs = String.format("SELECT u.hotelID, u.roomNumber FROM RoomUpdatesLog WHERE managerID = %s ORDER BY updatedOn DESC LIMIT 5", userID);
-            esql.executeQueryAndPrintResult(recentLogs);
+         if(session.isManager()) {
+            List<List<String>> recent = esql.getOperations().recentUpdates(manager);
+            if (recent.isEmpty()){
+               System.out.println("no room updates yet");
+               return;
+            }
+            try (ResultRenderer out = openOutput()) {
+               out.header("hotelid", "roomnumber", "updatedon", "oldprice", "newprice", "oldimageurl", "newimageurl");
+               for (List<String> row : recent)
+                  out.row(row);
+               closeOutput(out);
+            }
          }else{
             System.out.println("You aren't authorized to view the Recent Updates History ");
          }
@@ -733,6 +1014,45 @@ public static void viewHotels(Hotel esql) {
 
    public static void viewBookingHistoryofHotel(Hotel esql) {
    try{
+      System.out.println("These are the list of hotels you manage ");
+      printManagedHotels(esql);
+
+      System.out.print("\tEnter HotelID: ");
+      int hotelID = parseID(in.readLine());
+
+      while (!esql.getOperations().manages(session, hotelID)){
+               System.out.println();
+               System.out.print("DNE! Enter a Valid HotelID: ");
+               hotelID = parseID(in.readLine());
+      }
+
+      LocalDate from = readDateOr("\tEnter first booking date (yyyy-mm-dd, empty for all): ", LocalDate.of(1900, 1, 1));
+      LocalDate to = readDateOr("\tEnter last booking date (yyyy-mm-dd, empty for all): ", LocalDate.of(9999, 12, 31));
+      if (to.isBefore(from)){
+         System.out.println("last date is before first date");
+         return;
+      }
+
+      // one page per screen, read by keyset; the next one loads while this one
+      // is shown. A file gets bigger pages and no questions
+      int shown = 0;
+      try (ResultRenderer out = openOutput()) {
+         int pageSize = out.isStdout() ? PAGE_SIZE : EXPORT_PAGE_SIZE;
+         try (BookingHistory history = esql.getOperations().bookingHistory(hotelID, from, to, pageSize, PREFETCH_PAGES)) {
+            out.header("bookingid", "customerid", "roomnumber", "bookingdate");
+            while (history.hasNext()){
+               List<BookingRow> page = history.next();
+               for (BookingRow b : page)
+                  out.row(b.bookingID, b.customerID, b.roomNumber, b.bookingDate);
+               shown += page.size();
+               if (!history.hasNext() || !nextPage(out, shown))
+                  break;
+            }
+         }
+         closeOutput(out);
+      }
+      if (shown == 0)
+         System.out.println("no bookings in this range");
    }  catch(Exception e){
       System.err.println (e.getMessage ());
    }
@@ -744,24 +1064,28 @@ public static void viewHotels(Hotel esql) {
       try{
 
          System.out.println("These are the list of hotels you manage ");
-         String validHotels = "SELECT DISTINCT hotelName, hotelID FROM Hotel h, Rooms r";
-                validHotels += "WHERE h.hotelID = r.hotelID AND managerUserID = ";
-                validHotels += managerID;
-                validHotels += "ORDER BY h.hotelID"; 
-         List<List<String>> getHotels = esql.executeQueryAndReturnResult(validHotels);
-
-        for (int k = 0; k < getHotels.size(); k++) {
-
-         System.out.print(" hotel name: ");
-         System.out.print(getHotels.get(k).get(0));
-         System.out.print("\n hotel ID: ");
-         System.out.print(getHotels.get(k).get(1));
-         System.out.println();
+         printManagedHotels(esql);
 
-        }
+         System.out.print("\tEnter HotelID: ");
+         int hotelID = parseID(in.readLine());
 
-        
+         while (!esql.getOperations().manages(session, hotelID)){
+                  System.out.println();
+                  System.out.print("DNE! Enter a Valid HotelID: ");
+                  hotelID = parseID(in.readLine());
+         }
 
+         List<List<String>> regulars = esql.getOperations().regularCustomers(hotelID, RegularCustomers.DEFAULT_K);
+         if (regulars.isEmpty()){
+            System.out.println("no bookings at this hotel yet");
+            return;
+         }
+         try (ResultRenderer out = openOutput()) {
+            out.header("customerid", "bookings");
+            for (List<String> row : regulars)
+               out.row(row);
+            closeOutput(out);
+         }
  
       }  catch(Exception e){
          System.err.println (e.getMessage ());
@@ -773,104 +1097,60 @@ public static void viewHotels(Hotel esql) {
    public static void placeRoomRepairRequests(Hotel esql) {
       try{
          System.out.println("These are the list of available hotels");
-         String validHotels = "SELECT hotelName, hotelID FROM Hotel";
          System.out.println();
-         esql.executeQueryAndPrintResult(validHotels);
-         List<List<String>> getHotels = esql.executeQueryAndReturnResult(validHotels);
+         ReferenceCache.Hotels getHotels = esql.getOperations().hotels();
+         printHotels(getHotels);
          System.out.print("\tEnter HotelID: ");
-         String hotelID = in.readLine();
-         boolean hotelChecker = true;
+         int hotelID = parseID(in.readLine());
          
-         while (hotelChecker){
-               for (int i = 0; i < 20; i++ ){
-                  if(hotelID.equals(getHotels.get(i).get(1))){
-                     hotelChecker = false;
-                  }
-               } if(hotelChecker) {
+         while (!getHotels.contains(hotelID)){
                   System.out.println();
                   System.out.print("DNE! Enter a Valid HotelID: ");
-                  hotelID = in.readLine();
-               }
-
+                  hotelID = parseID(in.readLine());
          }
 
          System.out.println("These are the list of available rooms");
-         String validRooms = "SELECT roomNumber FROM Rooms WHERE hotelID = ";
-                validRooms+= hotelID;
          System.out.println();
          System.out.print("\tEnter room: ");
-         esql.executeQueryAndPrintResult(validRooms);
-         List<List<String>> getRooms = esql.executeQueryAndReturnResult(validRooms);
-         String roomNumber = in.readLine();
-         boolean roomChecker = true;
+         ReferenceCache.Rooms getRooms = esql.getOperations().rooms(hotelID);
+         System.out.println("roomnumber\t");
+         for (int i = 0; i < getRooms.size(); i++)
+            System.out.println(getRooms.number(i) + "\t");
+         int roomNumber = parseID(in.readLine());
          
-         while (roomChecker){
-               for (int i = 0; i < 10; i++ ){
-                  if(roomNumber.equals(getRooms.get(i).get(0))){
-                     roomChecker = false;
-                  }
-               } if(roomChecker) {
+         while (!getRooms.contains(roomNumber)){
                   System.out.println();
                   System.out.print("DNE! Enter a Valid room: ");
-                  roomNumber = in.readLine();
-               }
-
+                  roomNumber = parseID(in.readLine());
          }
          System.out.println("These are the list of available maintenance companies");
-         String validMaintComp = "SELECT companyID FROM MaintenanceCompany";
          System.out.println();
          System.out.print("\tEnter Maint Comp: ");
-         esql.executeQueryAndPrintResult(validMaintComp);
-         List<List<String>> getMaint = esql.executeQueryAndReturnResult(validMaintComp);
-         String maintComp = in.readLine();
-         boolean maintCompChecker = true;
+         ReferenceCache.Companies getMaint = esql.getOperations().companies();
+         System.out.println("companyid\t");
+         for (int i = 0; i < getMaint.size(); i++)
+            System.out.println(getMaint.id(i) + "\t");
+         int maintComp = parseID(in.readLine());
          
-         while (maintCompChecker){
-               for (int i = 0; i < 5; i++ ){
-                  if(maintComp.equals(getMaint.get(i).get(0))){
-                     maintCompChecker = false;
-                  }
-               } if(maintCompChecker) {
+         while (!getMaint.contains(maintComp)){
                   System.out.println();
                   System.out.print("DNE! Enter a Valid maint comp: ");
-                  maintComp = in.readLine();
-               }
-
+                  maintComp = parseID(in.readLine());
          }
 
 
-         boolean validDate = true;
          System.out.print(" enter your repair date in format (yyyy-mm-dd): ");
-         String date = in.readLine();
-
-         while (validDate){
-            
-            String formatDate = "\\d{4}-\\d{2}-\\d{2}";
+         LocalDate date = parseDate(in.readLine());
 
-            if(date.matches(formatDate)){
-               validDate = false;
-               
-            }else{
+         while (date == null){
                System.out.println();
-               System.out.print("Date was formatted invalidly. Enter date in correct format.");
-               System.out.println("\n");
-            }
-             
+               System.out.print("Date was formatted invalidly. Enter date in correct format: ");
+               date = parseDate(in.readLine());
          }
 
-         String insertRepair = String.format("INSERT INTO RoomRepairs (companyID, hotelID, roomNumber, repairDate) VALUES ('%s', '%s', '%s', '%s')", maintComp, hotelID, roomNumber, date);
-
-         esql.executeUpdate(insertRepair);
-
-         String repairIdGet = "SELECT repairID FROM RoomRepairs";
-
-         List<List<String>> repairsGotten = esql.executeQueryAndReturnResult(repairIdGet);
-
-         String repairsID =  repairsGotten.get(repairsGotten.size()- 1).get(0);
-
-         String repairIdInsert = String.format("INSERT INTO RoomRepairRequests (managerID, repairID) VALUES ('%s', '%s')", managerID, repairsID);
-
-         esql.executeUpdate(repairIdInsert);
+         int repairID = esql.getOperations().placeRepairRequest(Integer.parseInt(managerID), maintComp, hotelID,
+               roomNumber, date);
+         System.out.println("Repair request placed with repairID = " + repairID);
          
    
       } catch(Exception e){
@@ -885,56 +1165,23 @@ public static void viewHotels(Hotel esql) {
 
          //get hotel id from previous function
          //System.out.println("These are the list of hotels you manage ");
-         String validHotels = "SELECT DISTINCT h.hotelName, h.hotelID ";
-                validHotels += "FROM Hotel h, Rooms r ";
-                validHotels += "WHERE h.hotelID = r.hotelID AND managerUserID = ";
-                validHotels += managerID;
-                validHotels += "ORDER BY h.hotelID";
-        // System.out.println();
-        //esql.executeQueryAndPrintResult(validHotels);
-
-         List<List<String>> getHotels = esql.executeQueryAndReturnResult(validHotels);
-        // System.out.print("\tEnter HotelID: ");
-
-        for (int k = 0; k < getHotels.size(); k++) {
-
-         System.out.print(" hotel name: ");
-         System.out.print(getHotels.get(k).get(0));
-         System.out.print("\n hotel ID: ");
-         System.out.print(getHotels.get(k).get(1));
-         System.out.println();
-
-        }
+         printManagedHotels(esql);
     
          System.out.println("list of all room repair requests history");
-         String viewRepair = "SELECT * FROM RoomRepairs rr, RoomRepairRequests rq "; 
-                viewRepair += "WHERE rr.repairID = rq.repairID AND rq.managerID = ";
-                viewRepair+= managerID;
-
-                List<List<String>> retrieve = esql.executeQueryAndReturnResult(viewRepair);
-
-         for (int i =0; i< retrieve.size(); i++){
-            //company  id 
-            System.out.println("company ID: ");
-            System.out.println(retrieve.get(i).get(0));
-            System.out.println("\n");
-
-            //hotel id
-            System.out.println("hotel ID: ");
-            System.out.println(retrieve.get(i).get(1));
-            System.out.println("\n");
-
-            //room number
-            System.out.println("room number: ");
-            System.out.println(retrieve.get(i).get(2));
-            System.out.println("\n");
-
-            //repair date
-            System.out.println("repair date: ");
-            System.out.println(retrieve.get(i).get(3));
-            System.out.println("\n");
-
 
+         // a query per page, so no cursor stays open while the user reads
+         try (ResultRenderer out = openOutput()) {
+            int pageSize = out.isStdout() ? PAGE_SIZE : EXPORT_PAGE_SIZE;
+            RowHandler render = out.handler();
+            final int[] afterID = {0};
+            int rows;
+            do {
+               rows = esql.getOperations().repairHistory(Integer.parseInt(managerID), afterID[0], pageSize, rs -> {
+                  afterID[0] = rs.getInt(1);
+                  return render.onRow(rs);
+               });
+            } while (rows == pageSize && nextPage(out, out.rows()));
+            closeOutput(out);
          }
       }catch(Exception e){
          System.err.println (e.getMessage ());
@@ -0,0 +1,350 @@
+package hoteldb;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Write-behind for RoomUpdatesLog: room updates are queued and a background
+ * writer inserts them in JDBC batches, one transaction per batch, so a burst
+ * of price changes costs a few commits instead of one per row.
+ *
+ * The queue is bounded without locks: a counter is reserved by CAS before an
+ * entry goes onto a {@link ConcurrentLinkedQueue}; a full queue makes the
+ * caller wait for the writer instead of growing the heap.
+ *
+ * {@link Durability} sets what {@link #append} waits for. {@link #close()}
+ * writes whatever is still queued; call it before the pool is closed.
+ */
+public class AuditLog implements AutoCloseable {
+
+   /**
+    * What {@link AuditLog#append} waits for before it returns.
+    */
+   public enum Durability {
+      /** the caller inserts its row in the transaction that made the change */
+      SYNC,
+      /** the caller waits for the batch its row went into to commit */
+      GROUP_COMMIT,
+      /** the caller only queues the row; it is written within the flush interval */
+      ASYNC;
+
+      /**
+       * @return the mode named {@code name}, e.g. "group-commit"
+       */
+      public static Durability parse(String name) {
+         return valueOf(name.trim().toUpperCase().replace('-', '_'));
+      }
+   }
+
+   public static final int DEFAULT_CAPACITY = 10000;
+   public static final int DEFAULT_BATCH_SIZE = 500;
+   public static final long DEFAULT_FLUSH_MILLIS = 200;
+
+   static final String INSERT =
+         "INSERT INTO RoomUpdatesLog (managerID, hotelID, roomNumber, updatedOn, "
+       + "oldPrice, newPrice, oldImageURL, newImageURL) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+   // a queued row and, when the caller waits, its outcome
+   private static final class Pending {
+      final RecentUpdates.Update update;
+      final CompletableFuture<Void> done;
+
+      Pending(RecentUpdates.Update update, CompletableFuture<Void> done) {
+         this.update = update;
+         this.done = done;
+      }
+   }
+
+   private final Database db;
+   private final Durability durability;
+   private final int capacity;
+   private final int batchSize;
+   private final long flushNanos;
+
+   private final ConcurrentLinkedQueue<Pending> queue = new ConcurrentLinkedQueue<Pending>();
+   private final AtomicInteger depth = new AtomicInteger();
+   private final Thread writer;
+   private volatile boolean closed = false;
+   private long lastFlush = System.nanoTime();
+
+   private final LongAdder appended = new LongAdder();
+   private final LongAdder written = new LongAdder();
+   private final LongAdder dropped = new LongAdder();
+   private final LongAdder batches = new LongAdder();
+   private final LongAdder stalls = new LongAdder();
+   private final AtomicInteger maxDepth = new AtomicInteger();
+   private final LatencyHistogram flushLatency = new LatencyHistogram();
+
+   public AuditLog(Database db, Durability durability) {
+      this(db, durability, DEFAULT_CAPACITY, DEFAULT_BATCH_SIZE, DEFAULT_FLUSH_MILLIS);
+   }
+
+   /**
+    * @param capacity rows queued at most
+    * @param batchSize rows per insert batch; a full batch is written at once
+    * @param flushMillis longest an ASYNC row waits for a batch to fill up
+    */
+   public AuditLog(Database db, Durability durability, int capacity, int batchSize, long flushMillis) {
+      if (capacity < 1 || batchSize < 1 || flushMillis < 1)
+         throw new IllegalArgumentException("capacity, batchSize and flushMillis must be positive");
+      this.db = db;
+      this.durability = durability;
+      this.capacity = capacity;
+      this.batchSize = batchSize;
+      this.flushNanos = flushMillis * 1000000L;
+      if (durability == Durability.SYNC) {
+         writer = null;
+      } else {
+         writer = new Thread(this::run, "audit-log-writer");
+         writer.setDaemon(true);
+         writer.start();
+      }
+   }
+
+   public Durability durability() {
+      return durability;
+   }
+
+   /**
+    * @return whether rows are written after the caller's transaction; in
+    *         SYNC mode the caller writes its row in its own transaction
+    *         instead and reports it with {@link #wroteInline}
+    */
+   public boolean writesBehind() {
+      return durability != Durability.SYNC;
+   }
+
+   /**
+    * Counts a row the caller inserted in its own transaction.
+    */
+   public void wroteInline() {
+      appended.increment();
+      written.increment();
+   }
+
+   /**
+    * Logs a room update. Its updateNumber is assigned by the insert and is
+    * ignored here.
+    *
+    * @throws java.sql.SQLException in GROUP_COMMIT mode, when the row could
+    *         not be written
+    * @throws IllegalStateException after {@link #close()}, and in SYNC mode,
+    *         where the caller writes the row in its own transaction
+    */
+   public void append(RecentUpdates.Update update) throws SQLException {
+      if (durability == Durability.SYNC)
+         throw new IllegalStateException("a SYNC audit log is written by the caller's transaction");
+      if (closed)
+         throw new IllegalStateException("audit log is closed");
+      appended.increment();
+      CompletableFuture<Void> done = durability == Durability.GROUP_COMMIT ? new CompletableFuture<Void>() : null;
+      reserve();
+      queue.add(new Pending(update, done));
+      // a waiting caller wants the next batch now; otherwise only a full one
+      if (done != null || depth.get() >= batchSize)
+         LockSupport.unpark(writer);
+      if (done == null)
+         return;
+      try {
+         done.get();
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new SQLException("interrupted while waiting for the audit log", e);
+      } catch (ExecutionException e) {
+         if (e.getCause() instanceof SQLException)
+            throw (SQLException) e.getCause();
+         throw new SQLException(e.getCause());
+      }
+   }
+
+   // takes a queue slot, waiting for the writer while the queue is full
+   private void reserve() {
+      boolean stalled = false;
+      while (true) {
+         int d = depth.get();
+         if (d < capacity) {
+            if (depth.compareAndSet(d, d + 1)) {
+               if (d + 1 > maxDepth.get())
+                  maxDepth.accumulateAndGet(d + 1, Math::max);
+               return;
+            }
+            continue;
+         }
+         if (closed)
+            throw new IllegalStateException("audit log is closed");
+         if (!stalled) {
+            stalls.increment();
+            stalled = true;
+         }
+         LockSupport.unpark(writer);
+         LockSupport.parkNanos(this, 100000L);
+      }
+   }
+
+   private void run() {
+      while (true) {
+         int d = depth.get();
+         long waited = System.nanoTime() - lastFlush;
+         boolean closing = closed;
+         if (d > 0 && (closing || d >= batchSize || durability == Durability.GROUP_COMMIT || waited >= flushNanos)) {
+            flush();
+            continue;
+         }
+         if (closing && queue.isEmpty())
+            return;
+         if (d == 0)
+            lastFlush = System.nanoTime();
+         LockSupport.parkNanos(this, d == 0 ? flushNanos : flushNanos - waited);
+      }
+   }
+
+   // writes up to batchSize queued rows in one transaction
+   private void flush() {
+      List<Pending> batch = new ArrayList<Pending>(Math.min(batchSize, depth.get()));
+      Pending p;
+      while (batch.size() < batchSize && (p = queue.poll()) != null)
+         batch.add(p);
+      if (batch.isEmpty())
+         return;
+      long start = System.nanoTime();
+      try {
+         write(batch);
+         written.add(batch.size());
+         for (Pending b : batch)
+            if (b.done != null)
+               b.done.complete(null);
+      } catch (SQLException e) {
+         dropped.add(batch.size());
+         int unanswered = 0;
+         for (Pending b : batch) {
+            if (b.done != null)
+               b.done.completeExceptionally(e);
+            else
+               unanswered++;
+         }
+         if (unanswered > 0)
+            System.err.println("Audit log: " + unanswered + " room updates were not logged: " + e.getMessage());
+      } finally {
+         depth.addAndGet(-batch.size());
+         lastFlush = System.nanoTime();
+         flushLatency.record(lastFlush - start);
+         batches.increment();
+      }
+   }
+
+   private void write(List<Pending> batch) throws SQLException {
+      QueryMetrics.Probe probe = db.getMetrics().begin(QueryMetrics.Op.BATCH, INSERT);
+      try {
+         ConnectionPool pool = db.getPool();
+         Connection conn = pool.borrow();
+         try {
+            conn.setAutoCommit(false);
+            PreparedStatement ps = pool.prepare(conn, INSERT);
+            try {
+               for (Pending p : batch) {
+                  RecentUpdates.Update u = p.update;
+                  ps.setInt(1, u.managerID);
+                  ps.setInt(2, u.hotelID);
+                  ps.setInt(3, u.roomNumber);
+                  ps.setTimestamp(4, u.updatedOn);
+                  setInteger(ps, 5, u.oldPrice);
+                  setInteger(ps, 6, u.newPrice);
+                  ps.setString(7, u.oldImageURL);
+                  ps.setString(8, u.newImageURL);
+                  ps.addBatch();
+               }
+               ps.executeBatch();
+               conn.commit();
+               probe.rows(batch.size());
+            } catch (SQLException e) {
+               ps.clearBatch();
+               pool.invalidate(conn, INSERT);
+               throw e;
+            }
+         } finally {
+            // rolls back a failed batch and restores auto-commit
+            pool.release(conn);
+         }
+      } catch (SQLException e) {
+         throw probe.failed(e);
+      } finally {
+         probe.end();
+      }
+   }
+
+   private static void setInteger(PreparedStatement ps, int index, Integer value) throws SQLException {
+      if (value == null)
+         ps.setNull(index, Types.INTEGER);
+      else
+         ps.setInt(index, value);
+   }
+
+   /**
+    * Stops taking rows and writes the ones still queued.
+    */
+   @Override
+   public void close() {
+      if (closed)
+         return;
+      closed = true;
+      if (writer == null)
+         return;
+      LockSupport.unpark(writer);
+      try {
+         writer.join();
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+      // rows queued by callers that passed the closed check as it was set
+      while (!queue.isEmpty())
+         flush();
+   }
+
+   /**
+    * @return rows queued and not yet written
+    */
+   public int depth() {
+      return depth.get();
+   }
+
+   public long appended() {
+      return appended.sum();
+   }
+
+   public long written() {
+      return written.sum();
+   }
+
+   /**
+    * @return rows whose batch failed
+    */
+   public long dropped() {
+      return dropped.sum();
+   }
+
+   /**
+    * @return the time each batch took to insert and commit
+    */
+   public LatencyHistogram flushLatency() {
+      return flushLatency;
+   }
+
+   @Override
+   public String toString() {
+      LatencyHistogram.Snapshot snap = flushLatency.snapshot();
+      return String.format("%s: %d appended, %d written, %d dropped, depth %d (max %d), %d batches "
+            + "(p50 %.2f ms, p99 %.2f ms), %d full-queue waits",
+            durability, appended.sum(), written.sum(), dropped.sum(), depth.get(), maxDepth.get(),
+            batches.sum(), snap.percentile(0.5) / 1e6, snap.percentile(0.99) / 1e6, stalls.sum());
+   }
+}
@@ -0,0 +1,289 @@
+package hoteldb;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory room availability: one {@link DayBitmap} of booked epoch days per
+ * (hotelID, roomNumber), loaded from Rooms and RoomBookings and updated on
+ * every booking.
+ *
+ * Answers "which rooms of hotel H are free on D / for every night of
+ * [D1, D2)" and "first free night of room R" with word-wide bit operations
+ * instead of a RoomBookings query. Reads run concurrently; bookings take a
+ * short write lock.
+ *
+ * Only bookings made through this process's BookingService reach the index
+ * as they happen. Bookings by other consoles or servers are picked up by
+ * {@link #refresh}: a hotel's month whose bookings were read more than
+ * {@code ttlMillis} ago is read again from RoomBookings, one indexed range,
+ * before it is answered from. Between refreshes such a booking can show its
+ * room as free; the booking itself is still refused by the UNIQUE
+ * constraint. A refresh only adds bookings, since nothing cancels one; a
+ * cancellation made elsewhere stays booked here until the next load.
+ */
+public class AvailabilityIndex implements BookingListener {
+
+   private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+   // (hotelID, roomNumber) -> booked days
+   private final Map<Long, DayBitmap> booked = new HashMap<Long, DayBitmap>();
+   // hotelID -> sorted room numbers
+   private final Map<Integer, int[]> rooms = new HashMap<Integer, int[]>();
+
+   public static final long DEFAULT_TTL_MILLIS = 5000;
+
+   static final String MONTH =
+         "SELECT roomNumber, bookingDate FROM RoomBookings WHERE hotelID = ? AND bookingDate >= ? AND bookingDate < ?";
+
+   // where refresh() reads from, the database of the last load
+   private volatile Database source = null;
+   private volatile long ttlNanos = DEFAULT_TTL_MILLIS * 1000000L;
+   private volatile long loadedAt = 0;
+   // (hotelID, month) -> System.nanoTime() of its last refresh
+   private final ConcurrentHashMap<Long, Long> refreshedAt = new ConcurrentHashMap<Long, Long>();
+
+   /**
+    * How long a hotel's month is answered from memory before
+    * {@link #refresh} reads it again; 0 never does, for a single process
+    * that makes every booking.
+    */
+   public void setTtlMillis(long millis) {
+      this.ttlNanos = millis * 1000000L;
+   }
+
+   /**
+    * Replaces the index content with the current Rooms and RoomBookings
+    * tables. Bookings are streamed, so heap use is bounded by the bitmaps,
+    * not by the size of RoomBookings.
+    *
+    * @throws java.sql.SQLException when the tables cannot be read
+    */
+   public void load(Database db) throws SQLException {
+      long start = System.nanoTime();
+      final Map<Integer, int[]> loadedRooms = new HashMap<Integer, int[]>();
+      final Map<Integer, Integer> counts = new HashMap<Integer, Integer>();
+      db.executeQueryStreaming("SELECT hotelID, roomNumber FROM Rooms", rs -> {
+         int hotel = rs.getInt(1);
+         int[] list = loadedRooms.get(hotel);
+         int n = counts.containsKey(hotel) ? counts.get(hotel) : 0;
+         if (list == null)
+            list = new int[8];
+         else if (n == list.length)
+            list = Arrays.copyOf(list, n * 2);
+         list[n] = rs.getInt(2);
+         loadedRooms.put(hotel, list);
+         counts.put(hotel, n + 1);
+         return true;
+      });
+      for (Map.Entry<Integer, int[]> e : loadedRooms.entrySet()) {
+         int[] list = Arrays.copyOf(e.getValue(), counts.get(e.getKey()));
+         Arrays.sort(list);
+         e.setValue(list);
+      }
+
+      final Map<Long, DayBitmap> loadedBookings = new HashMap<Long, DayBitmap>();
+      db.executeQueryStreaming("SELECT hotelID, roomNumber, bookingDate FROM RoomBookings", rs -> {
+         long key = key(rs.getInt(1), rs.getInt(2));
+         DayBitmap days = loadedBookings.get(key);
+         if (days == null) {
+            days = new DayBitmap();
+            loadedBookings.put(key, days);
+         }
+         days.set((int) rs.getDate(3).toLocalDate().toEpochDay());
+         return true;
+      });
+
+      lock.writeLock().lock();
+      try {
+         rooms.clear();
+         rooms.putAll(loadedRooms);
+         booked.clear();
+         booked.putAll(loadedBookings);
+      } finally {
+         lock.writeLock().unlock();
+      }
+      refreshedAt.clear();
+      loadedAt = start;
+      source = db;
+   }
+
+   /**
+    * Reads again, from the database of the last load, the bookings of each
+    * month of [from, to) at {@code hotelID} that were read longer than the
+    * TTL ago, so bookings made by other processes are seen.
+    *
+    * @throws java.sql.SQLException when RoomBookings cannot be read
+    */
+   public void refresh(int hotelID, LocalDate from, LocalDate to) throws SQLException {
+      Database db = source;
+      long ttl = ttlNanos;
+      if (db == null || ttl <= 0)
+         return;
+      YearMonth last = YearMonth.from(to.minusDays(1));
+      for (YearMonth month = YearMonth.from(from); !month.isAfter(last); month = month.plusMonths(1)) {
+         long key = key(hotelID, month.getYear() * 12 + month.getMonthValue() - 1);
+         Long at = refreshedAt.get(key);
+         long start = System.nanoTime();
+         if (start - (at == null ? loadedAt : at) < ttl)
+            continue;
+         final List<long[]> found = new ArrayList<long[]>();
+         db.executeQueryStreaming(MONTH, rs -> {
+            found.add(new long[] {rs.getInt(1), rs.getDate(2).toLocalDate().toEpochDay()});
+            return true;
+         }, hotelID, java.sql.Date.valueOf(month.atDay(1)), java.sql.Date.valueOf(month.plusMonths(1).atDay(1)));
+         lock.writeLock().lock();
+         try {
+            for (long[] b : found) {
+               long k = key(hotelID, (int) b[0]);
+               DayBitmap days = booked.get(k);
+               if (days == null) {
+                  days = new DayBitmap();
+                  booked.put(k, days);
+               }
+               days.set((int) b[1]);
+            }
+         } finally {
+            lock.writeLock().unlock();
+         }
+         refreshedAt.put(key, start);
+      }
+   }
+
+   @Override
+   public void booked(int customerID, BookingRequest request, int bookingID) {
+      markBooked(request.hotelID, request.roomNumber, request.date);
+   }
+
+   public void markBooked(int hotelID, int roomNumber, LocalDate date) {
+      lock.writeLock().lock();
+      try {
+         long key = key(hotelID, roomNumber);
+         DayBitmap days = booked.get(key);
+         if (days == null) {
+            days = new DayBitmap();
+            booked.put(key, days);
+         }
+         days.set((int) date.toEpochDay());
+      } finally {
+         lock.writeLock().unlock();
+      }
+   }
+
+   /**
+    * Records a cancelled booking.
+    */
+   public void markFree(int hotelID, int roomNumber, LocalDate date) {
+      lock.writeLock().lock();
+      try {
+         DayBitmap days = booked.get(key(hotelID, roomNumber));
+         if (days != null)
+            days.clear((int) date.toEpochDay());
+      } finally {
+         lock.writeLock().unlock();
+      }
+   }
+
+   /**
+    * Registers a room added after the index was loaded.
+    */
+   public void addRoom(int hotelID, int roomNumber) {
+      lock.writeLock().lock();
+      try {
+         int[] list = rooms.get(hotelID);
+         if (list == null)
+            list = new int[0];
+         int i = Arrays.binarySearch(list, roomNumber);
+         if (i >= 0)
+            return;
+         i = -i - 1;
+         int[] grown = new int[list.length + 1];
+         System.arraycopy(list, 0, grown, 0, i);
+         grown[i] = roomNumber;
+         System.arraycopy(list, i, grown, i + 1, list.length - i);
+         rooms.put(hotelID, grown);
+      } finally {
+         lock.writeLock().unlock();
+      }
+   }
+
+   /**
+    * @return true when the hotel has that room
+    */
+   public boolean hasRoom(int hotelID, int roomNumber) {
+      lock.readLock().lock();
+      try {
+         int[] list = rooms.get(hotelID);
+         return list != null && Arrays.binarySearch(list, roomNumber) >= 0;
+      } finally {
+         lock.readLock().unlock();
+      }
+   }
+
+   public boolean isFree(int hotelID, int roomNumber, LocalDate date) {
+      lock.readLock().lock();
+      try {
+         DayBitmap days = booked.get(key(hotelID, roomNumber));
+         return days == null || !days.get((int) date.toEpochDay());
+      } finally {
+         lock.readLock().unlock();
+      }
+   }
+
+   /**
+    * @return the rooms of the hotel free on {@code date}, ascending
+    */
+   public int[] freeRooms(int hotelID, LocalDate date) {
+      return freeRooms(hotelID, date, date.plusDays(1));
+   }
+
+   /**
+    * @return the rooms of the hotel free on every night of [from, to), ascending
+    */
+   public int[] freeRooms(int hotelID, LocalDate from, LocalDate to) {
+      int first = (int) from.toEpochDay();
+      int end = (int) to.toEpochDay();
+      lock.readLock().lock();
+      try {
+         int[] list = rooms.get(hotelID);
+         if (list == null)
+            return new int[0];
+         int[] free = new int[list.length];
+         int n = 0;
+         for (int room : list) {
+            DayBitmap days = booked.get(key(hotelID, room));
+            if (days == null || !days.anySet(first, end))
+               free[n++] = room;
+         }
+         return Arrays.copyOf(free, n);
+      } finally {
+         lock.readLock().unlock();
+      }
+   }
+
+   /**
+    * @return the first night on or after {@code from} the room is free
+    */
+   public LocalDate firstFreeDate(int hotelID, int roomNumber, LocalDate from) {
+      lock.readLock().lock();
+      try {
+         DayBitmap days = booked.get(key(hotelID, roomNumber));
+         if (days == null)
+            return from;
+         return LocalDate.ofEpochDay(days.nextClear((int) from.toEpochDay()));
+      } finally {
+         lock.readLock().unlock();
+      }
+   }
+
+   private static long key(int hotelID, int roomNumber) {
+      return ((long) hotelID << 32) | (roomNumber & 0xffffffffL);
+   }
+}
@@ -0,0 +1,173 @@
+package hoteldb;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Contention benchmark for {@link BookingService}: many threads booking the
+ * same few popular rooms over a short window of far-future nights, so most
+ * attempts collide.
+ *
+ * Runs once with the in-process lock stripes and once without, and reports
+ * attempts per second, how many room-nights were booked, rejected and failed,
+ * and the mean latency. Every run must book each room-night exactly once; the
+ * benchmark checks that against RoomBookings and deletes its rows afterwards.
+ *
+ * Usage: java hoteldb.BookingContention &lt;dbname&gt; &lt;port&gt; &lt;user&gt;
+ *        [--threads N] [--rooms K] [--nights D] [--seconds S] [--mode locks|nolocks|both]
+ */
+public class BookingContention {
+
+   // far enough out that the window never overlaps real bookings
+   static final LocalDate WINDOW_START = LocalDate.of(2200, 1, 1);
+
+   private final Database db;
+   private final int customerID;
+   private final int[][] rooms;
+   private final int nights;
+
+   public BookingContention(Database db, int customerID, int[][] rooms, int nights) {
+      this.db = db;
+      this.customerID = customerID;
+      this.rooms = rooms;
+      this.nights = nights;
+   }
+
+   /**
+    * Result of one run.
+    */
+   public static class Report {
+      public final String mode;
+      public final long attempts, booked, unavailable, errors, totalNanos;
+      public final double seconds;
+
+      Report(String mode, long attempts, long booked, long unavailable, long errors, long totalNanos, double seconds) {
+         this.mode = mode;
+         this.attempts = attempts;
+         this.booked = booked;
+         this.unavailable = unavailable;
+         this.errors = errors;
+         this.totalNanos = totalNanos;
+         this.seconds = seconds;
+      }
+
+      @Override
+      public String toString() {
+         return String.format("%-8s %9.0f attempts/s  booked=%d unavailable=%d errors=%d  mean=%.3f ms",
+               mode, attempts / seconds, booked, unavailable, errors,
+               attempts == 0 ? 0.0 : totalNanos / 1e6 / attempts);
+      }
+   }
+
+   /**
+    * Runs {@code threads} threads for {@code seconds} against one service.
+    */
+   public Report run(String mode, final BookingService service, int threads, double seconds) throws Exception {
+      final AtomicLong attempts = new AtomicLong();
+      final AtomicLong booked = new AtomicLong();
+      final AtomicLong unavailable = new AtomicLong();
+      final AtomicLong errors = new AtomicLong();
+      final AtomicLong nanos = new AtomicLong();
+      final long deadline = System.nanoTime() + (long) (seconds * 1e9);
+      final CountDownLatch start = new CountDownLatch(1);
+      final CountDownLatch done = new CountDownLatch(threads);
+
+      for (int t = 0; t < threads; t++) {
+         Thread worker = new Thread(() -> {
+            try {
+               start.await();
+               ThreadLocalRandom rnd = ThreadLocalRandom.current();
+               while (System.nanoTime() < deadline) {
+                  int[] room = rooms[rnd.nextInt(rooms.length)];
+                  BookingRequest r = new BookingRequest(room[0], room[1], WINDOW_START.plusDays(rnd.nextInt(nights)));
+                  long t0 = System.nanoTime();
+                  try {
+                     if (service.book(customerID, r).isBooked())
+                        booked.incrementAndGet();
+                     else
+                        unavailable.incrementAndGet();
+                  } catch (Exception e) {
+                     errors.incrementAndGet();
+                  }
+                  nanos.addAndGet(System.nanoTime() - t0);
+                  attempts.incrementAndGet();
+               }
+            } catch (InterruptedException e) {
+               Thread.currentThread().interrupt();
+            } finally {
+               done.countDown();
+            }
+         }, "booker-" + t);
+         worker.setDaemon(true);
+         worker.start();
+      }
+      long t0 = System.nanoTime();
+      start.countDown();
+      done.await();
+      double elapsed = (System.nanoTime() - t0) / 1e9;
+
+      int stored = db.queryForInt("SELECT count(*) FROM RoomBookings WHERE bookingDate >= ?", java.sql.Date.valueOf(WINDOW_START));
+      if (stored != booked.get())
+         throw new IllegalStateException(mode + ": reported " + booked.get() + " bookings but stored " + stored);
+      return new Report(mode, attempts.get(), booked.get(), unavailable.get(), errors.get(), nanos.get(), elapsed);
+   }
+
+   /**
+    * Deletes every booking in the benchmark window.
+    */
+   public void cleanup() throws Exception {
+      db.executeUpdate("DELETE FROM RoomBookings WHERE bookingDate >= ?", java.sql.Date.valueOf(WINDOW_START));
+   }
+
+   public static void main(String[] args) throws Exception {
+      if (args.length < 3) {
+         System.err.println("Usage: java hoteldb.BookingContention <dbname> <port> <user> "
+               + "[--threads N] [--rooms K] [--nights D] [--seconds S] [--mode locks|nolocks|both]");
+         System.exit(1);
+      }
+      int threads = 32;
+      int roomCount = 4;
+      int nights = 30;
+      double seconds = 10;
+      String mode = "both";
+      for (int i = 3; i < args.length; i++) {
+         if (args[i].equals("--threads")) threads = Integer.parseInt(args[++i]);
+         else if (args[i].equals("--rooms")) roomCount = Integer.parseInt(args[++i]);
+         else if (args[i].equals("--nights")) nights = Integer.parseInt(args[++i]);
+         else if (args[i].equals("--seconds")) seconds = Double.parseDouble(args[++i]);
+         else if (args[i].equals("--mode")) mode = args[++i];
+      }
+
+      String url = "jdbc:postgresql://localhost:" + args[1] + "/" + args[0];
+      ConnectionPool pool = new ConnectionPool(url, args[2], "", 1, threads);
+      try {
+         Database db = new Database(pool);
+         int customer = db.queryForInt("SELECT min(userID) FROM Users");
+         List<RoomRow> popular = db.query("SELECT hotelID, roomNumber, price, imageURL FROM Rooms "
+               + "ORDER BY hotelID, roomNumber LIMIT ?", RoomRow.MAPPER, roomCount);
+         int[][] rooms = new int[popular.size()][];
+         for (int i = 0; i < rooms.length; i++)
+            rooms[i] = new int[] {popular.get(i).hotelID, popular.get(i).roomNumber};
+
+         BookingContention bench = new BookingContention(db, customer, rooms, nights);
+         System.out.printf("%d threads, %d rooms x %d nights%n", threads, rooms.length, nights);
+         bench.cleanup();
+         try {
+            if (!mode.equals("nolocks")) {
+               System.out.println(bench.run("locks", new BookingService(db), threads, seconds));
+               bench.cleanup();
+            }
+            if (!mode.equals("locks")) {
+               System.out.println(bench.run("nolocks", new BookingService(db, null), threads, seconds));
+            }
+         } finally {
+            bench.cleanup();
+         }
+      } finally {
+         pool.close();
+      }
+   }
+}
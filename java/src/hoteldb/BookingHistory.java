@@ -0,0 +1,132 @@
+package hoteldb;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+/**
+ * A hotel's bookings in a date range, one page at a time, ordered by
+ * (bookingDate, bookingID).
+ *
+ * Each page is a keyset query that continues after the last row of the
+ * previous one, so page 1000 costs what page 1 costs, using the
+ * (hotelID, bookingDate, bookingID) index; nothing is held open between
+ * pages. With a prefetch executor the next page is read in the background
+ * while the caller shows the current one.
+ *
+ * Not thread safe: one reader pages through it.
+ */
+public class BookingHistory implements AutoCloseable {
+
+   private final HotelOperations ops;
+   private final int hotelID;
+   private final LocalDate from;
+   private final LocalDate to;
+   private final int pageSize;
+   private final Executor prefetcher;
+
+   // key of the last row handed out; bookingIDs start at 1
+   private LocalDate afterDate;
+   private int afterID = 0;
+   private boolean more = true;
+   private FutureTask<List<BookingRow>> prefetched = null;
+
+   /**
+    * @param from first bookingDate, inclusive
+    * @param to last bookingDate, inclusive
+    * @param prefetcher runs the read of the next page; null reads on demand
+    */
+   BookingHistory(HotelOperations ops, int hotelID, LocalDate from, LocalDate to, int pageSize,
+         Executor prefetcher) {
+      if (pageSize < 1)
+         throw new IllegalArgumentException("pageSize must be at least 1");
+      if (to.isBefore(from))
+         throw new IllegalArgumentException("to " + to + " is before from " + from);
+      this.ops = ops;
+      this.hotelID = hotelID;
+      this.from = from;
+      this.to = to;
+      this.pageSize = pageSize;
+      this.prefetcher = prefetcher;
+      this.afterDate = from;
+   }
+
+   /**
+    * @return false once a page came back with every remaining booking
+    */
+   public boolean hasNext() {
+      return more;
+   }
+
+   /**
+    * @return the next page, at most pageSize bookings
+    * @throws java.sql.SQLException when the page could not be read
+    */
+   public List<BookingRow> next() throws SQLException {
+      if (!more)
+         throw new NoSuchElementException();
+      List<BookingRow> page;
+      if (prefetched != null) {
+         page = await(prefetched);
+         prefetched = null;
+      } else {
+         page = read(afterDate, afterID);
+      }
+      // one row past the page tells whether there is another
+      more = page.size() > pageSize;
+      if (more)
+         page = new ArrayList<BookingRow>(page.subList(0, pageSize));
+      if (!page.isEmpty()) {
+         BookingRow last = page.get(page.size() - 1);
+         afterDate = last.bookingDate;
+         afterID = last.bookingID;
+      }
+      if (more && prefetcher != null) {
+         final LocalDate date = afterDate;
+         final int id = afterID;
+         prefetched = new FutureTask<List<BookingRow>>(() -> read(date, id));
+         prefetcher.execute(prefetched);
+      }
+      return page;
+   }
+
+   /**
+    * Drops a page being prefetched.
+    */
+   @Override
+   public void close() {
+      more = false;
+      if (prefetched != null) {
+         prefetched.cancel(false);
+         prefetched = null;
+      }
+   }
+
+   private List<BookingRow> read(LocalDate date, int id) throws SQLException {
+      return ops.hotelBookings(hotelID, from, to, date, id, pageSize + 1);
+   }
+
+   private static List<BookingRow> await(FutureTask<List<BookingRow>> task) throws SQLException {
+      try {
+         return task.get();
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new SQLException("interrupted while reading bookings", e);
+      } catch (CancellationException e) {
+         throw new SQLException("page read was cancelled", e);
+      } catch (ExecutionException e) {
+         Throwable cause = e.getCause();
+         if (cause instanceof SQLException)
+            throw (SQLException) cause;
+         if (cause instanceof RuntimeException)
+            throw (RuntimeException) cause;
+         throw new SQLException(cause);
+      }
+   }
+}
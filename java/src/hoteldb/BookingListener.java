@@ -0,0 +1,16 @@
+package hoteldb;
+
+/**
+ * Told about every room-night {@link BookingService} books, after the
+ * booking transaction committed. In-memory structures derived from
+ * RoomBookings register one of these to stay current.
+ */
+public interface BookingListener {
+
+   /**
+    * @param customerID the customer the room-night was booked for
+    * @param request the room-night
+    * @param bookingID the generated RoomBookings.bookingID
+    */
+   void booked(int customerID, BookingRequest request, int bookingID);
+}
@@ -0,0 +1,253 @@
+package hoteldb;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import org.postgresql.PGConnection;
+
+/**
+ * Upkeep of the monthly RoomBookings partitions (see create_tables.sql):
+ * creating the months ahead before bookings arrive for them, and archiving
+ * old months.
+ *
+ * Archiving a month streams its partition with COPY to a gzipped CSV file
+ * in the layout of bookings.csv, then detaches and drops it, all in one
+ * transaction. Dropping a whole partition leaves neither dead rows for
+ * VACUUM nor index bloat behind, unlike deleting old bookings from one big
+ * table. The partition is locked against writes before the COPY, so a
+ * booking for the month waits until the month is gone, and a month that
+ * could not be written is left as it was. Once a month is archived, the
+ * default partition refuses bookings dated before its end: the UNIQUE
+ * (hotelID, roomNumber, bookingDate) constraint no longer sees the archived
+ * rows, so such a booking could double-book a room-night. Archiving takes
+ * the months oldest first; a booking of the month that arrives during the
+ * COPY can deadlock with the DETACH, and Postgres then aborts one of the
+ * two.
+ *
+ * Usage: java hoteldb.BookingPartitions &lt;dbname&gt; &lt;port&gt; &lt;user&gt;
+ *        [--ahead MONTHS] [--archive-before yyyy-mm-dd --dir DIR]
+ */
+public class BookingPartitions {
+
+   public static final int DEFAULT_MONTHS_AHEAD = 3;
+
+   static final String CREATE = "SELECT create_booking_partitions(?, ?)";
+
+   // on RoomBookings_default: no bookings dated in an archived month
+   static final String ARCHIVED = "roombookings_archived";
+
+   static final String MONTHS =
+         "SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid "
+       + "WHERE i.inhparent = 'roombookings'::regclass AND c.relname ~ '^roombookings_[0-9]{4}_[0-9]{2}$' "
+       + "ORDER BY c.relname";
+
+   /**
+    * One archived month.
+    */
+   public static final class Archived {
+      public final YearMonth month;
+      public final File file;
+      public final long rows;
+
+      Archived(YearMonth month, File file, long rows) {
+         this.month = month;
+         this.file = file;
+         this.rows = rows;
+      }
+
+      @Override
+      public String toString() {
+         return String.format("%s: %d bookings -> %s (%d bytes)", month, rows, file, file.length());
+      }
+   }
+
+   private final Database db;
+
+   public BookingPartitions(Database db) {
+      this.db = db;
+   }
+
+   /**
+    * Creates the partitions from this month through {@code monthsAhead}
+    * months from now. Bookings of those months already in the default
+    * partition are moved into them.
+    *
+    * @return the number of partitions created
+    * @throws java.sql.SQLException when RoomBookings is not partitioned, or
+    *         a partition could not be created
+    */
+   public int ensure(int monthsAhead) throws SQLException {
+      LocalDate today = LocalDate.now();
+      return db.queryForInt(CREATE, java.sql.Date.valueOf(today),
+            java.sql.Date.valueOf(today.plusMonths(monthsAhead)));
+   }
+
+   /**
+    * @return the months that have a partition, oldest first
+    * @throws java.sql.SQLException when the catalog could not be read
+    */
+   public List<YearMonth> months() throws SQLException {
+      List<YearMonth> months = new ArrayList<YearMonth>();
+      for (List<String> row : db.executeQueryAndReturnResult(MONTHS))
+         months.add(month(row.get(0)));
+      return months;
+   }
+
+   /**
+    * Archives every month that ends on or before {@code before} into
+    * {@code dir}, one roombookings_yyyy_mm.csv.gz file per month.
+    *
+    * @return the months archived, oldest first
+    * @throws java.sql.SQLException when a partition could not be read,
+    *         detached or dropped; that month is left attached, the months
+    *         before it stay archived
+    * @throws java.io.IOException when a file could not be written; that
+    *         month is left attached
+    */
+   public List<Archived> archive(LocalDate before, File dir) throws SQLException, IOException {
+      if (!dir.isDirectory() && !dir.mkdirs())
+         throw new IOException("cannot create " + dir);
+      List<Archived> archived = new ArrayList<Archived>();
+      for (YearMonth month : months()) {
+         if (month.plusMonths(1).atDay(1).isAfter(before))
+            break;
+         archived.add(archive(month, dir));
+      }
+      return archived;
+   }
+
+   private Archived archive(YearMonth month, File dir) throws SQLException, IOException {
+      String part = name(month);
+      File file = new File(dir, part + ".csv.gz");
+      boolean done = false;
+      Connection conn = db.getPool().borrow();
+      try {
+         conn.setAutoCommit(false);
+         Statement stmt = conn.createStatement();
+         try {
+            // bookings for the month wait from here until the commit; reads go on
+            stmt.execute("LOCK TABLE " + part + " IN EXCLUSIVE MODE");
+            long rows = copyOut(conn, part, file);
+            stmt.execute("ALTER TABLE RoomBookings DETACH PARTITION " + part);
+            stmt.execute("DROP TABLE " + part);
+            // NOT VALID: older rows already in the default partition stay
+            stmt.execute("ALTER TABLE RoomBookings_default DROP CONSTRAINT IF EXISTS " + ARCHIVED
+                  + ", ADD CONSTRAINT " + ARCHIVED + " CHECK (bookingDate >= '" + month.plusMonths(1).atDay(1)
+                  + "') NOT VALID");
+            conn.commit();
+            done = true;
+            return new Archived(month, file, rows);
+         } finally {
+            stmt.close();
+         }
+      } finally {
+         if (!done)
+            file.delete();
+         // rolls back a failed archive and restores auto-commit
+         db.getPool().release(conn);
+      }
+   }
+
+   // the partition as gzipped CSV, written to a temporary file and renamed
+   // once complete, so a file that exists is whole
+   private static long copyOut(Connection conn, String part, File file) throws SQLException, IOException {
+      File tmp = new File(file.getPath() + ".tmp");
+      long rows;
+      OutputStream out = new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16), 1 << 16);
+      try {
+         PGConnection pg = conn.unwrap(PGConnection.class);
+         rows = pg.getCopyAPI().copyOut("COPY " + part + " (bookingID, customerID, hotelID, roomNumber, bookingDate) "
+               + "TO STDOUT WITH (FORMAT csv, HEADER true)", out);
+      } catch (SQLException | IOException e) {
+         out.close();
+         tmp.delete();
+         throw e;
+      }
+      out.close();
+      if (!tmp.renameTo(file)) {
+         tmp.delete();
+         throw new IOException("could not write " + file);
+      }
+      return rows;
+   }
+
+   /**
+    * Creates the months ahead every {@code periodHours}, starting now, so
+    * the default partition never has to hold current bookings.
+    */
+   public ScheduledExecutorService ensureEvery(long periodHours, final int monthsAhead) {
+      ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+         Thread t = new Thread(r, "booking-partitions");
+         t.setDaemon(true);
+         return t;
+      });
+      scheduler.scheduleAtFixedRate(() -> {
+         try {
+            int created = ensure(monthsAhead);
+            if (created > 0)
+               System.err.println("Created " + created + " booking partition(s)");
+         } catch (SQLException e) {
+            System.err.println("Booking partitions not created: " + e.getMessage());
+         }
+      }, 0, periodHours, TimeUnit.HOURS);
+      return scheduler;
+   }
+
+   static String name(YearMonth month) {
+      return String.format("roombookings_%04d_%02d", month.getYear(), month.getMonthValue());
+   }
+
+   static YearMonth month(String name) {
+      String[] parts = name.trim().split("_");
+      return YearMonth.of(Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+   }
+
+   public static void main(String[] args) throws Exception {
+      if (args.length < 3) {
+         System.err.println("Usage: java hoteldb.BookingPartitions <dbname> <port> <user> "
+               + "[--ahead MONTHS] [--archive-before yyyy-mm-dd --dir DIR]");
+         System.exit(1);
+      }
+      int ahead = DEFAULT_MONTHS_AHEAD;
+      LocalDate before = null;
+      File dir = new File("archive");
+      for (int i = 3; i < args.length; i++) {
+         if (args[i].equals("--ahead")) ahead = Integer.parseInt(args[++i]);
+         else if (args[i].equals("--archive-before")) before = LocalDate.parse(args[++i]);
+         else if (args[i].equals("--dir")) dir = new File(args[++i]);
+      }
+
+      String url = "jdbc:postgresql://localhost:" + args[1] + "/" + args[0];
+      ConnectionPool pool = new ConnectionPool(url, args[2], "", 1, 1);
+      try {
+         BookingPartitions partitions = new BookingPartitions(new Database(pool));
+         System.out.println("Created " + partitions.ensure(ahead) + " partition(s) up to " + ahead + " months ahead");
+         if (before != null) {
+            long start = System.nanoTime();
+            List<Archived> archived = partitions.archive(before, dir);
+            for (Archived a : archived)
+               System.out.println(a);
+            System.out.printf("Archived %d month(s) in %.1f s%n", archived.size(), (System.nanoTime() - start) / 1e9);
+         }
+         List<YearMonth> months = partitions.months();
+         if (!months.isEmpty())
+            System.out.println(months.size() + " partitions, " + months.get(0) + " to " + months.get(months.size() - 1));
+      } finally {
+         pool.close();
+      }
+   }
+}
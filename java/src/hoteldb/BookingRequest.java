@@ -0,0 +1,40 @@
+package hoteldb;
+
+import java.time.LocalDate;
+
+/**
+ * One room-night to book: room {@code roomNumber} of hotel {@code hotelID} on
+ * {@code date}.
+ */
+public class BookingRequest {
+
+   public final int hotelID;
+   public final int roomNumber;
+   public final LocalDate date;
+
+   public BookingRequest(int hotelID, int roomNumber, LocalDate date) {
+      if (date == null)
+         throw new IllegalArgumentException("booking date is required");
+      this.hotelID = hotelID;
+      this.roomNumber = roomNumber;
+      this.date = date;
+   }
+
+   @Override
+   public boolean equals(Object o) {
+      if (!(o instanceof BookingRequest))
+         return false;
+      BookingRequest b = (BookingRequest) o;
+      return hotelID == b.hotelID && roomNumber == b.roomNumber && date.equals(b.date);
+   }
+
+   @Override
+   public int hashCode() {
+      return (hotelID * 31 + roomNumber) * 31 + date.hashCode();
+   }
+
+   @Override
+   public String toString() {
+      return "room " + roomNumber + " of hotel " + hotelID + " on " + date;
+   }
+}
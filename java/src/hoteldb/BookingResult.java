@@ -0,0 +1,43 @@
+package hoteldb;
+
+/**
+ * Outcome of one {@link BookingRequest} in a batch.
+ */
+public class BookingResult {
+
+   public enum Status {
+      /** the room-night was booked */
+      BOOKED,
+      /** the room is already booked on that date */
+      UNAVAILABLE,
+      /** the hotel has no such room */
+      NO_SUCH_ROOM
+   }
+
+   public final BookingRequest request;
+   public final Status status;
+   // generated RoomBookings.bookingID, or -1 when not booked
+   public final int bookingID;
+   // nightly price of the room, or -1 when the room does not exist
+   public final int price;
+
+   public BookingResult(BookingRequest request, Status status, int bookingID, int price) {
+      this.request = request;
+      this.status = status;
+      this.bookingID = bookingID;
+      this.price = price;
+   }
+
+   public boolean isBooked() {
+      return status == Status.BOOKED;
+   }
+
+   @Override
+   public String toString() {
+      switch (status) {
+         case BOOKED: return request + ": booked (bookingID " + bookingID + ") at $" + price;
+         case UNAVAILABLE: return request + ": already booked";
+         default: return request + ": no such room";
+      }
+   }
+}
@@ -0,0 +1,32 @@
+package hoteldb;
+
+import java.time.LocalDate;
+
+/**
+ * One row of the RoomBookings table.
+ */
+public class BookingRow {
+
+   public static final RowMapper<BookingRow> MAPPER = (t, r) -> new BookingRow(
+         t.getInt(r, "bookingID"), t.getInt(r, "customerID"), t.getInt(r, "hotelID"),
+         t.getInt(r, "roomNumber"), t.getDate(r, "bookingDate"));
+
+   public final int bookingID;
+   public final int customerID;
+   public final int hotelID;
+   public final int roomNumber;
+   public final LocalDate bookingDate;
+
+   public BookingRow(int bookingID, int customerID, int hotelID, int roomNumber, LocalDate bookingDate) {
+      this.bookingID = bookingID;
+      this.customerID = customerID;
+      this.hotelID = hotelID;
+      this.roomNumber = roomNumber;
+      this.bookingDate = bookingDate;
+   }
+
+   @Override
+   public String toString() {
+      return "booking " + bookingID + ": room " + roomNumber + " of hotel " + hotelID + " on " + bookingDate;
+   }
+}
@@ -0,0 +1,212 @@
+package hoteldb;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Books many room-nights (a multi-night stay or a group block) in one round
+ * trip.
+ *
+ * A batch is a single statement whatever its size: the request columns travel
+ * as three arrays that the server unnests, an INSERT ... ON CONFLICT DO
+ * NOTHING stores the room-nights that exist and are still free, and the outer
+ * SELECT reports each request's price and generated bookingID. The UNIQUE
+ * (hotelID, roomNumber, bookingDate) constraint makes the insert-if-free
+ * atomic, so two sessions can never book the same room-night.
+ *
+ * Within this process, batches first take the {@link LockStripes} of their
+ * room-nights, so threads competing for a popular room wait in the JVM
+ * rather than on a Postgres row lock while holding a connection.
+ */
+public class BookingService {
+
+   static final String BOOK =
+         "WITH q AS (SELECT * FROM unnest(?::int[], ?::int[], ?::text[]::date[]) "
+       + "WITH ORDINALITY AS q(hotelID, roomNumber, bookingDate, ord)), "
+       + "ins AS (INSERT INTO RoomBookings (customerID, hotelID, roomNumber, bookingDate) "
+       + "SELECT ?, q.hotelID, q.roomNumber, q.bookingDate FROM q "
+       + "JOIN Rooms r ON r.hotelID = q.hotelID AND r.roomNumber = q.roomNumber "
+       + "ORDER BY q.hotelID, q.roomNumber, q.bookingDate "
+       + "ON CONFLICT (hotelID, roomNumber, bookingDate) DO NOTHING "
+       + "RETURNING bookingID, hotelID, roomNumber, bookingDate) "
+       + "SELECT q.ord, r.price, ins.bookingID FROM q "
+       + "LEFT JOIN Rooms r ON r.hotelID = q.hotelID AND r.roomNumber = q.roomNumber "
+       + "LEFT JOIN ins ON ins.hotelID = q.hotelID AND ins.roomNumber = q.roomNumber "
+       + "AND ins.bookingDate = q.bookingDate";
+
+   private final Database db;
+   private final LockStripes locks;
+   private final List<BookingListener> listeners = new CopyOnWriteArrayList<BookingListener>();
+
+   public BookingService(Database db) {
+      this(db, new LockStripes(Integer.getInteger("hotel.booking.stripes", 1024)));
+   }
+
+   /**
+    * @param locks in-process stripes for room-nights, or null to leave all
+    *        ordering to the database
+    */
+   public BookingService(Database db, LockStripes locks) {
+      this.db = db;
+      this.locks = locks;
+   }
+
+   /**
+    * Registers a listener told about every committed booking.
+    */
+   public void addListener(BookingListener listener) {
+      listeners.add(listener);
+   }
+
+   /**
+    * Books a single room-night.
+    *
+    * @throws java.sql.SQLException when the booking could not be stored
+    */
+   public BookingResult book(int customerID, BookingRequest request) throws SQLException {
+      List<BookingRequest> one = new ArrayList<BookingRequest>(1);
+      one.add(request);
+      return book(customerID, one).get(0);
+   }
+
+   /**
+    * Books every free room-night in {@code requests} for {@code customerID}.
+    * Room-nights that are taken, or repeated within the batch, are reported
+    * as UNAVAILABLE; unknown rooms as NO_SUCH_ROOM.
+    *
+    * @return one result per request, in request order
+    * @throws java.sql.SQLException when the batch could not be stored, e.g.
+    *         a room-night falls in a month {@link BookingPartitions} has
+    *         archived; nothing is booked in that case
+    */
+   public List<BookingResult> book(int customerID, List<BookingRequest> requests) throws SQLException {
+      int n = requests.size();
+      List<BookingResult> results = new ArrayList<BookingResult>(n);
+      if (n == 0)
+         return results;
+
+      // repeats within the batch are answered locally; only the first
+      // occurrence of each room-night goes to the server
+      List<BookingRequest> unique = new ArrayList<BookingRequest>(n);
+      int[] slot = new int[n];
+      Map<BookingRequest, Integer> first = new HashMap<BookingRequest, Integer>();
+      for (int i = 0; i < n; i++) {
+         BookingRequest r = requests.get(i);
+         Integer j = first.get(r);
+         if (j == null) {
+            first.put(r, unique.size());
+            slot[i] = unique.size();
+            unique.add(r);
+         } else {
+            slot[i] = -1 - j;
+         }
+      }
+
+      int m = unique.size();
+      int[] price = new int[m];
+      int[] bookingID = new int[m];
+      int[] stripes = locks == null ? null : locks.stripes(unique);
+      if (stripes != null)
+         locks.lockAll(stripes);
+      try {
+         // timed like the Database helpers, connection wait included
+         QueryMetrics.Probe probe = db.getMetrics().begin(QueryMetrics.Op.BOOK, BOOK);
+         try {
+            ConnectionPool pool = db.getPool();
+            Connection conn = pool.borrow();
+            try {
+               PreparedStatement book = pool.prepare(conn, BOOK);
+               book.clearParameters();
+               bindRequests(conn, book, 1, unique);
+               book.setInt(4, customerID);
+               ResultSet rs = book.executeQuery();
+               try {
+                  while (rs.next()) {
+                     int i = (int) rs.getLong(1) - 1;
+                     price[i] = rs.getInt(2);
+                     if (rs.wasNull())
+                        price[i] = -1;
+                     bookingID[i] = rs.getInt(3);
+                     if (rs.wasNull())
+                        bookingID[i] = -1;
+                     probe.row();
+                  }
+               } finally {
+                  rs.close();
+               }
+            } catch (SQLException e) {
+               pool.invalidate(conn, BOOK);
+               throw e;
+            } finally {
+               pool.release(conn);
+            }
+         } catch (SQLException e) {
+            throw probe.failed(e);
+         } finally {
+            probe.end();
+         }
+
+         for (int i = 0; i < n; i++) {
+            BookingRequest r = requests.get(i);
+            int j = slot[i] >= 0 ? slot[i] : -1 - slot[i];
+            if (price[j] < 0)
+               results.add(new BookingResult(r, BookingResult.Status.NO_SUCH_ROOM, -1, -1));
+            else if (slot[i] >= 0 && bookingID[j] >= 0)
+               results.add(new BookingResult(r, BookingResult.Status.BOOKED, bookingID[j], price[j]));
+            else
+               results.add(new BookingResult(r, BookingResult.Status.UNAVAILABLE, -1, price[j]));
+         }
+         // before the stripes are released, so a waiting thread sees the
+         // listeners' view of this batch
+         for (BookingResult result : results)
+            if (result.isBooked())
+               for (BookingListener listener : listeners)
+                  listener.booked(customerID, result.request, result.bookingID);
+         return results;
+      } finally {
+         if (stripes != null)
+            locks.unlockAll(stripes);
+      }
+   }
+
+   /**
+    * Convenience for a stay: the same room on {@code nights} consecutive
+    * dates starting at {@code firstNight}.
+    */
+   public static List<BookingRequest> stay(int hotelID, int roomNumber, LocalDate firstNight, int nights) {
+      List<BookingRequest> requests = new ArrayList<BookingRequest>(nights);
+      for (int i = 0; i < nights; i++)
+         requests.add(new BookingRequest(hotelID, roomNumber, firstNight.plusDays(i)));
+      return requests;
+   }
+
+   // binds the hotel, room and date arrays to three consecutive placeholders
+   private static void bindRequests(Connection conn, PreparedStatement ps, int first,
+                                    List<BookingRequest> requests) throws SQLException {
+      int n = requests.size();
+      Integer[] hotels = new Integer[n];
+      Integer[] rooms = new Integer[n];
+      String[] dates = new String[n];
+      for (int i = 0; i < n; i++) {
+         BookingRequest r = requests.get(i);
+         hotels[i] = r.hotelID;
+         rooms[i] = r.roomNumber;
+         dates[i] = r.date.toString();
+      }
+      Array h = conn.createArrayOf("int4", hotels);
+      Array r = conn.createArrayOf("int4", rooms);
+      Array d = conn.createArrayOf("text", dates);
+      ps.setArray(first, h);
+      ps.setArray(first + 1, r);
+      ps.setArray(first + 2, d);
+   }
+}
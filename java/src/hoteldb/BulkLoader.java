@@ -0,0 +1,438 @@
+package hoteldb;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+import org.postgresql.copy.PGCopyOutputStream;
+
+/**
+ * Loads the project CSV files into Postgres through the client-side COPY
+ * protocol, so it works from any machine that can reach the database.
+ *
+ * Tables are loaded level by level in foreign key order; tables on the same
+ * level are independent and load in parallel on separate connections. Dates
+ * written as M/d/yyyy are rewritten to ISO on the fly, every serial sequence
+ * is moved past the largest loaded key, and secondary indexes can be dropped
+ * before the load and rebuilt after it.
+ *
+ * Usage: java hoteldb.BulkLoader &lt;dbname&gt; &lt;port&gt; &lt;user&gt; [dataDir]
+ *        [--threads N] [--defer-indexes] [--truncate]
+ */
+public class BulkLoader {
+
+   /**
+    * How one CSV file maps onto one table.
+    */
+   public static class TableSpec {
+      public final String table;
+      public final String file;
+      public final String columns;
+      // 0-based CSV fields holding M/d/yyyy dates
+      public final int[] dateFields;
+      // serial key column, or null
+      public final String serialColumn;
+      // foreign key depth; tables on the same level load in parallel
+      public final int level;
+
+      public TableSpec(String table, String file, String columns, int[] dateFields, String serialColumn, int level) {
+         this.table = table;
+         this.file = file;
+         this.columns = columns;
+         this.dateFields = dateFields;
+         this.serialColumn = serialColumn;
+         this.level = level;
+      }
+   }
+
+   /**
+    * The layout of create_tables.sql and the files in data/.
+    */
+   public static final List<TableSpec> TABLES = new ArrayList<TableSpec>();
+   static {
+      TABLES.add(new TableSpec("Users", "users.csv", "userID, name, password, userType", new int[0], "userID", 0));
+      TABLES.add(new TableSpec("MaintenanceCompany", "company.csv", "companyID, name, addrress", new int[0], null, 0));
+      TABLES.add(new TableSpec("Hotel", "hotels.csv",
+            "hotelID, hotelName, latitude, longitude, dateEstablished, managerUserID", new int[] {4}, null, 1));
+      TABLES.add(new TableSpec("Rooms", "rooms.csv", "hotelID, roomNumber, price, imageURL", new int[0], null, 2));
+      TABLES.add(new TableSpec("RoomBookings", "bookings.csv",
+            "bookingID, customerID, hotelID, roomNumber, bookingDate", new int[] {4}, "bookingID", 3));
+      TABLES.add(new TableSpec("RoomRepairs", "roomRepairs.csv",
+            "repairID, companyID, hotelID, roomNumber, repairDate", new int[] {4}, "repairID", 3));
+      TABLES.add(new TableSpec("RoomRepairRequests", "roomRepairRequests.csv",
+            "requestNumber, managerID, repairID", new int[0], "requestNumber", 4));
+      TABLES.add(new TableSpec("RoomUpdatesLog", "roomUpdatesLog.csv",
+            "updateNumber, managerID, hotelID, roomNumber, updatedOn", new int[0], "updateNumber", 4));
+   }
+
+   /**
+    * Rows loaded into one table and how long it took.
+    */
+   public static class TableReport {
+      public final String table;
+      public final long rows;
+      public final long nanos;
+
+      TableReport(String table, long rows, long nanos) {
+         this.table = table;
+         this.rows = rows;
+         this.nanos = nanos;
+      }
+
+      public double rowsPerSecond() {
+         return nanos == 0 ? 0 : rows * 1e9 / nanos;
+      }
+
+      @Override
+      public String toString() {
+         return String.format("%-20s %12d rows %10.2f s %14.0f rows/s", table, rows, nanos / 1e9, rowsPerSecond());
+      }
+   }
+
+   /**
+    * Loads one table, or returns null when there is nothing to load for it.
+    */
+   public interface TableLoad {
+      TableReport load(TableSpec spec) throws Exception;
+   }
+
+   /**
+    * Writes the rows of one table as CSV, without a header line.
+    */
+   public interface CsvProducer {
+      void writeTo(OutputStream out) throws Exception;
+   }
+
+   private final ConnectionPool pool;
+   private final int threads;
+   private boolean deferIndexes = false;
+   private boolean truncate = false;
+
+   public BulkLoader(ConnectionPool pool, int threads) {
+      this.pool = pool;
+      this.threads = Math.max(threads, 1);
+   }
+
+   /**
+    * Drop secondary (non-constraint) indexes before loading and rebuild them
+    * afterwards.
+    */
+   public void setDeferIndexes(boolean deferIndexes) { this.deferIndexes = deferIndexes; }
+
+   /**
+    * Empty every table before loading.
+    */
+   public void setTruncate(boolean truncate) { this.truncate = truncate; }
+
+   /**
+    * Loads every table of {@code specs} whose file exists in {@code dataDir}.
+    *
+    * @return one report per loaded table, in load order
+    * @throws Exception when a table failed to load; the levels already loaded
+    *         stay loaded
+    */
+   public List<TableReport> load(final File dataDir, List<TableSpec> specs) throws Exception {
+      return load(specs, spec -> {
+         File file = new File(dataDir, spec.file);
+         return file.isFile() ? loadTable(spec, file) : null;
+      });
+   }
+
+   /**
+    * Loads every table of {@code specs} with {@code action}, level by level,
+    * with the same truncation, index deferral and sequence reset as loading
+    * from files.
+    *
+    * @return one report per loaded table, in load order
+    * @throws Exception when a table failed to load; the levels already loaded
+    *         stay loaded
+    */
+   public List<TableReport> load(List<TableSpec> specs, final TableLoad action) throws Exception {
+      if (truncate) {
+         StringBuilder sql = new StringBuilder("TRUNCATE ");
+         for (int i = 0; i < specs.size(); i++)
+            sql.append(i == 0 ? "" : ", ").append(specs.get(i).table);
+         execute(sql.append(" CASCADE").toString());
+      }
+
+      Map<String, String> deferred = deferIndexes ? dropSecondaryIndexes(specs) : new LinkedHashMap<String, String>();
+
+      List<TableReport> reports = new ArrayList<TableReport>();
+      ExecutorService workers = Executors.newFixedThreadPool(threads);
+      try {
+         int maxLevel = 0;
+         for (TableSpec spec : specs)
+            maxLevel = Math.max(maxLevel, spec.level);
+         for (int level = 0; level <= maxLevel; level++) {
+            List<Future<TableReport>> running = new ArrayList<Future<TableReport>>();
+            for (final TableSpec spec : specs)
+               if (spec.level == level)
+                  running.add(workers.submit(() -> action.load(spec)));
+            // the next level references these tables, so wait for all of them
+            for (Future<TableReport> f : running) {
+               TableReport report = f.get();
+               if (report != null)
+                  reports.add(report);
+            }
+         }
+
+         List<Future<?>> rebuilt = new ArrayList<Future<?>>();
+         for (final String definition : deferred.values())
+            rebuilt.add(workers.submit(() -> { execute(definition); return null; }));
+         for (Future<?> f : rebuilt)
+            f.get();
+      } finally {
+         workers.shutdown();
+      }
+
+      for (TableSpec spec : specs)
+         if (spec.serialColumn != null)
+            resetSequence(spec);
+      return reports;
+   }
+
+   /**
+    * Streams one CSV file into its table.
+    */
+   public TableReport loadTable(TableSpec spec, File file) throws SQLException, IOException {
+      long start = System.nanoTime();
+      long rows;
+      Connection conn = pool.borrow();
+      try {
+         PGConnection pg = conn.unwrap(PGConnection.class);
+         String copy = "COPY " + spec.table + " (" + spec.columns + ") FROM STDIN WITH (FORMAT csv, HEADER true)";
+         InputStream in = new FileInputStream(file);
+         try {
+            if (spec.dateFields.length == 0) {
+               // nothing to rewrite: hand the raw bytes to the server
+               CopyManager copyAPI = pg.getCopyAPI();
+               rows = copyAPI.copyIn(copy, in, 1 << 16);
+            } else {
+               rows = copyRewritingDates(pg, copy, in, spec.dateFields);
+            }
+         } finally {
+            in.close();
+         }
+      } finally {
+         pool.release(conn);
+      }
+      TableReport report = new TableReport(spec.table, rows, System.nanoTime() - start);
+      System.out.println(report);
+      return report;
+   }
+
+   /**
+    * Streams the CSV rows {@code producer} writes into a table.
+    */
+   public TableReport copyIn(TableSpec spec, CsvProducer producer) throws Exception {
+      long start = System.nanoTime();
+      long rows;
+      Connection conn = pool.borrow();
+      try {
+         PGConnection pg = conn.unwrap(PGConnection.class);
+         PGCopyOutputStream out = new PGCopyOutputStream(pg,
+               "COPY " + spec.table + " (" + spec.columns + ") FROM STDIN WITH (FORMAT csv)", 1 << 16);
+         try {
+            producer.writeTo(out);
+            rows = out.endCopy();
+         } finally {
+            if (out.isActive())
+               out.cancelCopy();
+         }
+      } finally {
+         pool.release(conn);
+      }
+      TableReport report = new TableReport(spec.table, rows, System.nanoTime() - start);
+      System.out.println(report);
+      return report;
+   }
+
+   private static long copyRewritingDates(PGConnection pg, String copy, InputStream in, int[] dateFields)
+         throws SQLException, IOException {
+      BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16);
+      PGCopyOutputStream out = new PGCopyOutputStream(pg, copy, 1 << 16);
+      try {
+         Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+         StringBuilder line = new StringBuilder(256);
+         String raw;
+         while ((raw = reader.readLine()) != null) {
+            line.setLength(0);
+            rewriteDates(raw, dateFields, line);
+            writer.append(line).append('\n');
+         }
+         writer.flush();
+         return out.endCopy();
+      } finally {
+         if (out.isActive())
+            out.cancelCopy();
+      }
+   }
+
+   /**
+    * Copies one CSV line into {@code out}, turning M/d/yyyy values of the
+    * given fields into yyyy-MM-dd. Quoted fields are copied untouched.
+    */
+   static void rewriteDates(String line, int[] dateFields, StringBuilder out) {
+      int field = 0;
+      int i = 0;
+      int n = line.length();
+      while (true) {
+         int start = i;
+         boolean quoted = i < n && line.charAt(i) == '"';
+         if (quoted) {
+            i++;
+            while (i < n) {
+               if (line.charAt(i) == '"') {
+                  if (i + 1 < n && line.charAt(i + 1) == '"') i += 2;
+                  else { i++; break; }
+               } else {
+                  i++;
+               }
+            }
+         }
+         while (i < n && line.charAt(i) != ',')
+            i++;
+         if (!quoted && contains(dateFields, field))
+            appendIsoDate(line, start, i, out);
+         else
+            out.append(line, start, i);
+         if (i >= n)
+            return;
+         out.append(',');
+         i++;
+         field++;
+      }
+   }
+
+   private static boolean contains(int[] values, int v) {
+      for (int x : values)
+         if (x == v)
+            return true;
+      return false;
+   }
+
+   // M/d/yyyy -> yyyy-MM-dd; anything else (header, ISO dates, empty) is copied as is
+   private static void appendIsoDate(String s, int from, int to, StringBuilder out) {
+      int a = s.indexOf('/', from);
+      int b = a < 0 ? -1 : s.indexOf('/', a + 1);
+      if (a < 0 || b < 0 || b >= to) {
+         out.append(s, from, to);
+         return;
+      }
+      out.append(s, b + 1, to).append('-');
+      if (a - from == 1) out.append('0');
+      out.append(s, from, a).append('-');
+      if (b - a - 1 == 1) out.append('0');
+      out.append(s, a + 1, b);
+   }
+
+   // drops every index on the tables that does not back a constraint
+   private Map<String, String> dropSecondaryIndexes(List<TableSpec> specs) throws SQLException {
+      Map<String, String> definitions = new LinkedHashMap<String, String>();
+      Connection conn = pool.borrow();
+      try {
+         StringBuilder in = new StringBuilder();
+         for (TableSpec spec : specs)
+            in.append(in.length() == 0 ? "'" : ", '").append(spec.table.toLowerCase(Locale.ROOT)).append("'");
+         Statement stmt = conn.createStatement();
+         try {
+            ResultSet rs = stmt.executeQuery(
+                  "SELECT i.indexname, i.indexdef FROM pg_indexes i "
+                + "WHERE i.schemaname = current_schema() AND i.tablename IN (" + in + ") "
+                + "AND NOT EXISTS (SELECT 1 FROM pg_constraint c WHERE c.conname = i.indexname)");
+            // a partitioned table's index is defined ON ONLY the parent; rebuilt
+            // that way, the partitions would be left without it
+            while (rs.next())
+               definitions.put(rs.getString(1), rs.getString(2).replace(" ON ONLY ", " ON "));
+            rs.close();
+            for (String index : definitions.keySet())
+               stmt.executeUpdate("DROP INDEX " + index);
+         } finally {
+            stmt.close();
+         }
+      } finally {
+         pool.release(conn);
+      }
+      if (!definitions.isEmpty())
+         System.out.println("Deferred " + definitions.size() + " index(es) until after the load");
+      return definitions;
+   }
+
+   private void resetSequence(TableSpec spec) throws SQLException {
+      String table = spec.table.toLowerCase(Locale.ROOT);
+      String column = spec.serialColumn.toLowerCase(Locale.ROOT);
+      execute("SELECT setval(pg_get_serial_sequence('" + table + "', '" + column + "'), "
+            + "COALESCE((SELECT MAX(" + spec.serialColumn + ") FROM " + spec.table + "), 0) + 1, false)");
+   }
+
+   private void execute(String sql) throws SQLException {
+      Connection conn = pool.borrow();
+      try {
+         Statement stmt = conn.createStatement();
+         try {
+            stmt.execute(sql);
+         } finally {
+            stmt.close();
+         }
+      } finally {
+         pool.release(conn);
+      }
+   }
+
+   public static void main(String[] args) throws Exception {
+      if (args.length < 3) {
+         System.err.println("Usage: java hoteldb.BulkLoader <dbname> <port> <user> [dataDir] "
+               + "[--threads N] [--defer-indexes] [--truncate]");
+         System.exit(1);
+      }
+      File dataDir = new File("data");
+      int threads = 4;
+      boolean defer = false;
+      boolean truncate = false;
+      for (int i = 3; i < args.length; i++) {
+         if (args[i].equals("--threads")) threads = Integer.parseInt(args[++i]);
+         else if (args[i].equals("--defer-indexes")) defer = true;
+         else if (args[i].equals("--truncate")) truncate = true;
+         else dataDir = new File(args[i]);
+      }
+
+      String url = "jdbc:postgresql://localhost:" + args[1] + "/" + args[0];
+      ConnectionPool pool = new ConnectionPool(url, args[2], "", 1, threads);
+      try {
+         BulkLoader loader = new BulkLoader(pool, threads);
+         loader.setDeferIndexes(defer);
+         loader.setTruncate(truncate);
+         long start = System.nanoTime();
+         List<TableReport> reports = loader.load(dataDir, TABLES);
+         long rows = 0;
+         for (TableReport r : reports)
+            rows += r.rows;
+         double seconds = (System.nanoTime() - start) / 1e9;
+         System.out.printf("Loaded %d rows in %.2f s (%.0f rows/s)%n", rows, seconds, rows / seconds);
+      } finally {
+         pool.close();
+      }
+   }
+}
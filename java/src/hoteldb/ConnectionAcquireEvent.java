@@ -0,0 +1,29 @@
+package hoteldb;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event for one {@link ConnectionPool#borrow()}: how long the caller
+ * waited for a connection and whether it got one.
+ */
+@Name("hoteldb.ConnectionAcquire")
+@Label("Connection Acquire")
+@Category({"Hotel", "JDBC"})
+@Description("Waiting for a pooled database connection")
+@StackTrace(false)
+public class ConnectionAcquireEvent extends Event {
+
+   @Label("Pool URL")
+   public String url;
+
+   @Label("Acquired")
+   public boolean acquired;
+
+   @Label("Waiting Threads")
+   public int waiting;
+}
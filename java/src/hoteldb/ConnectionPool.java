@@ -0,0 +1,642 @@
+package hoteldb;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A small fixed-bound pool of physical PostgreSQL connections.
+ *
+ * Callers borrow a connection, use it and hand it back with
+ * {@link #release(Connection)}. The pool keeps at least {@code minSize}
+ * connections open, never opens more than {@code maxSize}, validates
+ * connections that sat idle before handing them out, evicts connections that
+ * stayed idle for too long and reports connections that were borrowed for
+ * longer than the leak threshold.
+ *
+ * A leak report names the borrowing thread. Where the connection was
+ * borrowed is only known with {@link #setLeakStackTraces}
+ * (-Dhotel.pool.leakStackTraces=true), since capturing a stack trace on
+ * every borrow costs more than the query it serves.
+ */
+public class ConnectionPool implements AutoCloseable {
+
+   // one physical connection plus its bookkeeping
+   private static class Pooled {
+      final Connection connection;
+      final StatementCache statements;
+      final long createdAt = System.currentTimeMillis();
+      long lastUsed = createdAt;
+      long borrowedAt;
+      String borrowedOn;
+      Throwable borrowedBy;
+      boolean leakReported;
+
+      Pooled(Connection connection, int statementCacheSize) {
+         this.connection = connection;
+         this.statements = new StatementCache(connection, statementCacheSize);
+      }
+   }
+
+   private final String url;
+   private final Properties info;
+   private final int minSize;
+   private final int maxSize;
+
+   private long acquireTimeoutMillis = 30000;
+   private long idleTimeoutMillis = 10 * 60 * 1000;
+   private long validateAfterMillis = 1000;
+   private long leakThresholdMillis = 60 * 1000;
+   private boolean leakStackTraces = Boolean.getBoolean("hotel.pool.leakStackTraces");
+   private String validationQuery = "SELECT 1";
+   private int statementCacheSize = 64;
+
+   private final ReentrantLock lock = new ReentrantLock();
+   private final Condition available = lock.newCondition();
+   // most recently released connection is handed out first
+   private final ArrayDeque<Pooled> idle = new ArrayDeque<Pooled>();
+   private final Map<Connection, Pooled> borrowed = new IdentityHashMap<Connection, Pooled>();
+   private int total = 0;
+   private int waiting = 0;
+   private boolean closed = false;
+
+   // metrics, guarded by lock
+   private long borrows = 0;
+   private long timeouts = 0;
+   private long created = 0;
+   private long destroyed = 0;
+   private long validationFailures = 0;
+   private long leaks = 0;
+   private long totalWaitNanos = 0;
+   private long maxWaitNanos = 0;
+   // statement cache counters of connections already closed
+   private long statementHits = 0;
+   private long statementMisses = 0;
+   private long statementEvictions = 0;
+   // every borrow, timeouts included
+   private final LatencyHistogram acquireLatency = new LatencyHistogram();
+
+   private final ScheduledExecutorService housekeeper;
+
+   /**
+    * Creates the pool and eagerly opens {@code minSize} connections.
+    *
+    * @param url the JDBC connection URL
+    * @param user the user name used to login to the database
+    * @param passwd the user login password
+    * @param minSize number of connections kept open at all times
+    * @param maxSize upper bound of open connections
+    * @throws java.sql.SQLException when the initial connections cannot be opened
+    */
+   public ConnectionPool(String url, String user, String passwd, int minSize, int maxSize) throws SQLException {
+      this(url, credentials(user, passwd), minSize, maxSize);
+   }
+
+   /**
+    * Creates the pool with arbitrary driver properties (user, password and
+    * any driver tuning knobs) and eagerly opens {@code minSize} connections.
+    */
+   public ConnectionPool(String url, Properties info, int minSize, int maxSize) throws SQLException {
+      if (minSize < 0 || maxSize < 1 || minSize > maxSize)
+         throw new IllegalArgumentException("invalid pool size: min=" + minSize + " max=" + maxSize);
+      this.url = url;
+      this.info = info;
+      this.minSize = minSize;
+      this.maxSize = maxSize;
+
+      try {
+         for (int i = 0; i < minSize; i++) {
+            idle.addLast(open());
+            total++;
+         }
+      } catch (SQLException e) {
+         // nobody gets the pool, so nobody could close these
+         for (Pooled pc : idle)
+            closeQuietly(pc);
+         idle.clear();
+         total = 0;
+         throw e;
+      }
+
+      housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+         Thread t = new Thread(r, "hotel-pool-housekeeper");
+         t.setDaemon(true);
+         return t;
+      });
+      housekeeper.scheduleWithFixedDelay(this::housekeep, 5, 5, TimeUnit.SECONDS);
+   }
+
+   // the driver switches a statement to a named server-side prepare after
+   // it has been executed prepareThreshold times (-Dhotel.prepareThreshold)
+   private static Properties credentials(String user, String passwd) {
+      Properties p = new Properties();
+      if (user != null) p.setProperty("user", user);
+      if (passwd != null) p.setProperty("password", passwd);
+      p.setProperty("prepareThreshold", String.valueOf(Integer.getInteger("hotel.prepareThreshold", 3)));
+      return p;
+   }
+
+   public void setAcquireTimeoutMillis(long millis) { this.acquireTimeoutMillis = millis; }
+   public void setIdleTimeoutMillis(long millis) { this.idleTimeoutMillis = millis; }
+   public void setLeakThresholdMillis(long millis) { this.leakThresholdMillis = millis; }
+   public void setLeakStackTraces(boolean capture) { this.leakStackTraces = capture; }
+   public void setValidationQuery(String query) { this.validationQuery = query; }
+
+   /**
+    * Number of prepared statements kept per connection; applies to
+    * connections opened after the call.
+    */
+   public void setStatementCacheSize(int size) { this.statementCacheSize = size; }
+
+   /**
+    * Connections idle for less than this are handed out without running the
+    * validation query, so hot connections do not pay an extra round trip.
+    * Use 0 to validate on every borrow.
+    */
+   public void setValidateAfterMillis(long millis) { this.validateAfterMillis = millis; }
+
+   public String getUrl() { return url; }
+   public int getMaxSize() { return maxSize; }
+
+   /**
+    * Borrows a connection, waiting up to the acquire timeout when all
+    * {@code maxSize} connections are in use.
+    *
+    * @return an open, validated connection in auto-commit mode
+    * @throws java.sql.SQLException when a new connection cannot be opened; a
+    *         {@link SQLTransientConnectionException} on timeout
+    */
+   public Connection borrow() throws SQLException {
+      ConnectionAcquireEvent event = new ConnectionAcquireEvent();
+      event.begin();
+      long start = System.nanoTime();
+      boolean acquired = false;
+      try {
+         Connection connection = acquire(start);
+         acquired = true;
+         return connection;
+      } finally {
+         acquireLatency.record(System.nanoTime() - start);
+         event.end();
+         if (event.shouldCommit()) {
+            event.url = url;
+            event.acquired = acquired;
+            event.waiting = waiting;
+            event.commit();
+         }
+      }
+   }
+
+   private Connection acquire(long start) throws SQLException {
+      long deadline = start + TimeUnit.MILLISECONDS.toNanos(acquireTimeoutMillis);
+
+      while (true) {
+         Pooled pc = null;
+         boolean mustOpen = false;
+         lock.lock();
+         try {
+            while (true) {
+               if (closed)
+                  throw new SQLException("Connection pool is closed");
+               pc = idle.pollFirst();
+               if (pc != null)
+                  break;
+               if (total < maxSize) {
+                  total++;
+                  mustOpen = true;
+                  break;
+               }
+               long remaining = deadline - System.nanoTime();
+               if (remaining <= 0) {
+                  timeouts++;
+                  throw new SQLTransientConnectionException("Timed out after " + acquireTimeoutMillis
+                        + " ms waiting for a connection (active=" + borrowed.size() + ", max=" + maxSize + ")");
+               }
+               waiting++;
+               try {
+                  available.awaitNanos(remaining);
+               } catch (InterruptedException e) {
+                  Thread.currentThread().interrupt();
+                  throw new SQLException("Interrupted while waiting for a connection");
+               } finally {
+                  waiting--;
+               }
+            }
+         } finally {
+            lock.unlock();
+         }
+
+         if (mustOpen) {
+            try {
+               pc = open();
+            } catch (SQLException e) {
+               lock.lock();
+               try {
+                  total--;
+                  available.signal();
+               } finally {
+                  lock.unlock();
+               }
+               throw e;
+            }
+         } else if (!isValid(pc)) {
+            lock.lock();
+            try {
+               validationFailures++;
+            } finally {
+               lock.unlock();
+            }
+            destroy(pc);
+            continue;
+         }
+
+         long waited = System.nanoTime() - start;
+         lock.lock();
+         try {
+            pc.borrowedAt = System.currentTimeMillis();
+            pc.borrowedOn = Thread.currentThread().getName();
+            pc.borrowedBy = leakThresholdMillis > 0 && leakStackTraces ? new Throwable("connection borrowed here") : null;
+            pc.leakReported = false;
+            borrowed.put(pc.connection, pc);
+            borrows++;
+            totalWaitNanos += waited;
+            if (waited > maxWaitNanos) maxWaitNanos = waited;
+         } finally {
+            lock.unlock();
+         }
+         return pc.connection;
+      }
+   }
+
+   /**
+    * Returns the cached prepared statement for {@code sql} on a borrowed
+    * connection, preparing it on first use. The statement stays owned by the
+    * cache: callers must close their result sets but never the statement.
+    *
+    * @param connection a connection obtained from {@link #borrow()}
+    * @param sql SQL template with {@code ?} placeholders
+    * @throws java.sql.SQLException when the statement cannot be prepared
+    */
+   public PreparedStatement prepare(Connection connection, String sql) throws SQLException {
+      Pooled pc;
+      lock.lock();
+      try {
+         pc = borrowed.get(connection);
+      } finally {
+         lock.unlock();
+      }
+      if (pc == null)
+         throw new IllegalArgumentException("connection was not borrowed from this pool");
+      return pc.statements.prepare(sql);
+   }
+
+   /**
+    * Drops a cached statement after it failed, so the next call prepares a
+    * fresh one.
+    */
+   public void invalidate(Connection connection, String sql) {
+      Pooled pc;
+      lock.lock();
+      try {
+         pc = borrowed.get(connection);
+      } finally {
+         lock.unlock();
+      }
+      if (pc != null)
+         pc.statements.invalidate(sql);
+   }
+
+   /**
+    * Returns a borrowed connection to the pool. Open transactions are rolled
+    * back; a connection that cannot be reset is closed instead of reused.
+    */
+   public void release(Connection connection) {
+      if (connection == null)
+         return;
+      Pooled pc;
+      lock.lock();
+      try {
+         pc = borrowed.remove(connection);
+      } finally {
+         lock.unlock();
+      }
+      if (pc == null)
+         throw new IllegalArgumentException("connection was not borrowed from this pool");
+
+      boolean reusable;
+      try {
+         if (!connection.getAutoCommit()) {
+            connection.rollback();
+            connection.setAutoCommit(true);
+         }
+         reusable = !connection.isClosed();
+      } catch (SQLException e) {
+         reusable = false;
+      }
+
+      if (!reusable) {
+         destroy(pc);
+         return;
+      }
+      lock.lock();
+      try {
+         if (closed) {
+            total--;
+         } else {
+            pc.lastUsed = System.currentTimeMillis();
+            pc.borrowedBy = null;
+            idle.addFirst(pc);
+            available.signal();
+            return;
+         }
+      } finally {
+         lock.unlock();
+      }
+      closeQuietly(pc);
+   }
+
+   /**
+    * Closes a borrowed connection instead of returning it, e.g. after an I/O
+    * error left it in an unknown state.
+    */
+   public void discard(Connection connection) {
+      Pooled pc;
+      lock.lock();
+      try {
+         pc = borrowed.remove(connection);
+      } finally {
+         lock.unlock();
+      }
+      if (pc != null)
+         destroy(pc);
+   }
+
+   /**
+    * @return the time callers of {@link #borrow()} waited, timeouts included
+    */
+   public LatencyHistogram acquireLatency() {
+      return acquireLatency;
+   }
+
+   /**
+    * @return a consistent snapshot of the pool counters
+    */
+   public PoolStats stats() {
+      lock.lock();
+      try {
+         long hits = statementHits;
+         long misses = statementMisses;
+         long evictions = statementEvictions;
+         for (Pooled pc : idle) {
+            hits += pc.statements.hits();
+            misses += pc.statements.misses();
+            evictions += pc.statements.evictions();
+         }
+         for (Pooled pc : borrowed.values()) {
+            hits += pc.statements.hits();
+            misses += pc.statements.misses();
+            evictions += pc.statements.evictions();
+         }
+         return new PoolStats(borrowed.size(), idle.size(), total, waiting, borrows, timeouts,
+               created, destroyed, validationFailures, leaks, totalWaitNanos, maxWaitNanos,
+               hits, misses, evictions);
+      } finally {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * Closes all idle connections; borrowed connections are closed as they are
+    * released.
+    */
+   @Override
+   public void close() {
+      List<Pooled> toClose;
+      lock.lock();
+      try {
+         if (closed)
+            return;
+         closed = true;
+         toClose = new ArrayList<Pooled>(idle);
+         total -= idle.size();
+         idle.clear();
+         available.signalAll();
+      } finally {
+         lock.unlock();
+      }
+      housekeeper.shutdownNow();
+      for (Pooled pc : toClose)
+         closeQuietly(pc);
+   }
+
+   private Pooled open() throws SQLException {
+      Connection c = DriverManager.getConnection(url, info);
+      lock.lock();
+      try {
+         created++;
+      } finally {
+         lock.unlock();
+      }
+      return new Pooled(c, statementCacheSize);
+   }
+
+   private boolean isValid(Pooled pc) {
+      if (System.currentTimeMillis() - pc.lastUsed < validateAfterMillis)
+         return true;
+      try {
+         Statement stmt = pc.connection.createStatement();
+         try {
+            stmt.execute(validationQuery);
+         } finally {
+            stmt.close();
+         }
+         return true;
+      } catch (SQLException e) {
+         return false;
+      }
+   }
+
+   private void destroy(Pooled pc) {
+      lock.lock();
+      try {
+         total--;
+         available.signal();
+      } finally {
+         lock.unlock();
+      }
+      closeQuietly(pc);
+   }
+
+   private void closeQuietly(Pooled pc) {
+      lock.lock();
+      try {
+         destroyed++;
+         statementHits += pc.statements.hits();
+         statementMisses += pc.statements.misses();
+         statementEvictions += pc.statements.evictions();
+      } finally {
+         lock.unlock();
+      }
+      try {
+         pc.statements.clear();
+         pc.connection.close();
+      } catch (SQLException e) {
+         // ignored.
+      }
+   }
+
+   // evicts idle connections above minSize, refills below it and reports leaks
+   private void housekeep() {
+      long now = System.currentTimeMillis();
+      List<Pooled> evicted = new ArrayList<Pooled>();
+      // thread and, when captured, stack of each leak, read under the lock
+      List<String> leakedOn = new ArrayList<String>();
+      List<Throwable> leakedBy = new ArrayList<Throwable>();
+      int missing;
+      lock.lock();
+      try {
+         if (closed)
+            return;
+         Iterator<Pooled> it = idle.descendingIterator();
+         while (it.hasNext() && total > minSize) {
+            Pooled pc = it.next();
+            if (now - pc.lastUsed >= idleTimeoutMillis) {
+               it.remove();
+               total--;
+               evicted.add(pc);
+            }
+         }
+         if (leakThresholdMillis > 0) {
+            for (Pooled pc : borrowed.values()) {
+               if (!pc.leakReported && now - pc.borrowedAt >= leakThresholdMillis) {
+                  pc.leakReported = true;
+                  leaks++;
+                  leakedOn.add(pc.borrowedOn);
+                  leakedBy.add(pc.borrowedBy);
+               }
+            }
+         }
+         missing = minSize - total;
+         total += Math.max(missing, 0);
+      } finally {
+         lock.unlock();
+      }
+
+      for (Pooled pc : evicted)
+         closeQuietly(pc);
+      for (int i = 0; i < leakedOn.size(); i++) {
+         Throwable where = leakedBy.get(i);
+         System.err.println("Possible connection leak: connection held for more than "
+               + leakThresholdMillis + " ms by thread " + leakedOn.get(i)
+               + (where == null ? " (-Dhotel.pool.leakStackTraces=true shows where)" : ""));
+         if (where != null)
+            where.printStackTrace();
+      }
+      for (int i = 0; i < missing; i++) {
+         try {
+            Pooled pc = open();
+            lock.lock();
+            try {
+               if (closed) {
+                  total--;
+               } else {
+                  idle.addLast(pc);
+                  available.signal();
+                  pc = null;
+               }
+            } finally {
+               lock.unlock();
+            }
+            if (pc != null)
+               closeQuietly(pc);
+         } catch (SQLException e) {
+            lock.lock();
+            try {
+               total--;
+            } finally {
+               lock.unlock();
+            }
+         }
+      }
+   }
+
+   /**
+    * Point-in-time pool counters.
+    */
+   public static class PoolStats {
+      public final int active;
+      public final int idle;
+      public final int total;
+      public final int waiting;
+      public final long borrows;
+      public final long timeouts;
+      public final long created;
+      public final long destroyed;
+      public final long validationFailures;
+      public final long leaks;
+      public final long totalWaitNanos;
+      public final long maxWaitNanos;
+      // statement caches of every connection the pool has had
+      public final long statementHits;
+      public final long statementMisses;
+      public final long statementEvictions;
+
+      PoolStats(int active, int idle, int total, int waiting, long borrows, long timeouts,
+                long created, long destroyed, long validationFailures, long leaks,
+                long totalWaitNanos, long maxWaitNanos,
+                long statementHits, long statementMisses, long statementEvictions) {
+         this.active = active;
+         this.idle = idle;
+         this.total = total;
+         this.waiting = waiting;
+         this.borrows = borrows;
+         this.timeouts = timeouts;
+         this.created = created;
+         this.destroyed = destroyed;
+         this.validationFailures = validationFailures;
+         this.leaks = leaks;
+         this.totalWaitNanos = totalWaitNanos;
+         this.maxWaitNanos = maxWaitNanos;
+         this.statementHits = statementHits;
+         this.statementMisses = statementMisses;
+         this.statementEvictions = statementEvictions;
+      }
+
+      public double meanWaitMillis() {
+         return borrows == 0 ? 0 : totalWaitNanos / 1e6 / borrows;
+      }
+
+      /**
+       * @return the share of prepares answered from a statement cache
+       */
+      public double statementHitRatio() {
+         long n = statementHits + statementMisses;
+         return n == 0 ? 0 : (double) statementHits / n;
+      }
+
+      @Override
+      public String toString() {
+         return String.format("active=%d idle=%d total=%d waiting=%d borrows=%d timeouts=%d "
+               + "created=%d destroyed=%d validationFailures=%d leaks=%d meanWait=%.3fms maxWait=%.3fms "
+               + "statementHits=%d statementMisses=%d statementEvictions=%d",
+               active, idle, total, waiting, borrows, timeouts, created, destroyed,
+               validationFailures, leaks, meanWaitMillis(), maxWaitNanos / 1e6,
+               statementHits, statementMisses, statementEvictions);
+      }
+   }
+}
@@ -0,0 +1,684 @@
+package hoteldb;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Generates synthetic data in the create_tables.sql layout at any scale, as
+ * CSV files shaped like the ones in data/ or streamed straight into Postgres
+ * with COPY.
+ *
+ * The data has the skew real traffic has: hotel popularity follows a Zipf
+ * distribution, so a few hotels are nearly full while most are quiet;
+ * booking dates follow a summer peak and a weekend bump; hotels sit in
+ * clusters around cities whose sizes are Zipf distributed too; and a minority
+ * of customers makes most of the bookings.
+ *
+ * Output is deterministic for a given seed and sizes, whatever the number of
+ * threads: every table is cut into fixed blocks, each block draws from its own
+ * random stream, and blocks are rendered in parallel but written in order.
+ * Only a bounded window of rendered blocks is held in memory, so the size of
+ * the dataset is limited by disk, not heap. Bookings are generated room by
+ * room over the date range, so (hotelID, roomNumber, bookingDate) is unique
+ * by construction.
+ *
+ * Usage: java hoteldb.DataGenerator [--hotels N] [--rooms N] [--customers N]
+ *        [--bookings N] [--repairs N] [--updates N] [--companies N]
+ *        [--from yyyy-mm-dd] [--days N] [--skew S] [--seed N] [--threads N]
+ *        (--out DIR | --copy &lt;dbname&gt; &lt;port&gt; &lt;user&gt; [--defer-indexes])
+ */
+public class DataGenerator {
+
+   // random stream families
+   private static final int USERS = 1, CITIES = 2, HOTELS = 3, HOTEL_ROWS = 4, ROOMS = 5, COMPANIES = 6,
+         BOOKINGS = 7, REPAIRS = 8, UPDATES = 9;
+
+   // block sizes; changing them changes the output for a seed
+   static final int ROWS_PER_BLOCK = 1 << 14;
+   static final int HOTELS_PER_BLOCK = 64;
+   static final int ROOMS_PER_BLOCK = 32;
+
+   // occupancy ceiling of the most popular hotels
+   static final double MAX_OCCUPANCY = 0.95;
+
+   private static final String[] SYLLABLES = {
+      "ka", "lo", "mi", "ra", "ve", "su", "to", "na", "ri", "el", "an", "or", "be", "di", "ga", "ho",
+      "ju", "ne", "pa", "si", "ta", "ul", "vo", "ye", "za", "mar", "len", "tor", "vin", "sol"
+   };
+   private static final String[] HOTEL_KINDS = {"Hotel", "Inn", "Suites", "Lodge", "Resort", "Palace", "Motel"};
+   private static final String[] STREETS = {"Main St", "Oak Ave", "Park Rd", "Lake Dr", "Hill St", "Bay Rd"};
+   private static final char[] PASSWORD_CHARS = "abcdefghijkmnpqrstuvwxyz23456789".toCharArray();
+
+   private final int hotels;
+   private final int customers;
+   private final long bookings;
+   private final long repairs;
+   private final long updates;
+   private final long seed;
+   private long roomsWanted;
+   private int companies;
+   private int threads = Runtime.getRuntime().availableProcessors();
+   private LocalDate from = LocalDate.of(2015, 1, 1);
+   private int days = 3 * 365;
+   private double skew = 1.0;
+
+   // derived by prepare()
+   private int managers;
+   private int[] roomCount;
+   private long[] roomStart;
+   private long rooms;
+   private double[] occupancy;
+   private int[] basePrice;
+   private double[] latitude;
+   private double[] longitude;
+   private double[] season;
+   private double maxSeason;
+   private ZipfSampler customerPicker;
+   private ZipfSampler companyPicker;
+   private ExecutorService workers;
+
+   public DataGenerator(int hotels, long rooms, int customers, long bookings, long repairs, long updates, long seed) {
+      if (hotels < 1 || rooms < hotels || customers < 1)
+         throw new IllegalArgumentException("need at least one hotel, one room per hotel and one customer");
+      this.hotels = hotels;
+      this.roomsWanted = rooms;
+      this.customers = customers;
+      this.bookings = bookings;
+      this.repairs = repairs;
+      this.updates = updates;
+      this.seed = seed;
+      this.companies = Math.max(5, hotels / 100);
+   }
+
+   public void setThreads(int threads) { this.threads = Math.max(1, threads); }
+   public void setCompanies(int companies) { this.companies = Math.max(1, companies); }
+   public void setFrom(LocalDate from) { this.from = from; }
+   /** Length of the booking calendar; grown when it cannot hold the bookings. */
+   public void setDays(int days) { this.days = Math.max(1, days); }
+   /** Zipf exponent of hotel popularity. */
+   public void setSkew(double skew) { this.skew = skew; }
+
+   /**
+    * Writes one CSV file per table into {@code dir}, with the file names and
+    * header lines of data/.
+    *
+    * @throws Exception when a file could not be written
+    */
+   public void writeCsv(File dir) throws Exception {
+      prepare();
+      if (!dir.isDirectory() && !dir.mkdirs())
+         throw new IOException("cannot create " + dir);
+      try {
+         for (BulkLoader.TableSpec spec : BulkLoader.TABLES) {
+            long start = System.nanoTime();
+            OutputStream out = new BufferedOutputStream(new FileOutputStream(new File(dir, spec.file)), 1 << 16);
+            long rows;
+            try {
+               out.write((header(spec) + "\n").getBytes(StandardCharsets.US_ASCII));
+               rows = write(spec, out);
+            } finally {
+               out.close();
+            }
+            System.out.println(new BulkLoader.TableReport(spec.table, rows, System.nanoTime() - start));
+         }
+      } finally {
+         workers.shutdown();
+      }
+   }
+
+   /**
+    * Streams every table into the database with COPY, replacing its
+    * content. Independent tables load in parallel.
+    *
+    * @throws Exception when a table failed to load
+    */
+   public void copyInto(ConnectionPool pool, boolean deferIndexes) throws Exception {
+      prepare();
+      try {
+         final BulkLoader loader = new BulkLoader(pool, 3);
+         loader.setTruncate(true);
+         loader.setDeferIndexes(deferIndexes);
+         loader.load(BulkLoader.TABLES, spec -> loader.copyIn(spec, out -> write(spec, out)));
+      } finally {
+         workers.shutdown();
+      }
+   }
+
+   private static String header(BulkLoader.TableSpec spec) {
+      // data/company.csv spells the column correctly
+      return spec.columns.replace(" ", "").replace("addrress", "address");
+   }
+
+   /**
+    * Writes the rows of one table, without a header.
+    *
+    * @return the number of rows written
+    */
+   public long write(BulkLoader.TableSpec spec, OutputStream out) throws Exception {
+      final int users = managers + customers;
+      switch (spec.table) {
+         case "Users":
+            return writeBlocks(blocks(users, ROWS_PER_BLOCK), false, out, (block, csv) -> {
+               SplittableRandom rnd = stream(USERS, block);
+               int last = (int) Math.min(users, (long) (block + 1) * ROWS_PER_BLOCK);
+               for (int id = block * ROWS_PER_BLOCK + 1; id <= last; id++) {
+                  csv.num(id).sep().str(personName(rnd)).sep().str(password(rnd)).sep()
+                     .str(id <= managers ? "manager" : "customer").endRow();
+               }
+            });
+         case "MaintenanceCompany":
+            return writeBlocks(blocks(companies, ROWS_PER_BLOCK), false, out, (block, csv) -> {
+               SplittableRandom rnd = stream(COMPANIES, block);
+               int last = (int) Math.min(companies, (long) (block + 1) * ROWS_PER_BLOCK);
+               for (int id = block * ROWS_PER_BLOCK + 1; id <= last; id++) {
+                  csv.num(id).sep().str(capitalize(word(rnd, 2))).str(" Repairs").sep()
+                     .num(1 + rnd.nextInt(9999)).str(" ").str(STREETS[rnd.nextInt(STREETS.length)]).endRow();
+               }
+            });
+         case "Hotel":
+            return writeBlocks(blocks(hotels, HOTELS_PER_BLOCK), false, out, (block, csv) -> {
+               int last = (int) Math.min(hotels, (long) (block + 1) * HOTELS_PER_BLOCK);
+               for (int h = block * HOTELS_PER_BLOCK + 1; h <= last; h++) {
+                  SplittableRandom rnd = stream(HOTEL_ROWS, h);
+                  String name = capitalize(word(rnd, 2 + rnd.nextInt(2))) + " "
+                        + HOTEL_KINDS[rnd.nextInt(HOTEL_KINDS.length)];
+                  int established = (int) LocalDate.of(1900, 1, 1).toEpochDay()
+                        + rnd.nextInt((int) (from.toEpochDay() - LocalDate.of(1900, 1, 1).toEpochDay()));
+                  csv.num(h).sep().str(name.length() > 30 ? name.substring(0, 30) : name).sep()
+                     .decimal6(latitude[h]).sep().decimal6(longitude[h]).sep()
+                     .date(established).sep().num(managerOf(h)).endRow();
+               }
+            });
+         case "Rooms":
+            return writeBlocks(blocks(hotels, HOTELS_PER_BLOCK), false, out, (block, csv) -> {
+               SplittableRandom rnd = stream(ROOMS, block);
+               int last = (int) Math.min(hotels, (long) (block + 1) * HOTELS_PER_BLOCK);
+               for (int h = block * HOTELS_PER_BLOCK + 1; h <= last; h++) {
+                  for (int r = 1; r <= roomCount[h]; r++) {
+                     // higher floors cost a little more
+                     int price = basePrice[h] + 10 * ((r - 1) / 20) + rnd.nextInt(20);
+                     csv.num(h).sep().num(r).sep().num(price).sep()
+                        .str("img/").num(h).str("/").num(r).str(".jpg").endRow();
+                  }
+               }
+            });
+         case "RoomBookings":
+            return writeBlocks(blocks(rooms, ROOMS_PER_BLOCK), true, out, this::renderBookings);
+         case "RoomRepairs":
+            return writeBlocks(blocks(repairs, ROWS_PER_BLOCK), false, out, (block, csv) -> {
+               SplittableRandom rnd = stream(REPAIRS, block);
+               long first = (long) block * ROWS_PER_BLOCK + 1;
+               long last = Math.min(repairs, first + ROWS_PER_BLOCK - 1);
+               int[] row = new int[4];
+               for (long id = first; id <= last; id++) {
+                  repairRow(rnd, row);
+                  csv.num(id).sep().num(row[2]).sep().num(row[0]).sep().num(row[1]).sep().date(row[3]).endRow();
+               }
+            });
+         case "RoomRepairRequests":
+            // one request per repair, filed by the manager of the repaired hotel
+            return writeBlocks(blocks(repairs, ROWS_PER_BLOCK), false, out, (block, csv) -> {
+               SplittableRandom rnd = stream(REPAIRS, block);
+               long first = (long) block * ROWS_PER_BLOCK + 1;
+               long last = Math.min(repairs, first + ROWS_PER_BLOCK - 1);
+               int[] row = new int[4];
+               for (long id = first; id <= last; id++) {
+                  repairRow(rnd, row);
+                  csv.num(id).sep().num(managerOf(row[0])).sep().num(id).endRow();
+               }
+            });
+         case "RoomUpdatesLog":
+            return writeBlocks(blocks(updates, ROWS_PER_BLOCK), false, out, (block, csv) -> {
+               SplittableRandom rnd = stream(UPDATES, block);
+               long first = (long) block * ROWS_PER_BLOCK + 1;
+               long last = Math.min(updates, first + ROWS_PER_BLOCK - 1);
+               long startSecond = from.toEpochDay() * 86400L;
+               for (long id = first; id <= last; id++) {
+                  long room = (long) (rnd.nextDouble() * rooms);
+                  int h = hotelOfRoom(room);
+                  csv.num(id).sep().num(managerOf(h)).sep().num(h).sep().num(room - roomStart[h] + 1).sep()
+                     .timestamp(startSecond + (long) (rnd.nextDouble() * days * 86400L)).endRow();
+               }
+            });
+         default:
+            throw new IllegalArgumentException("no generator for " + spec.table);
+      }
+   }
+
+   // every night of every room of the block is booked with probability
+   // occupancy(hotel) * season(night); runs of free nights are skipped with a
+   // geometric draw at the peak rate and thinned, so quiet rooms cost little
+   private void renderBookings(int block, CsvBuffer csv) {
+      SplittableRandom rnd = stream(BOOKINGS, block);
+      long first = (long) block * ROOMS_PER_BLOCK;
+      long last = Math.min(rooms, first + ROOMS_PER_BLOCK);
+      int firstDay = (int) from.toEpochDay();
+      for (long room = first; room < last; room++) {
+         int h = hotelOfRoom(room);
+         long r = room - roomStart[h] + 1;
+         double peak = Math.min(0.99, occupancy[h] * maxSeason);
+         if (peak <= 0)
+            continue;
+         double logMiss = Math.log1p(-peak);
+         int d = -1;
+         while (true) {
+            d += 1 + (int) Math.min(days, Math.floor(Math.log1p(-rnd.nextDouble()) / logMiss));
+            if (d >= days)
+               break;
+            if (rnd.nextDouble() * peak < Math.min(0.99, occupancy[h] * season[d])) {
+               int customer = managers + customerPicker.sampleScrambled(rnd);
+               csv.num(customer).sep().num(h).sep().num(r).sep().date(firstDay + d).endRow();
+            }
+         }
+      }
+   }
+
+   // hotel, room, company and day of one repair, drawn in a fixed order so
+   // RoomRepairRequests can replay the stream of RoomRepairs
+   private void repairRow(SplittableRandom rnd, int[] row) {
+      long room = (long) (rnd.nextDouble() * rooms);
+      int h = hotelOfRoom(room);
+      row[0] = h;
+      row[1] = (int) (room - roomStart[h] + 1);
+      row[2] = companyPicker.sampleScrambled(rnd);
+      row[3] = (int) from.toEpochDay() + rnd.nextInt(days);
+   }
+
+   private int managerOf(int hotelID) {
+      return (hotelID - 1) % managers + 1;
+   }
+
+   // hotel owning a 0-based global room index
+   private int hotelOfRoom(long room) {
+      int i = Arrays.binarySearch(roomStart, 1, hotels + 2, room);
+      return i >= 0 ? i : -i - 2;
+   }
+
+   /**
+    * Derives the per-hotel layout (rooms, prices, location, popularity) and
+    * the booking calendar. Small next to the dataset: a few arrays with one
+    * entry per hotel and per day.
+    */
+   private void prepare() {
+      managers = Math.max(1, (hotels + 2) / 3);
+      workers = Executors.newFixedThreadPool(threads, r -> {
+         Thread t = new Thread(r, "datagen");
+         t.setDaemon(true);
+         return t;
+      });
+
+      // rooms per hotel vary by +-50% around the mean
+      roomCount = new int[hotels + 1];
+      roomStart = new long[hotels + 2];
+      double mean = (double) roomsWanted / hotels;
+      for (int h = 1; h <= hotels; h++) {
+         SplittableRandom rnd = stream(HOTELS, h);
+         roomCount[h] = (int) Math.max(1, Math.round(mean * (0.5 + rnd.nextDouble())));
+         roomStart[h + 1] = roomStart[h] + roomCount[h];
+      }
+      // roomStart[h] is the first global room index of hotel h
+      rooms = roomStart[hotels + 1];
+      roomStart[0] = -1;
+
+      // cities of Zipf distributed size; hotels scatter around them
+      int cities = Math.max(1, hotels / 50);
+      ZipfSampler cityPicker = new ZipfSampler(cities, 1.0);
+      double[] cityLat = new double[cities + 1];
+      double[] cityLong = new double[cities + 1];
+      double[] citySpread = new double[cities + 1];
+      for (int c = 1; c <= cities; c++) {
+         SplittableRandom rnd = stream(CITIES, c);
+         cityLat[c] = -55 + 120 * rnd.nextDouble();
+         cityLong[c] = -170 + 340 * rnd.nextDouble();
+         double u = rnd.nextDouble();
+         citySpread[c] = 0.05 + 1.5 * u * u;
+      }
+      latitude = new double[hotels + 1];
+      longitude = new double[hotels + 1];
+      for (int h = 1; h <= hotels; h++) {
+         SplittableRandom rnd = stream(HOTELS, h);
+         rnd.nextDouble(); // room count draw
+         int c = cityPicker.sample(rnd);
+         latitude[h] = clamp(cityLat[c] + rnd.nextGaussian() * citySpread[c], 89.999999);
+         longitude[h] = clamp(cityLong[c] + rnd.nextGaussian() * citySpread[c], 179.999999);
+      }
+
+      // seasonal demand: summer peak, busier Friday and Saturday nights
+      if (bookings > MAX_OCCUPANCY * 0.5 * rooms * days) {
+         days = (int) Math.ceil(bookings / (MAX_OCCUPANCY * 0.5 * rooms));
+         System.out.println("Booking calendar extended to " + days + " days to hold " + bookings + " bookings");
+      }
+      season = new double[days];
+      double sum = 0;
+      for (int d = 0; d < days; d++) {
+         LocalDate date = from.plusDays(d);
+         double s = 1 + 0.35 * Math.cos(2 * Math.PI * (date.getDayOfYear() - 196) / 365.25);
+         if (date.getDayOfWeek() == DayOfWeek.FRIDAY || date.getDayOfWeek() == DayOfWeek.SATURDAY)
+            s *= 1.15;
+         season[d] = s;
+         sum += s;
+      }
+      maxSeason = 0;
+      for (int d = 0; d < days; d++) {
+         season[d] *= days / sum;
+         maxSeason = Math.max(maxSeason, season[d]);
+      }
+
+      // Zipf popularity by hotel, scaled so the expected total is the
+      // requested number of bookings; the busiest hotels saturate
+      ZipfSampler popularity = new ZipfSampler(hotels, skew);
+      double[] weight = new double[hotels + 1];
+      double maxWeight = popularity.weight(1);
+      for (int rank = 1; rank <= hotels; rank++)
+         weight[popularity.scramble(rank)] = popularity.weight(rank);
+      double lo = 0, hi = 1;
+      while (expectedBookings(weight, hi) < bookings && hi < 1e12)
+         hi *= 2;
+      for (int i = 0; i < 100; i++) {
+         double mid = (lo + hi) / 2;
+         if (expectedBookings(weight, mid) < bookings) lo = mid;
+         else hi = mid;
+      }
+      occupancy = new double[hotels + 1];
+      basePrice = new int[hotels + 1];
+      for (int h = 1; h <= hotels; h++) {
+         occupancy[h] = Math.min(MAX_OCCUPANCY, hi * weight[h]);
+         SplittableRandom rnd = stream(HOTEL_ROWS, -h);
+         // popular hotels charge more
+         basePrice[h] = 60 + rnd.nextInt(200) + (int) (300 * weight[h] / maxWeight);
+      }
+
+      // a minority of regulars makes most of the bookings
+      customerPicker = new ZipfSampler(customers, 0.8);
+      companyPicker = new ZipfSampler(companies, 1.1);
+
+      System.out.printf("%d hotels, %d rooms, %d managers, %d customers, %d days from %s, seed %d%n",
+            hotels, rooms, managers, customers, days, from, seed);
+   }
+
+   private double expectedBookings(double[] weight, double scale) {
+      double total = 0;
+      for (int h = 1; h <= hotels; h++)
+         total += roomCount[h] * Math.min(MAX_OCCUPANCY, scale * weight[h]);
+      return total * days;
+   }
+
+   private static double clamp(double v, double limit) {
+      return Math.max(-limit, Math.min(limit, v));
+   }
+
+   private SplittableRandom stream(int family, long index) {
+      long h = seed * 0x9E3779B97F4A7C15L + family * 0xC2B2AE3D27D4EB4FL + index;
+      h ^= h >>> 33;
+      h *= 0xFF51AFD7ED558CCDL;
+      h ^= h >>> 33;
+      return new SplittableRandom(h);
+   }
+
+   private static int blocks(long rows, int perBlock) {
+      return (int) ((rows + perBlock - 1) / perBlock);
+   }
+
+   private static String word(SplittableRandom rnd, int syllables) {
+      StringBuilder sb = new StringBuilder();
+      for (int i = 0; i < syllables; i++)
+         sb.append(SYLLABLES[rnd.nextInt(SYLLABLES.length)]);
+      return sb.toString();
+   }
+
+   private static String capitalize(String s) {
+      return Character.toUpperCase(s.charAt(0)) + s.substring(1);
+   }
+
+   private static String personName(SplittableRandom rnd) {
+      return capitalize(word(rnd, 2)) + " " + capitalize(word(rnd, 2 + rnd.nextInt(2)));
+   }
+
+   private static String password(SplittableRandom rnd) {
+      char[] p = new char[8];
+      for (int i = 0; i < p.length; i++)
+         p[i] = PASSWORD_CHARS[rnd.nextInt(PASSWORD_CHARS.length)];
+      return new String(p);
+   }
+
+   /**
+    * Renders one block of rows.
+    */
+   interface BlockRenderer {
+      void render(int block, CsvBuffer csv);
+   }
+
+   /**
+    * Renders blocks on the worker threads, at most two per thread ahead of
+    * the writer, and writes them in block order.
+    *
+    * @param numbered when true the writer prefixes every row with a running
+    *        ID starting at 1, for tables whose rows per block are not known
+    *        in advance
+    */
+   private long writeBlocks(int blocks, boolean numbered, OutputStream out, final BlockRenderer renderer)
+         throws Exception {
+      ArrayDeque<Future<CsvBuffer>> window = new ArrayDeque<Future<CsvBuffer>>();
+      int next = 0;
+      long rows = 0;
+      byte[] id = new byte[24];
+      while (next < blocks || !window.isEmpty()) {
+         while (next < blocks && window.size() < 2 * threads) {
+            final int block = next++;
+            window.add(workers.submit(() -> {
+               CsvBuffer csv = new CsvBuffer(numbered);
+               renderer.render(block, csv);
+               return csv;
+            }));
+         }
+         CsvBuffer csv = window.poll().get();
+         if (numbered) {
+            for (int i = 0; i < csv.rows; i++) {
+               int n = CsvBuffer.format(++rows, id);
+               id[n] = ',';
+               out.write(id, 0, n + 1);
+               out.write(csv.buf, csv.lineStart[i], csv.lineStart[i + 1] - csv.lineStart[i]);
+            }
+         } else {
+            out.write(csv.buf, 0, csv.len);
+            rows += csv.rows;
+         }
+      }
+      out.flush();
+      return rows;
+   }
+
+   /**
+    * A growable ASCII buffer of CSV rows.
+    */
+   static final class CsvBuffer {
+      byte[] buf = new byte[1 << 15];
+      int len = 0;
+      int rows = 0;
+      // start of every row, plus the end, when rows are numbered by the writer
+      int[] lineStart;
+
+      CsvBuffer(boolean trackLines) {
+         if (trackLines) {
+            lineStart = new int[1024];
+            lineStart[0] = 0;
+         }
+      }
+
+      private void ensure(int extra) {
+         if (len + extra > buf.length)
+            buf = Arrays.copyOf(buf, Math.max(buf.length * 2, len + extra));
+      }
+
+      CsvBuffer str(String s) {
+         ensure(s.length());
+         for (int i = 0; i < s.length(); i++)
+            buf[len++] = (byte) s.charAt(i);
+         return this;
+      }
+
+      CsvBuffer num(long v) {
+         ensure(20);
+         len += format(v, buf, len);
+         return this;
+      }
+
+      CsvBuffer sep() {
+         ensure(1);
+         buf[len++] = ',';
+         return this;
+      }
+
+      // six decimals, as in decimal(8,6) and decimal(9,6)
+      CsvBuffer decimal6(double v) {
+         long micro = Math.round(v * 1e6);
+         if (micro < 0) {
+            str("-");
+            micro = -micro;
+         }
+         num(micro / 1000000).str(".");
+         long frac = micro % 1000000;
+         ensure(6);
+         for (int div = 100000; div > 0; div /= 10)
+            buf[len++] = (byte) ('0' + frac / div % 10);
+         return this;
+      }
+
+      CsvBuffer date(int epochDay) {
+         return str(LocalDate.ofEpochDay(epochDay).toString());
+      }
+
+      CsvBuffer timestamp(long epochSecond) {
+         int secs = (int) Math.floorMod(epochSecond, 86400L);
+         date((int) Math.floorDiv(epochSecond, 86400L)).str(" ");
+         two(secs / 3600).str(":");
+         two(secs / 60 % 60).str(":");
+         return two(secs % 60);
+      }
+
+      private CsvBuffer two(int v) {
+         ensure(2);
+         buf[len++] = (byte) ('0' + v / 10);
+         buf[len++] = (byte) ('0' + v % 10);
+         return this;
+      }
+
+      void endRow() {
+         ensure(1);
+         buf[len++] = '\n';
+         rows++;
+         if (lineStart != null) {
+            if (rows + 1 > lineStart.length)
+               lineStart = Arrays.copyOf(lineStart, lineStart.length * 2);
+            lineStart[rows] = len;
+         }
+      }
+
+      static int format(long v, byte[] to) {
+         return format(v, to, 0);
+      }
+
+      // decimal digits of v at to[at]; returns the number of bytes written
+      static int format(long v, byte[] to, int at) {
+         if (v == 0) {
+            to[at] = '0';
+            return 1;
+         }
+         int start = at;
+         if (v < 0) {
+            to[at++] = '-';
+            v = -v;
+         }
+         int digits = 0;
+         for (long t = v; t > 0; t /= 10)
+            digits++;
+         for (int i = at + digits - 1; i >= at; i--) {
+            to[i] = (byte) ('0' + v % 10);
+            v /= 10;
+         }
+         return at + digits - start;
+      }
+   }
+
+   public static void main(String[] args) throws Exception {
+      int hotels = 1000;
+      long rooms = 50000;
+      int customers = 50000;
+      long bookingCount = 2000000;
+      long repairCount = 20000;
+      long updateCount = 100000;
+      long seed = 42;
+      Integer companies = null;
+      Integer threads = null;
+      Integer days = null;
+      LocalDate from = null;
+      double skew = 1.0;
+      File outDir = null;
+      String[] copy = null;
+      boolean defer = false;
+      for (int i = 0; i < args.length; i++) {
+         switch (args[i]) {
+            case "--hotels": hotels = Integer.parseInt(args[++i]); break;
+            case "--rooms": rooms = Long.parseLong(args[++i]); break;
+            case "--customers": customers = Integer.parseInt(args[++i]); break;
+            case "--bookings": bookingCount = Long.parseLong(args[++i]); break;
+            case "--repairs": repairCount = Long.parseLong(args[++i]); break;
+            case "--updates": updateCount = Long.parseLong(args[++i]); break;
+            case "--companies": companies = Integer.parseInt(args[++i]); break;
+            case "--from": from = LocalDate.parse(args[++i]); break;
+            case "--days": days = Integer.parseInt(args[++i]); break;
+            case "--skew": skew = Double.parseDouble(args[++i]); break;
+            case "--seed": seed = Long.parseLong(args[++i]); break;
+            case "--threads": threads = Integer.parseInt(args[++i]); break;
+            case "--out": outDir = new File(args[++i]); break;
+            case "--copy": copy = new String[] {args[++i], args[++i], args[++i]}; break;
+            case "--defer-indexes": defer = true; break;
+            default:
+               System.err.println("Unknown option " + args[i]);
+               outDir = null;
+               copy = null;
+               i = args.length;
+         }
+      }
+      if ((outDir == null) == (copy == null)) {
+         System.err.println("Usage: java hoteldb.DataGenerator [--hotels N] [--rooms N] [--customers N] "
+               + "[--bookings N] [--repairs N] [--updates N] [--companies N] [--from yyyy-mm-dd] [--days N] "
+               + "[--skew S] [--seed N] [--threads N] (--out DIR | --copy <dbname> <port> <user> [--defer-indexes])");
+         System.exit(1);
+      }
+
+      DataGenerator gen = new DataGenerator(hotels, rooms, customers, bookingCount, repairCount, updateCount, seed);
+      if (companies != null) gen.setCompanies(companies);
+      if (threads != null) gen.setThreads(threads);
+      if (days != null) gen.setDays(days);
+      if (from != null) gen.setFrom(from);
+      gen.setSkew(skew);
+
+      long start = System.nanoTime();
+      if (outDir != null) {
+         gen.writeCsv(outDir);
+      } else {
+         String url = "jdbc:postgresql://localhost:" + copy[1] + "/" + copy[0];
+         ConnectionPool pool = new ConnectionPool(url, copy[2], "", 1, 4);
+         try {
+            gen.copyInto(pool, defer);
+         } finally {
+            pool.close();
+         }
+      }
+      System.out.printf("Done in %.1f s%n", (System.nanoTime() - start) / 1e9);
+   }
+}
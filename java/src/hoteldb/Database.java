@@ -0,0 +1,578 @@
+package hoteldb;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The JDBC helpers used by every menu operation. Each call borrows a
+ * connection from the {@link ConnectionPool} and returns it before the call
+ * completes, so one Database can be shared by concurrent sessions.
+ *
+ * Every helper call is timed into {@link #getMetrics()}, by helper and SQL
+ * template, connection wait included.
+ */
+public class Database {
+
+   /**
+    * Rows fetched per round trip by the streaming helpers.
+    */
+   public static final int DEFAULT_FETCH_SIZE = 256;
+
+   private final ConnectionPool pool;
+   private final QueryMetrics metrics = new QueryMetrics();
+
+   public Database(ConnectionPool pool) {
+      this.pool = pool;
+      this.metrics.setPool(pool);
+   }
+
+   public ConnectionPool getPool() {
+      return pool;
+   }
+
+   /**
+    * @return latency, rows and bytes of every helper call so far
+    */
+   public QueryMetrics getMetrics() {
+      return metrics;
+   }
+
+   /**
+    * Method to execute an update SQL statement.  Update SQL instructions
+    * includes CREATE, INSERT, UPDATE, DELETE, and DROP.
+    *
+    * @param sql the input SQL string
+    * @return the number of rows affected
+    * @throws java.sql.SQLException when update failed
+    */
+   public int executeUpdate(String sql) throws SQLException {
+      QueryMetrics.Probe probe = metrics.beginRaw(QueryMetrics.Op.UPDATE, sql);
+      try {
+         Connection conn = pool.borrow();
+         try {
+            Statement stmt = conn.createStatement();
+            try {
+               return probe.rows(stmt.executeUpdate(sql));
+            } finally {
+               stmt.close();
+            }
+         } finally {
+            pool.release(conn);
+         }
+      } catch (SQLException e) {
+         throw probe.failed(e);
+      } finally {
+         probe.end();
+      }
+   }
+
+   /**
+    * Method to execute an input query SQL instruction (i.e. SELECT).  This
+    * method issues the query to the DBMS and outputs the results to
+    * standard out.
+    *
+    * @param query the input query string
+    * @return the number of rows returned
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public int executeQueryAndPrintResult(String query) throws SQLException {
+      QueryMetrics.Probe probe = metrics.beginRaw(QueryMetrics.Op.PRINT, query);
+      try {
+         Connection conn = pool.borrow();
+         try {
+            Statement stmt = conn.createStatement();
+            try {
+               return printResult(stmt.executeQuery(query), probe);
+            } finally {
+               stmt.close();
+            }
+         } finally {
+            pool.release(conn);
+         }
+      } catch (SQLException e) {
+         throw probe.failed(e);
+      } finally {
+         probe.end();
+      }
+   }
+
+   // iterates through the result set and outputs it to standard out as an
+   // aligned table, through one buffer instead of a print per cell
+   private static int printResult(ResultSet rs, QueryMetrics.Probe probe) throws SQLException {
+      ResultSetMetaData rsmd = rs.getMetaData();
+      int numCol = rsmd.getColumnCount();
+      String[] names = new String[numCol];
+      for (int i = 1; i <= numCol; i++)
+         names[i - 1] = rsmd.getColumnName(i);
+      int rowCount = 0;
+      ResultRenderer out = ResultRenderer.toStdout(ResultRenderer.Format.TABLE);
+      try {
+         out.header(names);
+         Object[] values = new Object[numCol];
+         while (rs.next()) {
+            for (int i = 1; i <= numCol; ++i) {
+               String value = rs.getString(i);
+               probe.bytes(value);
+               values[i - 1] = value;
+            }
+            out.row(values);
+            ++rowCount;
+         }
+         out.close();
+      } catch (IOException e) {
+         throw new SQLException("could not print the result", e);
+      }
+      return probe.rows(rowCount);
+   }
+
+   /**
+    * Method to execute an input query SQL instruction (i.e. SELECT).  This
+    * method issues the query to the DBMS and returns the results as
+    * a list of records. Each record in turn is a list of attribute values
+    *
+    * @param query the input query string
+    * @return the query result as a list of records
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public List<List<String>> executeQueryAndReturnResult(String query) throws SQLException {
+      QueryMetrics.Probe probe = metrics.beginRaw(QueryMetrics.Op.RESULT, query);
+      try {
+         Connection conn = pool.borrow();
+         try {
+            Statement stmt = conn.createStatement();
+            try {
+               return readResult(stmt.executeQuery(query), probe);
+            } finally {
+               stmt.close();
+            }
+         } finally {
+            pool.release(conn);
+         }
+      } catch (SQLException e) {
+         throw probe.failed(e);
+      } finally {
+         probe.end();
+      }
+   }
+
+   static List<List<String>> readResult(ResultSet rs, QueryMetrics.Probe probe) throws SQLException {
+      int numCol = rs.getMetaData().getColumnCount();
+      List<List<String>> result = new ArrayList<List<String>>();
+      while (rs.next()) {
+         List<String> record = new ArrayList<String>(numCol);
+         for (int i = 1; i <= numCol; ++i) {
+            String value = rs.getString(i);
+            probe.bytes(value);
+            record.add(value);
+         }
+         result.add(record);
+      }
+      probe.rows(result.size());
+      return result;
+   }
+
+   /**
+    * Method to execute an input query SQL instruction (i.e. SELECT).  This
+    * method issues the query to the DBMS and returns the number of results
+    *
+    * @param query the input query string
+    * @return the number of rows returned
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public int executeQuery(String query) throws SQLException {
+      QueryMetrics.Probe probe = metrics.beginRaw(QueryMetrics.Op.COUNT, query);
+      try {
+         Connection conn = pool.borrow();
+         try {
+            Statement stmt = conn.createStatement();
+            try {
+               ResultSet rs = stmt.executeQuery(query);
+               int rowCount = 0;
+               while (rs.next())
+                  rowCount++;
+               return probe.rows(rowCount);
+            } finally {
+               stmt.close();
+            }
+         } finally {
+            pool.release(conn);
+         }
+      } catch (SQLException e) {
+         throw probe.failed(e);
+      } finally {
+         probe.end();
+      }
+   }
+
+   /**
+    * Method to fetch the last value from sequence. This
+    * method issues the query to the DBMS and returns the current
+    * value of sequence used for autogenerated keys
+    *
+    * currval is per database session and every helper call may run on a
+    * different pooled connection, so this only works right after a nextval
+    * on the same connection; to get a generated key use
+    * {@code INSERT ... RETURNING} through {@link #queryForInt} or a
+    * {@link UnitOfWork}.
+    *
+    * @param sequence name of the DB sequence
+    * @return current value of a sequence
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public int getCurrSeqVal(String sequence) throws SQLException {
+      return getNewUserID(String.format("Select currval('%s')", sequence));
+   }
+
+   public int getNewUserID(String sql) throws SQLException {
+      QueryMetrics.Probe probe = metrics.beginRaw(QueryMetrics.Op.SEQUENCE, sql);
+      try {
+         Connection conn = pool.borrow();
+         try {
+            Statement stmt = conn.createStatement();
+            try {
+               ResultSet rs = stmt.executeQuery(sql);
+               if (rs.next()) {
+                  probe.row();
+                  return rs.getInt(1);
+               }
+               return -1;
+            } finally {
+               stmt.close();
+            }
+         } finally {
+            pool.release(conn);
+         }
+      } catch (SQLException e) {
+         throw probe.failed(e);
+      } finally {
+         probe.end();
+      }
+   }
+
+   /**
+    * Parameterized variant of {@link #executeUpdate(String)}. The statement
+    * is prepared once per connection and reused from the statement cache.
+    *
+    * @param sql SQL template with {@code ?} placeholders
+    * @param params values bound to the placeholders, in order
+    * @return the number of rows affected
+    * @throws java.sql.SQLException when update failed
+    */
+   public int executeUpdate(String sql, Object... params) throws SQLException {
+      QueryMetrics.Probe probe = metrics.begin(QueryMetrics.Op.UPDATE, sql);
+      try {
+         Connection conn = pool.borrow();
+         try {
+            PreparedStatement ps = prepare(conn, sql, params);
+            try {
+               return probe.rows(ps.executeUpdate());
+            } catch (SQLException e) {
+               pool.invalidate(conn, sql);
+               throw e;
+            }
+         } finally {
+            pool.release(conn);
+         }
+      } catch (SQLException e) {
+         throw probe.failed(e);
+      } finally {
+         probe.end();
+      }
+   }
+
+   /**
+    * Parameterized variant of {@link #executeQueryAndPrintResult(String)}.
+    *
+    * @param query SQL template with {@code ?} placeholders
+    * @param params values bound to the placeholders, in order
+    * @return the number of rows returned
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public int executeQueryAndPrintResult(String query, Object... params) throws SQLException {
+      QueryMetrics.Probe probe = metrics.begin(QueryMetrics.Op.PRINT, query);
+      try {
+         Connection conn = pool.borrow();
+         try {
+            ResultSet rs = executePrepared(conn, query, params);
+            try {
+               return printResult(rs, probe);
+            } finally {
+               rs.close();
+            }
+         } finally {
+            pool.release(conn);
+         }
+      } catch (SQLException e) {
+         throw probe.failed(e);
+      } finally {
+         probe.end();
+      }
+   }
+
+   /**
+    * Parameterized variant of {@link #executeQueryAndReturnResult(String)}.
+    *
+    * @param query SQL template with {@code ?} placeholders
+    * @param params values bound to the placeholders, in order
+    * @return the query result as a list of records
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public List<List<String>> executeQueryAndReturnResult(String query, Object... params) throws SQLException {
+      QueryMetrics.Probe probe = metrics.begin(QueryMetrics.Op.RESULT, query);
+      try {
+         Connection conn = pool.borrow();
+         try {
+            ResultSet rs = executePrepared(conn, query, params);
+            try {
+               return readResult(rs, probe);
+            } finally {
+               rs.close();
+            }
+         } finally {
+            pool.release(conn);
+         }
+      } catch (SQLException e) {
+         throw probe.failed(e);
+      } finally {
+         probe.end();
+      }
+   }
+
+   /**
+    * Parameterized variant of {@link #executeQuery(String)}.
+    *
+    * @param query SQL template with {@code ?} placeholders
+    * @param params values bound to the placeholders, in order
+    * @return the number of rows returned
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public int executeQuery(String query, Object... params) throws SQLException {
+      QueryMetrics.Probe probe = metrics.begin(QueryMetrics.Op.COUNT, query);
+      try {
+         Connection conn = pool.borrow();
+         try {
+            ResultSet rs = executePrepared(conn, query, params);
+            try {
+               int rowCount = 0;
+               while (rs.next())
+                  rowCount++;
+               return probe.rows(rowCount);
+            } finally {
+               rs.close();
+            }
+         } finally {
+            pool.release(conn);
+         }
+      } catch (SQLException e) {
+         throw probe.failed(e);
+      } finally {
+         probe.end();
+      }
+   }
+
+   /**
+    * Parameterized query returning a typed, column-oriented result: numeric
+    * columns stay primitive and dates become epoch days.
+    *
+    * @param query SQL template with {@code ?} placeholders
+    * @param params values bound to the placeholders, in order
+    * @return the query result
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public ResultTable executeQueryAndReturnTable(String query, Object... params) throws SQLException {
+      QueryMetrics.Probe probe = metrics.begin(QueryMetrics.Op.TABLE, query);
+      try {
+         Connection conn = pool.borrow();
+         try {
+            ResultSet rs = executePrepared(conn, query, params);
+            try {
+               ResultTable table = ResultTable.read(rs);
+               probe.rows(table.rowCount());
+               return table;
+            } finally {
+               rs.close();
+            }
+         } finally {
+            pool.release(conn);
+         }
+      } catch (SQLException e) {
+         throw probe.failed(e);
+      } finally {
+         probe.end();
+      }
+   }
+
+   /**
+    * Runs a parameterized query and maps each row to a domain object, e.g.
+    * {@code db.query("SELECT * FROM Rooms WHERE hotelID = ?", RoomRow.MAPPER, id)}.
+    */
+   public <T> List<T> query(String query, RowMapper<T> mapper, Object... params) throws SQLException {
+      return executeQueryAndReturnTable(query, params).map(mapper);
+   }
+
+   /**
+    * Runs a parameterized query that returns a single integer, such as a
+    * generated key or a count.
+    *
+    * @return the first column of the first row, or -1 when there is no row
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public int queryForInt(String query, Object... params) throws SQLException {
+      QueryMetrics.Probe probe = metrics.begin(QueryMetrics.Op.INT, query);
+      try {
+         Connection conn = pool.borrow();
+         try {
+            ResultSet rs = executePrepared(conn, query, params);
+            try {
+               if (rs.next()) {
+                  probe.row();
+                  return rs.getInt(1);
+               }
+               return -1;
+            } finally {
+               rs.close();
+            }
+         } finally {
+            pool.release(conn);
+         }
+      } catch (SQLException e) {
+         throw probe.failed(e);
+      } finally {
+         probe.end();
+      }
+   }
+
+   /**
+    * Streams the rows of a parameterized query to {@code handler} without
+    * materializing the result. The query runs inside a transaction so the
+    * driver reads through a server-side cursor {@code fetchSize} rows at a
+    * time; heap use stays flat however many rows match, and the first rows
+    * reach the handler before the rest are fetched.
+    *
+    * @param query SQL template with {@code ?} placeholders
+    * @param fetchSize rows fetched per round trip
+    * @param handler receives each row; returning false stops the scan
+    * @param params values bound to the placeholders, in order
+    * @return the number of rows passed to the handler
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public int executeQueryStreaming(String query, int fetchSize, RowHandler handler, Object... params) throws SQLException {
+      QueryMetrics.Probe probe = metrics.begin(QueryMetrics.Op.STREAM, query);
+      try {
+         Connection conn = pool.borrow();
+         try {
+            // the driver only uses a cursor outside auto-commit mode; release()
+            // ends the transaction and restores auto-commit
+            conn.setAutoCommit(false);
+            PreparedStatement ps = prepare(conn, query, params);
+            ps.setFetchSize(fetchSize);
+            try {
+               ResultSet rs;
+               try {
+                  rs = ps.executeQuery();
+               } catch (SQLException e) {
+                  pool.invalidate(conn, query);
+                  throw e;
+               }
+               try {
+                  int rowCount = 0;
+                  while (rs.next()) {
+                     ++rowCount;
+                     if (!handler.onRow(rs))
+                        break;
+                  }
+                  return probe.rows(rowCount);
+               } finally {
+                  rs.close();
+               }
+            } finally {
+               ps.setFetchSize(0);
+            }
+         } finally {
+            pool.release(conn);
+         }
+      } catch (SQLException e) {
+         throw probe.failed(e);
+      } finally {
+         probe.end();
+      }
+   }
+
+   /**
+    * {@link #executeQueryStreaming(String, int, RowHandler, Object...)} with
+    * {@link #DEFAULT_FETCH_SIZE}.
+    */
+   public int executeQueryStreaming(String query, RowHandler handler, Object... params) throws SQLException {
+      return executeQueryStreaming(query, DEFAULT_FETCH_SIZE, handler, params);
+   }
+
+   /**
+    * Binds {@code params} to the placeholders of {@code ps} in order. Nulls
+    * are sent untyped so the server infers the column type.
+    */
+   public static void bind(PreparedStatement ps, Object... params) throws SQLException {
+      ps.clearParameters();
+      for (int i = 0; i < params.length; i++) {
+         if (params[i] == null)
+            ps.setNull(i + 1, Types.NULL);
+         else
+            ps.setObject(i + 1, params[i]);
+      }
+   }
+
+   // cached statement for sql on conn with params bound
+   private PreparedStatement prepare(Connection conn, String sql, Object... params) throws SQLException {
+      PreparedStatement ps = pool.prepare(conn, sql);
+      bind(ps, params);
+      return ps;
+   }
+
+   private ResultSet executePrepared(Connection conn, String sql, Object... params) throws SQLException {
+      PreparedStatement ps = prepare(conn, sql, params);
+      try {
+         return ps.executeQuery();
+      } catch (SQLException e) {
+         pool.invalidate(conn, sql);
+         throw e;
+      }
+   }
+
+   /**
+    * Starts a transaction on a connection of its own.
+    *
+    * @throws java.sql.SQLException when no connection could be borrowed
+    */
+   public UnitOfWork begin() throws SQLException {
+      return new UnitOfWork(pool, metrics);
+   }
+
+   /**
+    * Runs {@code work} in one transaction and commits it; when it throws,
+    * everything it did is rolled back.
+    *
+    * @return what {@code work} returned
+    * @throws java.sql.SQLException when a statement or the commit failed
+    */
+   public <T> T inTransaction(UnitOfWork.Work<T> work) throws SQLException {
+      try (UnitOfWork uow = begin()) {
+         T result = work.run(uow);
+         uow.commit();
+         return result;
+      }
+   }
+
+   /**
+    * Closes every pooled connection.
+    */
+   public void close() {
+      pool.close();
+   }
+}
@@ -0,0 +1,132 @@
+package hoteldb;
+
+import java.util.Arrays;
+
+/**
+ * A compressed set of epoch days.
+ *
+ * Days are grouped into chunks of 512; only chunks with at least one day set
+ * are stored, each as 8 longs, and the chunk keys are kept sorted for binary
+ * search. A room booked a few nights a year therefore costs a few dozen bytes
+ * per year instead of a bit for every day since 1970. Not thread safe.
+ */
+public class DayBitmap {
+
+   private static final int CHUNK_BITS = 9;
+   private static final int CHUNK_DAYS = 1 << CHUNK_BITS;
+   private static final int OFFSET_MASK = CHUNK_DAYS - 1;
+   private static final int WORDS = CHUNK_DAYS / 64;
+
+   private int[] keys = new int[2];
+   private long[][] chunks = new long[2][];
+   private int size = 0;
+
+   public boolean get(int day) {
+      int i = find(day >> CHUNK_BITS);
+      if (i < 0)
+         return false;
+      int off = day & OFFSET_MASK;
+      return (chunks[i][off >>> 6] & (1L << off)) != 0;
+   }
+
+   public void set(int day) {
+      int key = day >> CHUNK_BITS;
+      int i = find(key);
+      if (i < 0) {
+         i = -i - 1;
+         if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            chunks = Arrays.copyOf(chunks, size * 2);
+         }
+         System.arraycopy(keys, i, keys, i + 1, size - i);
+         System.arraycopy(chunks, i, chunks, i + 1, size - i);
+         keys[i] = key;
+         chunks[i] = new long[WORDS];
+         size++;
+      }
+      int off = day & OFFSET_MASK;
+      chunks[i][off >>> 6] |= 1L << off;
+   }
+
+   public void clear(int day) {
+      int i = find(day >> CHUNK_BITS);
+      if (i < 0)
+         return;
+      int off = day & OFFSET_MASK;
+      long[] words = chunks[i];
+      words[off >>> 6] &= ~(1L << off);
+      for (long w : words)
+         if (w != 0)
+            return;
+      // chunk became empty: drop it
+      System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+      System.arraycopy(chunks, i + 1, chunks, i, size - i - 1);
+      chunks[--size] = null;
+   }
+
+   /**
+    * @return true when any day in [from, to) is set
+    */
+   public boolean anySet(int from, int to) {
+      if (from >= to)
+         return false;
+      int lastKey = (to - 1) >> CHUNK_BITS;
+      int i = find(from >> CHUNK_BITS);
+      if (i < 0)
+         i = -i - 1;
+      for (; i < size && keys[i] <= lastKey; i++) {
+         int base = keys[i] << CHUNK_BITS;
+         int lo = Math.max(from, base) - base;
+         int hi = Math.min(to, base + CHUNK_DAYS) - base; // exclusive
+         long[] words = chunks[i];
+         for (int w = lo >>> 6; w <= (hi - 1) >>> 6; w++) {
+            long mask = -1L;
+            if (w == lo >>> 6)
+               mask &= -1L << (lo & 63);
+            if (w == (hi - 1) >>> 6)
+               mask &= -1L >>> (63 - ((hi - 1) & 63));
+            if ((words[w] & mask) != 0)
+               return true;
+         }
+      }
+      return false;
+   }
+
+   /**
+    * @return the first day on or after {@code from} that is not set
+    */
+   public int nextClear(int from) {
+      int day = from;
+      while (true) {
+         int key = day >> CHUNK_BITS;
+         int i = find(key);
+         if (i < 0)
+            return day;
+         int off = day & OFFSET_MASK;
+         long[] words = chunks[i];
+         for (int w = off >>> 6; w < WORDS; w++) {
+            long free = ~words[w];
+            if (w == off >>> 6)
+               free &= -1L << (off & 63);
+            if (free != 0)
+               return (key << CHUNK_BITS) + w * 64 + Long.numberOfTrailingZeros(free);
+         }
+         day = (key + 1) << CHUNK_BITS;
+      }
+   }
+
+   /**
+    * @return the number of days set
+    */
+   public int cardinality() {
+      int n = 0;
+      for (int i = 0; i < size; i++)
+         for (long w : chunks[i])
+            n += Long.bitCount(w);
+      return n;
+   }
+
+   private int find(int key) {
+      return Arrays.binarySearch(keys, 0, size, key);
+   }
+}
@@ -0,0 +1,720 @@
+package hoteldb;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The data-access operations behind the Hotel menu, without the console.
+ *
+ * Hotel reads the user's input and prints; everything that touches the
+ * database or the in-memory indexes goes through here, so the benchmarks run
+ * exactly the statements the application runs. Each SQL template is a
+ * constant and is bound with parameters, so it stays in the statement cache.
+ */
+public class HotelOperations {
+
+   static final String CREATE_USER =
+         "INSERT INTO Users (name, password, userType) VALUES (?, ?, 'Customer') RETURNING userID";
+
+   static final String LOG_IN =
+         "SELECT userType FROM Users WHERE userID = ? AND password = ?";
+
+   static final String HOTELS_WITHIN =
+         "SELECT hotelID, hotelName FROM Hotel "
+       + "WHERE latitude BETWEEN ?::decimal AND ?::decimal AND longitude BETWEEN ?::decimal AND ?::decimal "
+       + "AND calculate_distance(latitude, longitude, ?::decimal, ?::decimal) <= ?::decimal "
+       + "ORDER BY calculate_distance(latitude, longitude, ?::decimal, ?::decimal)";
+
+   static final String FREE_ROOMS =
+         "SELECT r.roomNumber, r.price FROM Rooms r "
+       + "WHERE r.hotelID = ? AND NOT EXISTS (SELECT 1 FROM RoomBookings b "
+       + "WHERE b.hotelID = r.hotelID AND b.roomNumber = r.roomNumber AND b.bookingDate = ?) "
+       + "ORDER BY r.roomNumber";
+
+   static final String MANAGED_HOTELS =
+         "SELECT DISTINCT h.hotelName, h.hotelID "
+       + "FROM Hotel h "
+       + "INNER JOIN Rooms r ON h.hotelID = r.hotelID "
+       + "WHERE h.hotelID = r.hotelID AND managerUserID = ? "
+       + "ORDER BY h.hotelID";
+
+   static final String MANAGED_HOTEL_IDS =
+         "SELECT h.hotelID FROM Hotel h WHERE h.managerUserID = ? "
+       + "AND EXISTS (SELECT 1 FROM Rooms r WHERE r.hotelID = h.hotelID) "
+       + "ORDER BY h.hotelID";
+
+   // the update and its log row in one statement; the locked subquery
+   // yields the value being replaced
+   static final String UPDATE_PRICE =
+         "WITH upd AS (UPDATE Rooms r SET price = ? "
+       + "FROM (SELECT hotelID, roomNumber, price FROM Rooms WHERE hotelID = ? AND roomNumber = ? FOR UPDATE) o "
+       + "WHERE r.hotelID = o.hotelID AND r.roomNumber = o.roomNumber "
+       + "RETURNING r.hotelID, r.roomNumber, o.price AS oldPrice, r.price AS newPrice) "
+       + "INSERT INTO RoomUpdatesLog (managerID, hotelID, roomNumber, updatedOn, oldPrice, newPrice) "
+       + "SELECT ?, hotelID, roomNumber, ?, oldPrice, newPrice FROM upd RETURNING updateNumber, oldPrice";
+
+   static final String UPDATE_IMAGE =
+         "WITH upd AS (UPDATE Rooms r SET imageURL = ? "
+       + "FROM (SELECT hotelID, roomNumber, imageURL FROM Rooms WHERE hotelID = ? AND roomNumber = ? FOR UPDATE) o "
+       + "WHERE r.hotelID = o.hotelID AND r.roomNumber = o.roomNumber "
+       + "RETURNING r.hotelID, r.roomNumber, o.imageURL AS oldImageURL, r.imageURL AS newImageURL) "
+       + "INSERT INTO RoomUpdatesLog (managerID, hotelID, roomNumber, updatedOn, oldImageURL, newImageURL) "
+       + "SELECT ?, hotelID, roomNumber, ?, oldImageURL, newImageURL FROM upd RETURNING updateNumber, oldImageURL";
+
+   // the update alone, for when an AuditLog writes the log row behind
+   static final String SET_PRICE =
+         "UPDATE Rooms r SET price = ? "
+       + "FROM (SELECT hotelID, roomNumber, price FROM Rooms WHERE hotelID = ? AND roomNumber = ? FOR UPDATE) o "
+       + "WHERE r.hotelID = o.hotelID AND r.roomNumber = o.roomNumber RETURNING o.price";
+
+   static final String SET_IMAGE =
+         "UPDATE Rooms r SET imageURL = ? "
+       + "FROM (SELECT hotelID, roomNumber, imageURL FROM Rooms WHERE hotelID = ? AND roomNumber = ? FOR UPDATE) o "
+       + "WHERE r.hotelID = o.hotelID AND r.roomNumber = o.roomNumber RETURNING o.imageURL";
+
+   static final String RECENT_UPDATES =
+         "SELECT u.hotelID, u.roomNumber, u.updatedOn, u.oldPrice, u.newPrice, u.oldImageURL, u.newImageURL "
+       + "FROM RoomUpdatesLog u WHERE u.managerID = ? ORDER BY u.updatedOn DESC LIMIT ?";
+
+   static final String HOTEL_BOOKINGS =
+         "SELECT b.bookingID, b.customerID, b.hotelID, b.roomNumber, b.bookingDate FROM RoomBookings b "
+       + "WHERE b.hotelID = ? AND b.bookingDate BETWEEN ? AND ? AND (b.bookingDate, b.bookingID) > (?, ?) "
+       + "ORDER BY b.bookingDate, b.bookingID LIMIT ?";
+
+   static final String REGULAR_CUSTOMERS =
+         "SELECT customerID, COUNT(*) FROM RoomBookings WHERE hotelID = ? "
+       + "GROUP BY customerID ORDER BY COUNT(*) DESC, customerID LIMIT ?";
+
+   static final String INSERT_REPAIR =
+         "INSERT INTO RoomRepairs (companyID, hotelID, roomNumber, repairDate) VALUES (?, ?, ?, ?) RETURNING repairID";
+
+   static final String INSERT_REPAIR_REQUEST =
+         "INSERT INTO RoomRepairRequests (managerID, repairID) VALUES (?, ?)";
+
+   static final String CUSTOMER_BOOKINGS =
+         "SELECT b.hotelID, b.roomNumber, b.bookingDate, r.price FROM Rooms r, RoomBookings b "
+       + "WHERE b.hotelID = r.hotelID AND b.roomNumber = r.roomNumber AND b.customerID = ? "
+       + "ORDER BY b.bookingDate";
+
+   static final String REPAIR_HISTORY =
+         "SELECT rr.companyID, rr.hotelID, rr.roomNumber, rr.repairDate FROM RoomRepairs rr, RoomRepairRequests rq "
+       + "WHERE rr.repairID = rq.repairID AND rq.managerID = ?";
+
+   // keyset pages of the two above, for readers who stop between pages
+   static final String CUSTOMER_BOOKINGS_PAGE =
+         "SELECT b.bookingID, b.hotelID, b.roomNumber, b.bookingDate, r.price FROM Rooms r, RoomBookings b "
+       + "WHERE b.hotelID = r.hotelID AND b.roomNumber = r.roomNumber AND b.customerID = ? "
+       + "AND (b.bookingDate, b.bookingID) < (?, ?) ORDER BY b.bookingDate DESC, b.bookingID DESC LIMIT ?";
+
+   static final String REPAIR_HISTORY_PAGE =
+         "SELECT rq.repairID, rr.companyID, rr.hotelID, rr.roomNumber, rr.repairDate "
+       + "FROM RoomRepairs rr, RoomRepairRequests rq "
+       + "WHERE rr.repairID = rq.repairID AND rq.managerID = ? AND rq.repairID > ? ORDER BY rq.repairID LIMIT ?";
+
+   private final Database db;
+   private final BookingService bookings;
+   private SpatialIndex hotelIndex = null;
+   private AvailabilityIndex availability = null;
+   private RegularCustomers regulars = null;
+   private RecentUpdates updates = null;
+   private AuditLog audit = null;
+   private ReplicaRouter router = null;
+   private ReferenceCache reference;
+   private int fetchSize = Database.DEFAULT_FETCH_SIZE;
+   // bumped on every hotel change, so sessions reload their managed hotels
+   private final AtomicLong hotelVersion = new AtomicLong();
+   // reads the next page of a BookingHistory, created on first use
+   private ExecutorService prefetcher = null;
+
+   public HotelOperations(Database db) {
+      this(db, new BookingService(db));
+   }
+
+   public HotelOperations(Database db, BookingService bookings) {
+      this.db = db;
+      this.bookings = bookings;
+      this.reference = new ReferenceCache(db);
+   }
+
+   public Database getDatabase() {
+      return db;
+   }
+
+   /**
+    * Sends the read-only queries to replicas through {@code router}, with
+    * read-your-writes for the user who made each write through this object
+    * (bookings included); null reads everything from the primary. Logging
+    * in and checking a manager's hotels always read the primary.
+    */
+   public void setReplicaRouter(ReplicaRouter router) {
+      if (router != null)
+         bookings.addListener(router);
+      this.router = router;
+      reference.setReplicaRouter(router);
+   }
+
+   public ReplicaRouter getReplicaRouter() {
+      return router;
+   }
+
+   // where a read on behalf of userID goes; ReplicaRouter.SHARED for data every user sees
+   private Database reader(int userID) {
+      return router == null ? db : router.reader(userID);
+   }
+
+   // where a read of a hotel's availability goes
+   private Database hotelReader(int hotelID) {
+      return router == null ? db : router.hotelReader(hotelID);
+   }
+
+   private void wrote(int userID) {
+      if (router != null)
+         router.wrote(userID);
+   }
+
+   public BookingService getBookings() {
+      return bookings;
+   }
+
+   /**
+    * Serves radius and nearest searches from {@code index}; null falls back
+    * to SQL.
+    */
+   public void setHotelIndex(SpatialIndex index) {
+      this.hotelIndex = index;
+   }
+
+   public SpatialIndex getHotelIndex() {
+      return hotelIndex;
+   }
+
+   /**
+    * Serves free-room searches from {@code index} and keeps it current with
+    * every booking made through this object; null falls back to SQL.
+    */
+   public void setAvailability(AvailabilityIndex index) {
+      if (index != null)
+         bookings.addListener(index);
+      this.availability = index;
+   }
+
+   public AvailabilityIndex getAvailability() {
+      return availability;
+   }
+
+   /**
+    * Serves regular-customer lists from {@code regulars} and keeps it
+    * current with every booking made through this object; null falls back
+    * to SQL.
+    */
+   public void setRegularCustomers(RegularCustomers regulars) {
+      if (regulars != null)
+         bookings.addListener(regulars);
+      this.regulars = regulars;
+   }
+
+   public RegularCustomers getRegularCustomers() {
+      return regulars;
+   }
+
+   /**
+    * Serves the recent-updates feed from {@code updates} and appends every
+    * room update made through this object to it; null falls back to SQL.
+    */
+   public void setRecentUpdates(RecentUpdates updates) {
+      this.updates = updates;
+   }
+
+   public RecentUpdates getRecentUpdates() {
+      return updates;
+   }
+
+   /**
+    * Hands the RoomUpdatesLog rows of room updates to {@code audit}, which
+    * writes them in batches; null, or a SYNC log, logs each update in the
+    * statement that makes it. The caller closes the log.
+    */
+   public void setAuditLog(AuditLog audit) {
+      this.audit = audit;
+   }
+
+   public AuditLog getAuditLog() {
+      return audit;
+   }
+
+   /**
+    * Replaces the cache that hotels, rooms and companies are listed and
+    * validated from, e.g. to change its bounds.
+    */
+   public void setReferenceCache(ReferenceCache cache) {
+      cache.setReplicaRouter(router);
+      this.reference = cache;
+   }
+
+   public ReferenceCache getReferenceCache() {
+      return reference;
+   }
+
+   /**
+    * Rows fetched per round trip by the streamed history operations.
+    */
+   public void setFetchSize(int fetchSize) {
+      this.fetchSize = fetchSize;
+   }
+
+   /**
+    * Registers a customer.
+    *
+    * @return the new userID, read back from the insert so concurrent
+    *         registrations cannot see each other's ID
+    * @throws java.sql.SQLException when the insert failed
+    */
+   public int createUser(String name, String password) throws SQLException {
+      int userID = db.queryForInt(CREATE_USER, name, password);
+      wrote(userID);
+      return userID;
+   }
+
+   /**
+    * Checks a user's credentials.
+    *
+    * @return the user's type ("customer" or "manager"), or null when the
+    *         userID and password do not match
+    * @throws java.sql.SQLException when the query failed
+    */
+   public String logIn(int userID, String password) throws SQLException {
+      List<List<String>> rows = db.executeQueryAndReturnResult(LOG_IN, userID, password);
+      if (rows.isEmpty())
+         return null;
+      String type = rows.get(0).get(0);
+      return type == null ? "" : type.trim();
+   }
+
+   /**
+    * Checks a user's credentials and, for a manager, loads the IDs of the
+    * hotels they manage into the session.
+    *
+    * @return the user's session, or null when the userID and password do
+    *         not match
+    * @throws java.sql.SQLException when a query failed
+    */
+   public Session openSession(int userID, String password) throws SQLException {
+      String type = logIn(userID, password);
+      if (type == null)
+         return null;
+      Session session = new Session(userID, type);
+      if (session.isManager())
+         loadManagedHotels(session);
+      return session;
+   }
+
+   /**
+    * Whether a session's user manages a hotel (with rooms). A set lookup;
+    * the set is read again first when a hotel changed since it was loaded
+    * or it is older than the reference cache TTL.
+    *
+    * @throws java.sql.SQLException when the set had to be read and could not be
+    */
+   public boolean manages(Session session, int hotelID) throws SQLException {
+      if (!session.isManager())
+         return false;
+      return current(session).set.containsKey(hotelID);
+   }
+
+   /**
+    * @return the IDs of the hotels (with rooms) a session's user manages, in
+    *         ascending order
+    * @throws java.sql.SQLException when the set had to be read and could not be
+    */
+   public int[] managedHotelIDs(Session session) throws SQLException {
+      if (!session.isManager())
+         return new int[0];
+      return current(session).ids.clone();
+   }
+
+   private Session.ManagedHotels current(Session session) throws SQLException {
+      Session.ManagedHotels managed = session.managed();
+      if (managed.version != hotelVersion.get()
+            || System.currentTimeMillis() - managed.loadedAt >= reference.ttlMillis()) {
+         loadManagedHotels(session);
+         managed = session.managed();
+      }
+      return managed;
+   }
+
+   private void loadManagedHotels(Session session) throws SQLException {
+      // read the version first, so a change during the query forces a reload
+      long version = hotelVersion.get();
+      List<List<String>> rows = db.executeQueryAndReturnResult(MANAGED_HOTEL_IDS, session.userID);
+      int[] ids = new int[rows.size()];
+      for (int i = 0; i < ids.length; i++)
+         ids[i] = Integer.parseInt(rows.get(i).get(0).trim());
+      session.setManagedHotels(ids, version);
+   }
+
+   /**
+    * Hotels within {@code radius} of a location, nearest first. Served from
+    * the location index when it is set, otherwise by a query whose bounding
+    * box lets Postgres use the (latitude, longitude) index before calling
+    * calculate_distance.
+    *
+    * @return hotelID, hotelName records ordered by distance
+    * @throws java.sql.SQLException when the fallback query failed
+    */
+   public List<List<String>> hotelsWithin(double lat, double longi, double radius) throws SQLException {
+      if (hotelIndex != null) {
+         List<List<String>> result = new ArrayList<List<String>>();
+         for (SpatialIndex.Hit hit : hotelIndex.withinRadius(lat, longi, radius)) {
+            List<String> record = new ArrayList<String>(2);
+            record.add(String.valueOf(hit.hotelID));
+            record.add(hit.hotelName);
+            result.add(record);
+         }
+         return result;
+      }
+      return reader(ReplicaRouter.SHARED).executeQueryAndReturnResult(HOTELS_WITHIN, lat - radius, lat + radius, longi - radius, longi + radius,
+            lat, longi, radius, lat, longi);
+   }
+
+   /**
+    * @return the k hotels nearest to a location, or null when no location
+    *         index is set
+    */
+   public List<SpatialIndex.Hit> nearestHotels(double lat, double longi, int k) {
+      return hotelIndex == null ? null : hotelIndex.nearest(lat, longi, k);
+   }
+
+   /**
+    * Keeps the location index, the reference cache and the sessions' managed
+    * hotels in sync after a Hotel row was inserted, updated or deleted
+    * (including a change of its manager).
+    *
+    * @throws java.sql.SQLException when the row could not be read
+    */
+   public void hotelChanged(int hotelID) throws SQLException {
+      hotelVersion.incrementAndGet();
+      wrote(ReplicaRouter.SHARED);
+      reference.invalidateHotel(hotelID);
+      if (hotelIndex != null)
+         hotelIndex.refresh(db, hotelID);
+   }
+
+   /**
+    * Rooms of a hotel that are not booked on a date. Served from the
+    * availability index when it is set (one bitmap probe per room, prices
+    * from the reference cache), otherwise by an anti-join against
+    * RoomBookings.
+    *
+    * @return roomNumber, price records ordered by room number
+    * @throws java.sql.SQLException when the query failed
+    */
+   public List<List<String>> freeRooms(int hotelID, LocalDate date) throws SQLException {
+      if (availability != null) {
+         // bookings of other processes since the month was last read
+         availability.refresh(hotelID, date, date.plusDays(1));
+         int[] free = availability.freeRooms(hotelID, date);
+         ReferenceCache.Rooms rooms = reference.rooms(hotelID);
+         List<List<String>> result = new ArrayList<List<String>>(free.length);
+         for (int room : free) {
+            int i = rooms.indexOf(room);
+            if (i >= 0) {
+               List<String> record = new ArrayList<String>(2);
+               record.add(String.valueOf(room));
+               record.add(String.valueOf(rooms.price(i)));
+               result.add(record);
+            }
+         }
+         return result;
+      }
+      return hotelReader(hotelID).executeQueryAndReturnResult(FREE_ROOMS, hotelID, java.sql.Date.valueOf(date));
+   }
+
+   /**
+    * @return every hotel, from the reference cache
+    * @throws java.sql.SQLException when the hotels had to be read and could not be
+    */
+   public ReferenceCache.Hotels hotels() throws SQLException {
+      return reference.hotels();
+   }
+
+   /**
+    * @return the rooms of a hotel with price and image, from the reference
+    *         cache
+    * @throws java.sql.SQLException when the rooms had to be read and could not be
+    */
+   public ReferenceCache.Rooms rooms(int hotelID) throws SQLException {
+      return reference.rooms(hotelID);
+   }
+
+   /**
+    * @return every maintenance company, from the reference cache
+    * @throws java.sql.SQLException when the companies had to be read and could not be
+    */
+   public ReferenceCache.Companies companies() throws SQLException {
+      return reference.companies();
+   }
+
+   /**
+    * Books a batch of room-nights for a customer. Taken or unknown
+    * room-nights are reported, not booked.
+    *
+    * @return one result (status, bookingID, price) per request
+    * @throws java.sql.SQLException when the batch could not be stored
+    */
+   public List<BookingResult> book(int customerID, List<BookingRequest> requests) throws SQLException {
+      return bookings.book(customerID, requests);
+   }
+
+   /**
+    * @return hotelName, hotelID records of the hotels with rooms that
+    *         {@code managerID} manages
+    * @throws java.sql.SQLException when the query failed
+    */
+   public List<List<String>> managedHotels(int managerID) throws SQLException {
+      return reader(managerID).executeQueryAndReturnResult(MANAGED_HOTELS, managerID);
+   }
+
+   /**
+    * Sets a room's price; see {@link #updateRoom}.
+    *
+    * @throws java.sql.SQLException when a statement failed
+    */
+   public void updateRoomPrice(int managerID, int hotelID, int roomNumber, int price) throws SQLException {
+      updateRoom(managerID, hotelID, roomNumber, price, null);
+   }
+
+   /**
+    * Sets a room's image URL; see {@link #updateRoom}.
+    *
+    * @throws java.sql.SQLException when a statement failed
+    */
+   public void updateRoomImage(int managerID, int hotelID, int roomNumber, String imageURL) throws SQLException {
+      updateRoom(managerID, hotelID, roomNumber, null, imageURL);
+   }
+
+   /**
+    * Sets a room's price and/or image URL in one transaction, with a
+    * RoomUpdatesLog row per change holding the old and new value. The log
+    * rows are written by the same statements, or through the audit log
+    * when one writes behind (GROUP_COMMIT, ASYNC). After the commit the changes are written through to
+    * the reference cache and the recent-updates feed. Does nothing for an
+    * unknown room.
+    *
+    * @param price the new price, or null to keep it
+    * @param imageURL the new image URL, or null to keep it
+    * @throws java.sql.SQLException when a statement failed, or the audit
+    *         log could not write the rows in GROUP_COMMIT mode;
+    *         nothing is changed in the first case
+    */
+   public void updateRoom(int managerID, int hotelID, int roomNumber, Integer price, String imageURL)
+         throws SQLException {
+      Timestamp now = new Timestamp(System.currentTimeMillis());
+      boolean behind = audit != null && audit.writesBehind();
+      List<RecentUpdates.Update> changes = new ArrayList<RecentUpdates.Update>(2);
+      try (UnitOfWork work = db.begin()) {
+         if (price != null) {
+            List<List<String>> row = behind
+                  ? work.query(SET_PRICE, price, hotelID, roomNumber)
+                  : work.query(UPDATE_PRICE, price, hotelID, roomNumber, managerID, now);
+            if (row.isEmpty())
+               return;
+            // [updateNumber,] old price
+            List<String> r = row.get(0);
+            changes.add(new RecentUpdates.Update(behind ? 0 : Integer.parseInt(r.get(0).trim()), managerID,
+                  hotelID, roomNumber, now, Integer.valueOf(r.get(r.size() - 1).trim()), price, null, null));
+         }
+         if (imageURL != null) {
+            List<List<String>> row = behind
+                  ? work.query(SET_IMAGE, imageURL, hotelID, roomNumber)
+                  : work.query(UPDATE_IMAGE, imageURL, hotelID, roomNumber, managerID, now);
+            if (row.isEmpty())
+               return;
+            List<String> r = row.get(0);
+            String old = r.get(r.size() - 1);
+            changes.add(new RecentUpdates.Update(behind ? 0 : Integer.parseInt(r.get(0).trim()), managerID,
+                  hotelID, roomNumber, now, null, null, old == null ? null : old.trim(), imageURL));
+         }
+         work.commit();
+      }
+      wrote(managerID);
+      wrote(ReplicaRouter.SHARED);
+      if (price != null)
+         reference.roomPriceChanged(hotelID, roomNumber, price);
+      if (imageURL != null)
+         reference.roomImageChanged(hotelID, roomNumber, imageURL);
+      for (RecentUpdates.Update update : changes)
+         logged(update);
+   }
+
+   // an update was made: queue its log row unless the statement wrote it,
+   // and show it in the feed
+   private void logged(RecentUpdates.Update update) throws SQLException {
+      if (updates != null)
+         updates.add(update);
+      if (audit == null)
+         return;
+      if (audit.writesBehind())
+         audit.append(update);
+      else
+         audit.wroteInline();
+   }
+
+   /**
+    * One keyset page of a hotel's bookings in [from, to]: the first
+    * {@code limit} after (afterDate, afterID) in (bookingDate, bookingID)
+    * order.
+    *
+    * @throws java.sql.SQLException when the query failed
+    */
+   public List<BookingRow> hotelBookings(int hotelID, LocalDate from, LocalDate to, LocalDate afterDate, int afterID,
+         int limit) throws SQLException {
+      return reader(ReplicaRouter.SHARED).query(HOTEL_BOOKINGS, BookingRow.MAPPER, hotelID, java.sql.Date.valueOf(from),
+            java.sql.Date.valueOf(to), java.sql.Date.valueOf(afterDate), afterID, limit);
+   }
+
+   /**
+    * Pages through a hotel's bookings in [from, to], oldest first.
+    *
+    * @param prefetch read each next page in the background while the
+    *        current one is used
+    */
+   public BookingHistory bookingHistory(int hotelID, LocalDate from, LocalDate to, int pageSize, boolean prefetch) {
+      return new BookingHistory(this, hotelID, from, to, pageSize, prefetch ? prefetcher() : null);
+   }
+
+   private synchronized ExecutorService prefetcher() {
+      if (prefetcher == null)
+         prefetcher = VirtualThreads.newPerTaskExecutor("booking-prefetch");
+      return prefetcher;
+   }
+
+   /**
+    * The customers with the most room-nights booked at a hotel. Served from
+    * the maintained counts when they are set, otherwise by aggregating the
+    * hotel's RoomBookings.
+    *
+    * @return customerID, bookings records, most bookings first
+    * @throws java.sql.SQLException when the fallback query failed
+    */
+   public List<List<String>> regularCustomers(int hotelID, int k) throws SQLException {
+      if (regulars != null && k <= regulars.k()) {
+         List<RegularCustomers.Regular> top = regulars.top(hotelID);
+         List<List<String>> result = new ArrayList<List<String>>(Math.min(k, top.size()));
+         for (int i = 0; i < top.size() && i < k; i++) {
+            List<String> record = new ArrayList<String>(2);
+            record.add(String.valueOf(top.get(i).customerID));
+            record.add(String.valueOf(top.get(i).bookings));
+            result.add(record);
+         }
+         return result;
+      }
+      return reader(ReplicaRouter.SHARED).executeQueryAndReturnResult(REGULAR_CUSTOMERS, hotelID, k);
+   }
+
+   /**
+    * Recounts the maintained regular-customer lists from RoomBookings, e.g.
+    * after bookings were deleted outside the application.
+    *
+    * @throws java.sql.SQLException when RoomBookings cannot be read
+    */
+   public void rebuildRegularCustomers() throws SQLException {
+      if (regulars != null)
+         regulars.load(db);
+   }
+
+   /**
+    * The manager's five latest room updates. Served from the recent-updates
+    * feed when it is set, otherwise by a LIMIT query on the
+    * (managerID, updatedOn DESC) index.
+    *
+    * @return hotelID, roomNumber, updatedOn, oldPrice, newPrice,
+    *         oldImageURL, newImageURL records, newest first
+    * @throws java.sql.SQLException when the fallback query failed
+    */
+   public List<List<String>> recentUpdates(int managerID) throws SQLException {
+      if (updates != null && updates.capacity() >= RecentUpdates.DEFAULT_CAPACITY) {
+         List<List<String>> result = new ArrayList<List<String>>();
+         for (RecentUpdates.Update u : updates.latest(managerID, RecentUpdates.DEFAULT_CAPACITY))
+            result.add(u.record());
+         return result;
+      }
+      return reader(managerID).executeQueryAndReturnResult(RECENT_UPDATES, managerID, RecentUpdates.DEFAULT_CAPACITY);
+   }
+
+   /**
+    * Schedules a repair and files the manager's request for it, in one
+    * transaction: the repairID comes back from the insert, and the request
+    * goes out with the commit, so the cost does not depend on the size of
+    * RoomRepairs.
+    *
+    * @return the new repairID
+    * @throws java.sql.SQLException when a statement failed; nothing is
+    *         stored then
+    */
+   public int placeRepairRequest(int managerID, int companyID, int hotelID, int roomNumber, LocalDate date)
+         throws SQLException {
+      try (UnitOfWork work = db.begin()) {
+         int repairID = work.queryForInt(INSERT_REPAIR, companyID, hotelID, roomNumber, java.sql.Date.valueOf(date));
+         work.add(INSERT_REPAIR_REQUEST, managerID, repairID);
+         work.commit();
+         wrote(managerID);
+         return repairID;
+      }
+   }
+
+   /**
+    * Streams a customer's bookings (hotelID, roomNumber, bookingDate, price)
+    * by date.
+    *
+    * @return the number of rows handled
+    * @throws java.sql.SQLException when the query failed
+    */
+   public int customerBookings(int customerID, RowHandler handler) throws SQLException {
+      return reader(customerID).executeQueryStreaming(CUSTOMER_BOOKINGS, fetchSize, handler, customerID);
+   }
+
+   /**
+    * Streams the repairs a manager requested (companyID, hotelID,
+    * roomNumber, repairDate).
+    *
+    * @return the number of rows handled
+    * @throws java.sql.SQLException when the query failed
+    */
+   public int repairHistory(int managerID, RowHandler handler) throws SQLException {
+      return reader(managerID).executeQueryStreaming(REPAIR_HISTORY, fetchSize, handler, managerID);
+   }
+
+   /**
+    * One keyset page of a customer's bookings (bookingID, hotelID,
+    * roomNumber, bookingDate, price), most recent first: the first
+    * {@code limit} before (beforeDate, beforeID) in descending
+    * (bookingDate, bookingID) order. The cursor is closed when this returns,
+    * so the caller may wait between pages.
+    *
+    * @return the number of rows handled
+    * @throws java.sql.SQLException when the query failed
+    */
+   public int customerBookings(int customerID, LocalDate beforeDate, int beforeID, int limit, RowHandler handler)
+         throws SQLException {
+      return reader(customerID).executeQueryStreaming(CUSTOMER_BOOKINGS_PAGE, fetchSize, handler, customerID,
+            java.sql.Date.valueOf(beforeDate), beforeID, limit);
+   }
+
+   /**
+    * One keyset page of the repairs a manager requested (repairID,
+    * companyID, hotelID, roomNumber, repairDate): the first {@code limit}
+    * after {@code afterID}. The cursor is closed when this returns.
+    *
+    * @return the number of rows handled
+    * @throws java.sql.SQLException when the query failed
+    */
+   public int repairHistory(int managerID, int afterID, int limit, RowHandler handler) throws SQLException {
+      return reader(managerID).executeQueryStreaming(REPAIR_HISTORY_PAGE, fetchSize, handler, managerID, afterID,
+            limit);
+   }
+}
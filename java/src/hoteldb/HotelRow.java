@@ -0,0 +1,36 @@
+package hoteldb;
+
+import java.time.LocalDate;
+
+/**
+ * One row of the Hotel table.
+ */
+public class HotelRow {
+
+   public static final RowMapper<HotelRow> MAPPER = (t, r) -> new HotelRow(
+         t.getInt(r, "hotelID"), t.getString(r, "hotelName"),
+         t.getDouble(r, "latitude"), t.getDouble(r, "longitude"),
+         t.getDate(r, "dateEstablished"), t.getInt(r, "managerUserID"));
+
+   public final int hotelID;
+   public final String hotelName;
+   public final double latitude;
+   public final double longitude;
+   public final LocalDate dateEstablished;
+   public final int managerUserID;
+
+   public HotelRow(int hotelID, String hotelName, double latitude, double longitude,
+                   LocalDate dateEstablished, int managerUserID) {
+      this.hotelID = hotelID;
+      this.hotelName = hotelName;
+      this.latitude = latitude;
+      this.longitude = longitude;
+      this.dateEstablished = dateEstablished;
+      this.managerUserID = managerUserID;
+   }
+
+   @Override
+   public String toString() {
+      return hotelID + " " + hotelName;
+   }
+}
@@ -0,0 +1,911 @@
+package hoteldb;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTransientException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The Hotel operations as an HTTP/JSON API on the JDK's built-in server, so
+ * one process serves many users at once.
+ *
+ * Every request runs on its own virtual thread when the runtime has them
+ * (see {@link VirtualThreads}), otherwise on a platform thread. Log in to get a token and send it as
+ * {@code Authorization: Bearer <token>}; each token carries its own user,
+ * so nothing is shared between users the way the console's static
+ * managerID and customerID are.
+ *
+ * Admission is bounded: at most {@code maxConcurrent} requests are worked on
+ * at a time, a request waits up to {@code queueMillis} for a slot, and past
+ * that it is answered 503 with Retry-After instead of piling up behind the
+ * connection pool. A pool timeout is answered the same way.
+ *
+ * <pre>
+ * POST /users                      {"name", "password"}            -&gt; {"userID"}
+ * POST /login                      {"userID", "password"}          -&gt; {"token", "userType"}
+ * POST /logout
+ * GET  /hotels?lat=&amp;long=[&amp;radius=30]                              -&gt; [{"hotelID", "hotelName"}]
+ * GET  /hotels/{hotelID}/rooms?date=yyyy-mm-dd                     -&gt; [{"roomNumber", "price"}]
+ * POST /bookings                   {"hotelID", "roomNumber", "date", "nights"}
+ * GET  /bookings                   the caller's bookings
+ * GET  /managed-hotels             manager: hotels the caller manages
+ * PUT  /hotels/{hotelID}/rooms/{roomNumber}  manager: {"price"} and/or {"imageURL"}
+ * GET  /hotels/{hotelID}/bookings[?from=&amp;to=&amp;limit=100&amp;after=]  manager: -&gt; {"bookings", "next"}
+ * GET  /hotels/{hotelID}/regular-customers[?k=5]  manager: -&gt; [{"customerID", "bookings"}]
+ * GET  /updates                    manager: five latest room updates, old and new values
+ * POST /repairs                    manager: {"companyID", "hotelID", "roomNumber", "date"} -&gt; {"repairID"}
+ * GET  /repairs                    manager: repair requests placed
+ * GET  /status                     admission, pool and cache counters
+ * GET  /metrics[?format=json]      latency, rows and bytes per SQL template
+ * </pre>
+ *
+ * The endpoints answering a list of rows, and the booking history, also
+ * answer {@code ?format=csv} and {@code ?format=jsonl}, streamed as the rows
+ * arrive (see {@link ResultRenderer}). The booking history then covers the
+ * whole from/to range in one response instead of a page.
+ *
+ * Usage: java hoteldb.HotelServer &lt;dbname&gt; &lt;port&gt; &lt;user&gt;
+ *        [--http-port N] [--max-concurrent N] [--queue-ms MS] [--backlog N]
+ *        [--pool N] [--session-ttl S] [--max-sessions N] [--no-indexes]
+ *        [--metrics-every S] [--metrics-file FILE] [--audit sync|group-commit|async|none]
+ *        [--partitions-ahead MONTHS] [--replica HOST:PORT]... [--max-lag-ms MS]
+ *        [--availability-ttl-ms MS]
+ *
+ * Each --replica is a streaming standby of the database, serving the
+ * read-only queries (see {@link ReplicaRouter}).
+ */
+public class HotelServer {
+
+   static final int MAX_BODY = 64 * 1024;
+   static final double DEFAULT_RADIUS = 30;
+   // keyset page size of a booking history export
+   static final int EXPORT_PAGE_SIZE = 1000;
+
+   private final HotelOperations ops;
+   private final SessionStore sessions;
+   private final Semaphore admission;
+   private final int maxConcurrent;
+   private final long queueMillis;
+   private final LongAdder served = new LongAdder();
+   private final LongAdder rejected = new LongAdder();
+   private final LongAdder failed = new LongAdder();
+   private HttpServer server = null;
+   private ExecutorService executor = null;
+   private ScheduledExecutorService sweeper = null;
+
+   /**
+    * @param maxConcurrent requests worked on at once
+    * @param queueMillis how long a request waits for a slot before 503
+    */
+   public HotelServer(HotelOperations ops, SessionStore sessions, int maxConcurrent, long queueMillis) {
+      this.ops = ops;
+      this.sessions = sessions;
+      this.maxConcurrent = maxConcurrent;
+      this.admission = new Semaphore(maxConcurrent);
+      this.queueMillis = queueMillis;
+   }
+
+   /**
+    * Starts listening.
+    *
+    * @param backlog TCP connections queued by the kernel before accept
+    * @throws java.io.IOException when the address cannot be bound
+    */
+   public void start(InetSocketAddress address, int backlog) throws IOException {
+      server = HttpServer.create(address, backlog);
+      executor = VirtualThreads.newPerTaskExecutor("http");
+      server.setExecutor(executor);
+      server.createContext("/", this::handle);
+      sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+         Thread t = new Thread(r, "session-sweeper");
+         t.setDaemon(true);
+         return t;
+      });
+      sweeper.scheduleWithFixedDelay(sessions::sweep, 1, 1, TimeUnit.MINUTES);
+      server.start();
+   }
+
+   public InetSocketAddress getAddress() {
+      return server.getAddress();
+   }
+
+   /**
+    * Stops accepting, waits up to {@code delaySeconds} for requests in
+    * progress, then stops.
+    */
+   public void stop(int delaySeconds) {
+      if (server != null)
+         server.stop(delaySeconds);
+      if (executor != null)
+         executor.shutdown();
+      if (sweeper != null)
+         sweeper.shutdownNow();
+   }
+
+   /**
+    * An answer other than 200, thrown from a route.
+    */
+   static class HttpError extends RuntimeException {
+      private static final long serialVersionUID = 1L;
+
+      final int status;
+
+      HttpError(int status, String message) {
+         super(message);
+         this.status = status;
+      }
+   }
+
+   private void handle(HttpExchange exchange) throws IOException {
+      try {
+         boolean admitted;
+         try {
+            admitted = admission.tryAcquire(queueMillis, TimeUnit.MILLISECONDS);
+         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            admitted = false;
+         }
+         if (!admitted) {
+            rejected.increment();
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            sendError(exchange, 503, "server busy");
+            return;
+         }
+         try {
+            route(exchange);
+            served.increment();
+         } catch (HttpError e) {
+            if (e.status == 503)
+               exchange.getResponseHeaders().set("Retry-After", "1");
+            sendError(exchange, e.status, e.getMessage());
+         } catch (IllegalArgumentException e) {
+            sendError(exchange, 400, e.getMessage());
+         } catch (SQLTransientException e) {
+            // no connection within the acquire timeout
+            rejected.increment();
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            sendError(exchange, 503, e.getMessage());
+         } catch (SQLException e) {
+            failed.increment();
+            String state = e.getSQLState() == null ? "" : e.getSQLState();
+            // class 23: integrity constraint violation, e.g. an unknown company or
+            // room; class 08: the database cannot be reached
+            int status = state.startsWith("23") ? 409 : state.startsWith("08") ? 503 : 500;
+            sendError(exchange, status, e.getMessage());
+         } catch (IOException e) {
+            throw e;
+         } catch (Exception e) {
+            failed.increment();
+            sendError(exchange, 500, e.toString());
+         } finally {
+            admission.release();
+         }
+      } finally {
+         exchange.close();
+      }
+   }
+
+   private void route(HttpExchange exchange) throws Exception {
+      String method = exchange.getRequestMethod();
+      String[] path = exchange.getRequestURI().getPath().replaceAll("^/+|/+$", "").split("/+");
+      String first = path[0];
+
+      if (path.length == 1) {
+         switch (first) {
+            case "users":
+               requireMethod(method, "POST");
+               createUser(exchange);
+               return;
+            case "login":
+               requireMethod(method, "POST");
+               logIn(exchange);
+               return;
+            case "logout":
+               requireMethod(method, "POST");
+               sessions.close(token(exchange));
+               send(exchange, 200, "{}");
+               return;
+            case "status":
+               requireMethod(method, "GET");
+               status(exchange);
+               return;
+            case "metrics":
+               requireMethod(method, "GET");
+               metrics(exchange);
+               return;
+            case "hotels":
+               requireMethod(method, "GET");
+               hotelsWithin(exchange, session(exchange));
+               return;
+            case "bookings":
+               if (method.equals("POST"))
+                  book(exchange, session(exchange));
+               else if (method.equals("GET"))
+                  bookingHistory(exchange, session(exchange));
+               else
+                  throw new HttpError(405, method + " not allowed");
+               return;
+            case "managed-hotels":
+               requireMethod(method, "GET");
+               managedHotels(exchange, manager(exchange));
+               return;
+            case "updates":
+               requireMethod(method, "GET");
+               recentUpdates(exchange, manager(exchange));
+               return;
+            case "repairs":
+               if (method.equals("POST"))
+                  placeRepair(exchange, manager(exchange));
+               else if (method.equals("GET"))
+                  repairHistory(exchange, manager(exchange));
+               else
+                  throw new HttpError(405, method + " not allowed");
+               return;
+            default:
+               break;
+         }
+      } else if (first.equals("hotels") && path.length >= 3 && path[2].equals("rooms")) {
+         int hotelID = pathInt(path[1], "hotelID");
+         if (path.length == 3) {
+            requireMethod(method, "GET");
+            freeRooms(exchange, session(exchange), hotelID);
+            return;
+         }
+         if (path.length == 4) {
+            requireMethod(method, "PUT");
+            updateRoom(exchange, manager(exchange), hotelID, pathInt(path[3], "roomNumber"));
+            return;
+         }
+      } else if (first.equals("hotels") && path.length == 3 && path[2].equals("bookings")) {
+         requireMethod(method, "GET");
+         hotelBookings(exchange, manager(exchange), pathInt(path[1], "hotelID"));
+         return;
+      } else if (first.equals("hotels") && path.length == 3 && path[2].equals("regular-customers")) {
+         requireMethod(method, "GET");
+         regularCustomers(exchange, manager(exchange), pathInt(path[1], "hotelID"));
+         return;
+      }
+      throw new HttpError(404, "no such resource: " + exchange.getRequestURI().getPath());
+   }
+
+   // ---- routes
+
+   private void createUser(HttpExchange exchange) throws Exception {
+      Map<String, Object> body = body(exchange);
+      int userID = ops.createUser(string(body, "name"), string(body, "password"));
+      send(exchange, 201, "{\"userID\":" + userID + "}");
+   }
+
+   private void logIn(HttpExchange exchange) throws Exception {
+      Map<String, Object> body = body(exchange);
+      int userID = integer(body, "userID");
+      Session session = ops.openSession(userID, string(body, "password"));
+      if (session == null)
+         throw new HttpError(401, "wrong userID or password");
+      String token;
+      try {
+         token = sessions.open(session);
+      } catch (IllegalStateException e) {
+         throw new HttpError(503, e.getMessage());
+      }
+      send(exchange, 200, "{\"token\":" + Json.quote(token) + ",\"userType\":" + Json.quote(session.userType) + "}");
+   }
+
+   private void status(HttpExchange exchange) throws IOException {
+      StringBuilder sb = new StringBuilder();
+      sb.append("{\"inFlight\":").append(maxConcurrent - admission.availablePermits())
+            .append(",\"maxConcurrent\":").append(maxConcurrent)
+            .append(",\"served\":").append(served.sum())
+            .append(",\"rejected\":").append(rejected.sum())
+            .append(",\"failed\":").append(failed.sum())
+            .append(",\"sessions\":").append(sessions.size())
+            .append(",\"virtualThreads\":").append(VirtualThreads.available())
+            .append(",\"pool\":");
+      Json.quote(sb, ops.getDatabase().getPool().stats().toString());
+      sb.append(",\"referenceCache\":");
+      Json.quote(sb, ops.getReferenceCache().toString());
+      if (ops.getAuditLog() != null) {
+         AuditLog audit = ops.getAuditLog();
+         sb.append(",\"auditLog\":{\"durability\":\"").append(audit.durability())
+               .append("\",\"depth\":").append(audit.depth())
+               .append(",\"appended\":").append(audit.appended())
+               .append(",\"written\":").append(audit.written())
+               .append(",\"dropped\":").append(audit.dropped())
+               .append(",\"flushP99Ms\":").append(String.format("%.3f", audit.flushLatency().snapshot().percentile(0.99) / 1e6))
+               .append('}');
+      }
+      if (ops.getReplicaRouter() != null) {
+         ReplicaRouter router = ops.getReplicaRouter();
+         sb.append(",\"replicas\":{\"primaryReads\":").append(router.primaryReads())
+               .append(",\"stickyReads\":").append(router.stickyReads())
+               .append(",\"endpoints\":[");
+         for (int i = 0; i < router.replicas().size(); i++) {
+            ReplicaRouter.Replica r = router.replicas().get(i);
+            sb.append(i == 0 ? "{\"url\":" : ",{\"url\":");
+            Json.quote(sb, r.db.getPool().getUrl());
+            sb.append(",\"up\":").append(r.up())
+                  .append(",\"lagMs\":").append(r.up() ? String.valueOf(r.lagMillis()) : "null")
+                  .append(",\"reads\":").append(r.reads())
+                  .append('}');
+         }
+         sb.append("]}");
+      }
+      sb.append('}');
+      send(exchange, 200, sb.toString());
+   }
+
+   private void metrics(HttpExchange exchange) throws IOException {
+      StringBuilder sb = new StringBuilder();
+      QueryMetrics metrics = ops.getDatabase().getMetrics();
+      boolean json = "json".equals(query(exchange).get("format"));
+      if (json)
+         metrics.dumpJson(sb);
+      else
+         metrics.dumpText(sb);
+      byte[] bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().set("Content-Type", json ? "application/json; charset=utf-8" : "text/plain; charset=utf-8");
+      exchange.sendResponseHeaders(200, bytes.length);
+      exchange.getResponseBody().write(bytes);
+   }
+
+   private void hotelsWithin(HttpExchange exchange, Session session) throws Exception {
+      Map<String, String> q = query(exchange);
+      double lat = decimal(q, "lat");
+      double longi = decimal(q, "long");
+      double radius = q.containsKey("radius") ? decimal(q, "radius") : DEFAULT_RADIUS;
+      sendRows(exchange, ops.hotelsWithin(lat, longi, radius), "hotelID", "hotelName");
+   }
+
+   private void freeRooms(HttpExchange exchange, Session session, int hotelID) throws Exception {
+      LocalDate date = date(query(exchange).get("date"), "date");
+      sendRows(exchange, ops.freeRooms(hotelID, date), "roomNumber", "price");
+   }
+
+   private void book(HttpExchange exchange, Session session) throws Exception {
+      Map<String, Object> body = body(exchange);
+      int nights = body.containsKey("nights") ? integer(body, "nights") : 1;
+      if (nights < 1 || nights > 366)
+         throw new IllegalArgumentException("nights must be between 1 and 366");
+      List<BookingRequest> stay = BookingService.stay(integer(body, "hotelID"), integer(body, "roomNumber"),
+            date(string(body, "date"), "date"), nights);
+      List<BookingResult> results = ops.book(session.userID, stay);
+      StringBuilder sb = new StringBuilder("{\"nights\":[");
+      int total = 0;
+      for (int i = 0; i < results.size(); i++) {
+         BookingResult r = results.get(i);
+         if (i > 0)
+            sb.append(',');
+         sb.append("{\"date\":\"").append(r.request.date).append("\",\"status\":\"").append(r.status).append('"');
+         if (r.isBooked()) {
+            sb.append(",\"bookingID\":").append(r.bookingID).append(",\"price\":").append(r.price);
+            total += r.price;
+         }
+         sb.append('}');
+      }
+      sb.append("],\"total\":").append(total).append('}');
+      send(exchange, 200, sb.toString());
+   }
+
+   private void bookingHistory(HttpExchange exchange, Session session) throws Exception {
+      streamRows(exchange, (handler) -> ops.customerBookings(session.userID, handler),
+            "hotelID", "roomNumber", "bookingDate", "price");
+   }
+
+   private void managedHotels(HttpExchange exchange, Session session) throws Exception {
+      ReferenceCache.Hotels hotels = ops.hotels();
+      List<List<String>> rows = new ArrayList<List<String>>();
+      for (int hotelID : ops.managedHotelIDs(session)) {
+         int i = hotels.indexOf(hotelID);
+         rows.add(Arrays.asList(i < 0 ? null : hotels.name(i), String.valueOf(hotelID)));
+      }
+      sendRows(exchange, rows, "hotelName", "hotelID");
+   }
+
+   private void updateRoom(HttpExchange exchange, Session session, int hotelID, int roomNumber) throws Exception {
+      Map<String, Object> body = body(exchange);
+      if (!body.containsKey("price") && !body.containsKey("imageURL"))
+         throw new IllegalArgumentException("expected price or imageURL");
+      requireManages(session, hotelID);
+      Integer price = null;
+      if (body.containsKey("price")) {
+         price = integer(body, "price");
+         if (price < 0)
+            throw new IllegalArgumentException("price must not be negative");
+      }
+      String imageURL = body.containsKey("imageURL") ? string(body, "imageURL") : null;
+      ops.updateRoom(session.userID, hotelID, roomNumber, price, imageURL);
+      send(exchange, 200, "{}");
+   }
+
+   // one keyset page; "next" is the cursor of the following page, null after the last
+   private void hotelBookings(HttpExchange exchange, Session session, int hotelID) throws Exception {
+      requireManages(session, hotelID);
+      Map<String, String> q = query(exchange);
+      LocalDate from = q.containsKey("from") ? date(q.get("from"), "from") : LocalDate.of(1900, 1, 1);
+      LocalDate to = q.containsKey("to") ? date(q.get("to"), "to") : LocalDate.of(9999, 12, 31);
+      ResultRenderer.Format format = export(exchange);
+      if (format != null) {
+         exportBookings(exchange, format, hotelID, from, to);
+         return;
+      }
+      int limit = q.containsKey("limit") ? pathInt(q.get("limit"), "limit") : 100;
+      if (limit < 1 || limit > 1000)
+         throw new IllegalArgumentException("limit must be between 1 and 1000");
+      LocalDate afterDate = from;
+      int afterID = 0;
+      String after = q.get("after");
+      if (after != null) {
+         int comma = after.indexOf(',');
+         if (comma < 0)
+            throw new IllegalArgumentException("after must be bookingDate,bookingID");
+         afterDate = date(after.substring(0, comma), "after");
+         afterID = pathInt(after.substring(comma + 1), "after");
+      }
+      List<BookingRow> rows = ops.hotelBookings(hotelID, from, to, afterDate, afterID, limit + 1);
+      boolean more = rows.size() > limit;
+      StringBuilder sb = new StringBuilder("{\"bookings\":[");
+      for (int i = 0; i < rows.size() && i < limit; i++) {
+         BookingRow b = rows.get(i);
+         if (i > 0)
+            sb.append(',');
+         sb.append("{\"bookingID\":").append(b.bookingID)
+               .append(",\"customerID\":").append(b.customerID)
+               .append(",\"roomNumber\":").append(b.roomNumber)
+               .append(",\"bookingDate\":\"").append(b.bookingDate).append("\"}");
+      }
+      sb.append("],\"next\":");
+      if (more) {
+         BookingRow last = rows.get(limit - 1);
+         Json.quote(sb, last.bookingDate + "," + last.bookingID);
+      } else {
+         sb.append("null");
+      }
+      send(exchange, 200, sb.append('}').toString());
+   }
+
+   // the whole range, a keyset page at a time. No read-ahead: it would hold
+   // a second connection outside the admission limit for every export
+   private void exportBookings(HttpExchange exchange, ResultRenderer.Format format, int hotelID, LocalDate from,
+         LocalDate to) throws IOException {
+      ResultRenderer out = exportTo(exchange, format);
+      out.header("bookingID", "customerID", "roomNumber", "bookingDate");
+      try (BookingHistory history = ops.bookingHistory(hotelID, from, to, EXPORT_PAGE_SIZE, false)) {
+         while (history.hasNext())
+            for (BookingRow b : history.next())
+               out.row(b.bookingID, b.customerID, b.roomNumber, b.bookingDate);
+      } catch (SQLException e) {
+         // the headers are out; the client sees the rows so far
+         failed.increment();
+         out.flush();
+         return;
+      }
+      out.close();
+   }
+
+   private void regularCustomers(HttpExchange exchange, Session session, int hotelID) throws Exception {
+      requireManages(session, hotelID);
+      String k = query(exchange).get("k");
+      int n = k == null ? RegularCustomers.DEFAULT_K : pathInt(k, "k");
+      if (n < 1 || n > 100)
+         throw new IllegalArgumentException("k must be between 1 and 100");
+      sendRows(exchange, ops.regularCustomers(hotelID, n), "customerID", "bookings");
+   }
+
+   private void recentUpdates(HttpExchange exchange, Session session) throws Exception {
+      sendRows(exchange, ops.recentUpdates(session.userID), "hotelID", "roomNumber", "updatedOn",
+            "oldPrice", "newPrice", "oldImageURL", "newImageURL");
+   }
+
+   private void placeRepair(HttpExchange exchange, Session session) throws Exception {
+      Map<String, Object> body = body(exchange);
+      int hotelID = integer(body, "hotelID");
+      requireManages(session, hotelID);
+      int repairID = ops.placeRepairRequest(session.userID, integer(body, "companyID"), hotelID,
+            integer(body, "roomNumber"), date(string(body, "date"), "date"));
+      send(exchange, 201, "{\"repairID\":" + repairID + "}");
+   }
+
+   private void repairHistory(HttpExchange exchange, Session session) throws Exception {
+      streamRows(exchange, (handler) -> ops.repairHistory(session.userID, handler),
+            "companyID", "hotelID", "roomNumber", "repairDate");
+   }
+
+   // ---- authentication
+
+   private static String token(HttpExchange exchange) {
+      String auth = exchange.getRequestHeaders().getFirst("Authorization");
+      if (auth == null || !auth.regionMatches(true, 0, "Bearer ", 0, 7))
+         return null;
+      return auth.substring(7).trim();
+   }
+
+   private Session session(HttpExchange exchange) {
+      Session session = sessions.get(token(exchange));
+      if (session == null)
+         throw new HttpError(401, "log in first");
+      return session;
+   }
+
+   private Session manager(HttpExchange exchange) {
+      Session session = session(exchange);
+      if (!session.isManager())
+         throw new HttpError(403, "managers only");
+      return session;
+   }
+
+   private void requireManages(Session session, int hotelID) throws SQLException {
+      if (!ops.manages(session, hotelID))
+         throw new HttpError(403, "you do not manage hotel " + hotelID);
+   }
+
+   private static void requireMethod(String method, String expected) {
+      if (!method.equals(expected))
+         throw new HttpError(405, method + " not allowed");
+   }
+
+   // ---- request parsing
+
+   private static Map<String, Object> body(HttpExchange exchange) throws IOException {
+      InputStream in = exchange.getRequestBody();
+      ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+      byte[] chunk = new byte[4096];
+      int n;
+      while ((n = in.read(chunk)) > 0) {
+         buffer.write(chunk, 0, n);
+         if (buffer.size() > MAX_BODY)
+            throw new HttpError(413, "request body over " + MAX_BODY + " bytes");
+      }
+      return Json.parseObject(new String(buffer.toByteArray(), StandardCharsets.UTF_8));
+   }
+
+   private static Map<String, String> query(HttpExchange exchange) throws IOException {
+      Map<String, String> params = new HashMap<String, String>();
+      String raw = exchange.getRequestURI().getRawQuery();
+      if (raw == null)
+         return params;
+      for (String pair : raw.split("&")) {
+         int eq = pair.indexOf('=');
+         if (eq > 0)
+            params.put(URLDecoder.decode(pair.substring(0, eq), "UTF-8"), URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+      }
+      return params;
+   }
+
+   private static String string(Map<String, Object> body, String key) {
+      Object value = body.get(key);
+      if (value == null)
+         throw new IllegalArgumentException("missing " + key);
+      return value.toString();
+   }
+
+   private static int integer(Map<String, Object> body, String key) {
+      Object value = body.get(key);
+      if (value instanceof Long && (Long) value == ((Long) value).intValue())
+         return ((Long) value).intValue();
+      if (value instanceof String) {
+         try {
+            return Integer.parseInt(((String) value).trim());
+         } catch (NumberFormatException e) {
+            // reported below
+         }
+      }
+      throw new IllegalArgumentException((value == null ? "missing " : "bad ") + key);
+   }
+
+   private static double decimal(Map<String, String> query, String key) {
+      String value = query.get(key);
+      if (value == null)
+         throw new IllegalArgumentException("missing " + key);
+      try {
+         return Double.parseDouble(value);
+      } catch (NumberFormatException e) {
+         throw new IllegalArgumentException("bad " + key);
+      }
+   }
+
+   private static LocalDate date(String value, String key) {
+      if (value == null)
+         throw new IllegalArgumentException("missing " + key);
+      try {
+         return LocalDate.parse(value.trim());
+      } catch (DateTimeParseException e) {
+         throw new IllegalArgumentException(key + " must be yyyy-mm-dd");
+      }
+   }
+
+   private static int pathInt(String segment, String name) {
+      try {
+         return Integer.parseInt(segment);
+      } catch (NumberFormatException e) {
+         throw new IllegalArgumentException("bad " + name);
+      }
+   }
+
+   // ---- responses
+
+   private static void send(HttpExchange exchange, int status, String json) throws IOException {
+      byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+      Headers headers = exchange.getResponseHeaders();
+      headers.set("Content-Type", "application/json; charset=utf-8");
+      exchange.sendResponseHeaders(status, bytes.length);
+      OutputStream out = exchange.getResponseBody();
+      out.write(bytes);
+      out.flush();
+   }
+
+   private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+      send(exchange, status, "{\"error\":" + Json.quote(message == null ? "" : message) + "}");
+   }
+
+   // a JSON array of objects, one per row, values as strings with padding trimmed
+   private static void sendRows(HttpExchange exchange, List<List<String>> rows, String... names) throws IOException {
+      ResultRenderer.Format format = export(exchange);
+      if (format != null) {
+         ResultRenderer out = exportTo(exchange, format);
+         out.header(names);
+         for (List<String> row : rows)
+            out.row(row);
+         out.close();
+         return;
+      }
+      StringBuilder sb = new StringBuilder("[");
+      for (int r = 0; r < rows.size(); r++) {
+         if (r > 0)
+            sb.append(',');
+         appendRow(sb, rows.get(r), names);
+      }
+      sb.append(']');
+      send(exchange, 200, sb.toString());
+   }
+
+   private static void appendRow(StringBuilder sb, List<String> row, String[] names) {
+      sb.append('{');
+      for (int c = 0; c < names.length; c++) {
+         if (c > 0)
+            sb.append(',');
+         Json.quote(sb, names[c]);
+         sb.append(':');
+         String value = row.get(c);
+         if (value == null)
+            sb.append("null");
+         else
+            Json.quote(sb, value.trim());
+      }
+      sb.append('}');
+   }
+
+   // ?format=csv or ?format=jsonl; null for the usual JSON
+   private static ResultRenderer.Format export(HttpExchange exchange) throws IOException {
+      String format = query(exchange).get("format");
+      if (format == null || format.equals("json"))
+         return null;
+      ResultRenderer.Format parsed = ResultRenderer.Format.parse(format);
+      if (parsed == ResultRenderer.Format.TABLE)
+         throw new IllegalArgumentException("format must be json, csv or jsonl");
+      return parsed;
+   }
+
+   // a chunked CSV or JSON Lines response; closing the renderer flushes it
+   private static ResultRenderer exportTo(HttpExchange exchange, ResultRenderer.Format format) throws IOException {
+      exchange.getResponseHeaders().set("Content-Type", format == ResultRenderer.Format.CSV
+            ? "text/csv; charset=utf-8" : "application/x-ndjson; charset=utf-8");
+      exchange.sendResponseHeaders(200, 0);
+      return ResultRenderer.open(format, new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8),
+            false, ResultRenderer.DEFAULT_SAMPLE_ROWS);
+   }
+
+   /**
+    * A streamed query: rows go into the response as the cursor produces them.
+    */
+   interface StreamedQuery {
+      int run(RowHandler handler) throws SQLException;
+   }
+
+   // chunked JSON array; once the headers are out a failure can only cut the
+   // response short, so the closing bracket is left off and the client sees
+   // truncated JSON
+   private void streamRows(HttpExchange exchange, StreamedQuery query, final String... names) throws IOException {
+      ResultRenderer.Format format = export(exchange);
+      if (format != null) {
+         ResultRenderer out = exportTo(exchange, format);
+         out.header(names);
+         try {
+            query.run(out.handler());
+         } catch (SQLException e) {
+            failed.increment();
+            out.flush();
+            return;
+         }
+         out.close();
+         return;
+      }
+      exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+      exchange.sendResponseHeaders(200, 0);
+      final Writer out = new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8);
+      final StringBuilder sb = new StringBuilder(256);
+      final int[] count = {0};
+      final IOException[] broken = {null};
+      out.write('[');
+      try {
+         query.run((ResultSet rs) -> {
+            sb.setLength(0);
+            if (count[0]++ > 0)
+               sb.append(',');
+            sb.append('{');
+            for (int c = 0; c < names.length; c++) {
+               if (c > 0)
+                  sb.append(',');
+               Json.quote(sb, names[c]);
+               sb.append(':');
+               String value = rs.getString(c + 1);
+               if (value == null)
+                  sb.append("null");
+               else
+                  Json.quote(sb, value.trim());
+            }
+            sb.append('}');
+            try {
+               out.write(sb.toString());
+               return true;
+            } catch (IOException e) {
+               // the client went away; stop reading rows
+               broken[0] = e;
+               return false;
+            }
+         });
+      } catch (SQLException e) {
+         failed.increment();
+         out.flush();
+         return;
+      }
+      if (broken[0] != null)
+         throw broken[0];
+      out.write(']');
+      out.flush();
+   }
+
+   public static void main(String[] args) throws Exception {
+      if (args.length < 3) {
+         System.err.println("Usage: java hoteldb.HotelServer <dbname> <port> <user> [--http-port N] "
+               + "[--max-concurrent N] [--queue-ms MS] [--backlog N] [--pool N] [--session-ttl S] "
+               + "[--max-sessions N] [--no-indexes] [--metrics-every S] [--metrics-file FILE] "
+               + "[--audit sync|group-commit|async|none] [--partitions-ahead MONTHS] "
+               + "[--replica HOST:PORT]... [--max-lag-ms MS] [--availability-ttl-ms MS]");
+         System.exit(1);
+      }
+      int httpPort = 8080;
+      int poolSize = 20;
+      int maxConcurrent = -1;
+      long queueMillis = 100;
+      int backlog = 1024;
+      long ttlSeconds = 1800;
+      int maxSessions = 100000;
+      boolean indexes = true;
+      long metricsEvery = 0;
+      String metricsFile = null;
+      String audit = "group-commit";
+      int partitionsAhead = BookingPartitions.DEFAULT_MONTHS_AHEAD;
+      List<String> replicaHosts = new ArrayList<String>();
+      long maxLagMillis = ReplicaRouter.DEFAULT_MAX_LAG_MILLIS;
+      long availabilityTtlMillis = AvailabilityIndex.DEFAULT_TTL_MILLIS;
+      for (int i = 3; i < args.length; i++) {
+         switch (args[i]) {
+            case "--http-port": httpPort = Integer.parseInt(args[++i]); break;
+            case "--max-concurrent": maxConcurrent = Integer.parseInt(args[++i]); break;
+            case "--queue-ms": queueMillis = Long.parseLong(args[++i]); break;
+            case "--backlog": backlog = Integer.parseInt(args[++i]); break;
+            case "--pool": poolSize = Integer.parseInt(args[++i]); break;
+            case "--session-ttl": ttlSeconds = Long.parseLong(args[++i]); break;
+            case "--max-sessions": maxSessions = Integer.parseInt(args[++i]); break;
+            case "--no-indexes": indexes = false; break;
+            case "--metrics-every": metricsEvery = Long.parseLong(args[++i]); break;
+            case "--metrics-file": metricsFile = args[++i]; break;
+            case "--audit": audit = args[++i]; break;
+            case "--partitions-ahead": partitionsAhead = Integer.parseInt(args[++i]); break;
+            case "--replica": replicaHosts.add(args[++i]); break;
+            case "--max-lag-ms": maxLagMillis = Long.parseLong(args[++i]); break;
+            case "--availability-ttl-ms": availabilityTtlMillis = Long.parseLong(args[++i]); break;
+            default: throw new IllegalArgumentException("unknown option: " + args[i]);
+         }
+      }
+      // a few requests per connection keep the pool busy without a long queue behind it
+      if (maxConcurrent < 1)
+         maxConcurrent = poolSize * 4;
+
+      String url = "jdbc:postgresql://localhost:" + args[1] + "/" + args[0];
+      final ConnectionPool pool = new ConnectionPool(url, args[2], "", 1, poolSize);
+      pool.setAcquireTimeoutMillis(Long.getLong("hotel.pool.acquireTimeoutMs", 5000L));
+      Database db = new Database(pool);
+      HotelOperations ops = new HotelOperations(db);
+      if (indexes) {
+         try {
+            SpatialIndex hotelIndex = new SpatialIndex(SpatialIndex.EUCLIDEAN, DEFAULT_RADIUS);
+            hotelIndex.load(db);
+            ops.setHotelIndex(hotelIndex);
+            AvailabilityIndex availability = new AvailabilityIndex();
+            availability.setTtlMillis(availabilityTtlMillis);
+            availability.load(db);
+            ops.setAvailability(availability);
+            RegularCustomers regulars = new RegularCustomers();
+            regulars.load(db);
+            ops.setRegularCustomers(regulars);
+            RecentUpdates updates = new RecentUpdates();
+            updates.load(db);
+            ops.setRecentUpdates(updates);
+         } catch (SQLException e) {
+            System.err.println("Indexes unavailable, using SQL: " + e.getMessage());
+         }
+      }
+
+      // browse queries go to the standbys; each gets a pool as large as the primary's
+      final List<ConnectionPool> replicaPools = new ArrayList<ConnectionPool>();
+      ReplicaRouter router = null;
+      if (!replicaHosts.isEmpty()) {
+         List<Database> replicas = new ArrayList<Database>();
+         for (String host : replicaHosts) {
+            // opens nothing yet, so a standby that is down does not keep the server from starting
+            ConnectionPool replicaPool = new ConnectionPool("jdbc:postgresql://" + host + "/" + args[0], args[2], "",
+                  0, poolSize);
+            replicaPool.setAcquireTimeoutMillis(Long.getLong("hotel.pool.acquireTimeoutMs", 5000L));
+            replicaPools.add(replicaPool);
+            replicas.add(new Database(replicaPool));
+         }
+         router = new ReplicaRouter(db, replicas, maxLagMillis, ReplicaRouter.DEFAULT_POLL_MILLIS);
+         ops.setReplicaRouter(router);
+      }
+      final ReplicaRouter replicaRouter = router;
+
+      // next months' bookings get their partition before they arrive; 0 leaves it to the archive job
+      if (partitionsAhead > 0)
+         new BookingPartitions(db).ensureEvery(24, partitionsAhead);
+
+      // concurrent managers' log rows share a commit
+      final AuditLog auditLog = audit.equalsIgnoreCase("none") ? null : new AuditLog(db, AuditLog.Durability.parse(audit));
+      ops.setAuditLog(auditLog);
+
+      if (metricsEvery > 0)
+         db.getMetrics().dumpEvery(metricsEvery, metricsFile == null ? null : new File(metricsFile), System.err);
+
+      final HotelServer server = new HotelServer(ops, new SessionStore(ttlSeconds * 1000, maxSessions),
+            maxConcurrent, queueMillis);
+      server.start(new InetSocketAddress(httpPort), backlog);
+      Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+         server.stop(2);
+         if (auditLog != null)
+            auditLog.close();
+         if (replicaRouter != null)
+            replicaRouter.close();
+         for (ConnectionPool replicaPool : replicaPools)
+            replicaPool.close();
+         pool.close();
+      }));
+      System.out.printf("Listening on %s: %d concurrent requests, %d connections, %s threads%n",
+            server.getAddress(), maxConcurrent, poolSize, VirtualThreads.available() ? "virtual" : "platform");
+   }
+}
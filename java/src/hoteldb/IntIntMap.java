@@ -0,0 +1,102 @@
+package hoteldb;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from int to int, without boxing. Used for ID
+ * lookups over reference data, where a {@code Map<Integer, Integer>} costs
+ * an object per entry.
+ *
+ * Not thread safe; fill it, then publish it through a final field and only
+ * read it after that. {@link Integer#MIN_VALUE} cannot be used as a key.
+ */
+public class IntIntMap {
+
+   private static final int FREE = Integer.MIN_VALUE;
+
+   private int[] keys;
+   private int[] values;
+   private int size = 0;
+   private int mask;
+
+   public IntIntMap() {
+      this(8);
+   }
+
+   /**
+    * @param expected number of entries to make room for
+    */
+   public IntIntMap(int expected) {
+      int capacity = Integer.highestOneBit(Math.max(4, expected * 2 - 1)) << 1;
+      keys = new int[capacity];
+      values = new int[capacity];
+      Arrays.fill(keys, FREE);
+      mask = capacity - 1;
+   }
+
+   /**
+    * @return the value previously stored for {@code key}, or -1
+    */
+   public int put(int key, int value) {
+      if (key == FREE)
+         throw new IllegalArgumentException("key " + key + " is reserved");
+      int slot = slot(key);
+      if (keys[slot] == key) {
+         int old = values[slot];
+         values[slot] = value;
+         return old;
+      }
+      keys[slot] = key;
+      values[slot] = value;
+      if (++size * 2 > keys.length)
+         grow();
+      return -1;
+   }
+
+   /**
+    * @return the value of {@code key}, or -1 when it is absent
+    */
+   public int get(int key) {
+      if (key == FREE)
+         return -1;
+      int slot = slot(key);
+      return keys[slot] == key ? values[slot] : -1;
+   }
+
+   public boolean containsKey(int key) {
+      return key != FREE && keys[slot(key)] == key;
+   }
+
+   public int size() {
+      return size;
+   }
+
+   // the slot holding key, or the free slot where it would go
+   private int slot(int key) {
+      int i = mix(key) & mask;
+      while (keys[i] != FREE && keys[i] != key)
+         i = (i + 1) & mask;
+      return i;
+   }
+
+   private static int mix(int key) {
+      int h = key * 0x9E3779B9;
+      return h ^ (h >>> 16);
+   }
+
+   private void grow() {
+      int[] oldKeys = keys;
+      int[] oldValues = values;
+      keys = new int[oldKeys.length * 2];
+      values = new int[oldValues.length * 2];
+      Arrays.fill(keys, FREE);
+      mask = keys.length - 1;
+      for (int i = 0; i < oldKeys.length; i++) {
+         if (oldKeys[i] != FREE) {
+            int slot = slot(oldKeys[i]);
+            keys[slot] = oldKeys[i];
+            values[slot] = oldValues[i];
+         }
+      }
+   }
+}
@@ -0,0 +1,233 @@
+package hoteldb;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Just enough JSON for the HTTP API: a parser for request bodies and string
+ * escaping for responses, which are written by hand.
+ *
+ * Objects parse to {@code Map<String, Object>} in document order, arrays to
+ * {@code List<Object>}, numbers to Long or Double, and true, false and null
+ * to Boolean and null.
+ */
+public final class Json {
+
+   private final String text;
+   private int pos;
+
+   private Json(String text) {
+      this.text = text;
+   }
+
+   /**
+    * @return the parsed value
+    * @throws IllegalArgumentException when the text is not one JSON value
+    */
+   public static Object parse(String text) {
+      Json p = new Json(text);
+      p.skipSpace();
+      Object value = p.value();
+      p.skipSpace();
+      if (p.pos != text.length())
+         throw p.error("trailing characters");
+      return value;
+   }
+
+   /**
+    * @return the parsed object; an empty body is an empty object
+    * @throws IllegalArgumentException when the text is not a JSON object
+    */
+   @SuppressWarnings("unchecked")
+   public static Map<String, Object> parseObject(String text) {
+      if (text == null || text.trim().isEmpty())
+         return new LinkedHashMap<String, Object>();
+      Object value = parse(text);
+      if (!(value instanceof Map))
+         throw new IllegalArgumentException("expected a JSON object");
+      return (Map<String, Object>) value;
+   }
+
+   /**
+    * @return {@code s} as a quoted JSON string, or null unquoted for null
+    */
+   public static String quote(String s) {
+      if (s == null)
+         return "null";
+      StringBuilder sb = new StringBuilder(s.length() + 2);
+      quote(sb, s);
+      return sb.toString();
+   }
+
+   /**
+    * Appends {@code s} as a quoted JSON string.
+    */
+   public static void quote(StringBuilder sb, String s) {
+      sb.append('"');
+      for (int i = 0; i < s.length(); i++) {
+         char c = s.charAt(i);
+         switch (c) {
+            case '"': sb.append("\\\""); break;
+            case '\\': sb.append("\\\\"); break;
+            case '\n': sb.append("\\n"); break;
+            case '\r': sb.append("\\r"); break;
+            case '\t': sb.append("\\t"); break;
+            default:
+               if (c < 0x20)
+                  sb.append(String.format("\\u%04x", (int) c));
+               else
+                  sb.append(c);
+         }
+      }
+      sb.append('"');
+   }
+
+   private Object value() {
+      if (pos >= text.length())
+         throw error("unexpected end");
+      char c = text.charAt(pos);
+      switch (c) {
+         case '{': return object();
+         case '[': return array();
+         case '"': return string();
+         case 't': return literal("true", Boolean.TRUE);
+         case 'f': return literal("false", Boolean.FALSE);
+         case 'n': return literal("null", null);
+         default:
+            if (c == '-' || (c >= '0' && c <= '9'))
+               return number();
+            throw error("unexpected '" + c + "'");
+      }
+   }
+
+   private Map<String, Object> object() {
+      Map<String, Object> map = new LinkedHashMap<String, Object>();
+      pos++;
+      skipSpace();
+      if (peek('}'))
+         return map;
+      while (true) {
+         skipSpace();
+         if (pos >= text.length() || text.charAt(pos) != '"')
+            throw error("expected a key");
+         String key = string();
+         skipSpace();
+         expect(':');
+         skipSpace();
+         map.put(key, value());
+         skipSpace();
+         if (peek('}'))
+            return map;
+         expect(',');
+      }
+   }
+
+   private List<Object> array() {
+      List<Object> list = new ArrayList<Object>();
+      pos++;
+      skipSpace();
+      if (peek(']'))
+         return list;
+      while (true) {
+         skipSpace();
+         list.add(value());
+         skipSpace();
+         if (peek(']'))
+            return list;
+         expect(',');
+      }
+   }
+
+   private String string() {
+      pos++;
+      StringBuilder sb = new StringBuilder();
+      while (pos < text.length()) {
+         char c = text.charAt(pos++);
+         if (c == '"')
+            return sb.toString();
+         if (c != '\\') {
+            sb.append(c);
+            continue;
+         }
+         if (pos >= text.length())
+            break;
+         char e = text.charAt(pos++);
+         switch (e) {
+            case '"': case '\\': case '/': sb.append(e); break;
+            case 'b': sb.append('\b'); break;
+            case 'f': sb.append('\f'); break;
+            case 'n': sb.append('\n'); break;
+            case 'r': sb.append('\r'); break;
+            case 't': sb.append('\t'); break;
+            case 'u':
+               if (pos + 4 > text.length())
+                  throw error("bad \\u escape");
+               try {
+                  sb.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+               } catch (NumberFormatException ex) {
+                  throw error("bad \\u escape");
+               }
+               pos += 4;
+               break;
+            default:
+               throw error("bad escape");
+         }
+      }
+      throw error("unterminated string");
+   }
+
+   private Object number() {
+      int start = pos;
+      if (text.charAt(pos) == '-')
+         pos++;
+      boolean integral = true;
+      while (pos < text.length()) {
+         char c = text.charAt(pos);
+         if (c >= '0' && c <= '9') {
+            pos++;
+         } else if (c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-') {
+            integral = false;
+            pos++;
+         } else {
+            break;
+         }
+      }
+      String s = text.substring(start, pos);
+      try {
+         return integral ? (Object) Long.valueOf(s) : (Object) Double.valueOf(s);
+      } catch (NumberFormatException e) {
+         throw error("bad number " + s);
+      }
+   }
+
+   private Object literal(String word, Object value) {
+      if (!text.startsWith(word, pos))
+         throw error("unexpected token");
+      pos += word.length();
+      return value;
+   }
+
+   private boolean peek(char c) {
+      if (pos < text.length() && text.charAt(pos) == c) {
+         pos++;
+         return true;
+      }
+      return false;
+   }
+
+   private void expect(char c) {
+      if (!peek(c))
+         throw error("expected '" + c + "'");
+   }
+
+   private void skipSpace() {
+      while (pos < text.length() && Character.isWhitespace(text.charAt(pos)))
+         pos++;
+   }
+
+   private IllegalArgumentException error(String message) {
+      return new IllegalArgumentException("bad JSON at offset " + pos + ": " + message);
+   }
+}
@@ -0,0 +1,145 @@
+package hoteldb;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of durations in nanoseconds.
+ *
+ * Buckets are log-linear: values below 128 ns get a bucket each, and every
+ * power of two above that is split into 64 buckets, so any percentile is
+ * reported within about 1.6% of the true value. Recording is one atomic
+ * increment plus two adder updates, cheap enough to leave on for every
+ * statement; values above about 2.4 hours land in the last bucket.
+ */
+public class LatencyHistogram {
+
+   private static final int SUB_BITS = 6;
+   private static final int SUB_BUCKETS = 1 << SUB_BITS;
+   private static final int MAX_EXPONENT = 43;
+   private static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+   static final int BUCKETS = (MAX_EXPONENT - SUB_BITS) * SUB_BUCKETS + 2 * SUB_BUCKETS;
+
+   private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+   private final LongAdder count = new LongAdder();
+   private final LongAdder sum = new LongAdder();
+   private final AtomicLong max = new AtomicLong();
+
+   /**
+    * Records one duration.
+    */
+   public void record(long nanos) {
+      if (nanos < 0)
+         nanos = 0;
+      counts.incrementAndGet(index(nanos));
+      count.increment();
+      sum.add(nanos);
+      long m = max.get();
+      while (nanos > m && !max.compareAndSet(m, nanos))
+         m = max.get();
+   }
+
+   /**
+    * Clears every bucket. Values recorded concurrently may be lost or kept.
+    */
+   public void reset() {
+      for (int i = 0; i < BUCKETS; i++)
+         counts.set(i, 0);
+      count.reset();
+      sum.reset();
+      max.set(0);
+   }
+
+   public long count() {
+      return count.sum();
+   }
+
+   public long sumNanos() {
+      return sum.sum();
+   }
+
+   public long maxNanos() {
+      return max.get();
+   }
+
+   public double meanNanos() {
+      long n = count.sum();
+      return n == 0 ? 0 : (double) sum.sum() / n;
+   }
+
+   /**
+    * @param q quantile in [0, 1], e.g. 0.99
+    * @return the q-quantile in nanoseconds, or 0 when nothing was recorded
+    */
+   public long percentile(double q) {
+      return snapshot().percentile(q);
+   }
+
+   /**
+    * @return a consistent copy of the buckets, for computing several
+    *         percentiles of the same population
+    */
+   public Snapshot snapshot() {
+      long[] copy = new long[BUCKETS];
+      long total = 0;
+      for (int i = 0; i < BUCKETS; i++) {
+         copy[i] = counts.get(i);
+         total += copy[i];
+      }
+      return new Snapshot(copy, total, max.get());
+   }
+
+   /**
+    * Frozen bucket counts.
+    */
+   public static class Snapshot {
+      private final long[] counts;
+      private final long total;
+      private final long max;
+
+      Snapshot(long[] counts, long total, long max) {
+         this.counts = counts;
+         this.total = total;
+         this.max = max;
+      }
+
+      public long count() {
+         return total;
+      }
+
+      public long percentile(double q) {
+         if (total == 0)
+            return 0;
+         long rank = (long) Math.ceil(q * total);
+         if (rank < 1)
+            rank = 1;
+         long seen = 0;
+         for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank)
+               return Math.min(max, highestEquivalent(i));
+         }
+         return max;
+      }
+   }
+
+   static int index(long v) {
+      if (v > MAX_VALUE)
+         v = MAX_VALUE;
+      if (v < 2 * SUB_BUCKETS)
+         return (int) v;
+      int exponent = 63 - Long.numberOfLeadingZeros(v);
+      int shift = exponent - SUB_BITS;
+      return shift * SUB_BUCKETS + (int) (v >>> shift);
+   }
+
+   // largest value that falls into bucket i
+   static long highestEquivalent(int i) {
+      if (i < 2 * SUB_BUCKETS)
+         return i;
+      int shift = i / SUB_BUCKETS - 1;
+      long sub = SUB_BUCKETS + i % SUB_BUCKETS;
+      return ((sub + 1) << shift) - 1;
+   }
+}
@@ -0,0 +1,93 @@
+package hoteldb;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fixed set of locks that room-nights hash onto.
+ *
+ * Threads of this process that book the same (hotel, room, date) queue here,
+ * without holding a connection, instead of piling up on the same row lock
+ * inside Postgres. Different room-nights usually land on different stripes
+ * and proceed in parallel. A batch takes all its stripes in ascending order,
+ * so two batches can never deadlock on each other.
+ *
+ * The stripes only order work inside one JVM; the UNIQUE constraint on
+ * RoomBookings is what keeps bookings correct across processes.
+ */
+public class LockStripes {
+
+   private final ReentrantLock[] locks;
+   private final int mask;
+
+   /**
+    * @param stripes number of locks, rounded up to a power of two
+    */
+   public LockStripes(int stripes) {
+      if (stripes < 1)
+         throw new IllegalArgumentException("stripes must be at least 1");
+      int n = Integer.highestOneBit(stripes - 1) << 1;
+      if (n == 0)
+         n = 1;
+      locks = new ReentrantLock[n];
+      for (int i = 0; i < n; i++)
+         locks[i] = new ReentrantLock();
+      mask = n - 1;
+   }
+
+   public int stripeCount() {
+      return locks.length;
+   }
+
+   /**
+    * @return the stripe of one room-night
+    */
+   public int stripe(int hotelID, int roomNumber, long epochDay) {
+      long h = ((long) hotelID * 0x9E3779B97F4A7C15L) ^ ((long) roomNumber * 0xC2B2AE3D27D4EB4FL) ^ epochDay;
+      h ^= h >>> 33;
+      h *= 0xFF51AFD7ED558CCDL;
+      h ^= h >>> 33;
+      return (int) h & mask;
+   }
+
+   /**
+    * @return the distinct stripes of a batch, ascending
+    */
+   public int[] stripes(List<BookingRequest> requests) {
+      int[] s = new int[requests.size()];
+      for (int i = 0; i < s.length; i++) {
+         BookingRequest r = requests.get(i);
+         s[i] = stripe(r.hotelID, r.roomNumber, r.date.toEpochDay());
+      }
+      Arrays.sort(s);
+      int n = 0;
+      for (int i = 0; i < s.length; i++)
+         if (n == 0 || s[n - 1] != s[i])
+            s[n++] = s[i];
+      return Arrays.copyOf(s, n);
+   }
+
+   /**
+    * Takes every stripe in {@code stripes}, which must be ascending.
+    */
+   public void lockAll(int[] stripes) {
+      for (int s : stripes)
+         locks[s].lock();
+   }
+
+   public void unlockAll(int[] stripes) {
+      for (int i = stripes.length - 1; i >= 0; i--)
+         locks[stripes[i]].unlock();
+   }
+
+   /**
+    * @return the number of threads waiting for any stripe; an estimate
+    */
+   public int queueLength() {
+      int n = 0;
+      for (ReentrantLock lock : locks)
+         n += lock.getQueueLength();
+      return n;
+   }
+}
@@ -0,0 +1,253 @@
+package hoteldb;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Plan regression check: runs {@code EXPLAIN (FORMAT JSON)} for every query
+ * template the application issues per request, with keys taken from the
+ * data, and fails when a plan reads one of the query's big tables with a
+ * sequential scan or costs more than its budget.
+ *
+ * Plans only mean something on a database of realistic size; load one with
+ * {@link DataGenerator} first (plan_check.sh does), since on a few hundred
+ * rows the planner rightly prefers scans. Nothing is executed: EXPLAIN
+ * without ANALYZE only plans, so the write templates are checked too.
+ * Startup loads (ReferenceCache, AvailabilityIndex.load, RegularCustomers)
+ * read whole tables on purpose and are not checked; the month an
+ * AvailabilityIndex refresh reads is.
+ *
+ * Usage: java hoteldb.PlanCheck &lt;dbname&gt; &lt;port&gt; &lt;user&gt;
+ *        [--max-cost C] [--no-analyze] [--verbose]
+ */
+public class PlanCheck {
+
+   public static final double DEFAULT_MAX_COST = 10000;
+
+   // a typical request: the booking in the middle of RoomBookings, so busy
+   // hotels and customers are picked as often as traffic picks them
+   static final String SAMPLE =
+         "SELECT b.hotelID, b.customerID, b.bookingDate, b.roomNumber, h.managerUserID, "
+       + "h.latitude::float8, h.longitude::float8 FROM RoomBookings b JOIN Hotel h ON h.hotelID = b.hotelID "
+       + "WHERE b.bookingID >= (SELECT (min(bookingID) + max(bookingID)) / 2 FROM RoomBookings) "
+       + "ORDER BY b.bookingID LIMIT 1";
+
+   /**
+    * One query template, the keys to plan it with, the tables it must reach
+    * through an index and its cost budget.
+    */
+   public static final class Check {
+      public final String name;
+      public final String sql;
+      public final Object[] params;
+      public final List<String> noSeqScan;
+      // <= 0 for the global budget
+      public final double maxCost;
+
+      public Check(String name, String sql, Object[] params, double maxCost, String... noSeqScan) {
+         this.name = name;
+         this.sql = sql;
+         this.params = params;
+         this.maxCost = maxCost;
+         this.noSeqScan = Arrays.asList(noSeqScan);
+      }
+   }
+
+   /**
+    * The plan of one check and what is wrong with it.
+    */
+   public static final class Result {
+      public final Check check;
+      public final double cost;
+      public final List<String> problems;
+      // EXPLAIN's JSON output
+      public final String plan;
+
+      Result(Check check, double cost, List<String> problems, String plan) {
+         this.check = check;
+         this.cost = cost;
+         this.problems = problems;
+         this.plan = plan;
+      }
+
+      public boolean passed() {
+         return problems.isEmpty();
+      }
+
+      @Override
+      public String toString() {
+         return String.format("%-4s %-20s cost %10.1f%s", passed() ? "ok" : "FAIL", check.name, cost,
+               passed() ? "" : "  " + String.join("; ", problems));
+      }
+   }
+
+   private final Database db;
+   private final double maxCost;
+
+   public PlanCheck(Database db, double maxCost) {
+      this.db = db;
+      this.maxCost = maxCost;
+   }
+
+   /**
+    * @return a check per hot query template, planned with keys from the
+    *         data
+    * @throws java.sql.SQLException when the keys could not be read, e.g.
+    *         RoomBookings is empty
+    */
+   public List<Check> checks() throws SQLException {
+      List<List<String>> rows = db.executeQueryAndReturnResult(SAMPLE);
+      if (rows.isEmpty())
+         throw new SQLException("RoomBookings is empty; load a generated dataset first");
+      List<String> s = rows.get(0);
+      int hotel = Integer.parseInt(s.get(0).trim());
+      int customer = Integer.parseInt(s.get(1).trim());
+      java.sql.Date date = java.sql.Date.valueOf(s.get(2).trim());
+      int room = Integer.parseInt(s.get(3).trim());
+      int manager = Integer.parseInt(s.get(4).trim());
+      double lat = Double.parseDouble(s.get(5));
+      double longi = Double.parseDouble(s.get(6));
+      // matches Hotel.NEARBY_RADIUS
+      double r = 30;
+      Timestamp now = new Timestamp(System.currentTimeMillis());
+      java.sql.Date yearLater = java.sql.Date.valueOf(date.toLocalDate().plusYears(1));
+
+      List<Check> checks = new ArrayList<Check>();
+      checks.add(new Check("logIn", HotelOperations.LOG_IN, new Object[] {customer, "x"}, 0, "users"));
+      checks.add(new Check("hotelsWithin", HotelOperations.HOTELS_WITHIN,
+            new Object[] {lat - r, lat + r, longi - r, longi + r, lat, longi, r, lat, longi}, 0, "hotel"));
+      checks.add(new Check("rooms", ReferenceCache.ROOMS, new Object[] {hotel}, 0, "rooms"));
+      checks.add(new Check("freeRooms", HotelOperations.FREE_ROOMS, new Object[] {hotel, date}, 0,
+            "rooms", "roombookings"));
+      checks.add(new Check("managedHotelIDs", HotelOperations.MANAGED_HOTEL_IDS, new Object[] {manager}, 0,
+            "hotel", "rooms"));
+      checks.add(new Check("hotelBookings", HotelOperations.HOTEL_BOOKINGS,
+            new Object[] {hotel, date, yearLater, date, 0, 100}, 0, "roombookings"));
+      checks.add(new Check("regularCustomers", HotelOperations.REGULAR_CUSTOMERS, new Object[] {hotel, 5}, 0,
+            "roombookings"));
+      checks.add(new Check("customerBookings", HotelOperations.CUSTOMER_BOOKINGS, new Object[] {customer}, 0,
+            "roombookings"));
+      checks.add(new Check("recentUpdates", HotelOperations.RECENT_UPDATES,
+            new Object[] {manager, RecentUpdates.DEFAULT_CAPACITY}, 0, "roomupdateslog"));
+      checks.add(new Check("repairHistory", HotelOperations.REPAIR_HISTORY, new Object[] {manager}, 0,
+            "roomrepairrequests"));
+      checks.add(new Check("customerBookingsPage", HotelOperations.CUSTOMER_BOOKINGS_PAGE,
+            new Object[] {customer, yearLater, Integer.MAX_VALUE, 20}, 0, "roombookings"));
+      checks.add(new Check("repairHistoryPage", HotelOperations.REPAIR_HISTORY_PAGE, new Object[] {manager, 0, 20}, 0,
+            "roomrepairrequests"));
+      checks.add(new Check("updatePrice", HotelOperations.UPDATE_PRICE,
+            new Object[] {100, hotel, room, manager, now}, 0, "rooms"));
+      checks.add(new Check("updateImage", HotelOperations.UPDATE_IMAGE,
+            new Object[] {"img", hotel, room, manager, now}, 0, "rooms"));
+      checks.add(new Check("setPrice", HotelOperations.SET_PRICE, new Object[] {100, hotel, room}, 0, "rooms"));
+      checks.add(new Check("setImage", HotelOperations.SET_IMAGE, new Object[] {"img", hotel, room}, 0, "rooms"));
+      // the arrays as literals, which the template casts
+      checks.add(new Check("book", BookingService.BOOK,
+            new Object[] {"{" + hotel + "}", "{" + room + "}", "{" + date + "}", customer}, 0,
+            "rooms", "roombookings"));
+      java.sql.Date month = java.sql.Date.valueOf(date.toLocalDate().withDayOfMonth(1));
+      java.sql.Date nextMonth = java.sql.Date.valueOf(month.toLocalDate().plusMonths(1));
+      checks.add(new Check("availabilityMonth", AvailabilityIndex.MONTH, new Object[] {hotel, month, nextMonth}, 0,
+            "roombookings"));
+      checks.add(new Check("createUser", HotelOperations.CREATE_USER, new Object[] {"x", "x"}, 0));
+      checks.add(new Check("insertRepair", HotelOperations.INSERT_REPAIR, new Object[] {1, hotel, room, date}, 0));
+      checks.add(new Check("insertRepairRequest", HotelOperations.INSERT_REPAIR_REQUEST, new Object[] {manager, 1},
+            0));
+      checks.add(new Check("auditInsert", AuditLog.INSERT,
+            new Object[] {manager, hotel, room, now, 100, 100, "img", "img"}, 0));
+      // once per manager at startup, so no budget; each probe must be an index scan
+      checks.add(new Check("recentUpdatesLoad", RecentUpdates.LATEST,
+            new Object[] {RecentUpdates.DEFAULT_CAPACITY}, Double.MAX_VALUE, "roomupdateslog"));
+      return checks;
+   }
+
+   /**
+    * Plans one check.
+    *
+    * @throws java.sql.SQLException when EXPLAIN failed
+    */
+   public Result run(Check check) throws SQLException {
+      List<List<String>> rows = db.executeQueryAndReturnResult("EXPLAIN (FORMAT JSON) " + check.sql, check.params);
+      String json = rows.get(0).get(0);
+      Map<String, Object> plan = map(map(((List<?>) Json.parse(json)).get(0)).get("Plan"));
+      double cost = ((Number) plan.get("Total Cost")).doubleValue();
+      List<String> problems = new ArrayList<String>();
+      collect(plan, check, problems);
+      double budget = check.maxCost > 0 ? check.maxCost : maxCost;
+      if (cost > budget)
+         problems.add(String.format("cost %.1f over %.1f", cost, budget));
+      return new Result(check, cost, problems, json);
+   }
+
+   // walks the plan tree for scans the check does not allow
+   private static void collect(Map<String, Object> node, Check check, List<String> problems) {
+      Object relation = node.get("Relation Name");
+      if ("Seq Scan".equals(node.get("Node Type")) && relation != null && covered(relation.toString(), check))
+         problems.add("seq scan on " + relation);
+      Object children = node.get("Plans");
+      if (children instanceof List)
+         for (Object child : (List<?>) children)
+            collect(map(child), check, problems);
+   }
+
+   // the table itself or one of its partitions, e.g. roombookings_2016_03
+   private static boolean covered(String relation, Check check) {
+      String name = relation.toLowerCase();
+      for (String table : check.noSeqScan)
+         if (name.equals(table) || name.startsWith(table + "_"))
+            return true;
+      return false;
+   }
+
+   @SuppressWarnings("unchecked")
+   private static Map<String, Object> map(Object o) {
+      return (Map<String, Object>) o;
+   }
+
+   public static void main(String[] args) throws Exception {
+      if (args.length < 3) {
+         System.err.println("Usage: java hoteldb.PlanCheck <dbname> <port> <user> "
+               + "[--max-cost C] [--no-analyze] [--verbose]");
+         System.exit(1);
+      }
+      double maxCost = DEFAULT_MAX_COST;
+      boolean analyze = true;
+      boolean verbose = false;
+      for (int i = 3; i < args.length; i++) {
+         if (args[i].equals("--max-cost")) maxCost = Double.parseDouble(args[++i]);
+         else if (args[i].equals("--no-analyze")) analyze = false;
+         else if (args[i].equals("--verbose")) verbose = true;
+      }
+
+      String url = "jdbc:postgresql://localhost:" + args[1] + "/" + args[0];
+      ConnectionPool pool = new ConnectionPool(url, args[2], "", 1, 1);
+      int failed = 0;
+      try {
+         Database db = new Database(pool);
+         // fresh statistics, or the plans say more about the last load than the queries
+         if (analyze)
+            db.executeUpdate("ANALYZE");
+         PlanCheck planCheck = new PlanCheck(db, maxCost);
+         for (Check check : planCheck.checks()) {
+            Result result = planCheck.run(check);
+            System.out.println(result);
+            if (!result.passed()) {
+               failed++;
+               if (verbose)
+                  System.out.println(result.plan);
+            }
+         }
+      } finally {
+         pool.close();
+      }
+      if (failed > 0) {
+         System.out.println(failed + " plan check(s) failed");
+         System.exit(1);
+      }
+      System.out.println("All plans use their indexes");
+   }
+}
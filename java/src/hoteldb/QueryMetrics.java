@@ -0,0 +1,361 @@
+package hoteldb;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency, row and byte counts of every {@link Database} helper call, by
+ * helper and SQL template.
+ *
+ * Parameterized statements are keyed by their template as is. Statements
+ * built by concatenating values into the SQL are normalized first (quoted
+ * strings and numbers become {@code ?}) so each shape gets one entry; past
+ * {@link #MAX_TEMPLATES} shapes per helper the rest are counted together.
+ * Recording is a map lookup and a few lock-free counter updates, and each
+ * call is also a {@link StatementEvent} for JFR.
+ *
+ * Bytes are the characters of the values a helper turned into strings;
+ * helpers that hand typed or streamed rows to the caller report 0.
+ */
+public class QueryMetrics {
+
+   static final int MAX_TEMPLATES = 512;
+   static final String OTHER = "(other)";
+
+   /**
+    * The Database helpers.
+    */
+   public enum Op {
+      UPDATE("executeUpdate"),
+      PRINT("executeQueryAndPrintResult"),
+      RESULT("executeQueryAndReturnResult"),
+      COUNT("executeQuery"),
+      SEQUENCE("getNewUserID"),
+      TABLE("executeQueryAndReturnTable"),
+      INT("queryForInt"),
+      STREAM("executeQueryStreaming"),
+      BATCH("executeBatch"),
+      COMMIT("commit"),
+      BOOK("book");
+
+      public final String method;
+
+      Op(String method) {
+         this.method = method;
+      }
+   }
+
+   /**
+    * Counters of one helper and template.
+    */
+   public static class Stat {
+      public final Op op;
+      public final String sql;
+      public final LatencyHistogram latency = new LatencyHistogram();
+      public final LongAdder rows = new LongAdder();
+      public final LongAdder bytes = new LongAdder();
+      public final LongAdder errors = new LongAdder();
+
+      Stat(Op op, String sql) {
+         this.op = op;
+         this.sql = sql;
+      }
+   }
+
+   /**
+    * One call in progress. The helper fills in rows and bytes and calls
+    * {@link #end()} in a finally block.
+    */
+   public final class Probe {
+      private final Stat stat;
+      private final StatementEvent event;
+      private final long start;
+      private long rows = 0;
+      private long bytes = 0;
+      private boolean failed = false;
+
+      Probe(Stat stat) {
+         this.stat = stat;
+         this.event = new StatementEvent();
+         event.begin();
+         this.start = System.nanoTime();
+      }
+
+      /**
+       * @return {@code n}, so the helper can {@code return probe.rows(n)}
+       */
+      public int rows(int n) {
+         rows = n;
+         return n;
+      }
+
+      public void row() {
+         rows++;
+      }
+
+      public void bytes(String value) {
+         if (value != null)
+            bytes += value.length();
+      }
+
+      /**
+       * @return {@code e}, so the helper can {@code throw probe.failed(e)}
+       */
+      public <E extends Exception> E failed(E e) {
+         failed = true;
+         return e;
+      }
+
+      public void end() {
+         stat.latency.record(System.nanoTime() - start);
+         if (rows > 0)
+            stat.rows.add(rows);
+         if (bytes > 0)
+            stat.bytes.add(bytes);
+         if (failed)
+            stat.errors.increment();
+         event.end();
+         if (event.shouldCommit()) {
+            event.operation = stat.op.method;
+            event.sql = stat.sql;
+            event.rows = rows;
+            event.bytes = bytes;
+            event.failed = failed;
+            event.commit();
+         }
+      }
+   }
+
+   private final Map<Op, ConcurrentHashMap<String, Stat>> byOp =
+         new EnumMap<Op, ConcurrentHashMap<String, Stat>>(Op.class);
+   private final long startedAt = System.currentTimeMillis();
+   private ConnectionPool pool = null;
+
+   public QueryMetrics() {
+      for (Op op : Op.values())
+         byOp.put(op, new ConcurrentHashMap<String, Stat>());
+   }
+
+   /**
+    * Includes the pool's connection wait in the dumps.
+    */
+   public void setPool(ConnectionPool pool) {
+      this.pool = pool;
+   }
+
+   /**
+    * Starts timing a call of a parameterized statement.
+    */
+   public Probe begin(Op op, String template) {
+      return new Probe(stat(op, template));
+   }
+
+   /**
+    * Starts timing a call of a statement that may have values in its text.
+    */
+   public Probe beginRaw(Op op, String sql) {
+      Map<String, Stat> byTemplate = byOp.get(op);
+      Stat stat = byTemplate.get(sql);
+      if (stat == null)
+         stat = stat(op, normalize(sql));
+      return new Probe(stat);
+   }
+
+   private Stat stat(Op op, String template) {
+      ConcurrentHashMap<String, Stat> byTemplate = byOp.get(op);
+      Stat stat = byTemplate.get(template);
+      if (stat != null)
+         return stat;
+      if (byTemplate.size() >= MAX_TEMPLATES)
+         template = OTHER;
+      stat = new Stat(op, template);
+      Stat raced = byTemplate.putIfAbsent(template, stat);
+      return raced == null ? stat : raced;
+   }
+
+   /**
+    * @return {@code sql} with quoted strings and numeric literals replaced by
+    *         {@code ?} and runs of whitespace collapsed
+    */
+   static String normalize(String sql) {
+      StringBuilder sb = new StringBuilder(sql.length());
+      int n = sql.length();
+      int i = 0;
+      while (i < n) {
+         char c = sql.charAt(i);
+         if (c == '\'') {
+            i++;
+            while (i < n) {
+               if (sql.charAt(i) == '\'') {
+                  if (i + 1 < n && sql.charAt(i + 1) == '\'') {
+                     i += 2;
+                     continue;
+                  }
+                  break;
+               }
+               i++;
+            }
+            i++;
+            sb.append('?');
+         } else if (Character.isDigit(c) && (sb.length() == 0 || !isWordChar(sb.charAt(sb.length() - 1)))) {
+            while (i < n && (Character.isDigit(sql.charAt(i)) || sql.charAt(i) == '.'))
+               i++;
+            sb.append('?');
+         } else if (Character.isWhitespace(c)) {
+            while (i < n && Character.isWhitespace(sql.charAt(i)))
+               i++;
+            if (sb.length() > 0 && i < n)
+               sb.append(' ');
+         } else {
+            sb.append(c);
+            i++;
+         }
+      }
+      return sb.toString();
+   }
+
+   private static boolean isWordChar(char c) {
+      return Character.isLetterOrDigit(c) || c == '_';
+   }
+
+   /**
+    * @return every helper and template seen so far, slowest in total first
+    */
+   public List<Stat> stats() {
+      List<Stat> all = new ArrayList<Stat>();
+      for (Map<String, Stat> byTemplate : byOp.values())
+         all.addAll(byTemplate.values());
+      Collections.sort(all, (a, b) -> Long.compare(b.latency.sumNanos(), a.latency.sumNanos()));
+      return all;
+   }
+
+   /**
+    * Forgets every template and count.
+    */
+   public void reset() {
+      for (Map<String, Stat> byTemplate : byOp.values())
+         byTemplate.clear();
+      if (pool != null)
+         pool.acquireLatency().reset();
+   }
+
+   /**
+    * Writes one line per helper and template.
+    */
+   public void dumpText(Appendable out) throws IOException {
+      out.append(String.format("%-28s %8s %9s %9s %9s %9s %10s %12s %6s  %s%n",
+            "operation", "count", "mean ms", "p50 ms", "p99 ms", "max ms", "rows", "bytes", "errors", "sql"));
+      if (pool != null)
+         out.append(line("borrow", pool.acquireLatency(), 0, 0, pool.stats().timeouts, ""));
+      for (Stat s : stats())
+         out.append(line(s.op.method, s.latency, s.rows.sum(), s.bytes.sum(), s.errors.sum(), s.sql));
+      if (pool != null) {
+         ConnectionPool.PoolStats ps = pool.stats();
+         out.append(String.format("statement cache: %d hits, %d misses, %d evictions (%.1f%% hits)%n",
+               ps.statementHits, ps.statementMisses, ps.statementEvictions, 100 * ps.statementHitRatio()));
+      }
+   }
+
+   private static String line(String op, LatencyHistogram h, long rows, long bytes, long errors, String sql) {
+      LatencyHistogram.Snapshot snap = h.snapshot();
+      return String.format("%-28s %8d %9.3f %9.3f %9.3f %9.3f %10d %12d %6d  %s%n", op, snap.count(),
+            h.meanNanos() / 1e6, snap.percentile(0.5) / 1e6, snap.percentile(0.99) / 1e6, h.maxNanos() / 1e6,
+            rows, bytes, errors, sql);
+   }
+
+   /**
+    * Writes the same numbers as one JSON object.
+    */
+   public void dumpJson(Appendable out) throws IOException {
+      StringBuilder sb = new StringBuilder();
+      sb.append("{\"uptimeSeconds\":").append((System.currentTimeMillis() - startedAt) / 1000);
+      if (pool != null) {
+         sb.append(",\"borrow\":");
+         json(sb, pool.acquireLatency());
+         ConnectionPool.PoolStats ps = pool.stats();
+         sb.append(",\"borrowTimeouts\":").append(ps.timeouts)
+               .append(",\"statementCache\":{\"hits\":").append(ps.statementHits)
+               .append(",\"misses\":").append(ps.statementMisses)
+               .append(",\"evictions\":").append(ps.statementEvictions).append('}');
+      }
+      sb.append(",\"statements\":[");
+      boolean first = true;
+      for (Stat s : stats()) {
+         if (!first)
+            sb.append(',');
+         first = false;
+         sb.append("{\"operation\":\"").append(s.op.method).append("\",\"sql\":");
+         Json.quote(sb, s.sql);
+         sb.append(",\"latency\":");
+         json(sb, s.latency);
+         sb.append(",\"rows\":").append(s.rows.sum())
+               .append(",\"bytes\":").append(s.bytes.sum())
+               .append(",\"errors\":").append(s.errors.sum()).append('}');
+      }
+      sb.append("]}");
+      out.append(sb);
+   }
+
+   private static void json(StringBuilder sb, LatencyHistogram h) {
+      LatencyHistogram.Snapshot snap = h.snapshot();
+      sb.append(String.format("{\"count\":%d,\"meanMs\":%.3f,\"p50Ms\":%.3f,\"p99Ms\":%.3f,\"p999Ms\":%.3f,\"maxMs\":%.3f}",
+            snap.count(), h.meanNanos() / 1e6, snap.percentile(0.5) / 1e6, snap.percentile(0.99) / 1e6,
+            snap.percentile(0.999) / 1e6, h.maxNanos() / 1e6));
+   }
+
+   /**
+    * Dumps every {@code periodSeconds} on a daemon thread: as JSON to
+    * {@code file} (replaced each time) when it is given, otherwise as text
+    * to {@code out}.
+    *
+    * @return the scheduler, to be shut down by the caller
+    */
+   public ScheduledExecutorService dumpEvery(long periodSeconds, final File file, final PrintStream out) {
+      ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+         Thread t = new Thread(r, "query-metrics-dump");
+         t.setDaemon(true);
+         return t;
+      });
+      scheduler.scheduleAtFixedRate(() -> {
+         try {
+            if (file != null)
+               dumpJson(file);
+            else
+               dumpText(out);
+         } catch (IOException e) {
+            out.println("Query metrics dump failed: " + e.getMessage());
+         }
+      }, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+      return scheduler;
+   }
+
+   /**
+    * Replaces {@code file} with a JSON dump.
+    */
+   public void dumpJson(File file) throws IOException {
+      File tmp = new File(file.getPath() + ".tmp");
+      try (Writer w = new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8)) {
+         dumpJson(w);
+      }
+      if (!tmp.renameTo(file)) {
+         file.delete();
+         if (!tmp.renameTo(file))
+            throw new IOException("could not replace " + file);
+      }
+   }
+}
@@ -0,0 +1,234 @@
+package hoteldb;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The latest room updates of every manager, in a fixed-size ring per
+ * manager: filled from RoomUpdatesLog at startup and appended to by every
+ * update made through {@link HotelOperations}.
+ *
+ * Reading a manager's feed copies at most {@code capacity} entries, however
+ * long RoomUpdatesLog grows. Updates logged by other processes are not
+ * seen until the next {@link #load}.
+ */
+public class RecentUpdates {
+
+   public static final int DEFAULT_CAPACITY = 5;
+
+   // the newest rows of each manager, through the (managerID, updatedOn DESC) index
+   static final String LATEST =
+         "SELECT u.updateNumber, u.managerID, u.hotelID, u.roomNumber, u.updatedOn, "
+       + "u.oldPrice, u.newPrice, u.oldImageURL, u.newImageURL "
+       + "FROM (SELECT DISTINCT managerUserID FROM Hotel) m CROSS JOIN LATERAL "
+       + "(SELECT * FROM RoomUpdatesLog l WHERE l.managerID = m.managerUserID "
+       + "ORDER BY l.updatedOn DESC LIMIT ?) u";
+
+   /**
+    * One RoomUpdatesLog row. A price change has null image fields and an
+    * image change null prices.
+    */
+   public static final class Update {
+      public final int updateNumber;
+      public final int managerID;
+      public final int hotelID;
+      public final int roomNumber;
+      public final Timestamp updatedOn;
+      public final Integer oldPrice;
+      public final Integer newPrice;
+      public final String oldImageURL;
+      public final String newImageURL;
+
+      public Update(int updateNumber, int managerID, int hotelID, int roomNumber, Timestamp updatedOn,
+            Integer oldPrice, Integer newPrice, String oldImageURL, String newImageURL) {
+         this.updateNumber = updateNumber;
+         this.managerID = managerID;
+         this.hotelID = hotelID;
+         this.roomNumber = roomNumber;
+         this.updatedOn = updatedOn;
+         this.oldPrice = oldPrice;
+         this.newPrice = newPrice;
+         this.oldImageURL = oldImageURL;
+         this.newImageURL = newImageURL;
+      }
+
+      // the same log row; rows still queued in an AuditLog have no number yet
+      boolean sameAs(Update other) {
+         if (updateNumber > 0 && other.updateNumber > 0)
+            return updateNumber == other.updateNumber;
+         return managerID == other.managerID && hotelID == other.hotelID && roomNumber == other.roomNumber
+               && updatedOn.equals(other.updatedOn);
+      }
+
+      // later first; updateNumber breaks ties
+      boolean newerThan(Update other) {
+         int c = updatedOn.compareTo(other.updatedOn);
+         return c != 0 ? c > 0 : updateNumber > other.updateNumber;
+      }
+
+      /**
+       * @return hotelID, roomNumber, updatedOn, oldPrice, newPrice,
+       *         oldImageURL, newImageURL, as the SQL feed returns them
+       */
+      public List<String> record() {
+         List<String> record = new ArrayList<String>(7);
+         record.add(String.valueOf(hotelID));
+         record.add(String.valueOf(roomNumber));
+         record.add(updatedOn.toString());
+         record.add(oldPrice == null ? null : oldPrice.toString());
+         record.add(newPrice == null ? null : newPrice.toString());
+         record.add(oldImageURL);
+         record.add(newImageURL);
+         return record;
+      }
+
+      @Override
+      public String toString() {
+         String change = oldPrice != null || newPrice != null
+               ? "price " + oldPrice + " -> " + newPrice
+               : "image " + oldImageURL + " -> " + newImageURL;
+         return updatedOn + " room " + roomNumber + " of hotel " + hotelID + ": " + change;
+      }
+   }
+
+   // one manager's updates, guarded by its monitor
+   private static final class Ring {
+      final Update[] slots;
+      // where the next update goes; the newest is just before it
+      int next = 0;
+      int size = 0;
+
+      Ring(int capacity) {
+         slots = new Update[capacity];
+      }
+
+      synchronized void add(Update u) {
+         if (size > 0 && !u.newerThan(newest())) {
+            insert(u);
+            return;
+         }
+         slots[next] = u;
+         next = (next + 1) % slots.length;
+         if (size < slots.length)
+            size++;
+      }
+
+      // out of order, e.g. a row loaded after a newer one was appended
+      private void insert(Update u) {
+         List<Update> all = latest(size);
+         for (Update e : all)
+            if (e.sameAs(u))
+               return;
+         int pos = 0;
+         while (pos < all.size() && all.get(pos).newerThan(u))
+            pos++;
+         if (pos == slots.length)
+            return;
+         all.add(pos, u);
+         next = 0;
+         size = 0;
+         for (int i = Math.min(all.size(), slots.length) - 1; i >= 0; i--) {
+            slots[next++] = all.get(i);
+            size++;
+         }
+         next %= slots.length;
+      }
+
+      private Update newest() {
+         return slots[(next - 1 + slots.length) % slots.length];
+      }
+
+      synchronized List<Update> latest(int n) {
+         int count = Math.min(n, size);
+         List<Update> result = new ArrayList<Update>(count);
+         for (int i = 1; i <= count; i++)
+            result.add(slots[(next - i + slots.length) % slots.length]);
+         return result;
+      }
+   }
+
+   private final int capacity;
+   private final ConcurrentHashMap<Integer, Ring> rings = new ConcurrentHashMap<Integer, Ring>();
+
+   public RecentUpdates() {
+      this(DEFAULT_CAPACITY);
+   }
+
+   /**
+    * @param capacity updates kept per manager
+    */
+   public RecentUpdates(int capacity) {
+      if (capacity < 1)
+         throw new IllegalArgumentException("capacity must be at least 1");
+      this.capacity = capacity;
+   }
+
+   public int capacity() {
+      return capacity;
+   }
+
+   /**
+    * Fills the rings with the newest {@code capacity} RoomUpdatesLog rows of
+    * every hotel manager: one index probe per manager, not a scan of the
+    * log. Updates appended meanwhile are kept in order.
+    *
+    * @throws java.sql.SQLException when RoomUpdatesLog cannot be read
+    */
+   public void load(Database db) throws SQLException {
+      final Map<Integer, List<Update>> loaded = new HashMap<Integer, List<Update>>();
+      db.executeQueryStreaming(LATEST, rs -> {
+         Update u = new Update(rs.getInt(1), rs.getInt(2), rs.getInt(3), rs.getInt(4), rs.getTimestamp(5),
+               (Integer) rs.getObject(6), (Integer) rs.getObject(7), trim(rs.getString(8)), trim(rs.getString(9)));
+         List<Update> list = loaded.get(u.managerID);
+         if (list == null) {
+            list = new ArrayList<Update>();
+            loaded.put(u.managerID, list);
+         }
+         list.add(u);
+         return true;
+      }, capacity);
+      // rows arrive newest first; oldest first appends without reordering
+      for (Map.Entry<Integer, List<Update>> e : loaded.entrySet()) {
+         Ring ring = ring(e.getKey());
+         List<Update> list = e.getValue();
+         for (int i = list.size() - 1; i >= 0; i--)
+            ring.add(list.get(i));
+      }
+   }
+
+   /**
+    * Records an update that was just logged.
+    */
+   public void add(Update update) {
+      ring(update.managerID).add(update);
+   }
+
+   /**
+    * @return up to {@code n} (at most capacity) of a manager's updates,
+    *         newest first
+    */
+   public List<Update> latest(int managerID, int n) {
+      Ring ring = rings.get(managerID);
+      return ring == null ? new ArrayList<Update>() : ring.latest(n);
+   }
+
+   private Ring ring(int managerID) {
+      Ring ring = rings.get(managerID);
+      if (ring == null) {
+         ring = new Ring(capacity);
+         Ring raced = rings.putIfAbsent(managerID, ring);
+         if (raced != null)
+            ring = raced;
+      }
+      return ring;
+   }
+
+   private static String trim(String s) {
+      return s == null ? null : s.trim();
+   }
+}
@@ -0,0 +1,469 @@
+package hoteldb;
+
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Read-through cache of the slow-changing reference data the menus list and
+ * validate against: hotels, the rooms of each hotel with price and image,
+ * and maintenance companies.
+ *
+ * Each list is an immutable snapshot with a hash index on its IDs. Snapshots
+ * expire after {@code ttlMillis}, so changes made by other processes show up
+ * within that time. Rooms are kept per hotel in LRU order and evicted once
+ * more than {@code maxRooms} rooms are cached. Changes made through
+ * {@link HotelOperations} are written through: a price or image update
+ * replaces the cached room, and {@link #invalidateHotel(int)} drops a
+ * hotel that was changed.
+ */
+public class ReferenceCache {
+
+   public static final int DEFAULT_MAX_ROOMS = 100000;
+   public static final long DEFAULT_TTL_MILLIS = 60 * 1000;
+
+   static final String HOTELS =
+         "SELECT hotelID, hotelName, managerUserID FROM Hotel ORDER BY hotelID";
+
+   static final String ROOMS =
+         "SELECT roomNumber, price, imageURL FROM Rooms WHERE hotelID = ? ORDER BY roomNumber";
+
+   static final String COMPANIES =
+         "SELECT companyID, name FROM MaintenanceCompany ORDER BY companyID";
+
+   /**
+    * Every hotel, by hotelID.
+    */
+   public static class Hotels {
+      private final int[] ids;
+      private final String[] names;
+      private final int[] managers;
+      private final IntIntMap index;
+
+      Hotels(ResultTable t) {
+         int n = t.rowCount();
+         ids = new int[n];
+         names = new String[n];
+         managers = new int[n];
+         index = new IntIntMap(n);
+         for (int r = 0; r < n; r++) {
+            ids[r] = t.getInt(r, 0);
+            names[r] = trim(t.getString(r, 1));
+            managers[r] = t.getInt(r, 2);
+            index.put(ids[r], r);
+         }
+      }
+
+      public int size() { return ids.length; }
+      public int id(int i) { return ids[i]; }
+      public String name(int i) { return names[i]; }
+      public int manager(int i) { return managers[i]; }
+
+      public boolean contains(int hotelID) {
+         return index.containsKey(hotelID);
+      }
+
+      /**
+       * @return the position of a hotel in this list, or -1
+       */
+      public int indexOf(int hotelID) {
+         return index.get(hotelID);
+      }
+   }
+
+   /**
+    * The rooms of one hotel, by room number.
+    */
+   public static class Rooms {
+      public final int hotelID;
+      private final int[] numbers;
+      private final int[] prices;
+      private final String[] images;
+      private final IntIntMap index;
+
+      Rooms(int hotelID, ResultTable t) {
+         this.hotelID = hotelID;
+         int n = t.rowCount();
+         numbers = new int[n];
+         prices = new int[n];
+         images = new String[n];
+         index = new IntIntMap(n);
+         for (int r = 0; r < n; r++) {
+            numbers[r] = t.getInt(r, 0);
+            prices[r] = t.getInt(r, 1);
+            images[r] = trim(t.getString(r, 2));
+            index.put(numbers[r], r);
+         }
+      }
+
+      private Rooms(Rooms from, int i, int price, String image) {
+         this.hotelID = from.hotelID;
+         this.numbers = from.numbers;
+         this.index = from.index;
+         this.prices = from.prices.clone();
+         this.images = from.images.clone();
+         prices[i] = price;
+         images[i] = image;
+      }
+
+      public int size() { return numbers.length; }
+      public int number(int i) { return numbers[i]; }
+      public int price(int i) { return prices[i]; }
+      public String imageURL(int i) { return images[i]; }
+
+      public boolean contains(int roomNumber) {
+         return index.containsKey(roomNumber);
+      }
+
+      /**
+       * @return the position of a room in this list, or -1
+       */
+      public int indexOf(int roomNumber) {
+         return index.get(roomNumber);
+      }
+
+      /**
+       * @return the nightly price of a room, or -1 when the hotel has no
+       *         such room
+       */
+      public int priceOf(int roomNumber) {
+         int i = index.get(roomNumber);
+         return i < 0 ? -1 : prices[i];
+      }
+   }
+
+   /**
+    * Every maintenance company, by companyID.
+    */
+   public static class Companies {
+      private final int[] ids;
+      private final String[] names;
+      private final IntIntMap index;
+
+      Companies(ResultTable t) {
+         int n = t.rowCount();
+         ids = new int[n];
+         names = new String[n];
+         index = new IntIntMap(n);
+         for (int r = 0; r < n; r++) {
+            ids[r] = t.getInt(r, 0);
+            names[r] = trim(t.getString(r, 1));
+            index.put(ids[r], r);
+         }
+      }
+
+      public int size() { return ids.length; }
+      public int id(int i) { return ids[i]; }
+      public String name(int i) { return names[i]; }
+
+      public boolean contains(int companyID) {
+         return index.containsKey(companyID);
+      }
+   }
+
+   /**
+    * Hit and miss counters of one kind of entry.
+    */
+   public static class Counters {
+      public final LongAdder hits = new LongAdder();
+      public final LongAdder misses = new LongAdder();
+      public final LongAdder evictions = new LongAdder();
+      public final LongAdder invalidations = new LongAdder();
+
+      public double hitRatio() {
+         long h = hits.sum();
+         long total = h + misses.sum();
+         return total == 0 ? 0 : (double) h / total;
+      }
+
+      @Override
+      public String toString() {
+         return String.format("hits=%d misses=%d hitRatio=%.3f evictions=%d invalidations=%d", hits.sum(),
+               misses.sum(), hitRatio(), evictions.sum(), invalidations.sum());
+      }
+   }
+
+   // a snapshot and when it was read
+   private static class Entry<T> {
+      final T value;
+      final long loadedAt;
+
+      Entry(T value, long loadedAt) {
+         this.value = value;
+         this.loadedAt = loadedAt;
+      }
+   }
+
+   private final Database db;
+   // reads snapshots from a replica when set
+   private volatile ReplicaRouter router = null;
+   private final int maxRooms;
+   private final long ttlMillis;
+
+   private volatile Entry<Hotels> hotels = null;
+   private volatile Entry<Companies> companies = null;
+
+   // guards rooms and every change of the cache content
+   private final ReentrantLock lock = new ReentrantLock();
+   // hotelID -> rooms, least recently used first
+   private final LinkedHashMap<Integer, Entry<Rooms>> rooms = new LinkedHashMap<Integer, Entry<Rooms>>(64, 0.75f, true);
+   private int cachedRooms = 0;
+   // bumped under lock by every write and invalidation, so a load that
+   // raced with one is not cached
+   private final AtomicLong generation = new AtomicLong();
+
+   public final Counters hotelCounters = new Counters();
+   public final Counters roomCounters = new Counters();
+   public final Counters companyCounters = new Counters();
+
+   /**
+    * @param maxRooms rooms cached at most, over all hotels
+    * @param ttlMillis age after which a snapshot is read again
+    */
+   public ReferenceCache(Database db, int maxRooms, long ttlMillis) {
+      this.db = db;
+      this.maxRooms = maxRooms;
+      this.ttlMillis = ttlMillis;
+   }
+
+   public ReferenceCache(Database db) {
+      this(db, DEFAULT_MAX_ROOMS, DEFAULT_TTL_MILLIS);
+   }
+
+   /**
+    * Reads snapshots from a replica that has replayed the latest write to
+    * shared data, so a reload cannot bring back a price just written
+    * through; null reads them from the primary.
+    */
+   public void setReplicaRouter(ReplicaRouter router) {
+      this.router = router;
+   }
+
+   private Database reader() {
+      ReplicaRouter r = router;
+      return r == null ? db : r.reader(ReplicaRouter.SHARED);
+   }
+
+   /**
+    * @return the age after which a snapshot is read again
+    */
+   public long ttlMillis() {
+      return ttlMillis;
+   }
+
+   /**
+    * @return every hotel
+    * @throws java.sql.SQLException when the hotels had to be read and could not be
+    */
+   public Hotels hotels() throws SQLException {
+      Entry<Hotels> e = hotels;
+      if (fresh(e)) {
+         hotelCounters.hits.increment();
+         return e.value;
+      }
+      hotelCounters.misses.increment();
+      long gen = generation.get();
+      long now = System.currentTimeMillis();
+      Hotels loaded = new Hotels(reader().executeQueryAndReturnTable(HOTELS));
+      lock.lock();
+      try {
+         if (generation.get() == gen)
+            hotels = new Entry<Hotels>(loaded, now);
+      } finally {
+         lock.unlock();
+      }
+      return loaded;
+   }
+
+   /**
+    * @return the rooms of a hotel; empty when it has none or does not exist
+    * @throws java.sql.SQLException when the rooms had to be read and could not be
+    */
+   public Rooms rooms(int hotelID) throws SQLException {
+      lock.lock();
+      try {
+         Entry<Rooms> e = rooms.get(hotelID);
+         if (fresh(e)) {
+            roomCounters.hits.increment();
+            return e.value;
+         }
+      } finally {
+         lock.unlock();
+      }
+      roomCounters.misses.increment();
+      long gen = generation.get();
+      long now = System.currentTimeMillis();
+      Rooms loaded = new Rooms(hotelID, reader().executeQueryAndReturnTable(ROOMS, hotelID));
+      lock.lock();
+      try {
+         if (generation.get() == gen)
+            putRooms(new Entry<Rooms>(loaded, now));
+      } finally {
+         lock.unlock();
+      }
+      return loaded;
+   }
+
+   /**
+    * @return every maintenance company
+    * @throws java.sql.SQLException when the companies had to be read and could not be
+    */
+   public Companies companies() throws SQLException {
+      Entry<Companies> e = companies;
+      if (fresh(e)) {
+         companyCounters.hits.increment();
+         return e.value;
+      }
+      companyCounters.misses.increment();
+      long gen = generation.get();
+      long now = System.currentTimeMillis();
+      Companies loaded = new Companies(reader().executeQueryAndReturnTable(COMPANIES));
+      lock.lock();
+      try {
+         if (generation.get() == gen)
+            companies = new Entry<Companies>(loaded, now);
+      } finally {
+         lock.unlock();
+      }
+      return loaded;
+   }
+
+   /**
+    * Writes a new price through to the cached room, if cached.
+    */
+   public void roomPriceChanged(int hotelID, int roomNumber, int price) {
+      replaceRoom(hotelID, roomNumber, price, null, false);
+   }
+
+   /**
+    * Writes a new image URL through to the cached room, if cached.
+    */
+   public void roomImageChanged(int hotelID, int roomNumber, String imageURL) {
+      replaceRoom(hotelID, roomNumber, 0, imageURL, true);
+   }
+
+   private void replaceRoom(int hotelID, int roomNumber, int price, String imageURL, boolean image) {
+      lock.lock();
+      try {
+         generation.incrementAndGet();
+         Entry<Rooms> e = rooms.get(hotelID);
+         if (e == null)
+            return;
+         int i = e.value.indexOf(roomNumber);
+         if (i < 0) {
+            // a room we have not seen: read the hotel again next time
+            removeRooms(hotelID);
+            roomCounters.invalidations.increment();
+            return;
+         }
+         Rooms updated = image ? new Rooms(e.value, i, e.value.price(i), trim(imageURL))
+               : new Rooms(e.value, i, price, e.value.imageURL(i));
+         rooms.put(hotelID, new Entry<Rooms>(updated, e.loadedAt));
+      } finally {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * Drops the hotel list and a hotel's rooms after the hotel or its rooms
+    * were inserted, updated or deleted.
+    */
+   public void invalidateHotel(int hotelID) {
+      hotelCounters.invalidations.increment();
+      lock.lock();
+      try {
+         generation.incrementAndGet();
+         hotels = null;
+         if (removeRooms(hotelID))
+            roomCounters.invalidations.increment();
+      } finally {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * Drops the company list after a company was added or removed.
+    */
+   public void invalidateCompanies() {
+      companyCounters.invalidations.increment();
+      lock.lock();
+      try {
+         generation.incrementAndGet();
+         companies = null;
+      } finally {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * Drops everything.
+    */
+   public void invalidateAll() {
+      lock.lock();
+      try {
+         generation.incrementAndGet();
+         hotels = null;
+         companies = null;
+         rooms.clear();
+         cachedRooms = 0;
+      } finally {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * @return number of rooms currently cached
+    */
+   public int cachedRooms() {
+      lock.lock();
+      try {
+         return cachedRooms;
+      } finally {
+         lock.unlock();
+      }
+   }
+
+   // caller holds lock
+   private void putRooms(Entry<Rooms> e) {
+      Entry<Rooms> old = rooms.put(e.value.hotelID, e);
+      if (old != null)
+         cachedRooms -= old.value.size();
+      cachedRooms += e.value.size();
+      Iterator<Map.Entry<Integer, Entry<Rooms>>> it = rooms.entrySet().iterator();
+      while (cachedRooms > maxRooms && it.hasNext()) {
+         Map.Entry<Integer, Entry<Rooms>> eldest = it.next();
+         if (eldest.getValue() == e)
+            continue;
+         cachedRooms -= eldest.getValue().value.size();
+         it.remove();
+         roomCounters.evictions.increment();
+      }
+   }
+
+   // caller holds lock
+   private boolean removeRooms(int hotelID) {
+      Entry<Rooms> old = rooms.remove(hotelID);
+      if (old == null)
+         return false;
+      cachedRooms -= old.value.size();
+      return true;
+   }
+
+   private boolean fresh(Entry<?> e) {
+      return e != null && System.currentTimeMillis() - e.loadedAt < ttlMillis;
+   }
+
+   private static String trim(String s) {
+      return s == null ? null : s.trim();
+   }
+
+   @Override
+   public String toString() {
+      return "hotels " + hotelCounters + "; rooms " + roomCounters + " cached=" + cachedRooms()
+            + "; companies " + companyCounters;
+   }
+}
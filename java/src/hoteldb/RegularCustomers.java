@@ -0,0 +1,212 @@
+package hoteldb;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The most regular customers of every hotel: per-hotel booking counts by
+ * customer, loaded from RoomBookings and updated on every booking, with the
+ * top {@code k} kept sorted next to them.
+ *
+ * A booking costs one counter update and, when the customer climbs into or
+ * within the top k, an insertion step over k entries. Reading a hotel's top
+ * k copies k entries, however large RoomBookings grows. Counts only go up
+ * through {@link #booked}, which keeps the top k exact; bookings deleted
+ * behind the application's back show up after {@link #load}.
+ */
+public class RegularCustomers implements BookingListener {
+
+   public static final int DEFAULT_K = 5;
+
+   static final String WATERMARK =
+         "SELECT COALESCE(MAX(bookingID), 0) FROM RoomBookings";
+
+   static final String COUNTS =
+         "SELECT hotelID, customerID, COUNT(*) FROM RoomBookings WHERE bookingID <= ? GROUP BY hotelID, customerID";
+
+   /**
+    * A customer and the number of room-nights they booked at a hotel.
+    */
+   public static final class Regular {
+      public final int customerID;
+      public final int bookings;
+
+      Regular(int customerID, int bookings) {
+         this.customerID = customerID;
+         this.bookings = bookings;
+      }
+
+      @Override
+      public String toString() {
+         return "customer " + customerID + ": " + bookings + " bookings";
+      }
+   }
+
+   // counts and top k of one hotel, guarded by its monitor
+   private static final class HotelCounts {
+      final IntIntMap counts = new IntIntMap();
+      // best first: more bookings, then lower customerID
+      final int[] topIDs;
+      final int[] topCounts;
+      int size = 0;
+
+      HotelCounts(int k) {
+         topIDs = new int[k];
+         topCounts = new int[k];
+      }
+
+      synchronized void add(int customerID, int n) {
+         int old = counts.get(customerID);
+         int count = old < 0 ? n : old + n;
+         counts.put(customerID, count);
+         offer(customerID, count);
+      }
+
+      // the customer's count grew to count; move them into or up the top k
+      private void offer(int customerID, int count) {
+         int pos = -1;
+         for (int i = 0; i < size; i++)
+            if (topIDs[i] == customerID) {
+               pos = i;
+               break;
+            }
+         if (pos < 0) {
+            if (size < topIDs.length)
+               pos = size++;
+            else if (better(count, customerID, topCounts[size - 1], topIDs[size - 1]))
+               pos = size - 1;
+            else
+               return;
+         }
+         while (pos > 0 && better(count, customerID, topCounts[pos - 1], topIDs[pos - 1])) {
+            topIDs[pos] = topIDs[pos - 1];
+            topCounts[pos] = topCounts[pos - 1];
+            pos--;
+         }
+         topIDs[pos] = customerID;
+         topCounts[pos] = count;
+      }
+
+      synchronized List<Regular> top() {
+         List<Regular> result = new ArrayList<Regular>(size);
+         for (int i = 0; i < size; i++)
+            result.add(new Regular(topIDs[i], topCounts[i]));
+         return result;
+      }
+
+      synchronized int count(int customerID) {
+         return Math.max(0, counts.get(customerID));
+      }
+
+      private static boolean better(int count, int customerID, int otherCount, int otherID) {
+         return count > otherCount || (count == otherCount && customerID < otherID);
+      }
+   }
+
+   private final int k;
+   // bookings share it, load takes it alone to swap the maps
+   private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+   private volatile ConcurrentHashMap<Integer, HotelCounts> hotels = new ConcurrentHashMap<Integer, HotelCounts>();
+   // bookings seen while load runs, applied on top of what it read
+   private volatile Queue<long[]> pending = null;
+
+   public RegularCustomers() {
+      this(DEFAULT_K);
+   }
+
+   /**
+    * @param k customers kept per hotel
+    */
+   public RegularCustomers(int k) {
+      if (k < 1)
+         throw new IllegalArgumentException("k must be at least 1");
+      this.k = k;
+   }
+
+   public int k() {
+      return k;
+   }
+
+   /**
+    * Replaces the counts with a fresh aggregate of RoomBookings. Only the
+    * grouped counts are streamed, so heap use is bounded by the number of
+    * (hotel, customer) pairs, not by the size of RoomBookings. Bookings made
+    * through {@link BookingService} while it runs are not lost: those past
+    * the highest bookingID at the start are applied afterwards.
+    *
+    * @throws java.sql.SQLException when RoomBookings cannot be read
+    */
+   public void load(Database db) throws SQLException {
+      lock.writeLock().lock();
+      try {
+         pending = new ConcurrentLinkedQueue<long[]>();
+      } finally {
+         lock.writeLock().unlock();
+      }
+      final ConcurrentHashMap<Integer, HotelCounts> loaded = new ConcurrentHashMap<Integer, HotelCounts>();
+      try {
+         int watermark = db.queryForInt(WATERMARK);
+         db.executeQueryStreaming(COUNTS, rs -> {
+            hotel(loaded, rs.getInt(1)).add(rs.getInt(2), rs.getInt(3));
+            return true;
+         }, watermark);
+         lock.writeLock().lock();
+         try {
+            for (long[] b : pending)
+               if (b[2] > watermark)
+                  hotel(loaded, (int) b[0]).add((int) b[1], 1);
+            hotels = loaded;
+         } finally {
+            lock.writeLock().unlock();
+         }
+      } finally {
+         pending = null;
+      }
+   }
+
+   @Override
+   public void booked(int customerID, BookingRequest request, int bookingID) {
+      lock.readLock().lock();
+      try {
+         Queue<long[]> p = pending;
+         if (p != null)
+            p.add(new long[] { request.hotelID, customerID, bookingID });
+         hotel(hotels, request.hotelID).add(customerID, 1);
+      } finally {
+         lock.readLock().unlock();
+      }
+   }
+
+   /**
+    * @return up to k customers of a hotel with the most room-nights booked,
+    *         most first (ties by lower customerID)
+    */
+   public List<Regular> top(int hotelID) {
+      HotelCounts counts = hotels.get(hotelID);
+      return counts == null ? new ArrayList<Regular>() : counts.top();
+   }
+
+   /**
+    * @return the room-nights a customer booked at a hotel
+    */
+   public int bookings(int hotelID, int customerID) {
+      HotelCounts counts = hotels.get(hotelID);
+      return counts == null ? 0 : counts.count(customerID);
+   }
+
+   private HotelCounts hotel(ConcurrentHashMap<Integer, HotelCounts> map, int hotelID) {
+      HotelCounts counts = map.get(hotelID);
+      if (counts == null) {
+         counts = new HotelCounts(k);
+         HotelCounts raced = map.putIfAbsent(hotelID, counts);
+         if (raced != null)
+            counts = raced;
+      }
+      return counts;
+   }
+}
@@ -0,0 +1,32 @@
+package hoteldb;
+
+import java.time.LocalDate;
+
+/**
+ * One row of the RoomRepairs table.
+ */
+public class RepairRow {
+
+   public static final RowMapper<RepairRow> MAPPER = (t, r) -> new RepairRow(
+         t.getInt(r, "repairID"), t.getInt(r, "companyID"), t.getInt(r, "hotelID"),
+         t.getInt(r, "roomNumber"), t.getDate(r, "repairDate"));
+
+   public final int repairID;
+   public final int companyID;
+   public final int hotelID;
+   public final int roomNumber;
+   public final LocalDate repairDate;
+
+   public RepairRow(int repairID, int companyID, int hotelID, int roomNumber, LocalDate repairDate) {
+      this.repairID = repairID;
+      this.companyID = companyID;
+      this.hotelID = hotelID;
+      this.roomNumber = roomNumber;
+      this.repairDate = repairDate;
+   }
+
+   @Override
+   public String toString() {
+      return "repair " + repairID + ": room " + roomNumber + " of hotel " + hotelID + " on " + repairDate;
+   }
+}
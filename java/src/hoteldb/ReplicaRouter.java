@@ -0,0 +1,333 @@
+package hoteldb;
+
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sends read-only queries to streaming replicas and everything else to the
+ * primary.
+ *
+ * A poller samples the primary's WAL position and how far each replica has
+ * replayed. A replica's lag is how long ago the primary wrote the oldest WAL
+ * the replica has not replayed yet; a replica further behind than
+ * {@code maxLagMillis}, or one that did not answer, gets no reads. Reads
+ * are spread over the replicas in range, preferring the one with fewer
+ * connections in use out of two picked at random.
+ *
+ * Read-your-writes: {@link #wrote} records when a user's write committed.
+ * Until a replica has replayed the primary's position as sampled after that
+ * moment, {@link #reader(int)} sends that user to the primary. No query is
+ * added to the write path; the cost is that a user reads from the primary
+ * for up to one poll interval plus the replica's lag after each write.
+ * {@link #SHARED} stands for data every user sees, such as room prices.
+ * A booking is also recorded against its hotel, and
+ * {@link #hotelReader(int)} applies the same rule to a hotel's
+ * availability, so the customer who booked does not see the room as free
+ * again; other users' reads of that hotel go to the primary for the same
+ * window.
+ *
+ * Writes made outside this object, e.g. by another application server, are
+ * only covered by the lag bound.
+ */
+public class ReplicaRouter implements BookingListener, AutoCloseable {
+
+   /** pseudo userID of data shared by every user; userIDs start at 1 */
+   public static final int SHARED = 0;
+
+   public static final long DEFAULT_MAX_LAG_MILLIS = 1000;
+   public static final long DEFAULT_POLL_MILLIS = 100;
+
+   static final String PRIMARY_LSN = "SELECT (pg_current_wal_lsn() - '0/0')::bigint";
+   static final String REPLAY_LSN = "SELECT COALESCE((pg_last_wal_replay_lsn() - '0/0')::bigint, -1)";
+
+   // a primary WAL position and when the query for it was sent
+   private static final class Sample {
+      final long nanos;
+      final long lsn;
+
+      Sample(long nanos, long lsn) {
+         this.nanos = nanos;
+         this.lsn = lsn;
+      }
+   }
+
+   /**
+    * One replica endpoint and what the last poll saw of it.
+    */
+   public static final class Replica {
+      public final Database db;
+      private volatile long replayedLsn = -1;
+      private volatile long lagMillis = Long.MAX_VALUE;
+      private volatile boolean up = false;
+      private volatile String error = null;
+      private final LongAdder reads = new LongAdder();
+
+      Replica(Database db) {
+         this.db = db;
+      }
+
+      public long lagMillis() {
+         return lagMillis;
+      }
+
+      public boolean up() {
+         return up;
+      }
+
+      public long reads() {
+         return reads.sum();
+      }
+
+      @Override
+      public String toString() {
+         String state = up ? "lag " + lagMillis + " ms" : "down" + (error == null ? "" : " (" + error + ")");
+         return db.getPool().getUrl() + ": " + state + ", " + reads.sum() + " reads";
+      }
+   }
+
+   private final Database primary;
+   private final List<Replica> replicas = new ArrayList<Replica>();
+   private final long maxLagNanos;
+   private final long pollNanos;
+   // a user's reads stay on the primary at most this long after a write
+   private final long stickyNanos;
+
+   // newest last; covers stickyNanos, guarded by its monitor
+   private final ArrayDeque<Sample> samples = new ArrayDeque<Sample>();
+   // userID -> System.nanoTime() of the user's latest write
+   private final ConcurrentHashMap<Integer, Long> lastWrite = new ConcurrentHashMap<Integer, Long>();
+   // hotelID -> System.nanoTime() of the latest booking in the hotel
+   private final ConcurrentHashMap<Integer, Long> lastBooking = new ConcurrentHashMap<Integer, Long>();
+   private final LongAdder primaryReads = new LongAdder();
+   private final LongAdder stickyReads = new LongAdder();
+   private final ScheduledExecutorService poller;
+
+   public ReplicaRouter(Database primary, List<Database> replicas) {
+      this(primary, replicas, DEFAULT_MAX_LAG_MILLIS, DEFAULT_POLL_MILLIS);
+   }
+
+   /**
+    * Starts polling the primary and the replicas every {@code pollMillis}.
+    *
+    * @param maxLagMillis lag beyond which a replica gets no reads
+    */
+   public ReplicaRouter(Database primary, List<Database> replicas, long maxLagMillis, long pollMillis) {
+      if (maxLagMillis < 1 || pollMillis < 1)
+         throw new IllegalArgumentException("maxLagMillis and pollMillis must be positive");
+      this.primary = primary;
+      for (Database db : replicas)
+         this.replicas.add(new Replica(db));
+      this.maxLagNanos = maxLagMillis * 1000000L;
+      this.pollNanos = pollMillis * 1000000L;
+      // by then every replica in range has replayed the write
+      this.stickyNanos = maxLagNanos + 2 * pollNanos;
+      poller = Executors.newSingleThreadScheduledExecutor(r -> {
+         Thread t = new Thread(r, "replica-router-poll");
+         t.setDaemon(true);
+         return t;
+      });
+      poller.scheduleWithFixedDelay(this::poll, 0, pollMillis, TimeUnit.MILLISECONDS);
+   }
+
+   public Database primary() {
+      return primary;
+   }
+
+   public List<Replica> replicas() {
+      return replicas;
+   }
+
+   /**
+    * @return where to read data every user shares, at most maxLagMillis
+    *         stale
+    */
+   public Database reader() {
+      return route(0L);
+   }
+
+   /**
+    * @return where to read data on behalf of {@code userID}: a replica in
+    *         range that has replayed the user's latest write, else the
+    *         primary
+    */
+   public Database reader(int userID) {
+      return reader(lastWrite, userID);
+   }
+
+   /**
+    * @return where to read the availability of {@code hotelID}: a replica
+    *         in range that has replayed the hotel's latest booking, else the
+    *         primary
+    */
+   public Database hotelReader(int hotelID) {
+      return reader(lastBooking, hotelID);
+   }
+
+   private Database reader(ConcurrentHashMap<Integer, Long> writes, int key) {
+      Long wrote = writes.get(key);
+      if (wrote != null && System.nanoTime() - wrote > stickyNanos) {
+         writes.remove(key, wrote);
+         wrote = null;
+      }
+      if (wrote == null)
+         return route(0L);
+      long needed = lsnAfter(wrote);
+      if (needed < 0) {
+         // not sampled since the write yet
+         stickyReads.increment();
+         primaryReads.increment();
+         return primary;
+      }
+      Database db = route(needed);
+      if (db == primary)
+         stickyReads.increment();
+      return db;
+   }
+
+   /**
+    * Records that a write made on behalf of {@code userID} just committed.
+    */
+   public void wrote(int userID) {
+      lastWrite.put(userID, System.nanoTime());
+   }
+
+   @Override
+   public void booked(int customerID, BookingRequest request, int bookingID) {
+      long now = System.nanoTime();
+      lastWrite.put(customerID, now);
+      lastBooking.put(request.hotelID, now);
+   }
+
+   // a replica in range that replayed at least minLsn, or the primary
+   private Database route(long minLsn) {
+      Replica a = null;
+      Replica b = null;
+      int eligible = 0;
+      int n = replicas.size();
+      int start = n == 0 ? 0 : ThreadLocalRandom.current().nextInt(n);
+      for (int i = 0; i < n && eligible < 2; i++) {
+         Replica r = replicas.get((start + i) % n);
+         if (!r.up || r.lagMillis > maxLagNanos / 1000000L || r.replayedLsn < minLsn)
+            continue;
+         if (eligible++ == 0)
+            a = r;
+         else
+            b = r;
+      }
+      if (a == null) {
+         primaryReads.increment();
+         return primary;
+      }
+      if (b != null && b.db.getPool().stats().active < a.db.getPool().stats().active)
+         a = b;
+      a.reads.increment();
+      return a.db;
+   }
+
+   // the primary's position in the first sample taken after nanos, -1 for none yet
+   private long lsnAfter(long nanos) {
+      synchronized (samples) {
+         for (Sample s : samples)
+            if (s.nanos - nanos >= 0)
+               return s.lsn;
+      }
+      return -1;
+   }
+
+   private void poll() {
+      long start = System.nanoTime();
+      long lsn;
+      try {
+         lsn = queryForLong(primary, PRIMARY_LSN);
+      } catch (SQLException e) {
+         // without the primary's position no replica can be judged
+         for (Replica r : replicas)
+            r.up = false;
+         return;
+      }
+      synchronized (samples) {
+         samples.addLast(new Sample(start, lsn));
+         while (samples.size() > 1 && start - samples.peekFirst().nanos > stickyNanos + pollNanos)
+            samples.removeFirst();
+      }
+      for (Replica r : replicas) {
+         try {
+            long replayed = queryForLong(r.db, REPLAY_LSN);
+            r.replayedLsn = replayed;
+            r.lagMillis = lag(replayed);
+            r.up = replayed >= 0;
+            r.error = replayed >= 0 ? null : "not a standby";
+         } catch (SQLException e) {
+            r.up = false;
+            r.error = e.getMessage();
+         }
+      }
+      long now = System.nanoTime();
+      expire(lastWrite, now);
+      expire(lastBooking, now);
+   }
+
+   private void expire(ConcurrentHashMap<Integer, Long> writes, long now) {
+      for (Iterator<Map.Entry<Integer, Long>> it = writes.entrySet().iterator(); it.hasNext();)
+         if (now - it.next().getValue() > stickyNanos)
+            it.remove();
+   }
+
+   // WAL positions are byte offsets, beyond int range
+   private static long queryForLong(Database db, String sql) throws SQLException {
+      return Long.parseLong(db.executeQueryAndReturnResult(sql).get(0).get(0).trim());
+   }
+
+   // how long ago the primary was first seen past what the replica replayed
+   private long lag(long replayed) {
+      long now = System.nanoTime();
+      synchronized (samples) {
+         for (Sample s : samples)
+            if (s.lsn > replayed)
+               return (now - s.nanos) / 1000000L;
+      }
+      return 0;
+   }
+
+   /**
+    * @return reads sent to the primary, including sticky ones
+    */
+   public long primaryReads() {
+      return primaryReads.sum();
+   }
+
+   /**
+    * @return reads sent to the primary because the user had just written,
+    *         or the hotel had just been booked
+    */
+   public long stickyReads() {
+      return stickyReads.sum();
+   }
+
+   /**
+    * Stops polling. The databases' pools are the caller's to close.
+    */
+   @Override
+   public void close() {
+      poller.shutdownNow();
+   }
+
+   @Override
+   public String toString() {
+      StringBuilder sb = new StringBuilder();
+      sb.append(primaryReads.sum()).append(" primary reads (").append(stickyReads.sum()).append(" sticky)");
+      for (Replica r : replicas)
+         sb.append("; ").append(r);
+      return sb.toString();
+   }
+}
@@ -0,0 +1,462 @@
+package hoteldb;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes rows as they arrive into one buffered writer, as an aligned text
+ * table, CSV or JSON Lines.
+ *
+ * A table's column widths come from the header and the first
+ * {@code sampleRows} rows; those rows are held back until the widths are
+ * known, and every later row is written straight through with the same
+ * widths, so memory stays bounded however many rows follow. A later cell
+ * wider than its column is written whole and pushes the rest of its line
+ * right. {@link #flush} also ends the sample, so a paged view can show what
+ * it has before asking for more.
+ *
+ * CSV follows the layout of COPY ... (FORMAT csv, HEADER true): a header
+ * line, fields quoted only when needed, null as an empty field and the
+ * empty string as {@code ""}. JSON Lines writes one object per row keyed by
+ * column name, with Numbers bare and everything else as strings.
+ *
+ * Text values are trimmed, since CHAR columns come padded. Nothing reaches
+ * the underlying stream until the buffer fills, {@link #flush} or
+ * {@link #close}.
+ */
+public abstract class ResultRenderer implements AutoCloseable {
+
+   /**
+    * Output format.
+    */
+   public enum Format {
+      TABLE, CSV, JSONL;
+
+      /**
+       * @return the format called {@code name}, ignoring case
+       * @throws IllegalArgumentException for any other name
+       */
+      public static Format parse(String name) {
+         try {
+            return valueOf(name.trim().toUpperCase());
+         } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("unknown format " + name + "; expected table, csv or jsonl");
+         }
+      }
+
+      /**
+       * @return the format of a file name's extension: .csv, or .jsonl and
+       *         .ndjson
+       * @throws IllegalArgumentException for any other extension
+       */
+      public static Format ofFile(String fileName) {
+         String name = fileName.toLowerCase();
+         if (name.endsWith(".csv"))
+            return CSV;
+         if (name.endsWith(".jsonl") || name.endsWith(".ndjson"))
+            return JSONL;
+         throw new IllegalArgumentException("cannot tell the format of " + fileName + "; name it .csv or .jsonl");
+      }
+   }
+
+   public static final int DEFAULT_SAMPLE_ROWS = 100;
+
+   static final int BUFFER_SIZE = 1 << 16;
+
+   final Writer out;
+   private final boolean closeOut;
+   String[] names = null;
+   private int rows = 0;
+   // per column, read as a number from a result set; set on the first row
+   private boolean[] numeric = null;
+   private IOException broken = null;
+   private boolean closed = false;
+   private boolean stdout = false;
+
+   ResultRenderer(Writer out, boolean closeOut) {
+      this.out = out;
+      this.closeOut = closeOut;
+   }
+
+   /**
+    * @param out where the rows go; buffered here
+    * @param closeOut whether {@link #close} closes {@code out}, or only
+    *        flushes it
+    * @param sampleRows rows a table sizes its columns from
+    */
+   public static ResultRenderer open(Format format, Writer out, boolean closeOut, int sampleRows) {
+      Writer buffered = out instanceof BufferedWriter ? out : new BufferedWriter(out, BUFFER_SIZE);
+      switch (format) {
+         case CSV: return new Csv(buffered, closeOut);
+         case JSONL: return new JsonLines(buffered, closeOut);
+         default: return new Table(buffered, closeOut, sampleRows);
+      }
+   }
+
+   /**
+    * Renders to standard output, which {@link #close} flushes but leaves
+    * open.
+    */
+   public static ResultRenderer toStdout(Format format) {
+      ResultRenderer renderer = open(format, new OutputStreamWriter(System.out, StandardCharsets.UTF_8), false,
+            DEFAULT_SAMPLE_ROWS);
+      renderer.stdout = true;
+      return renderer;
+   }
+
+   /**
+    * Renders into {@code file}, replacing it.
+    *
+    * @throws java.io.IOException when the file cannot be created
+    */
+   public static ResultRenderer toFile(Format format, File file) throws IOException {
+      return open(format, new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8), true,
+            DEFAULT_SAMPLE_ROWS);
+   }
+
+   /**
+    * Names the columns; must come before the first row, unless the rows come
+    * from {@link #handler}, which takes the names from the result set.
+    *
+    * @throws java.io.IOException when writing failed
+    */
+   public void header(String... names) throws IOException {
+      if (this.names != null)
+         throw new IllegalStateException("header already written");
+      this.names = names;
+      writeHeader();
+   }
+
+   /**
+    * Writes one row, a value per column.
+    *
+    * @throws java.io.IOException when writing failed
+    */
+   public void row(Object... values) throws IOException {
+      if (names == null)
+         throw new IllegalStateException("header first");
+      if (values.length != names.length)
+         throw new IllegalArgumentException(values.length + " values for " + names.length + " columns");
+      writeRow(values);
+      rows++;
+   }
+
+   /**
+    * {@link #row(Object...)} for a record of executeQueryAndReturnResult.
+    */
+   public void row(List<?> values) throws IOException {
+      row(values.toArray());
+   }
+
+   /**
+    * @return a handler that renders every row of a streamed query. Numeric
+    *         columns are read as numbers, the rest as strings. A write
+    *         failure stops the query; {@link #close} then throws it.
+    */
+   public RowHandler handler() {
+      return (ResultSet rs) -> {
+         if (numeric == null)
+            columns(rs.getMetaData());
+         if (broken != null)
+            return false;
+         Object[] values = new Object[numeric.length];
+         for (int c = 0; c < values.length; c++)
+            values[c] = numeric[c] ? rs.getObject(c + 1) : rs.getString(c + 1);
+         try {
+            row(values);
+            return true;
+         } catch (IOException e) {
+            broken = e;
+            return false;
+         }
+      };
+   }
+
+   private void columns(ResultSetMetaData md) throws SQLException {
+      int n = md.getColumnCount();
+      numeric = new boolean[n];
+      String[] labels = new String[n];
+      for (int c = 0; c < n; c++) {
+         labels[c] = md.getColumnLabel(c + 1);
+         switch (md.getColumnType(c + 1)) {
+            case Types.SMALLINT: case Types.INTEGER: case Types.BIGINT: case Types.NUMERIC:
+            case Types.DECIMAL: case Types.REAL: case Types.FLOAT: case Types.DOUBLE:
+               numeric[c] = true;
+               break;
+            default:
+               numeric[c] = false;
+         }
+      }
+      if (names == null) {
+         try {
+            header(labels);
+         } catch (IOException e) {
+            broken = e;
+         }
+      }
+   }
+
+   /**
+    * @return whether the rows go to standard output, i.e. to a reader who
+    *         may want them a page at a time
+    */
+   public boolean isStdout() {
+      return stdout;
+   }
+
+   /**
+    * @return rows written so far
+    */
+   public int rows() {
+      return rows;
+   }
+
+   /**
+    * Writes out everything held back, including a table's sample.
+    *
+    * @throws java.io.IOException when writing failed
+    */
+   public void flush() throws IOException {
+      finish();
+      out.flush();
+   }
+
+   /**
+    * Flushes, and closes the writer when this renderer owns it.
+    *
+    * @throws java.io.IOException when writing failed, here or in
+    *         {@link #handler}
+    */
+   @Override
+   public void close() throws IOException {
+      if (closed)
+         return;
+      closed = true;
+      try {
+         finish();
+      } finally {
+         if (closeOut)
+            out.close();
+         else
+            out.flush();
+      }
+      if (broken != null)
+         throw broken;
+   }
+
+   abstract void writeHeader() throws IOException;
+
+   abstract void writeRow(Object[] values) throws IOException;
+
+   void finish() throws IOException {
+   }
+
+   static String text(Object value) {
+      if (value == null)
+         return null;
+      return value instanceof String ? ((String) value).trim() : value.toString();
+   }
+
+   /**
+    * Aligned columns sized from a sample of the first rows.
+    */
+   private static final class Table extends ResultRenderer {
+      // wider sampled values do not widen their column past this
+      static final int MAX_WIDTH = 40;
+      static final String GAP = "  ";
+
+      private final int sampleRows;
+      private List<String[]> sample = new ArrayList<String[]>();
+      // columns whose sampled values are all numbers, aligned right
+      private boolean[] right = null;
+      private int[] widths = null;
+      private final StringBuilder sb = new StringBuilder(256);
+
+      Table(Writer out, boolean closeOut, int sampleRows) {
+         super(out, closeOut);
+         this.sampleRows = Math.max(sampleRows, 1);
+      }
+
+      @Override
+      void writeHeader() {
+         // written with the sample, once the widths are known
+         right = new boolean[names.length];
+         Arrays.fill(right, true);
+      }
+
+      @Override
+      void writeRow(Object[] values) throws IOException {
+         String[] cells = new String[values.length];
+         for (int c = 0; c < values.length; c++) {
+            String s = text(values[c]);
+            cells[c] = s == null ? "" : s;
+            if (widths == null && values[c] != null && !(values[c] instanceof Number))
+               right[c] = false;
+         }
+         if (widths != null) {
+            line(cells, true);
+            return;
+         }
+         sample.add(cells);
+         if (sample.size() >= sampleRows)
+            finish();
+      }
+
+      @Override
+      void finish() throws IOException {
+         if (widths != null || names == null)
+            return;
+         widths = new int[names.length];
+         for (int c = 0; c < names.length; c++)
+            widths[c] = names[c].length();
+         for (String[] cells : sample)
+            for (int c = 0; c < cells.length; c++)
+               widths[c] = Math.max(widths[c], Math.min(cells[c].length(), MAX_WIDTH));
+         line(names, false);
+         String[] rules = new String[names.length];
+         for (int c = 0; c < names.length; c++)
+            rules[c] = repeat('-', widths[c]);
+         line(rules, false);
+         for (String[] cells : sample)
+            line(cells, true);
+         sample = null;
+      }
+
+      // numbers are aligned right, headers and the rest left; no trailing
+      // blanks
+      private void line(String[] cells, boolean align) throws IOException {
+         sb.setLength(0);
+         for (int c = 0; c < cells.length; c++) {
+            if (c > 0)
+               sb.append(GAP);
+            int pad = widths[c] - cells[c].length();
+            if (align && right[c]) {
+               pad(pad);
+               sb.append(cells[c]);
+            } else {
+               sb.append(cells[c]);
+               pad(pad);
+            }
+         }
+         int end = sb.length();
+         while (end > 0 && sb.charAt(end - 1) == ' ')
+            end--;
+         sb.setLength(end);
+         sb.append('\n');
+         out.write(sb.toString());
+      }
+
+      private void pad(int n) {
+         for (int i = 0; i < n; i++)
+            sb.append(' ');
+      }
+
+      private static String repeat(char c, int n) {
+         char[] chars = new char[n];
+         Arrays.fill(chars, c);
+         return new String(chars);
+      }
+   }
+
+   /**
+    * Comma-separated values with a header line.
+    */
+   private static final class Csv extends ResultRenderer {
+      private final StringBuilder sb = new StringBuilder(256);
+
+      Csv(Writer out, boolean closeOut) {
+         super(out, closeOut);
+      }
+
+      @Override
+      void writeHeader() throws IOException {
+         line(names);
+      }
+
+      @Override
+      void writeRow(Object[] values) throws IOException {
+         line(values);
+      }
+
+      private void line(Object[] values) throws IOException {
+         sb.setLength(0);
+         for (int c = 0; c < values.length; c++) {
+            if (c > 0)
+               sb.append(',');
+            field(sb, text(values[c]));
+         }
+         sb.append('\n');
+         out.write(sb.toString());
+      }
+
+      private static void field(StringBuilder sb, String s) {
+         if (s == null)
+            return;
+         boolean quote = s.isEmpty();
+         for (int i = 0; i < s.length() && !quote; i++) {
+            char ch = s.charAt(i);
+            quote = ch == ',' || ch == '"' || ch == '\n' || ch == '\r';
+         }
+         if (!quote) {
+            sb.append(s);
+            return;
+         }
+         sb.append('"');
+         for (int i = 0; i < s.length(); i++) {
+            char ch = s.charAt(i);
+            if (ch == '"')
+               sb.append('"');
+            sb.append(ch);
+         }
+         sb.append('"');
+      }
+   }
+
+   /**
+    * One JSON object per line.
+    */
+   private static final class JsonLines extends ResultRenderer {
+      private final StringBuilder sb = new StringBuilder(256);
+
+      JsonLines(Writer out, boolean closeOut) {
+         super(out, closeOut);
+      }
+
+      @Override
+      void writeHeader() {
+      }
+
+      @Override
+      void writeRow(Object[] values) throws IOException {
+         sb.setLength(0);
+         sb.append('{');
+         for (int c = 0; c < values.length; c++) {
+            if (c > 0)
+               sb.append(',');
+            Json.quote(sb, names[c]);
+            sb.append(':');
+            Object value = values[c];
+            if (value == null)
+               sb.append("null");
+            else if (value instanceof Number && Double.isFinite(((Number) value).doubleValue()))
+               sb.append(value);
+            else
+               Json.quote(sb, text(value));
+         }
+         sb.append("}\n");
+         out.write(sb.toString());
+      }
+   }
+}
@@ -0,0 +1,327 @@
+package hoteldb;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * A query result stored column by column in primitive arrays.
+ *
+ * Integer columns are kept in {@code int[]}/{@code long[]}, numeric columns in
+ * {@code double[]}, dates as epoch days in {@code int[]} and timestamps as
+ * epoch milliseconds in {@code long[]}; only text columns hold Strings. Keys
+ * therefore stay ints from the driver to the caller instead of being turned
+ * into Strings and compared with equals. Rows and columns are 0-based, like
+ * the lists returned by executeQueryAndReturnResult.
+ */
+public class ResultTable {
+
+   /**
+    * Storage kind of a column.
+    */
+   public enum Kind { INT, LONG, DOUBLE, DATE, TIMESTAMP, STRING }
+
+   private final String[] names;
+   private final Kind[] kinds;
+   private final Object[] data;
+   private final BitSet[] nulls;
+   private int rows = 0;
+   private int capacity;
+
+   private ResultTable(String[] names, Kind[] kinds, int capacity) {
+      this.names = names;
+      this.kinds = kinds;
+      this.capacity = Math.max(capacity, 1);
+      this.data = new Object[names.length];
+      this.nulls = new BitSet[names.length];
+      for (int c = 0; c < names.length; c++)
+         data[c] = allocate(kinds[c], this.capacity);
+   }
+
+   /**
+    * Reads every remaining row of {@code rs}. The result set is not closed.
+    *
+    * @throws java.sql.SQLException when reading failed
+    */
+   public static ResultTable read(ResultSet rs) throws SQLException {
+      ResultSetMetaData md = rs.getMetaData();
+      int n = md.getColumnCount();
+      String[] names = new String[n];
+      Kind[] kinds = new Kind[n];
+      for (int c = 0; c < n; c++) {
+         names[c] = md.getColumnLabel(c + 1);
+         kinds[c] = kindOf(md.getColumnType(c + 1));
+      }
+      ResultTable t = new ResultTable(names, kinds, 16);
+      while (rs.next())
+         t.append(rs);
+      return t;
+   }
+
+   private static Kind kindOf(int sqlType) {
+      switch (sqlType) {
+         case Types.INTEGER:
+         case Types.SMALLINT:
+         case Types.TINYINT:
+            return Kind.INT;
+         case Types.BIGINT:
+            return Kind.LONG;
+         case Types.NUMERIC:
+         case Types.DECIMAL:
+         case Types.REAL:
+         case Types.FLOAT:
+         case Types.DOUBLE:
+            return Kind.DOUBLE;
+         case Types.DATE:
+            return Kind.DATE;
+         case Types.TIMESTAMP:
+            return Kind.TIMESTAMP;
+         default:
+            return Kind.STRING;
+      }
+   }
+
+   private static Object allocate(Kind kind, int size) {
+      switch (kind) {
+         case INT:
+         case DATE:
+            return new int[size];
+         case LONG:
+         case TIMESTAMP:
+            return new long[size];
+         case DOUBLE:
+            return new double[size];
+         default:
+            return new String[size];
+      }
+   }
+
+   private void append(ResultSet rs) throws SQLException {
+      if (rows == capacity)
+         grow();
+      for (int c = 0; c < names.length; c++) {
+         int i = c + 1;
+         boolean isNull;
+         switch (kinds[c]) {
+            case INT:
+               ((int[]) data[c])[rows] = rs.getInt(i);
+               isNull = rs.wasNull();
+               break;
+            case LONG:
+               ((long[]) data[c])[rows] = rs.getLong(i);
+               isNull = rs.wasNull();
+               break;
+            case DOUBLE:
+               ((double[]) data[c])[rows] = rs.getDouble(i);
+               isNull = rs.wasNull();
+               break;
+            case DATE: {
+               java.sql.Date d = rs.getDate(i);
+               isNull = d == null;
+               if (!isNull)
+                  ((int[]) data[c])[rows] = (int) d.toLocalDate().toEpochDay();
+               break;
+            }
+            case TIMESTAMP: {
+               Timestamp ts = rs.getTimestamp(i);
+               isNull = ts == null;
+               if (!isNull)
+                  ((long[]) data[c])[rows] = ts.getTime();
+               break;
+            }
+            default: {
+               String s = rs.getString(i);
+               ((String[]) data[c])[rows] = s;
+               isNull = s == null;
+            }
+         }
+         if (isNull) {
+            if (nulls[c] == null)
+               nulls[c] = new BitSet();
+            nulls[c].set(rows);
+         }
+      }
+      rows++;
+   }
+
+   private void grow() {
+      capacity *= 2;
+      for (int c = 0; c < names.length; c++) {
+         Object a = data[c];
+         if (a instanceof int[]) data[c] = Arrays.copyOf((int[]) a, capacity);
+         else if (a instanceof long[]) data[c] = Arrays.copyOf((long[]) a, capacity);
+         else if (a instanceof double[]) data[c] = Arrays.copyOf((double[]) a, capacity);
+         else data[c] = Arrays.copyOf((String[]) a, capacity);
+      }
+   }
+
+   public int rowCount() { return rows; }
+   public int columnCount() { return names.length; }
+   public String columnName(int col) { return names[col]; }
+   public Kind columnKind(int col) { return kinds[col]; }
+
+   /**
+    * @return the 0-based index of a column, matched case-insensitively, or -1
+    */
+   public int columnIndex(String name) {
+      for (int c = 0; c < names.length; c++)
+         if (names[c].equalsIgnoreCase(name))
+            return c;
+      return -1;
+   }
+
+   private int require(String name) {
+      int c = columnIndex(name);
+      if (c < 0)
+         throw new IllegalArgumentException("no column " + name + " in " + Arrays.toString(names));
+      return c;
+   }
+
+   public boolean isNull(int row, int col) {
+      check(row);
+      return nulls[col] != null && nulls[col].get(row);
+   }
+
+   public int getInt(int row, int col) {
+      check(row);
+      switch (kinds[col]) {
+         case INT:
+         case DATE:
+            return ((int[]) data[col])[row];
+         case LONG:
+         case TIMESTAMP:
+            return (int) ((long[]) data[col])[row];
+         case DOUBLE:
+            return (int) ((double[]) data[col])[row];
+         default:
+            String s = ((String[]) data[col])[row];
+            return s == null ? 0 : Integer.parseInt(s.trim());
+      }
+   }
+
+   public long getLong(int row, int col) {
+      check(row);
+      switch (kinds[col]) {
+         case INT:
+         case DATE:
+            return ((int[]) data[col])[row];
+         case LONG:
+         case TIMESTAMP:
+            return ((long[]) data[col])[row];
+         case DOUBLE:
+            return (long) ((double[]) data[col])[row];
+         default:
+            String s = ((String[]) data[col])[row];
+            return s == null ? 0 : Long.parseLong(s.trim());
+      }
+   }
+
+   public double getDouble(int row, int col) {
+      check(row);
+      switch (kinds[col]) {
+         case INT:
+         case DATE:
+            return ((int[]) data[col])[row];
+         case LONG:
+         case TIMESTAMP:
+            return ((long[]) data[col])[row];
+         case DOUBLE:
+            return ((double[]) data[col])[row];
+         default:
+            String s = ((String[]) data[col])[row];
+            return s == null ? 0 : Double.parseDouble(s.trim());
+      }
+   }
+
+   /**
+    * @return the date as days since 1970-01-01
+    */
+   public int getEpochDay(int row, int col) {
+      if (kinds[col] != Kind.DATE)
+         throw new IllegalStateException(names[col] + " is not a date column");
+      return getInt(row, col);
+   }
+
+   /**
+    * @return the date, or null for SQL NULL
+    */
+   public LocalDate getDate(int row, int col) {
+      return isNull(row, col) ? null : LocalDate.ofEpochDay(getEpochDay(row, col));
+   }
+
+   /**
+    * @return the timestamp as epoch milliseconds
+    */
+   public long getEpochMillis(int row, int col) {
+      if (kinds[col] != Kind.TIMESTAMP)
+         throw new IllegalStateException(names[col] + " is not a timestamp column");
+      return getLong(row, col);
+   }
+
+   /**
+    * @return the value rendered as text, or null for SQL NULL
+    */
+   public String getString(int row, int col) {
+      if (isNull(row, col))
+         return null;
+      switch (kinds[col]) {
+         case INT: return String.valueOf(((int[]) data[col])[row]);
+         case LONG: return String.valueOf(((long[]) data[col])[row]);
+         case DOUBLE: return String.valueOf(((double[]) data[col])[row]);
+         case DATE: return LocalDate.ofEpochDay(((int[]) data[col])[row]).toString();
+         case TIMESTAMP: return new Timestamp(((long[]) data[col])[row]).toString();
+         default: return ((String[]) data[col])[row];
+      }
+   }
+
+   public int getInt(int row, String col) { return getInt(row, require(col)); }
+   public long getLong(int row, String col) { return getLong(row, require(col)); }
+   public double getDouble(int row, String col) { return getDouble(row, require(col)); }
+   public LocalDate getDate(int row, String col) { return getDate(row, require(col)); }
+   public long getEpochMillis(int row, String col) { return getEpochMillis(row, require(col)); }
+   public boolean isNull(int row, String col) { return isNull(row, require(col)); }
+
+   /**
+    * @return the text value with the blank padding of char(n) columns removed
+    */
+   public String getString(int row, String col) {
+      String s = getString(row, require(col));
+      return s == null ? null : s.trim();
+   }
+
+   /**
+    * @return the first row whose int column equals {@code value}, or -1
+    */
+   public int findInt(int col, int value) {
+      if (kinds[col] != Kind.INT)
+         throw new IllegalStateException(names[col] + " is not an int column");
+      int[] values = (int[]) data[col];
+      BitSet n = nulls[col];
+      for (int r = 0; r < rows; r++)
+         if (values[r] == value && (n == null || !n.get(r)))
+            return r;
+      return -1;
+   }
+
+   /**
+    * Maps every row to a domain object.
+    */
+   public <T> List<T> map(RowMapper<T> mapper) {
+      List<T> result = new ArrayList<T>(rows);
+      for (int r = 0; r < rows; r++)
+         result.add(mapper.map(this, r));
+      return result;
+   }
+
+   private void check(int row) {
+      if (row < 0 || row >= rows)
+         throw new IndexOutOfBoundsException("row " + row + " of " + rows);
+   }
+}
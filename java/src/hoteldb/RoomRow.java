@@ -0,0 +1,28 @@
+package hoteldb;
+
+/**
+ * One row of the Rooms table.
+ */
+public class RoomRow {
+
+   public static final RowMapper<RoomRow> MAPPER = (t, r) -> new RoomRow(
+         t.getInt(r, "hotelID"), t.getInt(r, "roomNumber"),
+         t.getInt(r, "price"), t.getString(r, "imageURL"));
+
+   public final int hotelID;
+   public final int roomNumber;
+   public final int price;
+   public final String imageURL;
+
+   public RoomRow(int hotelID, int roomNumber, int price, String imageURL) {
+      this.hotelID = hotelID;
+      this.roomNumber = roomNumber;
+      this.price = price;
+      this.imageURL = imageURL;
+   }
+
+   @Override
+   public String toString() {
+      return "room " + roomNumber + " of hotel " + hotelID + " at $" + price;
+   }
+}
@@ -0,0 +1,22 @@
+package hoteldb;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Receives the rows of a streamed query one at a time.
+ *
+ * @see Database#executeQueryStreaming(String, int, RowHandler, Object...)
+ */
+public interface RowHandler {
+
+   /**
+    * Called once per row with the result set positioned on that row. The
+    * handler must read what it needs before returning; the row is gone after.
+    *
+    * @param rs result set positioned on the current row
+    * @return true to receive the next row, false to stop and close the cursor
+    * @throws java.sql.SQLException when reading the row failed
+    */
+   boolean onRow(ResultSet rs) throws SQLException;
+}
@@ -0,0 +1,13 @@
+package hoteldb;
+
+/**
+ * Turns one row of a {@link ResultTable} into a domain object.
+ */
+public interface RowMapper<T> {
+
+   /**
+    * @param table the result being mapped
+    * @param row 0-based row index
+    */
+   T map(ResultTable table, int row);
+}
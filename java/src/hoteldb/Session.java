@@ -0,0 +1,94 @@
+package hoteldb;
+
+import java.util.Arrays;
+
+/**
+ * A logged-in user: who they are and what they may do. One per login, so
+ * any number of users can be served by one process.
+ *
+ * A manager's session also holds the IDs of the hotels they manage, loaded
+ * once by {@link HotelOperations#openSession(int, String)} into a primitive
+ * hash set, so checking a manager's right to a hotel is a lookup instead of
+ * a Hotel-Rooms join. {@link HotelOperations} reloads the set after a hotel
+ * changed and once it is older than the reference data TTL.
+ */
+public class Session {
+
+   public final int userID;
+   // trimmed Users.userType, e.g. "customer" or "manager"
+   public final String userType;
+   private volatile long lastUsed;
+   private volatile ManagedHotels managed = ManagedHotels.NONE;
+
+   // hotelIDs and the hotel-change version they were read at
+   static final class ManagedHotels {
+      static final ManagedHotels NONE = new ManagedHotels(new int[0], -1, 0);
+
+      final int[] ids;
+      final IntIntMap set;
+      final long version;
+      final long loadedAt;
+
+      ManagedHotels(int[] ids, long version, long loadedAt) {
+         this.ids = ids;
+         this.set = new IntIntMap(ids.length);
+         for (int i = 0; i < ids.length; i++)
+            set.put(ids[i], i);
+         this.version = version;
+         this.loadedAt = loadedAt;
+      }
+   }
+
+   public Session(int userID, String userType) {
+      this.userID = userID;
+      this.userType = userType == null ? "" : userType.trim();
+      this.lastUsed = System.currentTimeMillis();
+   }
+
+   public boolean isManager() {
+      return userType.equalsIgnoreCase("manager");
+   }
+
+   public boolean isCustomer() {
+      return userType.equalsIgnoreCase("customer");
+   }
+
+   /**
+    * @return true when the user manages {@code hotelID}, as of the last
+    *         load; use {@link HotelOperations#manages(Session, int)} to get
+    *         a current answer
+    */
+   public boolean manages(int hotelID) {
+      return managed.set.containsKey(hotelID);
+   }
+
+   /**
+    * @return the managed hotelIDs in ascending order, as of the last load
+    */
+   public int[] managedHotels() {
+      return managed.ids.clone();
+   }
+
+   void setManagedHotels(int[] ids, long version) {
+      int[] sorted = ids.clone();
+      Arrays.sort(sorted);
+      managed = new ManagedHotels(sorted, version, System.currentTimeMillis());
+   }
+
+   ManagedHotels managed() {
+      return managed;
+   }
+
+   void touch() {
+      lastUsed = System.currentTimeMillis();
+   }
+
+   long lastUsed() {
+      return lastUsed;
+   }
+
+   @Override
+   public String toString() {
+      return userType + " " + userID;
+   }
+}
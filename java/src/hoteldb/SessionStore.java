@@ -0,0 +1,99 @@
+package hoteldb;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sessions by bearer token. Tokens are 128 random bits; a session expires
+ * after {@code ttlMillis} without use. Expired sessions are dropped when
+ * they are looked up and by {@link #sweep()}.
+ */
+public class SessionStore {
+
+   private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<String, Session>();
+   private final SecureRandom random = new SecureRandom();
+   private final long ttlMillis;
+   private final int maxSessions;
+
+   /**
+    * @param ttlMillis idle time after which a session expires
+    * @param maxSessions sessions kept at most; logins beyond it are refused
+    */
+   public SessionStore(long ttlMillis, int maxSessions) {
+      this.ttlMillis = ttlMillis;
+      this.maxSessions = maxSessions;
+   }
+
+   /**
+    * Starts a session.
+    *
+    * @return its token
+    * @throws IllegalStateException when {@code maxSessions} live sessions exist
+    */
+   public String open(Session session) {
+      if (sessions.size() >= maxSessions) {
+         sweep();
+         if (sessions.size() >= maxSessions)
+            throw new IllegalStateException("too many sessions");
+      }
+      byte[] bytes = new byte[16];
+      random.nextBytes(bytes);
+      String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+      sessions.put(token, session);
+      return token;
+   }
+
+   /**
+    * @return the live session of a token, or null when it is unknown or
+    *         expired
+    */
+   public Session get(String token) {
+      if (token == null)
+         return null;
+      Session session = sessions.get(token);
+      if (session == null)
+         return null;
+      if (expired(session, System.currentTimeMillis())) {
+         sessions.remove(token, session);
+         return null;
+      }
+      session.touch();
+      return session;
+   }
+
+   /**
+    * Ends a session; unknown tokens are ignored.
+    */
+   public void close(String token) {
+      if (token != null)
+         sessions.remove(token);
+   }
+
+   /**
+    * Drops every expired session.
+    *
+    * @return how many were dropped
+    */
+   public int sweep() {
+      long now = System.currentTimeMillis();
+      int dropped = 0;
+      for (Iterator<Map.Entry<String, Session>> it = sessions.entrySet().iterator(); it.hasNext();) {
+         if (expired(it.next().getValue(), now)) {
+            it.remove();
+            dropped++;
+         }
+      }
+      return dropped;
+   }
+
+   public int size() {
+      return sessions.size();
+   }
+
+   private boolean expired(Session session, long now) {
+      return now - session.lastUsed() > ttlMillis;
+   }
+}
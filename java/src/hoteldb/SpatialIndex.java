@@ -0,0 +1,383 @@
+package hoteldb;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory uniform grid over hotel coordinates answering "hotels within r"
+ * and "k nearest hotels" without calling calculate_distance for every row of
+ * the Hotel table.
+ *
+ * Coordinates live in parallel primitive arrays indexed by slot; each grid
+ * cell keeps the slots that fall inside it. The distance function is supplied
+ * by the caller (Hotel passes its own calculateDistance) and must never be
+ * smaller than the difference along either axis, which holds for the
+ * euclidean metric the project uses. Reads may run concurrently; updates take
+ * a write lock.
+ */
+public class SpatialIndex {
+
+   /**
+    * Distance between two latitude, longitude pairs.
+    */
+   public interface Metric {
+      double distance(double lat1, double long1, double lat2, double long2);
+   }
+
+   /**
+    * Plain euclidean distance on the coordinates, the same formula as
+    * Hotel.calculateDistance and the calculate_distance() SQL function.
+    */
+   public static final Metric EUCLIDEAN = (lat1, long1, lat2, long2) -> {
+      double t1 = (lat1 - lat2) * (lat1 - lat2);
+      double t2 = (long1 - long2) * (long1 - long2);
+      return Math.sqrt(t1 + t2);
+   };
+
+   /**
+    * One hotel returned by a query, with its distance from the query point.
+    */
+   public static class Hit {
+      public final int hotelID;
+      public final String hotelName;
+      public final double latitude;
+      public final double longitude;
+      public final double distance;
+
+      Hit(int hotelID, String hotelName, double latitude, double longitude, double distance) {
+         this.hotelID = hotelID;
+         this.hotelName = hotelName;
+         this.latitude = latitude;
+         this.longitude = longitude;
+         this.distance = distance;
+      }
+
+      @Override
+      public String toString() {
+         return String.format("%d %s (%.4f)", hotelID, hotelName, distance);
+      }
+   }
+
+   // cell numbers stay within +-2^30
+   private static final int MAX_CELL = 1 << 30;
+
+   private final Metric metric;
+   private final double cellSize;
+   private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+   // slot storage; ids[slot] == -1 marks a free slot
+   private int[] ids = new int[64];
+   private double[] lats = new double[64];
+   private double[] longs = new double[64];
+   private String[] names = new String[64];
+   private int slots = 0;
+   private int[] free = new int[16];
+   private int freeCount = 0;
+
+   private final Map<Integer, Integer> slotOf = new HashMap<Integer, Integer>();
+   private final Map<Long, int[]> cells = new HashMap<Long, int[]>();
+   // bounds of the occupied cells, used to stop ring searches
+   private int minRow = Integer.MAX_VALUE, maxRow = Integer.MIN_VALUE;
+   private int minCol = Integer.MAX_VALUE, maxCol = Integer.MIN_VALUE;
+
+   /**
+    * @param metric distance function used to rank and filter hotels
+    * @param cellSize grid cell edge length; the typical query radius is a
+    *                 good choice
+    */
+   public SpatialIndex(Metric metric, double cellSize) {
+      if (!(cellSize > 0))
+         throw new IllegalArgumentException("cell size must be positive: " + cellSize);
+      this.metric = metric;
+      this.cellSize = cellSize;
+   }
+
+   /**
+    * Replaces the index content with every row of the Hotel table.
+    *
+    * @throws java.sql.SQLException when the Hotel table cannot be read
+    */
+   public void load(Database db) throws SQLException {
+      List<List<String>> rows = db.executeQueryAndReturnResult(
+            "SELECT hotelID, hotelName, latitude, longitude FROM Hotel");
+      lock.writeLock().lock();
+      try {
+         clear();
+         for (List<String> row : rows) {
+            if (row.get(2) == null || row.get(3) == null)
+               continue;
+            insert(Integer.parseInt(row.get(0)), trim(row.get(1)),
+                   Double.parseDouble(row.get(2)), Double.parseDouble(row.get(3)));
+         }
+      } finally {
+         lock.writeLock().unlock();
+      }
+   }
+
+   /**
+    * Re-reads one hotel after it was inserted, moved or deleted so the index
+    * stays in sync with the Hotel table.
+    *
+    * @throws java.sql.SQLException when the hotel cannot be read
+    */
+   public void refresh(Database db, int hotelID) throws SQLException {
+      List<List<String>> rows = db.executeQueryAndReturnResult(
+            "SELECT hotelName, latitude, longitude FROM Hotel WHERE hotelID = ?", hotelID);
+      if (rows.isEmpty() || rows.get(0).get(1) == null || rows.get(0).get(2) == null) {
+         remove(hotelID);
+         return;
+      }
+      List<String> row = rows.get(0);
+      put(hotelID, trim(row.get(0)), Double.parseDouble(row.get(1)), Double.parseDouble(row.get(2)));
+   }
+
+   /**
+    * Adds a hotel or moves an existing one.
+    */
+   public void put(int hotelID, String hotelName, double latitude, double longitude) {
+      if (!Double.isFinite(latitude) || !Double.isFinite(longitude))
+         throw new IllegalArgumentException("coordinates must be finite: " + latitude + ", " + longitude);
+      lock.writeLock().lock();
+      try {
+         removeLocked(hotelID);
+         insert(hotelID, hotelName, latitude, longitude);
+      } finally {
+         lock.writeLock().unlock();
+      }
+   }
+
+   /**
+    * @return true when the hotel was indexed
+    */
+   public boolean remove(int hotelID) {
+      lock.writeLock().lock();
+      try {
+         return removeLocked(hotelID);
+      } finally {
+         lock.writeLock().unlock();
+      }
+   }
+
+   public int size() {
+      lock.readLock().lock();
+      try {
+         return slotOf.size();
+      } finally {
+         lock.readLock().unlock();
+      }
+   }
+
+   /**
+    * @return every hotel whose distance from (latitude, longitude) is at most
+    *         {@code radius}, nearest first
+    */
+   public List<Hit> withinRadius(double latitude, double longitude, double radius) {
+      List<Hit> hits = new ArrayList<Hit>();
+      lock.readLock().lock();
+      try {
+         if (slotOf.isEmpty() || !(radius >= 0) || !Double.isFinite(latitude) || !Double.isFinite(longitude))
+            return hits;
+         int r0 = Math.max(cell(latitude - radius), minRow);
+         int r1 = Math.min(cell(latitude + radius), maxRow);
+         int c0 = Math.max(cell(longitude - radius), minCol);
+         int c1 = Math.min(cell(longitude + radius), maxCol);
+         if (r0 > r1 || c0 > c1)
+            return hits;
+
+         long window = (long) (r1 - r0 + 1) * (c1 - c0 + 1);
+         if (window > cells.size()) {
+            // the box covers more cells than are occupied: walk the occupied ones
+            for (Map.Entry<Long, int[]> e : cells.entrySet()) {
+               int row = (int) (e.getKey() >> 32);
+               int col = (int) (long) e.getKey();
+               if (row >= r0 && row <= r1 && col >= c0 && col <= c1)
+                  collect(e.getValue(), latitude, longitude, radius, hits);
+            }
+         } else {
+            for (int row = r0; row <= r1; row++)
+               for (int col = c0; col <= c1; col++) {
+                  int[] members = cells.get(key(row, col));
+                  if (members != null)
+                     collect(members, latitude, longitude, radius, hits);
+               }
+         }
+      } finally {
+         lock.readLock().unlock();
+      }
+      Collections.sort(hits, (a, b) -> Double.compare(a.distance, b.distance));
+      return hits;
+   }
+
+   /**
+    * @return the {@code k} hotels nearest to (latitude, longitude), nearest
+    *         first; none for a non-finite point
+    */
+   public List<Hit> nearest(double latitude, double longitude, int k) {
+      List<Hit> result = new ArrayList<Hit>();
+      if (k <= 0 || !Double.isFinite(latitude) || !Double.isFinite(longitude))
+         return result;
+      // max-heap on distance holding the best k candidates seen so far
+      PriorityQueue<Hit> best = new PriorityQueue<Hit>(Math.min(k, 64), (a, b) -> Double.compare(b.distance, a.distance));
+      lock.readLock().lock();
+      try {
+         if (slotOf.isEmpty())
+            return result;
+         // rings start from the occupied cell nearest to the point, so a far
+         // away point costs no more than one inside the bounds; every cell
+         // beyond ring r is still at least r * cellSize from the point
+         int qr = Math.min(Math.max(cell(latitude), minRow), maxRow);
+         int qc = Math.min(Math.max(cell(longitude), minCol), maxCol);
+         int maxRing = Math.max(Math.max(qr - minRow, maxRow - qr), Math.max(qc - minCol, maxCol - qc));
+         // sparse grids: past one probe per occupied cell, scanning them is cheaper
+         long probes = 0;
+         boolean scan = false;
+         for (int ring = 0; ring <= maxRing && !scan; ring++) {
+            for (int row = qr - ring; row <= qr + ring && !scan; row++) {
+               boolean edgeRow = row == qr - ring || row == qr + ring;
+               int step = edgeRow ? 1 : 2 * ring;
+               for (int col = qc - ring; col <= qc + ring; col += Math.max(step, 1)) {
+                  if (++probes > cells.size()) {
+                     scan = true;
+                     break;
+                  }
+                  int[] members = cells.get(key(row, col));
+                  if (members != null)
+                     offer(members, latitude, longitude, k, best);
+               }
+            }
+            if (!scan && best.size() == k && best.peek().distance <= ring * cellSize)
+               break;
+         }
+         if (scan) {
+            best.clear();
+            for (int[] members : cells.values())
+               offer(members, latitude, longitude, k, best);
+         }
+      } finally {
+         lock.readLock().unlock();
+      }
+      result.addAll(best);
+      Collections.sort(result, (a, b) -> Double.compare(a.distance, b.distance));
+      return result;
+   }
+
+   // keeps the k nearest of best and the members of one cell
+   private void offer(int[] members, double latitude, double longitude, int k, PriorityQueue<Hit> best) {
+      for (int i = 1; i <= members[0]; i++) {
+         int s = members[i];
+         double d = metric.distance(latitude, longitude, lats[s], longs[s]);
+         if (best.size() < k) {
+            best.add(hit(s, d));
+         } else if (d < best.peek().distance) {
+            best.poll();
+            best.add(hit(s, d));
+         }
+      }
+   }
+
+   private void collect(int[] members, double latitude, double longitude, double radius, List<Hit> hits) {
+      for (int i = 1; i <= members[0]; i++) {
+         int s = members[i];
+         double d = metric.distance(latitude, longitude, lats[s], longs[s]);
+         if (d <= radius)
+            hits.add(hit(s, d));
+      }
+   }
+
+   private Hit hit(int slot, double distance) {
+      return new Hit(ids[slot], names[slot], lats[slot], longs[slot], distance);
+   }
+
+   private void clear() {
+      Arrays.fill(ids, 0, slots, -1);
+      slots = 0;
+      freeCount = 0;
+      slotOf.clear();
+      cells.clear();
+      minRow = minCol = Integer.MAX_VALUE;
+      maxRow = maxCol = Integer.MIN_VALUE;
+   }
+
+   private void insert(int hotelID, String hotelName, double latitude, double longitude) {
+      int s;
+      if (freeCount > 0) {
+         s = free[--freeCount];
+      } else {
+         if (slots == ids.length) {
+            int n = slots * 2;
+            ids = Arrays.copyOf(ids, n);
+            lats = Arrays.copyOf(lats, n);
+            longs = Arrays.copyOf(longs, n);
+            names = Arrays.copyOf(names, n);
+         }
+         s = slots++;
+      }
+      ids[s] = hotelID;
+      lats[s] = latitude;
+      longs[s] = longitude;
+      names[s] = hotelName;
+      slotOf.put(hotelID, s);
+
+      int row = cell(latitude);
+      int col = cell(longitude);
+      long key = key(row, col);
+      // members[0] holds the count, members[1..count] the slots
+      int[] members = cells.get(key);
+      if (members == null) {
+         members = new int[4];
+      } else if (members[0] + 1 == members.length) {
+         members = Arrays.copyOf(members, members.length * 2);
+      }
+      members[++members[0]] = s;
+      cells.put(key, members);
+      minRow = Math.min(minRow, row);
+      maxRow = Math.max(maxRow, row);
+      minCol = Math.min(minCol, col);
+      maxCol = Math.max(maxCol, col);
+   }
+
+   private boolean removeLocked(int hotelID) {
+      Integer slot = slotOf.remove(hotelID);
+      if (slot == null)
+         return false;
+      int s = slot;
+      long key = key(cell(lats[s]), cell(longs[s]));
+      int[] members = cells.get(key);
+      for (int i = 1; i <= members[0]; i++) {
+         if (members[i] == s) {
+            members[i] = members[members[0]--];
+            break;
+         }
+      }
+      if (members[0] == 0)
+         cells.remove(key);
+      // bounds stay conservative after a removal; they only widen ring searches
+      ids[s] = -1;
+      names[s] = null;
+      if (freeCount == free.length)
+         free = Arrays.copyOf(free, freeCount * 2);
+      free[freeCount++] = s;
+      return true;
+   }
+
+   // saturates far out, so ring and window arithmetic cannot overflow
+   private int cell(double coordinate) {
+      double c = Math.floor(coordinate / cellSize);
+      return (int) Math.max(-MAX_CELL, Math.min(MAX_CELL, c));
+   }
+
+   private static long key(int row, int col) {
+      return ((long) row << 32) | (col & 0xffffffffL);
+   }
+
+   private static String trim(String s) {
+      return s == null ? null : s.trim();
+   }
+}
@@ -0,0 +1,95 @@
+package hoteldb;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU cache of prepared statements for one physical connection, keyed by the
+ * SQL template text.
+ *
+ * Keeping the PreparedStatement objects alive is what lets the PostgreSQL
+ * driver promote them to named server-side statements once they have been
+ * executed {@code prepareThreshold} times (a connection property set by
+ * {@link ConnectionPool}), after which Postgres skips parsing and planning.
+ * Not thread safe; a connection is only ever used by the thread that
+ * borrowed it. The counters are volatile so that {@link ConnectionPool#stats}
+ * can read them from another thread.
+ */
+public class StatementCache {
+
+   private final Connection connection;
+   private final int maxSize;
+   private final LinkedHashMap<String, PreparedStatement> statements;
+   // written only by the thread holding the connection
+   private volatile long hits = 0;
+   private volatile long misses = 0;
+   private volatile long evictions = 0;
+
+   public StatementCache(Connection connection, int maxSize) {
+      if (maxSize < 1)
+         throw new IllegalArgumentException("statement cache size must be positive: " + maxSize);
+      this.connection = connection;
+      this.maxSize = maxSize;
+      this.statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+         @Override
+         protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+            if (size() <= StatementCache.this.maxSize)
+               return false;
+            evictions++;
+            closeQuietly(eldest.getValue());
+            return true;
+         }
+      };
+   }
+
+   /**
+    * @param sql SQL template with {@code ?} placeholders
+    * @return the cached statement for this template, prepared on first use
+    * @throws java.sql.SQLException when the statement cannot be prepared
+    */
+   public PreparedStatement prepare(String sql) throws SQLException {
+      PreparedStatement ps = statements.get(sql);
+      if (ps != null) {
+         hits++;
+         return ps;
+      }
+      misses++;
+      ps = connection.prepareStatement(sql);
+      statements.put(sql, ps);
+      return ps;
+   }
+
+   /**
+    * Drops a statement that failed in a way that may have left it unusable.
+    */
+   public void invalidate(String sql) {
+      closeQuietly(statements.remove(sql));
+   }
+
+   public int size() { return statements.size(); }
+   public long hits() { return hits; }
+   public long misses() { return misses; }
+   public long evictions() { return evictions; }
+
+   /**
+    * Closes every cached statement.
+    */
+   public void clear() {
+      for (PreparedStatement ps : statements.values())
+         closeQuietly(ps);
+      statements.clear();
+   }
+
+   private static void closeQuietly(PreparedStatement ps) {
+      if (ps == null)
+         return;
+      try {
+         ps.close();
+      } catch (SQLException e) {
+         // ignored.
+      }
+   }
+}
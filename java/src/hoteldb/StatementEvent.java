@@ -0,0 +1,39 @@
+package hoteldb;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event for one call of a {@link Database} helper, connection wait
+ * included. Enable it with e.g.
+ * {@code -XX:StartFlightRecording:settings=profile} or
+ * {@code jcmd <pid> JFR.start}; it costs nothing while disabled.
+ */
+@Name("hoteldb.Statement")
+@Label("SQL Statement")
+@Category({"Hotel", "JDBC"})
+@Description("A statement run through a Database helper")
+@StackTrace(false)
+public class StatementEvent extends Event {
+
+   @Label("Operation")
+   public String operation;
+
+   @Label("SQL")
+   public String sql;
+
+   @Label("Rows")
+   public long rows;
+
+   @Label("Bytes")
+   @DataAmount
+   public long bytes;
+
+   @Label("Failed")
+   public boolean failed;
+}
@@ -0,0 +1,235 @@
+package hoteldb;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Statements that commit together, on one connection borrowed for the
+ * duration: get one from {@link Database#begin()} in a try-with-resources
+ * block and {@link #commit()} at the end; closing it uncommitted rolls
+ * everything back.
+ *
+ * Statements whose results are not needed go through {@link #add}: they are
+ * held until the next statement that returns something, or the commit, and
+ * then sent as JDBC batches, one round trip per run of the same template.
+ * Generated keys come back from {@code INSERT ... RETURNING} through
+ * {@link #queryForInt}, on the connection that made them, so they are right
+ * however many sessions insert at once.
+ *
+ * Every statement is timed into the Database's {@link QueryMetrics}. Not
+ * thread safe.
+ */
+public final class UnitOfWork implements AutoCloseable {
+
+   /**
+    * The body of {@link Database#inTransaction}.
+    */
+   public interface Work<T> {
+      T run(UnitOfWork work) throws SQLException;
+   }
+
+   private final ConnectionPool pool;
+   private final QueryMetrics metrics;
+   private Connection conn;
+   // statements added but not sent yet: template, then its parameters
+   private final List<String> pendingSql = new ArrayList<String>();
+   private final List<Object[]> pendingParams = new ArrayList<Object[]>();
+
+   UnitOfWork(ConnectionPool pool, QueryMetrics metrics) throws SQLException {
+      this.pool = pool;
+      this.metrics = metrics;
+      Connection c = pool.borrow();
+      try {
+         c.setAutoCommit(false);
+      } catch (SQLException e) {
+         pool.release(c);
+         throw e;
+      }
+      this.conn = c;
+   }
+
+   /**
+    * Queues a statement whose row count is not needed; it runs before the
+    * next statement that returns something, or at the commit.
+    */
+   public void add(String sql, Object... params) {
+      open();
+      pendingSql.add(sql);
+      pendingParams.add(params);
+   }
+
+   /**
+    * Runs an INSERT, UPDATE or DELETE now.
+    *
+    * @return the number of rows affected
+    * @throws java.sql.SQLException when the statement failed
+    */
+   public int update(String sql, Object... params) throws SQLException {
+      flush();
+      QueryMetrics.Probe probe = metrics.begin(QueryMetrics.Op.UPDATE, sql);
+      try {
+         PreparedStatement ps = prepare(sql, params);
+         try {
+            return probe.rows(ps.executeUpdate());
+         } catch (SQLException e) {
+            pool.invalidate(conn, sql);
+            throw e;
+         }
+      } catch (SQLException e) {
+         throw probe.failed(e);
+      } finally {
+         probe.end();
+      }
+   }
+
+   /**
+    * Runs a statement that returns a single integer, typically
+    * {@code INSERT ... RETURNING id}.
+    *
+    * @return the first column of the first row, or -1 when there is no row
+    * @throws java.sql.SQLException when the statement failed
+    */
+   public int queryForInt(String sql, Object... params) throws SQLException {
+      flush();
+      QueryMetrics.Probe probe = metrics.begin(QueryMetrics.Op.INT, sql);
+      try {
+         ResultSet rs = executeQuery(sql, params);
+         try {
+            if (rs.next()) {
+               probe.row();
+               return rs.getInt(1);
+            }
+            return -1;
+         } finally {
+            rs.close();
+         }
+      } catch (SQLException e) {
+         throw probe.failed(e);
+      } finally {
+         probe.end();
+      }
+   }
+
+   /**
+    * Runs a query, or a statement with a RETURNING clause.
+    *
+    * @return the rows, every value as a string
+    * @throws java.sql.SQLException when the statement failed
+    */
+   public List<List<String>> query(String sql, Object... params) throws SQLException {
+      flush();
+      QueryMetrics.Probe probe = metrics.begin(QueryMetrics.Op.RESULT, sql);
+      try {
+         ResultSet rs = executeQuery(sql, params);
+         try {
+            return Database.readResult(rs, probe);
+         } finally {
+            rs.close();
+         }
+      } catch (SQLException e) {
+         throw probe.failed(e);
+      } finally {
+         probe.end();
+      }
+   }
+
+   /**
+    * Sends the queued statements and commits. The connection goes back to
+    * the pool; the unit of work cannot be used afterwards.
+    *
+    * @throws java.sql.SQLException when a queued statement or the commit
+    *         failed; nothing is committed then
+    */
+   public void commit() throws SQLException {
+      flush();
+      QueryMetrics.Probe probe = metrics.begin(QueryMetrics.Op.COMMIT, "COMMIT");
+      try {
+         conn.commit();
+      } catch (SQLException e) {
+         throw probe.failed(e);
+      } finally {
+         probe.end();
+         close();
+      }
+   }
+
+   /**
+    * Rolls back unless committed and returns the connection.
+    */
+   @Override
+   public void close() {
+      if (conn == null)
+         return;
+      pendingSql.clear();
+      pendingParams.clear();
+      // release() rolls back an open transaction and restores auto-commit
+      pool.release(conn);
+      conn = null;
+   }
+
+   // sends the queued statements, a batch per run of one template
+   private void flush() throws SQLException {
+      open();
+      int i = 0;
+      try {
+         while (i < pendingSql.size()) {
+            String sql = pendingSql.get(i);
+            int end = i;
+            while (end < pendingSql.size() && pendingSql.get(end).equals(sql))
+               end++;
+            QueryMetrics.Probe probe = metrics.begin(QueryMetrics.Op.BATCH, sql);
+            try {
+               PreparedStatement ps = pool.prepare(conn, sql);
+               try {
+                  for (int j = i; j < end; j++) {
+                     Database.bind(ps, pendingParams.get(j));
+                     ps.addBatch();
+                  }
+                  int rows = 0;
+                  for (int n : ps.executeBatch())
+                     rows += Math.max(n, 0);
+                  probe.rows(rows);
+               } catch (SQLException e) {
+                  ps.clearBatch();
+                  pool.invalidate(conn, sql);
+                  throw e;
+               }
+            } catch (SQLException e) {
+               throw probe.failed(e);
+            } finally {
+               probe.end();
+            }
+            i = end;
+         }
+      } finally {
+         pendingSql.clear();
+         pendingParams.clear();
+      }
+   }
+
+   private PreparedStatement prepare(String sql, Object... params) throws SQLException {
+      PreparedStatement ps = pool.prepare(conn, sql);
+      Database.bind(ps, params);
+      return ps;
+   }
+
+   // a statement that failed is not reused, as in Database
+   private ResultSet executeQuery(String sql, Object... params) throws SQLException {
+      PreparedStatement ps = prepare(sql, params);
+      try {
+         return ps.executeQuery();
+      } catch (SQLException e) {
+         pool.invalidate(conn, sql);
+         throw e;
+      }
+   }
+
+   private void open() {
+      if (conn == null)
+         throw new IllegalStateException("unit of work is committed or closed");
+   }
+}
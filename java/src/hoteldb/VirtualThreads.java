@@ -0,0 +1,57 @@
+package hoteldb;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One thread per task: virtual threads when the JVM has them (Java 21+),
+ * otherwise daemon platform threads from a cached pool.
+ *
+ * The build targets Java 17, so the Java 21 factory is looked up by
+ * reflection; run on 21 to get thousands of cheap blocking tasks, e.g. one
+ * per simulated user or per HTTP request.
+ */
+public final class VirtualThreads {
+
+   private static final Method NEW_EXECUTOR = find();
+
+   private VirtualThreads() {
+   }
+
+   private static Method find() {
+      try {
+         return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      } catch (NoSuchMethodException e) {
+         return null;
+      }
+   }
+
+   /**
+    * @return true when tasks run on virtual threads
+    */
+   public static boolean available() {
+      return NEW_EXECUTOR != null;
+   }
+
+   /**
+    * @param name prefix of the platform thread names used as a fallback
+    * @return an executor that starts a new thread for every task
+    */
+   public static ExecutorService newPerTaskExecutor(final String name) {
+      if (NEW_EXECUTOR != null) {
+         try {
+            return (ExecutorService) NEW_EXECUTOR.invoke(null);
+         } catch (Exception e) {
+            // fall through to platform threads
+         }
+      }
+      final AtomicInteger n = new AtomicInteger();
+      return Executors.newCachedThreadPool(r -> {
+         Thread t = new Thread(r, name + "-" + n.incrementAndGet());
+         t.setDaemon(true);
+         return t;
+      });
+   }
+}
@@ -0,0 +1,650 @@
+package hoteldb;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Headless load driver: simulated customers and managers running the menu
+ * operations through {@link HotelOperations}, with no console in the way.
+ *
+ * Closed mode (the default) runs {@code --users} sessions, each on its own
+ * thread, doing one operation after another with an exponentially
+ * distributed think time in between. Open mode ({@code --rate}) starts
+ * operations as a Poisson process at a fixed rate whether or not earlier
+ * ones finished, and measures each latency from the moment the operation
+ * was due, so a stalled server shows up as latency instead of a slower
+ * arrival rate; arrivals beyond {@code --max-inflight} are dropped and
+ * counted. Sessions and operations run one per virtual thread on Java 21
+ * and on daemon platform threads before that.
+ *
+ * The operation mix is a list of weights. Hotels are picked with a Zipf
+ * skew so a few are hot, searches are centred near a hotel, and bookings and
+ * repairs go into a far-future window that is deleted afterwards. Room
+ * updates write back each room's current price, so the data does not drift.
+ * Nothing is recorded during the warm-up. The report has throughput,
+ * p50/p99/p99.9/max latency and error counts per operation.
+ *
+ * Usage: java hoteldb.WorkloadSimulator &lt;dbname&gt; &lt;port&gt; &lt;user&gt;
+ *        [--users N] [--manager-share F] [--think-ms MS] [--rate OPS_PER_S]
+ *        [--max-inflight N] [--mix op=weight,...] [--warmup S] [--duration S]
+ *        [--skew S] [--radius R] [--pool N] [--seed N] [--no-indexes]
+ *        [--keep] [--json FILE]
+ */
+public class WorkloadSimulator {
+
+   // far enough out that the window never overlaps real bookings or repairs
+   static final LocalDate WINDOW_START = LocalDate.of(2300, 1, 1);
+   static final int WINDOW_DAYS = 365;
+
+   /**
+    * The simulated operations and who performs them.
+    */
+   public enum Op {
+      SEARCH_HOTELS("search", false, 30),
+      VIEW_ROOMS("rooms", false, 30),
+      BOOK("book", false, 15),
+      BOOKING_HISTORY("history", false, 10),
+      UPDATE_ROOM("update", true, 6),
+      RECENT_UPDATES("updates", true, 4),
+      PLACE_REPAIR("repair", true, 2),
+      REPAIR_HISTORY("repairs", true, 3);
+
+      public final String label;
+      public final boolean manager;
+      final int defaultWeight;
+
+      Op(String label, boolean manager, int defaultWeight) {
+         this.label = label;
+         this.manager = manager;
+         this.defaultWeight = defaultWeight;
+      }
+
+      static Op parse(String name) {
+         for (Op op : values())
+            if (op.label.equalsIgnoreCase(name) || op.name().equalsIgnoreCase(name))
+               return op;
+         throw new IllegalArgumentException("unknown operation: " + name);
+      }
+   }
+
+   /**
+    * Operation weights; an operation with weight 0 never runs.
+    */
+   public static class Mix {
+      private final EnumMap<Op, Integer> weights = new EnumMap<Op, Integer>(Op.class);
+
+      public static Mix defaults() {
+         Mix mix = new Mix();
+         for (Op op : Op.values())
+            mix.weights.put(op, op.defaultWeight);
+         return mix;
+      }
+
+      /**
+       * @param spec e.g. "search=50,book=20,update=5"; operations not listed
+       *             get weight 0
+       */
+      public static Mix parse(String spec) {
+         Mix mix = new Mix();
+         for (Op op : Op.values())
+            mix.weights.put(op, 0);
+         for (String part : spec.split(",")) {
+            String[] kv = part.trim().split("=");
+            if (kv.length != 2)
+               throw new IllegalArgumentException("expected op=weight, got: " + part);
+            mix.weights.put(Op.parse(kv[0].trim()), Integer.parseInt(kv[1].trim()));
+         }
+         return mix;
+      }
+
+      public int weight(Op op) {
+         return weights.get(op);
+      }
+
+      int total(Boolean manager) {
+         int total = 0;
+         for (Op op : Op.values())
+            if (manager == null || op.manager == manager)
+               total += weights.get(op);
+         return total;
+      }
+
+      /**
+       * @param manager the role to pick for, or null for any operation
+       * @return an operation drawn by weight, or null when the role has none
+       */
+      Op pick(SplittableRandom rnd, Boolean manager) {
+         int total = total(manager);
+         if (total <= 0)
+            return null;
+         int x = rnd.nextInt(total);
+         for (Op op : Op.values()) {
+            if (manager != null && op.manager != manager)
+               continue;
+            x -= weights.get(op);
+            if (x < 0)
+               return op;
+         }
+         return null;
+      }
+
+      @Override
+      public String toString() {
+         StringBuilder sb = new StringBuilder();
+         for (Op op : Op.values()) {
+            if (weights.get(op) == 0)
+               continue;
+            if (sb.length() > 0)
+               sb.append(',');
+            sb.append(op.label).append('=').append(weights.get(op));
+         }
+         return sb.toString();
+      }
+   }
+
+   /**
+    * Keys the simulated users pick from, read once from the database.
+    */
+   static class Keys {
+      int[] hotels = new int[0];
+      double[] latitude = new double[0];
+      double[] longitude = new double[0];
+      int[][] rooms = new int[0][];        // per hotel index, sorted room numbers
+      int[][] prices = new int[0][];       // per hotel index, parallel to rooms
+      int[] customers = new int[0];
+      int[] managers = new int[0];
+      int[][] managed = new int[0][];      // per manager index, hotel indexes with rooms
+      int[] companies = new int[0];
+
+      static Keys load(Database db) throws Exception {
+         Keys k = new Keys();
+         ResultTable hotels = db.executeQueryAndReturnTable(
+               "SELECT hotelID, latitude, longitude, managerUserID FROM Hotel ORDER BY hotelID");
+         int n = hotels.rowCount();
+         k.hotels = new int[n];
+         k.latitude = new double[n];
+         k.longitude = new double[n];
+         for (int i = 0; i < n; i++) {
+            k.hotels[i] = hotels.getInt(i, 0);
+            k.latitude[i] = hotels.getDouble(i, 1);
+            k.longitude[i] = hotels.getDouble(i, 2);
+         }
+
+         final Map<Integer, List<int[]>> byHotel = new HashMap<Integer, List<int[]>>(n * 2);
+         db.executeQueryStreaming("SELECT hotelID, roomNumber, price FROM Rooms ORDER BY hotelID, roomNumber", rs -> {
+            List<int[]> list = byHotel.get(rs.getInt(1));
+            if (list == null)
+               byHotel.put(rs.getInt(1), list = new ArrayList<int[]>());
+            list.add(new int[] {rs.getInt(2), rs.getInt(3)});
+            return true;
+         });
+         k.rooms = new int[n][];
+         k.prices = new int[n][];
+         for (int i = 0; i < n; i++) {
+            List<int[]> list = byHotel.get(k.hotels[i]);
+            int size = list == null ? 0 : list.size();
+            k.rooms[i] = new int[size];
+            k.prices[i] = new int[size];
+            for (int j = 0; j < size; j++) {
+               k.rooms[i][j] = list.get(j)[0];
+               k.prices[i][j] = list.get(j)[1];
+            }
+         }
+
+         Map<Integer, List<Integer>> byManager = new HashMap<Integer, List<Integer>>();
+         for (int i = 0; i < n; i++) {
+            if (k.rooms[i].length == 0)
+               continue;
+            int manager = hotels.getInt(i, 3);
+            List<Integer> list = byManager.get(manager);
+            if (list == null)
+               byManager.put(manager, list = new ArrayList<Integer>());
+            list.add(i);
+         }
+         k.managers = new int[byManager.size()];
+         k.managed = new int[byManager.size()][];
+         int m = 0;
+         for (Map.Entry<Integer, List<Integer>> e : byManager.entrySet()) {
+            k.managers[m] = e.getKey();
+            k.managed[m] = new int[e.getValue().size()];
+            for (int j = 0; j < k.managed[m].length; j++)
+               k.managed[m][j] = e.getValue().get(j);
+            m++;
+         }
+
+         k.customers = ints(db.executeQueryAndReturnTable(
+               "SELECT userID FROM Users WHERE trim(userType) = 'customer' ORDER BY userID"));
+         k.companies = ints(db.executeQueryAndReturnTable(
+               "SELECT companyID FROM MaintenanceCompany ORDER BY companyID"));
+         return k;
+      }
+
+      private static int[] ints(ResultTable table) {
+         int[] values = new int[table.rowCount()];
+         for (int i = 0; i < values.length; i++)
+            values[i] = table.getInt(i, 0);
+         return values;
+      }
+   }
+
+   /**
+    * Counters of one operation.
+    */
+   public static class OpStats {
+      public final LatencyHistogram latency = new LatencyHistogram();
+      public final LongAdder errors = new LongAdder();
+      volatile String lastError = null;
+   }
+
+   private final HotelOperations ops;
+   private final Keys keys;
+   private final Mix mix;
+   private final ZipfSampler hotelPicker;
+   private final double radius;
+   private final EnumMap<Op, OpStats> stats = new EnumMap<Op, OpStats>(Op.class);
+   private final LongAdder dropped = new LongAdder();
+   private volatile long measureFrom = Long.MAX_VALUE;
+
+   WorkloadSimulator(HotelOperations ops, Keys keys, Mix mix, double skew, double radius) {
+      if (keys.hotels.length == 0)
+         throw new IllegalStateException("no hotels to simulate against");
+      this.ops = ops;
+      this.keys = keys;
+      this.mix = mix;
+      this.hotelPicker = new ZipfSampler(keys.hotels.length, skew);
+      this.radius = radius;
+      for (Op op : Op.values())
+         stats.put(op, new OpStats());
+   }
+
+   public OpStats stats(Op op) {
+      return stats.get(op);
+   }
+
+   /**
+    * One simulated user: a customer or a manager.
+    */
+   private final class Session {
+      final boolean manager;
+      final int userID;
+      final int[] hotels;                  // managed hotel indexes, managers only
+      final SplittableRandom rnd;
+
+      Session(boolean manager, int who, SplittableRandom rnd) {
+         this.manager = manager;
+         this.userID = manager ? keys.managers[who] : keys.customers[who];
+         this.hotels = manager ? keys.managed[who] : null;
+         this.rnd = rnd;
+      }
+
+      // a hotel index with at least one room, popular ones first
+      int hotel() {
+         if (manager)
+            return hotels[rnd.nextInt(hotels.length)];
+         for (int tries = 0; tries < 8; tries++) {
+            int h = hotelPicker.sampleScrambled(rnd) - 1;
+            if (keys.rooms[h].length > 0)
+               return h;
+         }
+         return -1;
+      }
+
+      LocalDate windowDate() {
+         return WINDOW_START.plusDays(rnd.nextInt(WINDOW_DAYS));
+      }
+
+      void run(Op op) throws Exception {
+         switch (op) {
+            case SEARCH_HOTELS: {
+               int h = hotelPicker.sampleScrambled(rnd) - 1;
+               double lat = keys.latitude[h] + (rnd.nextDouble() - 0.5) * radius;
+               double longi = keys.longitude[h] + (rnd.nextDouble() - 0.5) * radius;
+               ops.hotelsWithin(lat, longi, radius);
+               break;
+            }
+            case VIEW_ROOMS: {
+               int h = hotel();
+               if (h >= 0)
+                  ops.freeRooms(keys.hotels[h], windowDate());
+               break;
+            }
+            case BOOK: {
+               int h = hotel();
+               if (h < 0)
+                  break;
+               int room = keys.rooms[h][rnd.nextInt(keys.rooms[h].length)];
+               LocalDate from = windowDate();
+               int nights = 1 + rnd.nextInt(3);
+               List<BookingRequest> stay = new ArrayList<BookingRequest>(nights);
+               for (int i = 0; i < nights; i++)
+                  stay.add(new BookingRequest(keys.hotels[h], room, from.plusDays(i)));
+               ops.book(userID, stay);
+               break;
+            }
+            case BOOKING_HISTORY:
+               ops.customerBookings(userID, rs -> true);
+               break;
+            case UPDATE_ROOM: {
+               int h = hotel();
+               int j = rnd.nextInt(keys.rooms[h].length);
+               ops.updateRoomPrice(userID, keys.hotels[h], keys.rooms[h][j], keys.prices[h][j]);
+               break;
+            }
+            case RECENT_UPDATES:
+               ops.recentUpdates(userID);
+               break;
+            case PLACE_REPAIR: {
+               if (keys.companies.length == 0)
+                  break;
+               int h = hotel();
+               int room = keys.rooms[h][rnd.nextInt(keys.rooms[h].length)];
+               ops.placeRepairRequest(userID, keys.companies[rnd.nextInt(keys.companies.length)],
+                     keys.hotels[h], room, windowDate());
+               break;
+            }
+            case REPAIR_HISTORY:
+               ops.repairHistory(userID, rs -> true);
+               break;
+         }
+      }
+   }
+
+   private Session newSession(boolean manager, SplittableRandom rnd) {
+      int n = manager ? keys.managers.length : keys.customers.length;
+      return new Session(manager, rnd.nextInt(n), rnd);
+   }
+
+   // runs one operation and records it when it was due after the warm-up
+   private void execute(Session session, Op op, long dueNanos) {
+      OpStats s = stats.get(op);
+      boolean failed = false;
+      try {
+         session.run(op);
+      } catch (Exception e) {
+         failed = true;
+         s.lastError = e.toString();
+      }
+      if (dueNanos < measureFrom)
+         return;
+      if (failed)
+         s.errors.increment();
+      else
+         s.latency.record(System.nanoTime() - dueNanos);
+   }
+
+   /**
+    * Closed mode: {@code users} sessions, each waiting for its operation to
+    * finish and thinking before the next one.
+    */
+   public void runClosed(int users, double managerShare, double thinkMillis, long seed,
+         double warmupSeconds, double seconds) throws InterruptedException {
+      long start = System.nanoTime();
+      measureFrom = start + (long) (warmupSeconds * 1e9);
+      final long deadline = measureFrom + (long) (seconds * 1e9);
+      final double thinkNanos = thinkMillis * 1e6;
+      SplittableRandom master = new SplittableRandom(seed);
+      ExecutorService executor = VirtualThreads.newPerTaskExecutor("user");
+      try {
+         for (int u = 0; u < users; u++) {
+            final SplittableRandom rnd = master.split();
+            final boolean manager = keys.managers.length > 0 && mix.total(true) > 0
+                  && (keys.customers.length == 0 || mix.total(false) == 0 || rnd.nextDouble() < managerShare);
+            if (!manager && (keys.customers.length == 0 || mix.total(false) == 0))
+               continue;
+            executor.execute(() -> {
+               Session session = newSession(manager, rnd);
+               // spread the first operations over one think time
+               pause((long) (rnd.nextDouble() * thinkNanos), deadline);
+               while (System.nanoTime() < deadline) {
+                  Op op = mix.pick(rnd, manager);
+                  execute(session, op, System.nanoTime());
+                  pause((long) exponential(rnd, thinkNanos), deadline);
+               }
+            });
+         }
+      } finally {
+         executor.shutdown();
+         executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+      }
+   }
+
+   /**
+    * Open mode: operations arrive at {@code rate} per second regardless of
+    * how long earlier ones take; each is run by a random user of its role.
+    */
+   public void runOpen(double rate, int maxInflight, long seed, double warmupSeconds, double seconds)
+         throws InterruptedException {
+      long start = System.nanoTime();
+      measureFrom = start + (long) (warmupSeconds * 1e9);
+      long deadline = measureFrom + (long) (seconds * 1e9);
+      double gapNanos = 1e9 / rate;
+      final AtomicInteger inflight = new AtomicInteger();
+      SplittableRandom rnd = new SplittableRandom(seed);
+      ExecutorService executor = VirtualThreads.newPerTaskExecutor("op");
+      try {
+         long due = start;
+         while (true) {
+            due += (long) exponential(rnd, gapNanos);
+            if (due >= deadline)
+               break;
+            long wait = due - System.nanoTime();
+            if (wait > 0)
+               LockSupport.parkNanos(wait);
+            Op op = mix.pick(rnd, null);
+            if ((op.manager ? keys.managers.length : keys.customers.length) == 0)
+               continue;
+            if (inflight.get() >= maxInflight) {
+               if (due >= measureFrom)
+                  dropped.increment();
+               continue;
+            }
+            inflight.incrementAndGet();
+            final Session session = newSession(op.manager, rnd.split());
+            final Op chosen = op;
+            final long dueNanos = due;
+            executor.execute(() -> {
+               try {
+                  execute(session, chosen, dueNanos);
+               } finally {
+                  inflight.decrementAndGet();
+               }
+            });
+         }
+      } finally {
+         executor.shutdown();
+         executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+      }
+   }
+
+   private static double exponential(SplittableRandom rnd, double mean) {
+      return mean <= 0 ? 0 : -mean * Math.log(1 - rnd.nextDouble());
+   }
+
+   private static void pause(long nanos, long deadline) {
+      long until = Math.min(System.nanoTime() + nanos, deadline);
+      long left;
+      while ((left = until - System.nanoTime()) > 0)
+         LockSupport.parkNanos(left);
+   }
+
+   /**
+    * Writes the per-operation table.
+    */
+   public void report(PrintWriter out, double seconds) {
+      out.printf("%-9s %9s %9s %9s %9s %9s %9s %7s%n",
+            "op", "count", "ops/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms", "errors");
+      long total = 0;
+      long errors = 0;
+      for (Op op : Op.values()) {
+         OpStats s = stats.get(op);
+         LatencyHistogram.Snapshot snap = s.latency.snapshot();
+         if (snap.count() == 0 && s.errors.sum() == 0)
+            continue;
+         out.printf("%-9s %9d %9.1f %9.3f %9.3f %9.3f %9.3f %7d%n", op.label, snap.count(), snap.count() / seconds,
+               snap.percentile(0.50) / 1e6, snap.percentile(0.99) / 1e6, snap.percentile(0.999) / 1e6,
+               s.latency.maxNanos() / 1e6, s.errors.sum());
+         total += snap.count();
+         errors += s.errors.sum();
+      }
+      out.printf("%-9s %9d %9.1f %49s %7d%n", "total", total, total / seconds, "", errors);
+      if (dropped.sum() > 0)
+         out.printf("dropped %d arrivals over --max-inflight%n", dropped.sum());
+      for (Op op : Op.values())
+         if (stats.get(op).lastError != null)
+            out.printf("last %s error: %s%n", op.label, stats.get(op).lastError);
+      out.flush();
+   }
+
+   /**
+    * Writes the same numbers as one JSON object.
+    */
+   public void reportJson(PrintWriter out, double seconds, String mode) {
+      out.printf("{\"mode\":\"%s\",\"seconds\":%.3f,\"mix\":\"%s\",\"dropped\":%d,\"ops\":{",
+            mode, seconds, mix, dropped.sum());
+      boolean first = true;
+      for (Op op : Op.values()) {
+         OpStats s = stats.get(op);
+         LatencyHistogram.Snapshot snap = s.latency.snapshot();
+         if (!first)
+            out.print(',');
+         first = false;
+         out.printf("\"%s\":{\"count\":%d,\"opsPerSecond\":%.3f,\"p50Ms\":%.3f,\"p99Ms\":%.3f,\"p999Ms\":%.3f,"
+               + "\"maxMs\":%.3f,\"errors\":%d}", op.label, snap.count(), snap.count() / seconds,
+               snap.percentile(0.50) / 1e6, snap.percentile(0.99) / 1e6, snap.percentile(0.999) / 1e6,
+               s.latency.maxNanos() / 1e6, s.errors.sum());
+      }
+      out.println("}}");
+      out.flush();
+   }
+
+   /**
+    * Deletes the bookings, repairs and update log rows the run wrote.
+    */
+   static void cleanup(Database db, Timestamp since) throws Exception {
+      java.sql.Date window = java.sql.Date.valueOf(WINDOW_START);
+      db.executeUpdate("DELETE FROM RoomBookings WHERE bookingDate >= ?", window);
+      db.executeUpdate("DELETE FROM RoomRepairRequests WHERE repairID IN "
+            + "(SELECT repairID FROM RoomRepairs WHERE repairDate >= ?)", window);
+      db.executeUpdate("DELETE FROM RoomRepairs WHERE repairDate >= ?", window);
+      db.executeUpdate("DELETE FROM RoomUpdatesLog WHERE updatedOn >= ?", since);
+   }
+
+   public static void main(String[] args) throws Exception {
+      if (args.length < 3) {
+         System.err.println("Usage: java hoteldb.WorkloadSimulator <dbname> <port> <user> "
+               + "[--users N] [--manager-share F] [--think-ms MS] [--rate OPS_PER_S] [--max-inflight N] "
+               + "[--mix op=weight,...] [--warmup S] [--duration S] [--skew S] [--radius R] [--pool N] "
+               + "[--seed N] [--no-indexes] [--keep] [--json FILE]");
+         System.err.print("Operations:");
+         for (Op op : Op.values())
+            System.err.print(" " + op.label);
+         System.err.println();
+         System.exit(1);
+      }
+      int users = 1000;
+      double managerShare = 0.1;
+      double thinkMillis = 100;
+      double rate = 0;
+      int maxInflight = 10000;
+      Mix mix = Mix.defaults();
+      double warmup = 10;
+      double duration = 60;
+      double skew = 1.0;
+      double radius = 30;
+      int poolSize = 32;
+      long seed = 1;
+      boolean indexes = true;
+      boolean keep = false;
+      String json = null;
+      for (int i = 3; i < args.length; i++) {
+         switch (args[i]) {
+            case "--users": users = Integer.parseInt(args[++i]); break;
+            case "--manager-share": managerShare = Double.parseDouble(args[++i]); break;
+            case "--think-ms": thinkMillis = Double.parseDouble(args[++i]); break;
+            case "--rate": rate = Double.parseDouble(args[++i]); break;
+            case "--max-inflight": maxInflight = Integer.parseInt(args[++i]); break;
+            case "--mix": mix = Mix.parse(args[++i]); break;
+            case "--warmup": warmup = Double.parseDouble(args[++i]); break;
+            case "--duration": duration = Double.parseDouble(args[++i]); break;
+            case "--skew": skew = Double.parseDouble(args[++i]); break;
+            case "--radius": radius = Double.parseDouble(args[++i]); break;
+            case "--pool": poolSize = Integer.parseInt(args[++i]); break;
+            case "--seed": seed = Long.parseLong(args[++i]); break;
+            case "--no-indexes": indexes = false; break;
+            case "--keep": keep = true; break;
+            case "--json": json = args[++i]; break;
+            default: throw new IllegalArgumentException("unknown option: " + args[i]);
+         }
+      }
+
+      String url = "jdbc:postgresql://localhost:" + args[1] + "/" + args[0];
+      ConnectionPool pool = new ConnectionPool(url, args[2], "", 1, poolSize);
+      try {
+         Database db = new Database(pool);
+         HotelOperations ops = new HotelOperations(db);
+         if (indexes) {
+            SpatialIndex hotelIndex = new SpatialIndex(SpatialIndex.EUCLIDEAN, radius);
+            hotelIndex.load(db);
+            ops.setHotelIndex(hotelIndex);
+            AvailabilityIndex availability = new AvailabilityIndex();
+            availability.load(db);
+            ops.setAvailability(availability);
+            RegularCustomers regulars = new RegularCustomers();
+            regulars.load(db);
+            ops.setRegularCustomers(regulars);
+            RecentUpdates updates = new RecentUpdates();
+            updates.load(db);
+            ops.setRecentUpdates(updates);
+         }
+         Keys keys = Keys.load(db);
+         System.out.printf("%d hotels, %d customers, %d managers, %d companies; mix %s; %s threads%n",
+               keys.hotels.length, keys.customers.length, keys.managers.length, keys.companies.length, mix,
+               VirtualThreads.available() ? "virtual" : "platform");
+
+         WorkloadSimulator sim = new WorkloadSimulator(ops, keys, mix, skew, radius);
+         Timestamp since = new Timestamp(System.currentTimeMillis());
+         String mode;
+         try {
+            if (rate > 0) {
+               mode = "open";
+               System.out.printf("open: %.0f ops/s, max %d in flight, %.0fs warm-up, %.0fs measured%n",
+                     rate, maxInflight, warmup, duration);
+               sim.runOpen(rate, maxInflight, seed, warmup, duration);
+            } else {
+               mode = "closed";
+               System.out.printf("closed: %d users, %.0f ms think, %.0fs warm-up, %.0fs measured%n",
+                     users, thinkMillis, warmup, duration);
+               sim.runClosed(users, managerShare, thinkMillis, seed, warmup, duration);
+            }
+         } finally {
+            if (!keep)
+               cleanup(db, since);
+         }
+         sim.report(new PrintWriter(System.out), duration);
+         System.out.println(pool.stats());
+         if (json != null) {
+            try (PrintWriter out = new PrintWriter(new FileWriter(json))) {
+               sim.reportJson(out, duration, mode);
+            } catch (IOException e) {
+               System.err.println("Could not write " + json + ": " + e.getMessage());
+            }
+         }
+      } finally {
+         pool.close();
+      }
+   }
+}
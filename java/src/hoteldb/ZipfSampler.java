@@ -0,0 +1,123 @@
+package hoteldb;
+
+import java.util.SplittableRandom;
+
+/**
+ * Draws ranks 1..n with probability proportional to 1/rank^s in constant time
+ * and constant memory, by rejection-inversion (Hoermann and Derflinger, "Rejection-
+ * inversion to generate variates from monotone discrete distributions", 1996).
+ *
+ * Rank 1 is the most popular. {@link #sampleScrambled} maps ranks onto
+ * 1..n through a fixed permutation, so the popular keys are spread over the
+ * key range instead of being the lowest IDs. Thread safe; the random source
+ * is supplied by the caller.
+ */
+public class ZipfSampler {
+
+   private final int n;
+   private final double s;
+   private final double hIntegralX1;
+   private final double hIntegralN;
+   private final double threshold;
+   private final long stride;
+   private final long offset;
+
+   /**
+    * @param n number of ranks
+    * @param s skew exponent; 0 is uniform, 1 is classic Zipf
+    */
+   public ZipfSampler(int n, double s) {
+      if (n < 1)
+         throw new IllegalArgumentException("n must be at least 1");
+      if (s < 0)
+         throw new IllegalArgumentException("s must not be negative");
+      this.n = n;
+      this.s = s;
+      this.hIntegralX1 = hIntegral(1.5) - 1;
+      this.hIntegralN = hIntegral(n + 0.5);
+      this.threshold = 2 - hIntegralInverse(hIntegral(2.5) - h(2));
+      // an affine permutation of 0..n-1: any stride coprime with n will do
+      long st = Math.max(1, (long) (n * 0.6180339887)) | 1;
+      while (gcd(st, n) != 1)
+         st += 2;
+      this.stride = st % n == 0 ? 1 : st;
+      this.offset = n / 3;
+   }
+
+   public int size() {
+      return n;
+   }
+
+   /**
+    * @return a rank in 1..n, 1 being the most likely
+    */
+   public int sample(SplittableRandom random) {
+      while (true) {
+         double u = hIntegralN + random.nextDouble() * (hIntegralX1 - hIntegralN);
+         double x = hIntegralInverse(u);
+         int k = (int) (x + 0.5);
+         if (k < 1)
+            k = 1;
+         else if (k > n)
+            k = n;
+         if (k - x <= threshold || u >= hIntegral(k + 0.5) - h(k))
+            return k;
+      }
+   }
+
+   /**
+    * @return a key in 1..n whose popularity follows the Zipf ranks
+    */
+   public int sampleScrambled(SplittableRandom random) {
+      return scramble(sample(random));
+   }
+
+   /**
+    * @return the key in 1..n of a rank in 1..n
+    */
+   public int scramble(int rank) {
+      return (int) (((rank - 1) * stride + offset) % n) + 1;
+   }
+
+   /**
+    * @return the relative weight 1/rank^s of a rank
+    */
+   public double weight(int rank) {
+      return h(rank);
+   }
+
+   private double h(double x) {
+      return Math.exp(-s * Math.log(x));
+   }
+
+   private double hIntegral(double x) {
+      double logX = Math.log(x);
+      return helper2((1 - s) * logX) * logX;
+   }
+
+   private double hIntegralInverse(double x) {
+      double t = x * (1 - s);
+      if (t < -1)
+         t = -1;
+      return Math.exp(helper1(t) * x);
+   }
+
+   // log1p(x) / x, accurate near 0
+   private static double helper1(double x) {
+      return Math.abs(x) > 1e-8 ? Math.log1p(x) / x : 1 - x * (0.5 - x * (1.0 / 3 - 0.25 * x));
+   }
+
+   // expm1(x) / x, accurate near 0
+   private static double helper2(double x) {
+      return Math.abs(x) > 1e-8 ? Math.expm1(x) / x : 1 + x * 0.5 * (1 + x * (1.0 / 3) * (1 + 0.25 * x));
+   }
+
+   private static long gcd(long a, long b) {
+      while (b != 0) {
+         long t = a % b;
+         a = b;
+         b = t;
+      }
+      return a;
+   }
+}
@@ -0,0 +1,147 @@
+package hoteldb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares {@link SpatialIndex} with a brute-force scan over the same
+ * hotels: the nearest k and everything within a radius, for points inside
+ * the data, on its edges and far outside it.
+ */
+class SpatialIndexTest {
+
+   private static final double CELL_SIZE = 30;
+
+   private final Random rnd = new Random(42);
+   private final List<double[]> hotels = new ArrayList<double[]>();
+   private final SpatialIndex index = new SpatialIndex(SpatialIndex.EUCLIDEAN, CELL_SIZE);
+
+   private void load(int n, double minLat, double maxLat, double minLong, double maxLong) {
+      for (int id = 1; id <= n; id++) {
+         double lat = minLat + rnd.nextDouble() * (maxLat - minLat);
+         double longi = minLong + rnd.nextDouble() * (maxLong - minLong);
+         hotels.add(new double[] {id, lat, longi});
+         index.put(id, "hotel " + id, lat, longi);
+      }
+   }
+
+   // distances from the point to every hotel, nearest first
+   private List<Double> bruteForce(double lat, double longi) {
+      List<Double> d = new ArrayList<Double>(hotels.size());
+      for (double[] h : hotels)
+         d.add(SpatialIndex.EUCLIDEAN.distance(lat, longi, h[1], h[2]));
+      Collections.sort(d);
+      return d;
+   }
+
+   private static List<Double> distances(List<SpatialIndex.Hit> hits) {
+      List<Double> d = new ArrayList<Double>(hits.size());
+      for (SpatialIndex.Hit h : hits)
+         d.add(h.distance);
+      return d;
+   }
+
+   private void checkNearest(double lat, double longi, int k) {
+      List<Double> all = bruteForce(lat, longi);
+      List<Double> expected = all.subList(0, Math.min(k, all.size()));
+      assertEquals(expected, distances(index.nearest(lat, longi, k)),
+            "nearest " + k + " to (" + lat + ", " + longi + ")");
+   }
+
+   private void checkWithin(double lat, double longi, double radius) {
+      List<Double> expected = new ArrayList<Double>();
+      for (double d : bruteForce(lat, longi))
+         if (d <= radius)
+            expected.add(d);
+      assertEquals(expected, distances(index.withinRadius(lat, longi, radius)),
+            "within " + radius + " of (" + lat + ", " + longi + ")");
+   }
+
+   @Test
+   void nearestMatchesBruteForce() {
+      load(2000, -90, 90, -180, 180);
+      for (int i = 0; i < 200; i++) {
+         double lat = -120 + rnd.nextDouble() * 240;
+         double longi = -240 + rnd.nextDouble() * 480;
+         checkNearest(lat, longi, 1 + rnd.nextInt(20));
+      }
+   }
+
+   @Test
+   void withinRadiusMatchesBruteForce() {
+      load(2000, -90, 90, -180, 180);
+      for (int i = 0; i < 200; i++) {
+         double lat = -120 + rnd.nextDouble() * 240;
+         double longi = -240 + rnd.nextDouble() * 480;
+         checkWithin(lat, longi, rnd.nextDouble() * 60);
+      }
+   }
+
+   @Test
+   void moreNeighboursAskedForThanHotels() {
+      load(50, 0, 100, 0, 100);
+      checkNearest(50, 50, 50);
+      checkNearest(50, 50, 51);
+      checkNearest(-500, 700, 1000);
+      assertEquals(50, index.nearest(10, 10, Integer.MAX_VALUE / 2).size());
+   }
+
+   @Test
+   void pointsOnAndBeyondTheGridEdges() {
+      load(500, -90, 90, -180, 180);
+      double[][] points = {
+            {-90, -180}, {90, 180}, {-90, 180}, {90, -180},
+            {0, 180}, {-90, 0}, {90.001, 180.001},
+            {-1e6, 0}, {0, 1e6}, {1e12, -1e12}, {-1e300, 1e300},
+      };
+      for (double[] p : points) {
+         checkNearest(p[0], p[1], 1);
+         checkNearest(p[0], p[1], 10);
+         checkWithin(p[0], p[1], 45);
+      }
+   }
+
+   @Test
+   void hotelsOnCellBoundaries() {
+      for (int id = 1; id <= 100; id++) {
+         double lat = (id % 10) * CELL_SIZE;
+         double longi = (id / 10) * CELL_SIZE;
+         hotels.add(new double[] {id, lat, longi});
+         index.put(id, "hotel " + id, lat, longi);
+      }
+      for (int i = 0; i < 100; i++) {
+         double lat = rnd.nextInt(12) * CELL_SIZE - CELL_SIZE;
+         double longi = rnd.nextInt(12) * CELL_SIZE - CELL_SIZE;
+         checkNearest(lat, longi, 1 + rnd.nextInt(8));
+         checkWithin(lat, longi, CELL_SIZE);
+      }
+   }
+
+   @Test
+   void emptyGrid() {
+      assertTrue(index.nearest(0, 0, 5).isEmpty());
+      assertTrue(index.withinRadius(0, 0, 100).isEmpty());
+      index.put(1, "only", 10, 10);
+      index.remove(1);
+      assertTrue(index.nearest(10, 10, 1).isEmpty());
+      assertTrue(index.withinRadius(10, 10, 1).isEmpty());
+   }
+
+   @Test
+   void nonFinitePoints() {
+      load(10, 0, 10, 0, 10);
+      assertTrue(index.nearest(Double.NaN, 0, 3).isEmpty());
+      assertTrue(index.nearest(0, Double.POSITIVE_INFINITY, 3).isEmpty());
+      assertTrue(index.withinRadius(Double.NEGATIVE_INFINITY, 0, 5).isEmpty());
+      assertTrue(index.withinRadius(0, 0, Double.NaN).isEmpty());
+      assertThrows(IllegalArgumentException.class, () -> index.put(99, "nowhere", Double.NaN, 0));
+   }
+}
@@ -0,0 +1,15 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+
+# a streaming standby of the local cluster on $PGPORT, for trying the
+# read/write split, e.g.
+#   create_replica.sh /tmp/hotel_replica 5433
+# then start the server with --replica localhost:5433, or the console with
+# -Dhotel.replicas=localhost:5433; /status shows the standby's lag.
+# The primary needs a replication line for $USER in pg_hba.conf (local
+# installs have one); stop the standby with pg_ctl -D <dir> stop
+REPLICA_DIR=${1:-$DIR/../replica}
+REPLICA_PORT=${2:-$((PGPORT + 1))}
+pg_basebackup -h localhost -p $PGPORT -U $USER -D $REPLICA_DIR -R -X stream -c fast || exit 1
+pg_ctl -D $REPLICA_DIR -o "-p $REPLICA_PORT" -l $REPLICA_DIR/standby.log -w start || exit 1
+psql -h localhost -p $REPLICA_PORT -Atc "SELECT 'standby up: ' || pg_is_in_recovery()" $USER"_DB"
@@ -0,0 +1,41 @@
+-- One index per query pattern of the application, kept next to the query
+-- that needs it. IF NOT EXISTS lets this script run again on a database
+-- that already has part of the set. Patterns already served by a primary key
+-- or UNIQUE constraint are listed too, so nobody adds a duplicate:
+--   Users(userID)                        log in
+--   Rooms(hotelID, roomNumber)           a hotel's rooms, room updates
+--   RoomBookings(hotelID, roomNumber, bookingDate)
+--                                        free rooms, double-booking check
+--   RoomRepairs(repairID)                repair history join
+-- hoteldb.PlanCheck fails when one of these queries stops using its index.
+
+-- Bounding-box prefilter for "hotels within r": the latitude/longitude range
+-- predicates in Hotel.findHotelsWithin use this index before calculate_distance
+-- is evaluated.
+CREATE INDEX IF NOT EXISTS hotel_latitude_longitude_idx ON Hotel (latitude, longitude);
+
+-- The hotels of a manager (HotelOperations.managedHotelIDs, the session's
+-- managed set) and the managers the RecentUpdates load walks.
+CREATE INDEX IF NOT EXISTS hotel_manager_idx ON Hotel (managerUserID, hotelID);
+
+-- A hotel's booking history, paged by (bookingDate, bookingID) keyset in
+-- HotelOperations.hotelBookings: the date range and the "after this row"
+-- predicate are one index range scan, whatever page is read.
+CREATE INDEX IF NOT EXISTS roombookings_hotel_date_id_idx ON RoomBookings (hotelID, bookingDate, bookingID);
+
+-- A customer's bookings in date order (HotelOperations.customerBookings).
+CREATE INDEX IF NOT EXISTS roombookings_customer_date_idx ON RoomBookings (customerID, bookingDate);
+
+-- Regular customers of a hotel, counted from the index alone and already
+-- grouped by customer (HotelOperations.regularCustomers without the
+-- in-memory counts).
+CREATE INDEX IF NOT EXISTS roombookings_hotel_customer_idx ON RoomBookings (hotelID, customerID);
+
+-- A manager's latest room updates (HotelOperations.recentUpdates and the
+-- RecentUpdates startup load): the LIMIT reads the first rows of the
+-- manager's range, however long RoomUpdatesLog grows.
+CREATE INDEX IF NOT EXISTS roomupdateslog_manager_updatedon_idx ON RoomUpdatesLog (managerID, updatedOn DESC);
+
+-- A manager's repair requests (HotelOperations.repairHistory); repairID
+-- makes the join to RoomRepairs index-only on this side.
+CREATE INDEX IF NOT EXISTS roomrepairrequests_manager_idx ON RoomRepairRequests (managerID, repairID);
@@ -42,16 +42,23 @@ CREATE TABLE MaintenanceCompany (
 );
 
 
+--Bookings are partitioned by month of bookingDate: queries with a date predicate only
+--read the months they name, and old months are detached and archived whole
+--(hoteldb.BookingPartitions) instead of deleted row by row.
 CREATE TABLE RoomBookings ( 
                     bookingID serial NOT NULL,
                     customerID integer NOT NULL,
                     hotelID integer NOT NULL,
                     roomNumber integer NOT NULL, 
                     bookingDate date NOT NULL, 
-                    PRIMARY KEY(bookingID),
+                    PRIMARY KEY(bookingID, bookingDate), ---unique keys of a partitioned table include its partition key
+                    UNIQUE(hotelID, roomNumber, bookingDate), ---a room can be booked once per night
                     FOREIGN KEY(customerID) REFERENCES Users(userID),
                     FOREIGN KEY(hotelID, roomNumber) REFERENCES Rooms(hotelID, roomNumber)
-);
+) PARTITION BY RANGE (bookingDate);
+
+--Months without a partition of their own, e.g. bookings older than the first one.
+CREATE TABLE RoomBookings_default PARTITION OF RoomBookings DEFAULT;
 
 CREATE TABLE RoomRepairs (  
                             repairID serial,
@@ -81,6 +88,10 @@ CREATE TABLE RoomUpdatesLog (
                             hotelID integer NOT NULL,
                             roomNumber integer NOT NULL,
                             updatedOn timestamp NOT NULL,
+                            oldPrice integer,   ---set for a price change
+                            newPrice integer,
+                            oldImageURL char(30),   ---set for an image change
+                            newImageURL char(30),
                             PRIMARY KEY(updateNumber),
                             FOREIGN KEY(managerID) REFERENCES Users(userID),
                             FOREIGN KEY(hotelID, roomNumber) REFERENCES Rooms(hotelID, roomNumber)
@@ -91,4 +102,34 @@ CREATE OR REPLACE FUNCTION calculate_distance(lat1 decimal, long1 decimal, lat2
 RETURNS decimal AS $dist$
 BEGIN RETURN sqrt((lat1 - lat2) * (lat1 - lat2) + (long1 - long2) * (long1 - long2));
 END;
-$dist$ LANGUAGE plpgsql;
\ No newline at end of file
+$dist$ LANGUAGE plpgsql;
+
+---Creates the monthly RoomBookings partitions from the month of first_day through the month of last_day.
+---Rows of those months already in the default partition are moved into their new partition.
+---Returns the number of partitions created; existing months are left alone.
+CREATE OR REPLACE FUNCTION create_booking_partitions(first_day date, last_day date)
+RETURNS integer AS $parts$
+DECLARE
+   month_start date := date_trunc('month', first_day)::date;
+   month_end date;
+   part text;
+   created integer := 0;
+BEGIN
+   WHILE month_start <= last_day LOOP
+      month_end := (month_start + interval '1 month')::date;
+      part := 'roombookings_' || to_char(month_start, 'YYYY_MM');
+      IF to_regclass(part) IS NULL THEN
+         EXECUTE format('CREATE TABLE %I (LIKE RoomBookings INCLUDING DEFAULTS)', part);
+         EXECUTE format('WITH moved AS (DELETE FROM RoomBookings_default WHERE bookingDate >= %L AND bookingDate < %L '
+                     || 'RETURNING *) INSERT INTO %I SELECT * FROM moved', month_start, month_end, part);
+         EXECUTE format('ALTER TABLE RoomBookings ATTACH PARTITION %I FOR VALUES FROM (%L) TO (%L)', part, month_start, month_end);
+         created := created + 1;
+      END IF;
+      month_start := month_end;
+   END LOOP;
+   RETURN created;
+END;
+$parts$ LANGUAGE plpgsql;
+
+---Generated datasets start in 2015; hoteldb.BookingPartitions keeps months ahead of today.
+SELECT create_booking_partitions(DATE '2015-01-01', (current_date + interval '3 months')::date);
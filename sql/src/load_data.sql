@@ -30,7 +30,7 @@ FROM '/extra/skudt001/needed_files/project/data/roomRepairRequests.csv'
 WITH DELIMITER ',' CSV HEADER;
 ALTER SEQUENCE roomRepairRequests_requestNumber_seq RESTART 11;
 
-COPY RoomUpdatesLog
+COPY RoomUpdatesLog (updateNumber, managerID, hotelID, roomNumber, updatedOn)
 FROM '/extra/skudt001/needed_files/project/data/roomUpdatesLog.csv'
 WITH DELIMITER ',' CSV HEADER;
 ALTER SEQUENCE roomUpdatesLog_updateNumber_seq RESTART 51;